@@ -0,0 +1,122 @@
+// Decoder for compact tracking frames (see TrackingFrameCodec on the server).
+// Big-endian fixed-width fields; coordinates are 1e-6 degree integers and
+// delta frames are relative to the previous frame of the same subscription.
+
+const STATUS_KEY = 0x11;
+const STATUS_DELTA = 0x12;
+const LOCATION_KEY = 0x21;
+const LOCATION_DELTA = 0x22;
+const NULL_U16 = 0xffff;
+const NULL_COORD = -2147483648;
+
+const STATUSES = ['ASSIGNED', 'ACCEPTED', 'PICKED_UP', 'IN_TRANSIT', 'DELIVERED', 'CANCELLED'];
+
+const orNull = (value, scale = 1) => (value === NULL_U16 ? null : value / scale);
+const coord = (value) => (value === NULL_COORD ? null : value / 1e6);
+
+function frameBytes(message) {
+  const format = message.headers['frame-format'];
+  if (format === 'compact') {
+    return message.binaryBody;
+  }
+  if (format === 'compact-base64') {
+    return Uint8Array.from(atob(message.body), (c) => c.charCodeAt(0));
+  }
+  return null;
+}
+
+function statusUpdate(track, status, eta, distance) {
+  const etaMinutes = orNull(eta);
+  const remainingDistanceKm = orNull(distance, 100);
+  return {
+    deliveryId: track.deliveryId,
+    orderId: track.orderId,
+    driverId: track.driverId,
+    driverName: track.driverName,
+    status: STATUSES[status] ?? null,
+    currentLatitude: coord(track.lat),
+    currentLongitude: coord(track.lon),
+    timestamp: track.time,
+    estimatedArrival: track.time !== null && etaMinutes !== null ? track.time + etaMinutes * 60000 : null,
+    remainingDistanceKm,
+    // The prose description is not sent in compact frames; render it locally
+    message:
+      remainingDistanceKm !== null && etaMinutes !== null
+        ? `配送员距离您还有 ${remainingDistanceKm.toFixed(1)} 公里，预计 ${etaMinutes} 分钟送达`
+        : null,
+  };
+}
+
+function locationUpdate(track, speed, heading, eta) {
+  return {
+    deliveryId: track.deliveryId,
+    driverId: track.driverId,
+    latitude: coord(track.lat),
+    longitude: coord(track.lon),
+    speed: orNull(speed, 10),
+    heading: orNull(heading, 100),
+    timestamp: track.time,
+    estimatedArrivalMinutes: orNull(eta),
+  };
+}
+
+const NULL_TIME = -(2n ** 63n);
+const time = (value) => (value === NULL_TIME ? null : Number(value));
+
+// Returns a decoder for one subscription: message -> plain object (JSON or compact)
+export function createTrackingDecoder() {
+  const track = { kind: 0, lat: NULL_COORD, lon: NULL_COORD, time: null };
+
+  return (message) => {
+    const bytes = frameBytes(message);
+    if (!bytes) {
+      return JSON.parse(message.body);
+    }
+    const view = new DataView(bytes.buffer, bytes.byteOffset, bytes.byteLength);
+    const type = view.getUint8(0);
+
+    switch (type) {
+      case STATUS_KEY: {
+        const nameLength = view.getUint16(46);
+        Object.assign(track, {
+          kind: STATUS_KEY,
+          deliveryId: Number(view.getBigInt64(1)),
+          orderId: Number(view.getBigInt64(9)),
+          driverId: Number(view.getBigInt64(17)),
+          lat: view.getInt32(26),
+          lon: view.getInt32(30),
+          time: time(view.getBigInt64(34)),
+          driverName: nameLength === NULL_U16 ? null : new TextDecoder().decode(bytes.subarray(48, 48 + nameLength)),
+        });
+        return statusUpdate(track, view.getUint8(25), view.getUint16(42), view.getUint16(44));
+      }
+      case STATUS_DELTA: {
+        if (track.kind !== STATUS_KEY) throw new Error('delta frame without key frame');
+        track.lat += view.getInt16(2);
+        track.lon += view.getInt16(4);
+        track.time += view.getUint16(6);
+        return statusUpdate(track, view.getUint8(1), view.getUint16(8), view.getUint16(10));
+      }
+      case LOCATION_KEY: {
+        Object.assign(track, {
+          kind: LOCATION_KEY,
+          deliveryId: Number(view.getBigInt64(1)),
+          driverId: Number(view.getBigInt64(9)),
+          lat: view.getInt32(17),
+          lon: view.getInt32(21),
+          time: time(view.getBigInt64(29)),
+        });
+        return locationUpdate(track, view.getUint16(25), view.getUint16(27), view.getUint16(37));
+      }
+      case LOCATION_DELTA: {
+        if (track.kind !== LOCATION_KEY) throw new Error('delta frame without key frame');
+        track.lat += view.getInt16(1);
+        track.lon += view.getInt16(3);
+        track.time += view.getUint16(9);
+        return locationUpdate(track, view.getUint16(5), view.getUint16(7), view.getUint16(11));
+      }
+      default:
+        throw new Error(`unknown frame type ${type}`);
+    }
+  };
+}
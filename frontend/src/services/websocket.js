@@ -1,5 +1,6 @@
 import { Client } from '@stomp/stompjs';
 import SockJS from 'sockjs-client';
+import { createTrackingDecoder } from './trackingFrames';
 
 class WebSocketService {
   constructor() {
@@ -17,7 +18,8 @@ class WebSocketService {
     this.client = new Client({
       webSocketFactory: () => new SockJS('http://localhost:8080/api/ws'),
       
-      connectHeaders: {},
+      // Ask for compact binary tracking frames; the server falls back to JSON per message
+      connectHeaders: { 'frame-format': 'compact' },
       
       debug: (str) => {
         console.log('STOMP Debug:', str);
@@ -36,9 +38,11 @@ class WebSocketService {
           `/topic/notifications/${userEmail}`,
           (message) => {
             try {
-              const notification = JSON.parse(message.body);
-              console.log('Received notification:', notification);
-              onNotification(notification);
+              // Server coalesces several notifications for the same user into one frame (array)
+              const payload = JSON.parse(message.body);
+              const notifications = Array.isArray(payload) ? payload : [payload];
+              console.log('Received notifications:', notifications);
+              notifications.forEach(onNotification);
             } catch (error) {
               console.error('Error parsing notification:', error);
             }
@@ -66,6 +70,28 @@ class WebSocketService {
     this.client.activate();
   }
 
+  // Subscribe to live tracking of a delivery (/topic/delivery/{id}); frames may be JSON or compact
+  subscribeDeliveryTracking(deliveryId, onUpdate) {
+    if (!this.isConnected) {
+      console.warn('WebSocket not connected');
+      return null;
+    }
+    const decode = createTrackingDecoder();
+    const key = `delivery:${deliveryId}`;
+    const subscription = this.client.subscribe(`/topic/delivery/${deliveryId}`, (message) => {
+      try {
+        onUpdate(decode(message));
+      } catch (error) {
+        console.error('Error decoding tracking frame:', error);
+      }
+    });
+    this.subscriptions.set(key, subscription);
+    return () => {
+      subscription.unsubscribe();
+      this.subscriptions.delete(key);
+    };
+  }
+
   disconnect() {
     if (this.client) {
       // Unsubscribe all
@@ -1,11 +1,18 @@
 package com.shydelivery.doordashsimulator.config;
 
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.context.annotation.Bean;
 
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 异步配置 - Phase 2
@@ -14,7 +21,9 @@ import java.util.concurrent.Executor;
  * - 实时通知推送
  * - 后台任务处理
  * - 邮件发送等
+ * - 搜索并行扇出
  */
+@Slf4j
 @Configuration
 @EnableAsync
 public class AsyncConfig {
@@ -46,4 +55,31 @@ public class AsyncConfig {
         executor.initialize();
         return executor;
     }
+
+    /**
+     * 搜索扇出线程池
+     * 
+     * 运行在 Java 21+ 时使用虚拟线程（每个任务一个线程）；
+     * 否则退回到有界平台线程池，队列满时拒绝（AbortPolicy）：被拒绝的分支由 SearchService
+     * 按未完成处理（partial），不会在请求线程上执行而绕过分支截止时间。
+     * 声明为 ExecutorService 类型，避免与上面的 Executor Bean 按类型注入冲突。
+     */
+    @Bean(name = "searchExecutor", destroyMethod = "shutdown")
+    public ExecutorService searchExecutor() {
+        try {
+            ExecutorService virtual = (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+            log.info("搜索扇出使用虚拟线程");
+            return virtual;
+        } catch (ReflectiveOperationException e) {
+            log.info("当前 JVM 不支持虚拟线程，搜索扇出使用平台线程池");
+        }
+        return new ThreadPoolExecutor(
+                16, 32,
+                60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(256),
+                new CustomizableThreadFactory("search-"),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
 }
@@ -0,0 +1,37 @@
+package com.shydelivery.doordashsimulator.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+
+/**
+ * 定时任务配置
+ *
+ * @EnableWebSocketMessageBroker 会注册自己的 TaskScheduler（STOMP 心跳用），
+ * Spring Boot 的默认定时任务线程池因此不会创建，@Scheduled 任务会落到心跳线程上。
+ * 这里为 @Scheduled 任务指定独立线程池（大小取 spring.task.scheduling.pool.size），
+ * JWKS 下载、数据清理等慢任务不会拖慢 WebSocket 心跳。
+ */
+@Configuration
+public class SchedulingConfig implements SchedulingConfigurer {
+
+    @Value("${spring.task.scheduling.pool.size:4}")
+    private int poolSize;
+
+    @Bean(destroyMethod = "shutdown")
+    public ThreadPoolTaskScheduler scheduledTaskScheduler() {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(poolSize);
+        scheduler.setThreadNamePrefix("scheduling-");
+        scheduler.initialize();
+        return scheduler;
+    }
+
+    @Override
+    public void configureTasks(ScheduledTaskRegistrar registrar) {
+        registrar.setTaskScheduler(scheduledTaskScheduler());
+    }
+}
@@ -1,6 +1,7 @@
 package com.shydelivery.doordashsimulator.config;
 
 import com.shydelivery.doordashsimulator.security.JwtAuthenticationFilter;
+import com.shydelivery.doordashsimulator.security.RateLimitFilter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
@@ -24,7 +25,7 @@ import java.util.Arrays;
  * Spring Security 配置
  * 
  * 配置内容：
- * 1. JWT 认证过滤器
+ * 1. JWT 认证过滤器、限流过滤器
  * 2. 公开接口（不需要认证）
  * 3. CORS 跨域配置
  * 4. Session 管理（无状态）
@@ -39,6 +40,9 @@ public class SecurityConfig {
     @Autowired
     private JwtAuthenticationFilter jwtAuthenticationFilter;
     
+    @Autowired
+    private RateLimitFilter rateLimitFilter;
+    
     /**
      * 配置 Security Filter Chain
      */
@@ -93,6 +97,12 @@ public class SecurityConfig {
                 .addFilterBefore(
                         jwtAuthenticationFilter,
                         UsernamePasswordAuthenticationFilter.class
+                )
+                
+                // 限流过滤器（在 JWT 过滤器之后，按认证主体和角色限流）
+                .addFilterAfter(
+                        rateLimitFilter,
+                        JwtAuthenticationFilter.class
                 );
         
         log.info("Spring Security configured successfully with JWT");
@@ -1,10 +1,18 @@
 package com.shydelivery.doordashsimulator.config;
 
+import com.shydelivery.doordashsimulator.service.ClusterBroadcastService;
+import com.shydelivery.doordashsimulator.service.TrackingFrameService;
+import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+
+import java.util.List;
 
 /**
  * WebSocket Configuration
@@ -24,10 +32,21 @@ import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerCo
  * - /topic/delivery/{deliveryId} - 配送进度订阅
  * - /topic/driver/{driverId} - 配送员位置订阅
  * - /app/location - 位置更新发送端点
+ *
+ * 多实例部署：brokerChannel 上注册 ClusterBroadcastService，
+ * 上述 topic 的广播经集群传输（默认 PostgreSQL LISTEN/NOTIFY）转发到其他节点，
+ * 每个节点只向本节点上的订阅会话投递。
+ *
+ * 紧凑帧：CONNECT 帧带 frame-format: compact 的连接，位置/配送追踪消息改用二进制帧
+ * （见 TrackingFrameService），其余连接和消息仍为 JSON。
  */
 @Configuration
 @EnableWebSocketMessageBroker
+@RequiredArgsConstructor
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
+
+    private final ClusterBroadcastService clusterBroadcastService;
+    private final TrackingFrameService trackingFrameService;
     
     /**
      * 配置消息代理
@@ -38,6 +57,12 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     public void configureMessageBroker(MessageBrokerRegistry config) {
         // 启用简单消息代理，用于向客户端广播消息
         config.enableSimpleBroker("/topic", "/queue");
+
+        // 本节点发出的广播同时转发到集群其他节点
+        config.configureBrokerChannel().interceptors(clusterBroadcastService, trackingFrameService.brokerInterceptor());
+
+        // 紧凑帧按订阅做差值编码，同一会话的消息必须按发布顺序编码和发送
+        config.setPreservePublishOrder(true);
         
         // 设置应用程序目的地前缀（客户端发送消息时使用）
         config.setApplicationDestinationPrefixes("/app");
@@ -52,5 +77,30 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         registry.addEndpoint("/ws")
                 .setAllowedOriginPatterns("*")  // 允许跨域（生产环境需要限制）
                 .withSockJS();  // 启用 SockJS 回退选项
+
+        // 上行紧凑位置帧同样是差值编码，需要按接收顺序处理
+        registry.setPreserveReceiveOrder(true);
+    }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.interceptors(trackingFrameService.inboundInterceptor());
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.interceptors(trackingFrameService.outboundInterceptor());
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.addDecoratorFactory(trackingFrameService.transportDetector());
+    }
+
+    @Override
+    public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+        // 紧凑帧转换器必须先于 JSON 转换器
+        messageConverters.add(0, trackingFrameService.inboundConverter());
+        return true;
     }
 }
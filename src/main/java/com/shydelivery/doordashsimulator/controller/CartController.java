@@ -1,12 +1,16 @@
 package com.shydelivery.doordashsimulator.controller;
 
 import com.shydelivery.doordashsimulator.dto.request.AddToCartRequest;
+import com.shydelivery.doordashsimulator.dto.request.CheckoutRequest;
 import com.shydelivery.doordashsimulator.dto.request.UpdateCartItemRequest;
 import com.shydelivery.doordashsimulator.dto.response.CartDTO;
+import com.shydelivery.doordashsimulator.dto.response.OrderDTO;
 import com.shydelivery.doordashsimulator.service.CartService;
+import com.shydelivery.doordashsimulator.service.OrderService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
@@ -25,12 +29,13 @@ import java.util.List;
 public class CartController {
     
     private final CartService cartService;
+    private final OrderService orderService;
     
     /**
      * 添加商品到购物车
      */
     @PostMapping("/items/{menuItemId}")
-    @PreAuthorize("hasAuthority('CUSTOMER')")
+    @PreAuthorize("hasRole('CUSTOMER')")
     public ResponseEntity<CartDTO> addToCart(
             @PathVariable Long menuItemId,
             @Valid @RequestBody AddToCartRequest request,
@@ -47,7 +52,7 @@ public class CartController {
      * 更新购物车商品
      */
     @PutMapping("/items/{cartItemId}")
-    @PreAuthorize("hasAuthority('CUSTOMER')")
+    @PreAuthorize("hasRole('CUSTOMER')")
     public ResponseEntity<CartDTO> updateCartItem(
             @PathVariable Long cartItemId,
             @Valid @RequestBody UpdateCartItemRequest request,
@@ -64,7 +69,7 @@ public class CartController {
      * 从购物车删除商品
      */
     @DeleteMapping("/items/{cartItemId}")
-    @PreAuthorize("hasAuthority('CUSTOMER')")
+    @PreAuthorize("hasRole('CUSTOMER')")
     public ResponseEntity<CartDTO> removeFromCart(
             @PathVariable Long cartItemId,
             Principal principal) {
@@ -80,7 +85,7 @@ public class CartController {
      * 清空购物车
      */
     @DeleteMapping("/{restaurantId}")
-    @PreAuthorize("hasAuthority('CUSTOMER')")
+    @PreAuthorize("hasRole('CUSTOMER')")
     public ResponseEntity<Void> clearCart(
             @PathVariable Long restaurantId,
             Principal principal) {
@@ -92,11 +97,28 @@ public class CartController {
         return ResponseEntity.noContent().build();
     }
     
+    /**
+     * 结算购物车（一个事务内生成订单并停用购物车）
+     */
+    @PostMapping("/{restaurantId}/checkout")
+    @PreAuthorize("hasRole('CUSTOMER')")
+    public ResponseEntity<OrderDTO> checkout(
+            @PathVariable Long restaurantId,
+            @Valid @RequestBody CheckoutRequest request,
+            Principal principal) {
+        
+        String customerEmail = principal.getName();
+        log.info("Checking out cart - restaurantId: {}, customer: {}", restaurantId, customerEmail);
+        
+        OrderDTO order = orderService.checkoutCart(restaurantId, request, customerEmail);
+        return ResponseEntity.status(HttpStatus.CREATED).body(order);
+    }
+    
     /**
      * 获取用户在特定餐厅的购物车
      */
     @GetMapping("/{restaurantId}")
-    @PreAuthorize("hasAuthority('CUSTOMER')")
+    @PreAuthorize("hasRole('CUSTOMER')")
     public ResponseEntity<CartDTO> getCart(
             @PathVariable Long restaurantId,
             Principal principal) {
@@ -112,7 +134,7 @@ public class CartController {
      * 获取用户的所有购物车
      */
     @GetMapping
-    @PreAuthorize("hasAuthority('CUSTOMER')")
+    @PreAuthorize("hasRole('CUSTOMER')")
     public ResponseEntity<List<CartDTO>> getAllCarts(Principal principal) {
         
         String customerEmail = principal.getName();
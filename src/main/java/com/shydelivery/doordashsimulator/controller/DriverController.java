@@ -28,6 +28,7 @@ import java.util.List;
  * - PUT  /drivers/status        - DRIVER
  * - PUT  /drivers/location      - DRIVER
  * - GET  /drivers/earnings      - DRIVER
+ * - GET  /drivers/leaderboard   - CUSTOMER
  * - GET  /drivers/online        - ADMIN
  */
 @Slf4j
@@ -118,6 +119,21 @@ public class DriverController {
         return ResponseEntity.ok(earnings);
     }
     
+    /**
+     * 配送员排行榜
+     * GET /api/drivers/leaderboard?sortBy=rating|deliveries&limit=10
+     */
+    @GetMapping("/leaderboard")
+    @PreAuthorize("hasRole('CUSTOMER')")
+    public ResponseEntity<List<DriverDTO>> getLeaderboard(
+            @RequestParam(defaultValue = "rating") String sortBy,
+            @RequestParam(defaultValue = "10") Integer limit) {
+        
+        List<DriverDTO> drivers = driverService.getLeaderboard(sortBy, limit);
+        
+        return ResponseEntity.ok(drivers);
+    }
+    
     /**
      * 获取所有在线配送员（管理员）
      * GET /api/drivers/online
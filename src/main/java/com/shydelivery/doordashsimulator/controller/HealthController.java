@@ -1,5 +1,14 @@
 package com.shydelivery.doordashsimulator.controller;
 
+import com.shydelivery.doordashsimulator.security.AuthenticationCache;
+import com.shydelivery.doordashsimulator.security.RateLimiter;
+import com.shydelivery.doordashsimulator.service.CartExpiryService;
+import com.shydelivery.doordashsimulator.service.CartStore;
+import com.shydelivery.doordashsimulator.service.MenuCatalog;
+import com.shydelivery.doordashsimulator.service.PaymentDispatcher;
+import com.shydelivery.doordashsimulator.service.ClusterBroadcastService;
+import com.shydelivery.doordashsimulator.service.TrackingFrameService;
+import lombok.RequiredArgsConstructor;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
@@ -14,8 +23,18 @@ import java.util.Map;
  */
 @RestController
 @RequestMapping("/health")
+@RequiredArgsConstructor
 public class HealthController {
 
+    private final ClusterBroadcastService clusterBroadcastService;
+    private final TrackingFrameService trackingFrameService;
+    private final AuthenticationCache authenticationCache;
+    private final RateLimiter rateLimiter;
+    private final CartStore cartStore;
+    private final CartExpiryService cartExpiryService;
+    private final MenuCatalog menuCatalog;
+    private final PaymentDispatcher paymentDispatcher;
+
     /**
      * Health check endpoint
      * Access: http://localhost:8080/api/health
@@ -43,4 +62,76 @@ public class HealthController {
         return response;
     }
 
+    /**
+     * WebSocket cluster fan-out stats (node id, published/received, cross-node latency)
+     * Access: http://localhost:8080/api/health/cluster
+     */
+    @GetMapping("/cluster")
+    public Map<String, Object> cluster() {
+        return clusterBroadcastService.getStats();
+    }
+
+    /**
+     * Compact tracking frame stats (negotiated sessions, key frames, bytes per update vs JSON)
+     * Access: http://localhost:8080/api/health/frames
+     */
+    @GetMapping("/frames")
+    public Map<String, Object> frames() {
+        return trackingFrameService.getStats();
+    }
+
+    /**
+     * Authentication cache stats (verified tokens, principals, hit counts)
+     * Access: http://localhost:8080/api/health/auth
+     */
+    @GetMapping("/auth")
+    public Map<String, Object> auth() {
+        return authenticationCache.getStats();
+    }
+
+    /**
+     * Rate limiter stats (limits, buckets, allowed/rejected per route group)
+     * Access: http://localhost:8080/api/health/rate-limit
+     */
+    @GetMapping("/rate-limit")
+    public Map<String, Object> rateLimit() {
+        return rateLimiter.getStats();
+    }
+
+    /**
+     * Cart store stats (resident/dirty carts, write-behind flushes, max observed staleness)
+     * Access: http://localhost:8080/api/health/carts
+     */
+    @GetMapping("/carts")
+    public Map<String, Object> carts() {
+        return cartStore.getStats();
+    }
+
+    /**
+     * Cart expiry stats (carts expired per run, chunk count and time per chunk)
+     * Access: http://localhost:8080/api/health/cart-expiry
+     */
+    @GetMapping("/cart-expiry")
+    public Map<String, Object> cartExpiry() {
+        return cartExpiryService.getStats();
+    }
+
+    /**
+     * Menu snapshot stats (cached menus, version checks, reloads)
+     * Access: http://localhost:8080/api/health/menu-catalog
+     */
+    @GetMapping("/menu-catalog")
+    public Map<String, Object> menuCatalog() {
+        return menuCatalog.getStats();
+    }
+
+    /**
+     * Payment dispatch stats (bulkhead usage, breaker state, retries, gateway latency)
+     * Access: http://localhost:8080/api/health/payments
+     */
+    @GetMapping("/payments")
+    public Map<String, Object> payments() {
+        return paymentDispatcher.getStats();
+    }
+
 }
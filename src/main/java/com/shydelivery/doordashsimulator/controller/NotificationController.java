@@ -1,9 +1,13 @@
 package com.shydelivery.doordashsimulator.controller;
 
+import com.shydelivery.doordashsimulator.dto.request.CreatePromotionCampaignRequest;
 import com.shydelivery.doordashsimulator.dto.response.NotificationDTO;
+import com.shydelivery.doordashsimulator.dto.response.PromotionCampaignDTO;
 import com.shydelivery.doordashsimulator.service.NotificationService;
+import com.shydelivery.doordashsimulator.service.PromotionCampaignService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
@@ -22,11 +26,18 @@ import java.util.Map;
  * 
  * Endpoints:
  * - GET /notifications - 获取所有通知
+ * - GET /notifications/recent - 获取最近的通知（第一页，内存缓存）
  * - GET /notifications/unread - 获取未读通知
  * - GET /notifications/unread/count - 获取未读通知数量
  * - PUT /notifications/{id}/read - 标记通知为已读
  * - PUT /notifications/read-all - 批量标记所有通知为已读
  * - DELETE /notifications/{id} - 删除通知
+ * - GET /notifications/pipeline/stats - 通知分发管道统计（ADMIN）
+ * - GET /notifications/retention/stats - 通知保留期清理统计（ADMIN）
+ * - POST /notifications/campaigns - 创建促销活动（ADMIN）
+ * - GET /notifications/campaigns - 最近的促销活动（ADMIN）
+ * - GET /notifications/campaigns/{id} - 促销活动进度（ADMIN）
+ * - POST /notifications/campaigns/{id}/cancel - 取消促销活动（ADMIN）
  */
 @Slf4j
 @RestController
@@ -36,6 +47,7 @@ import java.util.Map;
 public class NotificationController {
 
     private final NotificationService notificationService;
+    private final PromotionCampaignService campaignService;
 
     /**
      * 获取当前用户的所有通知
@@ -52,6 +64,23 @@ public class NotificationController {
         return ResponseEntity.ok(notifications);
     }
 
+    /**
+     * 获取最近的通知（第一页）
+     */
+    @GetMapping("/recent")
+    @PreAuthorize("isAuthenticated()")
+    @Operation(summary = "获取最近的通知", description = "获取当前用户最近的通知（按时间倒序，默认 20 条，最多 100 条）")
+    public ResponseEntity<List<NotificationDTO>> getRecentNotifications(
+            @RequestParam(defaultValue = "20") int limit,
+            Authentication authentication) {
+        String userEmail = authentication.getName();
+        int size = Math.max(1, Math.min(limit, 100));
+
+        List<NotificationDTO> notifications = notificationService.getRecentNotifications(userEmail, size);
+
+        return ResponseEntity.ok(notifications);
+    }
+
     /**
      * 获取未读通知
      */
@@ -141,4 +170,71 @@ public class NotificationController {
 
         return ResponseEntity.ok(response);
     }
+
+    /**
+     * 通知分发管道统计（队列深度、等待时间、丢弃数）
+     */
+    @GetMapping("/pipeline/stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "通知管道统计", description = "各优先级队列深度、投递/丢弃计数和排队等待时间")
+    public ResponseEntity<Map<String, Object>> getPipelineStats() {
+        return ResponseEntity.ok(notificationService.getPipelineStats());
+    }
+
+    /**
+     * 通知保留期清理统计（删除行数、分块耗时、表大小变化）
+     */
+    @GetMapping("/retention/stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "通知清理统计", description = "累计删除行数、最近一次清理的分块耗时和通知表大小历史")
+    public ResponseEntity<Map<String, Object>> getRetentionStats() {
+        return ResponseEntity.ok(notificationService.getRetentionStats());
+    }
+
+    /**
+     * 创建促销活动（异步发送，返回后可查询进度）
+     */
+    @PostMapping("/campaigns")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "创建促销活动", description = "按角色/城市/下单历史筛选用户并批量发送促销通知")
+    public ResponseEntity<PromotionCampaignDTO> createCampaign(
+            @Valid @RequestBody CreatePromotionCampaignRequest request,
+            Authentication authentication) {
+        log.info("创建促销活动: admin={}, title={}", authentication.getName(), request.getTitle());
+
+        PromotionCampaignDTO campaign = campaignService.createCampaign(request, authentication.getName());
+
+        return ResponseEntity.accepted().body(campaign);
+    }
+
+    /**
+     * 最近的促销活动
+     */
+    @GetMapping("/campaigns")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "促销活动列表", description = "最近 20 个促销活动及其发送进度")
+    public ResponseEntity<List<PromotionCampaignDTO>> getCampaigns() {
+        return ResponseEntity.ok(campaignService.getRecentCampaigns());
+    }
+
+    /**
+     * 促销活动进度
+     */
+    @GetMapping("/campaigns/{id}")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "促销活动进度", description = "已写入通知数、实时推送数和状态")
+    public ResponseEntity<PromotionCampaignDTO> getCampaign(@PathVariable Long id) {
+        return ResponseEntity.ok(campaignService.getCampaign(id));
+    }
+
+    /**
+     * 取消促销活动
+     */
+    @PostMapping("/campaigns/{id}/cancel")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "取消促销活动", description = "停止发送，已写入的通知保留")
+    public ResponseEntity<PromotionCampaignDTO> cancelCampaign(@PathVariable Long id) {
+        log.info("取消促销活动: campaignId={}", id);
+        return ResponseEntity.ok(campaignService.cancelCampaign(id));
+    }
 }
@@ -4,6 +4,7 @@ import com.shydelivery.doordashsimulator.dto.request.CreatePaymentRequest;
 import com.shydelivery.doordashsimulator.dto.request.RefundRequest;
 import com.shydelivery.doordashsimulator.dto.response.PaymentDTO;
 import com.shydelivery.doordashsimulator.entity.PaymentStatus;
+import com.shydelivery.doordashsimulator.exception.ServiceUnavailableException;
 import com.shydelivery.doordashsimulator.service.PaymentService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
@@ -53,7 +54,8 @@ public class PaymentController {
     }
     
     /**
-     * 处理支付（模拟支付流程）
+     * 处理支付（异步：返回 202 和 PROCESSING 状态，结果通过 GET /api/payments/{id} 轮询）
+     * 网关熔断或在途支付已满时返回 503 和 Retry-After，支付状态不变
      * POST /api/payments/{id}/process
      */
     @PostMapping("/{id}/process")
@@ -64,7 +66,11 @@ public class PaymentController {
         try {
             log.info("处理支付: paymentId={}, user={}", id, authentication.getName());
             PaymentDTO payment = paymentService.processPayment(id, authentication.getName());
-            return ResponseEntity.ok(payment);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(payment);
+        } catch (ServiceUnavailableException e) {
+            // 交给 GlobalExceptionHandler：503 + Retry-After
+            log.warn("支付暂时无法受理: paymentId={}, reason={}", id, e.getMessage());
+            throw e;
         } catch (RuntimeException e) {
             log.error("处理支付失败: {}", e.getMessage());
             return ResponseEntity.badRequest().build();
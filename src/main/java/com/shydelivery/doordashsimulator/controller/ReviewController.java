@@ -4,6 +4,7 @@ import com.shydelivery.doordashsimulator.dto.request.CreateReviewRequest;
 import com.shydelivery.doordashsimulator.dto.request.UpdateReviewRequest;
 import com.shydelivery.doordashsimulator.dto.response.RestaurantRatingDTO;
 import com.shydelivery.doordashsimulator.dto.response.ReviewDTO;
+import com.shydelivery.doordashsimulator.dto.response.ReviewFeedDTO;
 import com.shydelivery.doordashsimulator.service.ReviewService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
@@ -14,6 +15,7 @@ import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
+import java.math.BigDecimal;
 import java.util.List;
 
 /**
@@ -30,7 +32,8 @@ import java.util.List;
  * - DELETE /reviews/{id} - CUSTOMER：删除评价（仅限创建者）
  * - GET /reviews/{id} - 公开：获取评价详情
  * - GET /reviews/order/{orderId} - 公开：获取订单评价
- * - GET /reviews/restaurant/{restaurantId} - 公开：获取餐厅评价列表
+ * - GET /reviews/restaurant/{restaurantId} - 公开：获取餐厅评价列表（最新若干条，更多见 X-Next-Cursor 响应头）
+ * - GET /reviews/restaurant/{restaurantId}/feed - 公开：餐厅评价流（游标分页，可过滤）
  * - GET /reviews/restaurant/{restaurantId}/rating - 公开：获取餐厅评分统计
  * - GET /reviews/my - CUSTOMER：获取我的评价
  * 
@@ -146,7 +149,37 @@ public class ReviewController {
     }
     
     /**
-     * 获取餐厅的所有评价 (公开)
+     * 获取餐厅评价流 (公开，游标分页)
+     * 
+     * @param restaurantId 餐厅 ID
+     * @param cursor 上一页返回的 nextCursor（第一页不传）
+     * @param size 每页大小
+     * @param filter positive / negative（可选）
+     * @param minRating 最低总体评分（可选，含）
+     * @param maxRating 最高总体评分（可选，含）
+     * @return 评价流
+     */
+    @GetMapping("/restaurant/{restaurantId}/feed")
+    public ResponseEntity<ReviewFeedDTO> getReviewFeed(
+            @PathVariable Long restaurantId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size,
+            @RequestParam(required = false) String filter,
+            @RequestParam(required = false) BigDecimal minRating,
+            @RequestParam(required = false) BigDecimal maxRating) {
+        log.info("API - 获取餐厅评价流: restaurantId={}, cursor={}", restaurantId, cursor);
+        
+        ReviewFeedDTO feed = reviewService.getReviewFeed(restaurantId, cursor, size, filter, minRating, maxRating);
+        
+        return ResponseEntity.ok(feed);
+    }
+    
+    /**
+     * 获取餐厅的评价列表 (公开，最新若干条)
+     * 
+     * 最多返回 review.list.max-results 条（默认 200）。响应头：
+     * - X-Has-More: 是否还有更早的评价
+     * - X-Next-Cursor: 还有更多时返回，作为 /feed 的 cursor 参数继续浏览
      * 
      * @param restaurantId 餐厅 ID
      * @return 评价列表
@@ -155,9 +188,14 @@ public class ReviewController {
     public ResponseEntity<List<ReviewDTO>> getReviewsByRestaurant(@PathVariable Long restaurantId) {
         log.info("API - 获取餐厅评价列表: restaurantId={}", restaurantId);
         
-        List<ReviewDTO> reviews = reviewService.getReviewsByRestaurant(restaurantId);
+        ReviewFeedDTO page = reviewService.getReviewsByRestaurant(restaurantId);
         
-        return ResponseEntity.ok(reviews);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+            .header("X-Has-More", String.valueOf(page.getHasMore()));
+        if (page.getNextCursor() != null) {
+            response.header("X-Next-Cursor", page.getNextCursor());
+        }
+        return response.body(page.getReviews());
     }
     
     /**
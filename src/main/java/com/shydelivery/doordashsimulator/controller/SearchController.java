@@ -5,9 +5,11 @@ import com.shydelivery.doordashsimulator.dto.request.RestaurantSearchRequest;
 import com.shydelivery.doordashsimulator.dto.response.MenuItemDTO;
 import com.shydelivery.doordashsimulator.dto.response.RestaurantDTO;
 import com.shydelivery.doordashsimulator.dto.response.SearchResultDTO;
+import com.shydelivery.doordashsimulator.dto.response.SuggestionDTO;
 import com.shydelivery.doordashsimulator.entity.MenuItem;
 import com.shydelivery.doordashsimulator.entity.Restaurant;
 import com.shydelivery.doordashsimulator.service.SearchService;
+import com.shydelivery.doordashsimulator.service.SuggestionService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
@@ -16,6 +18,7 @@ import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 搜索控制器
@@ -29,19 +32,21 @@ import java.util.List;
 public class SearchController {
     
     private final SearchService searchService;
+    private final SuggestionService suggestionService;
     
     /**
      * 综合搜索（同时搜索餐厅和菜品）
-     * GET /search?keyword=pizza&page=0&size=20
+     * GET /search?keyword=pizza&page=0&size=20&facets=true
      */
     @GetMapping
     public ResponseEntity<SearchResultDTO> globalSearch(
             @RequestParam String keyword,
             @RequestParam(required = false, defaultValue = "0") Integer page,
-            @RequestParam(required = false, defaultValue = "20") Integer size) {
-        log.info("API call: Global search - keyword: {}, page: {}, size: {}", keyword, page, size);
+            @RequestParam(required = false, defaultValue = "20") Integer size,
+            @RequestParam(required = false, defaultValue = "false") Boolean facets) {
+        log.info("API call: Global search - keyword: {}, page: {}, size: {}, facets: {}", keyword, page, size, facets);
         
-        SearchResultDTO result = searchService.globalSearch(keyword, page, size);
+        SearchResultDTO result = searchService.globalSearch(keyword, page, size, Boolean.TRUE.equals(facets));
         return ResponseEntity.ok(result);
     }
     
@@ -155,4 +160,29 @@ public class SearchController {
         Page<MenuItem> menuItems = searchService.searchMenuItems(request);
         return ResponseEntity.ok(menuItems);
     }
+    
+    /**
+     * 搜索联想（输入即搜，基于内存前缀树，不访问数据库）
+     * GET /search/suggest?prefix=piz&limit=10
+     */
+    @GetMapping("/suggest")
+    public ResponseEntity<List<SuggestionDTO>> suggest(
+            @RequestParam String prefix,
+            @RequestParam(required = false, defaultValue = "10") Integer limit) {
+        log.debug("API call: Suggest - prefix: {}, limit: {}", prefix, limit);
+        
+        List<SuggestionDTO> suggestions = suggestionService.suggest(prefix, limit);
+        return ResponseEntity.ok(suggestions);
+    }
+    
+    /**
+     * 搜索联想索引统计（词条数、内存占用）
+     * GET /search/suggest/stats
+     */
+    @GetMapping("/suggest/stats")
+    public ResponseEntity<Map<String, Object>> getSuggestStats() {
+        log.info("API call: Get suggestion index stats");
+        
+        return ResponseEntity.ok(suggestionService.getStats());
+    }
 }
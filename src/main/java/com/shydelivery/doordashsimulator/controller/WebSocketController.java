@@ -6,7 +6,10 @@ import com.shydelivery.doordashsimulator.entity.Delivery;
 import com.shydelivery.doordashsimulator.entity.Driver;
 import com.shydelivery.doordashsimulator.repository.DeliveryRepository;
 import com.shydelivery.doordashsimulator.repository.DriverRepository;
+import com.shydelivery.doordashsimulator.security.AuthenticationCache;
+import com.shydelivery.doordashsimulator.security.RateLimiter;
 import com.shydelivery.doordashsimulator.service.DriverService;
+import com.shydelivery.doordashsimulator.service.TrackingFrameService;
 import com.shydelivery.doordashsimulator.util.DeliveryFeeCalculator;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -14,10 +17,12 @@ import org.springframework.messaging.handler.annotation.DestinationVariable;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.messaging.handler.annotation.SendTo;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller;
 
 import java.time.LocalDateTime;
+import java.util.Map;
 
 /**
  * WebSocket Controller
@@ -29,6 +34,8 @@ import java.time.LocalDateTime;
  * - /app/location/update - 配送员发送位置更新
  * - /topic/delivery/{deliveryId} - 订阅配送进度（客户端订阅）
  * - /topic/driver/{driverId} - 订阅配送员位置（管理端订阅）
+ *
+ * 广播时附带原始 DTO，协商了紧凑帧的连接直接据此编码（见 TrackingFrameService）
  */
 @Slf4j
 @Controller
@@ -40,6 +47,17 @@ public class WebSocketController {
     private final DeliveryRepository deliveryRepository;
     private final DriverService driverService;
     private final DeliveryFeeCalculator feeCalculator;
+    private final TrackingFrameService trackingFrameService;
+    private final RateLimiter rateLimiter;
+    private final AuthenticationCache authenticationCache;
+    
+    private static final String IDENTITY_ATTRIBUTE_PREFIX = "rateLimitIdentity:";
+    
+    /**
+     * 限流主体（与 RateLimitFilter 相同：用户邮箱 + 不带 ROLE_ 前缀的角色）
+     */
+    private record RateLimitIdentity(String principal, String role) {
+    }
     
     /**
      * 处理配送员位置更新
@@ -47,20 +65,32 @@ public class WebSocketController {
      * 客户端发送到: /app/location/update
      * 服务器广播到: /topic/delivery/{deliveryId}
      * 
+     * 超出限流的更新直接丢弃。会话已认证为消息中配送员所属用户时，限流主体为该用户的邮箱和角色
+     * （在会话中缓存），与 PUT /drivers/location 共用同一个 LOCATION 桶；
+     * 其他情况（未认证、认证用户不是该配送员、配送员不存在）按连接会话计，不会消耗他人的配额。
+     * 限流在载荷解码之后进行，丢弃的紧凑差值帧不会破坏后续帧的解码状态。
+     * 
      * @param message 位置更新消息
      */
     @MessageMapping("/location/update")
-    public void handleLocationUpdate(@Payload LocationUpdateMessage message) {
+    public void handleLocationUpdate(@Payload LocationUpdateMessage message, SimpMessageHeaderAccessor headerAccessor) {
+        RateLimitIdentity identity = rateLimitIdentity(message, headerAccessor);
+        String principal = identity.principal();
+        if (rateLimiter.tryAcquire(RateLimiter.Route.LOCATION, principal, identity.role()) > 0) {
+            log.debug("位置更新被限流，丢弃: deliveryId={}, principal={}", message.getDeliveryId(), principal);
+            return;
+        }
+        
         log.info("收到位置更新: deliveryId={}, lat={}, lon={}", 
                 message.getDeliveryId(), message.getLatitude(), message.getLongitude());
         
         try {
             // 1. 更新配送员位置
+            // 只写位置列，不回写读取到的整行（避免覆盖并发提交的在线状态）
             Driver driver = driverRepository.findById(message.getDriverId())
                     .orElseThrow(() -> new RuntimeException("配送员不存在"));
             
-            driver.updateLocation(message.getLatitude(), message.getLongitude());
-            driverRepository.save(driver);
+            driverService.updateLocation(driver.getId(), message.getLatitude(), message.getLongitude());
             
             // 2. 获取配送信息
             Delivery delivery = deliveryRepository.findById(message.getDeliveryId())
@@ -86,6 +116,7 @@ public class WebSocketController {
                     .currentLatitude(message.getLatitude())
                     .currentLongitude(message.getLongitude())
                     .estimatedArrival(LocalDateTime.now().plusMinutes(estimatedMinutes))
+                    .remainingDistanceKm(remainingDistance)
                     .timestamp(LocalDateTime.now())
                     .message(String.format("配送员距离您还有 %.1f 公里，预计 %d 分钟送达", 
                             remainingDistance, estimatedMinutes))
@@ -94,13 +125,15 @@ public class WebSocketController {
             // 5. 向特定配送的订阅者广播
             messagingTemplate.convertAndSend(
                     "/topic/delivery/" + delivery.getId(),
-                    statusMessage
+                    statusMessage,
+                    trackingFrameService.sourceHeaders(statusMessage)
             );
             
             // 6. 向配送员位置的订阅者广播（管理端可以订阅）
             messagingTemplate.convertAndSend(
                     "/topic/driver/" + driver.getId(),
-                    message
+                    message,
+                    trackingFrameService.sourceHeaders(message)
             );
             
             log.info("位置更新已广播: deliveryId={}, 剩余距离={}km, ETA={}分钟", 
@@ -111,6 +144,33 @@ public class WebSocketController {
         }
     }
     
+    /**
+     * 解析位置上报的限流主体
+     * 
+     * 只有会话的认证用户就是消息中配送员所属用户时才计入该用户的桶；
+     * 否则按连接会话计（消息里的 driverId 由客户端填写，不能据此扣减其他配送员的配额）。
+     * 结果缓存在会话属性中，同一连接的后续上报不再查询。
+     */
+    private RateLimitIdentity rateLimitIdentity(LocationUpdateMessage message, SimpMessageHeaderAccessor headerAccessor) {
+        Map<String, Object> attributes = headerAccessor.getSessionAttributes();
+        String attribute = IDENTITY_ATTRIBUTE_PREFIX + message.getDriverId();
+        if (attributes != null && attributes.get(attribute) instanceof RateLimitIdentity cached) {
+            return cached;
+        }
+        
+        String email = headerAccessor.getUser() != null ? headerAccessor.getUser().getName() : null;
+        boolean ownDriver = email != null && message.getDriverId() != null
+                && driverRepository.findUserEmailById(message.getDriverId()).map(email::equals).orElse(false);
+        AuthenticationCache.CachedPrincipal user = ownDriver ? authenticationCache.principal(email) : null;
+        RateLimitIdentity identity = user != null
+                ? new RateLimitIdentity(email, user.role().name())
+                : new RateLimitIdentity("session:" + headerAccessor.getSessionId(), null);
+        if (attributes != null) {
+            attributes.put(attribute, identity);
+        }
+        return identity;
+    }
+    
     /**
      * 处理配送状态变更
      * 
@@ -124,7 +184,8 @@ public class WebSocketController {
         
         messagingTemplate.convertAndSend(
                 "/topic/delivery/" + deliveryId,
-                message
+                message,
+                trackingFrameService.sourceHeaders(message)
         );
     }
     
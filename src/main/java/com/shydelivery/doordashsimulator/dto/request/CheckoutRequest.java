@@ -0,0 +1,49 @@
+package com.shydelivery.doordashsimulator.dto.request;
+
+import com.shydelivery.doordashsimulator.entity.Order.PaymentMethod;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Request DTO for checking out a cart (cart → order in one transaction)
+ *
+ * RBAC: Only CUSTOMER role can check out
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CheckoutRequest {
+
+    /**
+     * Cart version the client last saw (CartDTO.version, optional);
+     * checkout is rejected if the cart has changed since
+     */
+    private Long cartVersion;
+
+    /**
+     * ID of the delivery address (optional, can use inline address instead)
+     */
+    private Long deliveryAddressId;
+
+    /**
+     * Inline delivery address (used if deliveryAddressId is not provided)
+     */
+    @Valid
+    private CreateOrderRequest.DeliveryAddressRequest deliveryAddress;
+
+    /**
+     * Payment method
+     */
+    @NotNull(message = "支付方式不能为空")
+    private PaymentMethod paymentMethod;
+
+    /**
+     * Special instructions for delivery (optional)
+     */
+    private String specialInstructions;
+}
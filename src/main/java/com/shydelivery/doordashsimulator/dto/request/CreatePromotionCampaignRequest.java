@@ -0,0 +1,53 @@
+package com.shydelivery.doordashsimulator.dto.request;
+
+import com.shydelivery.doordashsimulator.entity.User.UserRole;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 创建促销活动请求
+ *
+ * 目标条件之间为“且”关系，全部为空时发送给所有活跃用户。
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CreatePromotionCampaignRequest {
+
+    @NotBlank(message = "标题不能为空")
+    @Size(max = 200, message = "标题不能超过200字符")
+    private String title;
+
+    @NotBlank(message = "内容不能为空")
+    @Size(max = 2000, message = "内容不能超过2000字符")
+    private String message;
+
+    /**
+     * 目标角色（可选）
+     */
+    private UserRole targetRole;
+
+    /**
+     * 目标城市（可选，匹配用户任一地址）
+     */
+    @Size(max = 100, message = "城市不能超过100字符")
+    private String targetCity;
+
+    /**
+     * 最少下单数（可选）
+     */
+    @Min(value = 1, message = "最少下单数至少为1")
+    private Integer minOrders;
+
+    /**
+     * 下单数统计的时间窗口（天，可选，需配合 minOrders）
+     */
+    @Min(value = 1, message = "时间窗口至少为1天")
+    private Integer orderedWithinDays;
+}
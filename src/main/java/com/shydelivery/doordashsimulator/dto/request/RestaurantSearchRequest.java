@@ -64,7 +64,7 @@ public class RestaurantSearchRequest {
     
     /**
      * 排序字段
-     * 可选值：rating（评分）、deliveryFee（配送费）、deliveryTime（配送时间）、name（名称）
+     * 可选值：rating（评分）、rankingScore / ranking（综合排名分）、deliveryFee（配送费）、deliveryTime（配送时间）、name（名称）
      */
     private String sortBy;
     
@@ -28,6 +28,10 @@ public class CartDTO {
     private BigDecimal deliveryFee;
     private BigDecimal total;
     private Boolean isActive;
+    /**
+     * 购物车版本，每次修改加一；结算时传回用于检查购物车在查看之后是否被修改
+     */
+    private Long version;
     private Boolean hasUnavailableItems;
     private Boolean hasPriceChanges;
     private LocalDateTime expiresAt;
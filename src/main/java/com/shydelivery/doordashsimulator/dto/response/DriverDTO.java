@@ -46,6 +46,8 @@ public class DriverDTO {
     private Integer cancelledDeliveries;
     private Integer totalOnlineMinutes;
     private Double completionRate;
+    private Double averageDeliveryMinutes;
+    private Double onTimeRate;
     
     // 收益信息
     private BigDecimal totalEarnings;
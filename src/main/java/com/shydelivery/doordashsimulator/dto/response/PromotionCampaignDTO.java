@@ -0,0 +1,56 @@
+package com.shydelivery.doordashsimulator.dto.response;
+
+import com.shydelivery.doordashsimulator.entity.PromotionCampaign.CampaignStatus;
+import com.shydelivery.doordashsimulator.entity.User.UserRole;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 促销活动 DTO
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PromotionCampaignDTO {
+
+    private Long id;
+
+    private String title;
+
+    private String message;
+
+    private UserRole targetRole;
+
+    private String targetCity;
+
+    private Integer minOrders;
+
+    private Integer orderedWithinDays;
+
+    private CampaignStatus status;
+
+    /**
+     * 已写入通知的接收人数
+     */
+    private Long recipientCount;
+
+    /**
+     * 实时推送数（仅推送给当前在线的用户）
+     */
+    private Long liveSent;
+
+    private String createdBy;
+
+    private String errorMessage;
+
+    private LocalDateTime createdAt;
+
+    private LocalDateTime startedAt;
+
+    private LocalDateTime finishedAt;
+}
@@ -0,0 +1,40 @@
+package com.shydelivery.doordashsimulator.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 餐厅评价流响应 DTO（游标分页）
+ * 
+ * 客户端将 nextCursor 原样传回即可获取下一页，hasMore = false 表示已到末尾
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReviewFeedDTO {
+    
+    /**
+     * 本页评价（按创建时间倒序）
+     */
+    private List<ReviewDTO> reviews;
+    
+    /**
+     * 下一页游标（没有更多数据时为 null）
+     */
+    private String nextCursor;
+    
+    /**
+     * 是否还有更多数据
+     */
+    private Boolean hasMore;
+    
+    /**
+     * 每页大小
+     */
+    private Integer pageSize;
+}
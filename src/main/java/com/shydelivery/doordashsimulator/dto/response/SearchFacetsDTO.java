@@ -0,0 +1,54 @@
+package com.shydelivery.doordashsimulator.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * 搜索分面统计 DTO
+ * 与搜索结果一起返回，用于前端筛选栏显示各选项的数量
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SearchFacetsDTO {
+    
+    /**
+     * 餐厅分面：菜系 → 餐厅数
+     */
+    private Map<String, Long> cuisineTypes;
+    
+    /**
+     * 餐厅分面：评分区间（4.5+、4.0+、3.5+、3.0+，累计）→ 餐厅数
+     */
+    private Map<String, Long> ratings;
+    
+    /**
+     * 餐厅分面：当前营业中的餐厅数
+     */
+    private Long openNow;
+    
+    /**
+     * 菜品分面：价格区间 → 菜品数
+     */
+    private Map<String, Long> priceRanges;
+    
+    /**
+     * 菜品分面：素食菜品数
+     */
+    private Long vegetarian;
+    
+    /**
+     * 菜品分面：纯素菜品数
+     */
+    private Long vegan;
+    
+    /**
+     * 分面计算耗时（微秒，不含候选集查询）
+     */
+    private Long computeMicros;
+}
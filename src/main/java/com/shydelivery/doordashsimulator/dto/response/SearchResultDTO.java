@@ -51,4 +51,19 @@ public class SearchResultDTO {
      * 搜索关键词
      */
     private String keyword;
+    
+    /**
+     * 分面统计（仅在请求 facets=true 时返回）
+     */
+    private SearchFacetsDTO facets;
+    
+    /**
+     * 是否为部分结果（有分支超时或失败）
+     */
+    private Boolean partial;
+    
+    /**
+     * 超时或失败的分支（restaurants / menuItems / facets）
+     */
+    private List<String> incompleteLegs;
 }
@@ -0,0 +1,41 @@
+package com.shydelivery.doordashsimulator.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 搜索联想响应 DTO
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SuggestionDTO {
+    
+    /**
+     * 联想类型：RESTAURANT（餐厅）、MENU_ITEM（菜品）、CUISINE（菜系）
+     */
+    private String type;
+    
+    /**
+     * 展示文本
+     */
+    private String text;
+    
+    /**
+     * 餐厅ID或菜品ID（菜系为 null）
+     */
+    private Long id;
+    
+    /**
+     * 所属餐厅ID（仅菜品）
+     */
+    private Long restaurantId;
+    
+    /**
+     * 热度权重
+     */
+    private Long score;
+}
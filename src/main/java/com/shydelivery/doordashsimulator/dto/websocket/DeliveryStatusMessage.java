@@ -60,7 +60,12 @@ public class DeliveryStatusMessage {
      * 预计送达时间
      */
     private LocalDateTime estimatedArrival;
-    
+
+    /**
+     * 剩余距离（公里）
+     */
+    private Double remainingDistanceKm;
+
     /**
      * 状态更新时间
      */
@@ -20,7 +20,8 @@ import java.util.List;
 @Table(name = "carts", indexes = {
     @Index(name = "idx_customer_id", columnList = "customer_id"),
     @Index(name = "idx_restaurant_id", columnList = "restaurant_id"),
-    @Index(name = "idx_customer_restaurant", columnList = "customer_id,restaurant_id")
+    @Index(name = "idx_customer_restaurant", columnList = "customer_id,restaurant_id"),
+    @Index(name = "idx_cart_active_expires", columnList = "is_active,expires_at")
 })
 @Data
 @Builder
@@ -66,6 +67,14 @@ public class Cart {
     @Column(name = "expires_at", nullable = false)
     private LocalDateTime expiresAt;
 
+    /**
+     * 写回版本号：CartStore 每次写入都要求与读取时的版本一致并写入新版本（比较并交换），
+     * 其他节点或结算已修改过的购物车不会被旧的内存状态覆盖
+     */
+    @Column(name = "version", nullable = false, columnDefinition = "bigint default 0")
+    @Builder.Default
+    private Long version = 0L;
+
     /**
      * 创建时间
      */
@@ -18,7 +18,9 @@ import java.time.LocalDateTime;
 @Entity
 @Table(name = "drivers", indexes = {
     @Index(name = "idx_user_id", columnList = "user_id"),
-    @Index(name = "idx_is_available", columnList = "is_available")
+    @Index(name = "idx_is_available", columnList = "is_available"),
+    @Index(name = "idx_driver_rating", columnList = "rating, total_deliveries"),
+    @Index(name = "idx_driver_total_deliveries", columnList = "total_deliveries")
 })
 @Data
 @Builder
@@ -76,16 +78,75 @@ public class Driver {
 
     /**
      * Average driver rating from customer reviews (0.00 - 5.00)
+     * Maintained on write by DriverStatsService (ratingSum / ratingCount)
      */
-    @Column(precision = 3, scale = 2)
+    @Column(precision = 3, scale = 2, updatable = false)
     private BigDecimal rating = BigDecimal.ZERO;
 
     /**
      * Total number of completed deliveries
      */
-    @Column(name = "total_deliveries", nullable = false)
+    @Column(name = "total_deliveries", nullable = false, updatable = false)
     private Integer totalDeliveries = 0;
 
+    /**
+     * Denormalised delivery statistics, updated atomically as deliveries
+     * complete and rebuilt nightly by streaming the order history.
+     * Like rating and total_deliveries above, these columns are written only by
+     * DriverRepository's UPDATE queries and are not updatable through the entity,
+     * so saving a driver loaded earlier (location, availability) cannot
+     * overwrite counters committed in the meantime.
+     */
+    @Builder.Default
+    @Column(name = "rating_count", nullable = false, updatable = false, columnDefinition = "integer default 0")
+    private Integer ratingCount = 0;
+
+    @Builder.Default
+    @Column(name = "rating_sum", nullable = false, updatable = false, columnDefinition = "bigint default 0")
+    private Long ratingSum = 0L;
+
+    /**
+     * Accepted deliveries that were cancelled before completion
+     */
+    @Builder.Default
+    @Column(name = "cancelled_deliveries", nullable = false, updatable = false, columnDefinition = "integer default 0")
+    private Integer cancelledDeliveries = 0;
+
+    /**
+     * Completed deliveries with both pickup and drop-off time recorded
+     */
+    @Builder.Default
+    @Column(name = "timed_deliveries", nullable = false, updatable = false, columnDefinition = "integer default 0")
+    private Integer timedDeliveries = 0;
+
+    /**
+     * Sum of pickup-to-drop-off minutes over timed deliveries
+     */
+    @Builder.Default
+    @Column(name = "total_delivery_minutes", nullable = false, updatable = false, columnDefinition = "bigint default 0")
+    private Long totalDeliveryMinutes = 0L;
+
+    /**
+     * Completed deliveries that arrived no later than the estimated delivery time
+     */
+    @Builder.Default
+    @Column(name = "on_time_deliveries", nullable = false, updatable = false, columnDefinition = "integer default 0")
+    private Integer onTimeDeliveries = 0;
+
+    /**
+     * Completed deliveries that had an estimated delivery time
+     */
+    @Builder.Default
+    @Column(name = "estimated_deliveries", nullable = false, updatable = false, columnDefinition = "integer default 0")
+    private Integer estimatedDeliveries = 0;
+
+    /**
+     * Sum of delivery fees earned on completed deliveries
+     */
+    @Builder.Default
+    @Column(name = "total_earnings", nullable = false, updatable = false, precision = 12, scale = 2, columnDefinition = "numeric(12,2) default 0")
+    private BigDecimal totalEarnings = BigDecimal.ZERO;
+
     @CreationTimestamp
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
@@ -135,17 +196,24 @@ public class Driver {
     }
 
     /**
-     * Increment total deliveries count
+     * Share of accepted deliveries that were completed (0.0 - 1.0)
+     */
+    public double getCompletionRate() {
+        int accepted = totalDeliveries + cancelledDeliveries;
+        return accepted > 0 ? (double) totalDeliveries / accepted : 0.0;
+    }
+
+    /**
+     * Average pickup-to-drop-off time in minutes
      */
-    public void incrementDeliveries() {
-        this.totalDeliveries++;
+    public double getAverageDeliveryMinutes() {
+        return timedDeliveries > 0 ? (double) totalDeliveryMinutes / timedDeliveries : 0.0;
     }
 
     /**
-     * Get total earnings (temporarily return ZERO, will calculate from deliveries later)
+     * Share of deliveries with an estimate that arrived on time (0.0 - 1.0)
      */
-    public BigDecimal getTotalEarnings() {
-        // TODO: Calculate from actual delivery records
-        return BigDecimal.ZERO;
+    public double getOnTimeRate() {
+        return estimatedDeliveries > 0 ? (double) onTimeDeliveries / estimatedDeliveries : 0.0;
     }
 }
@@ -0,0 +1,128 @@
+package com.shydelivery.doordashsimulator.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * 促销活动实体
+ * 记录一次批量促销通知的目标条件和发送进度（last_user_id 用于中断后续发，owner_node/lease_until 为发送租约）
+ */
+@Entity
+@Table(name = "promotion_campaigns", indexes = {
+        @Index(name = "idx_campaign_status", columnList = "status")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class PromotionCampaign {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /**
+     * 通知标题
+     */
+    @Column(nullable = false, length = 200)
+    private String title;
+
+    /**
+     * 通知内容
+     */
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String message;
+
+    /**
+     * 目标角色（为空表示所有角色）
+     */
+    @Enumerated(EnumType.STRING)
+    @Column(name = "target_role", length = 50)
+    private User.UserRole targetRole;
+
+    /**
+     * 目标城市（按用户地址匹配，为空表示不限）
+     */
+    @Column(name = "target_city", length = 100)
+    private String targetCity;
+
+    /**
+     * 最少下单数（为空表示不限）
+     */
+    @Column(name = "min_orders")
+    private Integer minOrders;
+
+    /**
+     * 下单数统计的时间窗口（天，为空表示全部历史）
+     */
+    @Column(name = "ordered_within_days")
+    private Integer orderedWithinDays;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    @Builder.Default
+    private CampaignStatus status = CampaignStatus.PENDING;
+
+    /**
+     * 已写入通知的接收人数
+     */
+    @Column(name = "recipient_count", nullable = false)
+    @Builder.Default
+    private Long recipientCount = 0L;
+
+    /**
+     * 实时推送（WebSocket）的接收人数
+     */
+    @Column(name = "live_sent", nullable = false)
+    @Builder.Default
+    private Long liveSent = 0L;
+
+    /**
+     * 已处理到的最大用户 ID（续发起点）
+     */
+    @Column(name = "last_user_id", nullable = false)
+    @Builder.Default
+    private Long lastUserId = 0L;
+
+    /**
+     * 正在发送该活动的节点及其租约到期时间
+     * 多实例部署时只有持有未过期租约的节点发送；执行节点定期续约，
+     * 节点宕机后租约过期，由其他节点接管并从 last_user_id 续发
+     */
+    @Column(name = "owner_node", length = 64)
+    private String ownerNode;
+
+    @Column(name = "lease_until")
+    private LocalDateTime leaseUntil;
+
+    @Column(name = "created_by", length = 255)
+    private String createdBy;
+
+    @Column(name = "error_message", length = 500)
+    private String errorMessage;
+
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "started_at")
+    private LocalDateTime startedAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+
+    /**
+     * 活动状态
+     */
+    public enum CampaignStatus {
+        PENDING,    // 等待发送
+        RUNNING,    // 发送中
+        COMPLETED,  // 已完成
+        CANCELLED,  // 已取消
+        FAILED      // 失败
+    }
+}
@@ -20,7 +20,9 @@ import java.time.LocalTime;
     @Index(name = "idx_owner_id", columnList = "owner_id"),
     @Index(name = "idx_cuisine_type", columnList = "cuisine_type"),
     @Index(name = "idx_is_active", columnList = "is_active"),
-    @Index(name = "idx_rating", columnList = "rating")
+    @Index(name = "idx_rating", columnList = "rating"),
+    @Index(name = "idx_review_count_rating", columnList = "review_count, rating"),
+    @Index(name = "idx_ranking_score", columnList = "ranking_score")
 })
 @Data
 @NoArgsConstructor
@@ -82,10 +84,76 @@ public class Restaurant {
 
     /**
      * Average rating from customer reviews (0.00 - 5.00)
+     * Maintained on write by ReviewService (ratingSum / reviewCount).
+     * Inserted as 0 but never written by entity updates (see below).
      */
-    @Column(precision = 3, scale = 2)
+    @Column(precision = 3, scale = 2, updatable = false)
     private BigDecimal rating = BigDecimal.ZERO;
 
+    /**
+     * Denormalised review statistics, updated atomically on every review
+     * create/update/delete and reconciled nightly against the reviews table.
+     * Sums are stored instead of averages so updates are simple increments.
+     *
+     * Like menu_version, these columns (and the ranking state below) are
+     * written only by the SQL in RestaurantRepository, never by entity
+     * saves: a restaurant loaded before a review was written would
+     * otherwise overwrite the increment with its stale values.
+     */
+    @Column(name = "review_count", nullable = false, insertable = false, updatable = false,
+            columnDefinition = "integer default 0")
+    private Integer reviewCount = 0;
+
+    @Column(name = "rating_sum", nullable = false, insertable = false, updatable = false,
+            precision = 12, scale = 2, columnDefinition = "numeric(12,2) default 0")
+    private BigDecimal ratingSum = BigDecimal.ZERO;
+
+    @Column(name = "food_rating_sum", nullable = false, insertable = false, updatable = false,
+            columnDefinition = "bigint default 0")
+    private Long foodRatingSum = 0L;
+
+    @Column(name = "delivery_rating_sum", nullable = false, insertable = false, updatable = false,
+            columnDefinition = "bigint default 0")
+    private Long deliveryRatingSum = 0L;
+
+    /**
+     * Number of reviews with overall rating >= 4.0
+     */
+    @Column(name = "positive_review_count", nullable = false, insertable = false, updatable = false,
+            columnDefinition = "integer default 0")
+    private Integer positiveReviewCount = 0;
+
+    /**
+     * Number of reviews with overall rating < 3.0
+     */
+    @Column(name = "negative_review_count", nullable = false, insertable = false, updatable = false,
+            columnDefinition = "integer default 0")
+    private Integer negativeReviewCount = 0;
+
+    /**
+     * Bayesian-smoothed, time-decayed ranking score used for search ordering.
+     * Maintained by RankingScoreService, which adds each node's decayed event deltas
+     * to the decayed sums below (as of ranking_updated_at) with a single atomic UPDATE.
+     */
+    @Column(name = "ranking_score", nullable = false, insertable = false, updatable = false,
+            columnDefinition = "double precision default 0")
+    private Double rankingScore = 0.0;
+
+    @Column(name = "ranking_review_weight", nullable = false, insertable = false, updatable = false,
+            columnDefinition = "double precision default 0")
+    private Double rankingReviewWeight = 0.0;
+
+    @Column(name = "ranking_rating_sum", nullable = false, insertable = false, updatable = false,
+            columnDefinition = "double precision default 0")
+    private Double rankingRatingSum = 0.0;
+
+    @Column(name = "ranking_order_weight", nullable = false, insertable = false, updatable = false,
+            columnDefinition = "double precision default 0")
+    private Double rankingOrderWeight = 0.0;
+
+    @Column(name = "ranking_updated_at", insertable = false, updatable = false)
+    private LocalDateTime rankingUpdatedAt;
+
     /**
      * Base delivery fee charged by this restaurant
      */
@@ -98,6 +166,15 @@ public class Restaurant {
     @Column(name = "minimum_order", precision = 10, scale = 2)
     private BigDecimal minimumOrder = BigDecimal.ZERO;
 
+    /**
+     * Menu version, incremented in the same transaction as every menu item
+     * create/update/delete (see MenuCatalog). Written only by that SQL
+     * increment, never by entity saves, so a stale entity cannot roll it back.
+     */
+    @Column(name = "menu_version", nullable = false, insertable = false, updatable = false,
+            columnDefinition = "bigint default 0")
+    private Long menuVersion = 0L;
+
     @CreationTimestamp
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
@@ -105,4 +182,18 @@ public class Restaurant {
     @UpdateTimestamp
     @Column(name = "updated_at", nullable = false)
     private LocalDateTime updatedAt;
+
+    /**
+     * Average food rating derived from the stored sum
+     */
+    public double getAverageFoodRating() {
+        return reviewCount != null && reviewCount > 0 ? (double) foodRatingSum / reviewCount : 0.0;
+    }
+
+    /**
+     * Average delivery rating derived from the stored sum
+     */
+    public double getAverageDeliveryRating() {
+        return reviewCount != null && reviewCount > 0 ? (double) deliveryRatingSum / reviewCount : 0.0;
+    }
 }
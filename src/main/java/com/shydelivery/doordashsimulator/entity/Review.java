@@ -18,7 +18,9 @@ import java.time.LocalDateTime;
 @Table(name = "reviews", indexes = {
     @Index(name = "idx_order_id", columnList = "order_id"),
     @Index(name = "idx_customer_id", columnList = "customer_id"),
-    @Index(name = "idx_restaurant_id", columnList = "restaurant_id")
+    @Index(name = "idx_restaurant_id", columnList = "restaurant_id"),
+    @Index(name = "idx_review_restaurant_created", columnList = "restaurant_id, created_at, id"),
+    @Index(name = "idx_review_restaurant_sentiment_created", columnList = "restaurant_id, sentiment, created_at, id")
 })
 @Data
 @NoArgsConstructor
@@ -69,6 +71,17 @@ public class Review {
     @Column(name = "overall_rating", nullable = false, precision = 3, scale = 2)
     private BigDecimal overallRating;
 
+    /**
+     * Rating band derived by the database from overall_rating:
+     * 1 = positive (>= 4.0), -1 = negative (< 3.0), 0 = neutral.
+     * Leads the positive/negative feed index so those feeds are index range scans
+     * instead of filtering every review of the restaurant.
+     */
+    @Column(name = "sentiment", insertable = false, updatable = false,
+            columnDefinition = "smallint GENERATED ALWAYS AS (CASE WHEN overall_rating >= 4.0 THEN 1 " +
+                    "WHEN overall_rating < 3.0 THEN -1 ELSE 0 END) STORED")
+    private Short sentiment;
+
     /**
      * Written review comment
      */
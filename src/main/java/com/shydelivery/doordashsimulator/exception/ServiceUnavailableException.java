@@ -0,0 +1,19 @@
+package com.shydelivery.doordashsimulator.exception;
+
+/**
+ * 服务暂时不可用异常
+ * 下游依赖暂时无法受理请求时抛出（如支付网关熔断、在途支付已满），客户端应在 retryAfterSeconds 秒后重试
+ */
+public class ServiceUnavailableException extends RuntimeException {
+    
+    private final long retryAfterSeconds;
+    
+    public ServiceUnavailableException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+    
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -2,7 +2,9 @@ package com.shydelivery.doordashsimulator.repository;
 
 import com.shydelivery.doordashsimulator.entity.Driver;
 import com.shydelivery.doordashsimulator.entity.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -23,6 +25,12 @@ public interface DriverRepository extends JpaRepository<Driver, Long> {
      */
     Optional<Driver> findByUser(User user);
     
+    /**
+     * 根据用户邮箱查找配送员（一次查询同时加载用户信息）
+     */
+    @Query("SELECT d FROM Driver d JOIN FETCH d.user u WHERE u.email = :email")
+    Optional<Driver> findByUserEmail(@Param("email") String email);
+    
     /**
      * 根据用户ID查找配送员
      */
@@ -71,4 +79,130 @@ public interface DriverRepository extends JpaRepository<Driver, Long> {
      */
     @Query("SELECT COUNT(d) FROM Driver d WHERE d.isAvailable = true")
     Long countOnlineDrivers();
+    
+    /**
+     * 评分排行榜（沿 idx_driver_rating 索引取前 N 条，同时加载用户信息）
+     */
+    @Query("SELECT d FROM Driver d JOIN FETCH d.user ORDER BY d.rating DESC, d.totalDeliveries DESC, d.id")
+    List<Driver> findRatingLeaderboard(Pageable pageable);
+    
+    /**
+     * 配送量排行榜（沿 idx_driver_total_deliveries 索引取前 N 条，同时加载用户信息）
+     */
+    @Query("SELECT d FROM Driver d JOIN FETCH d.user ORDER BY d.totalDeliveries DESC, d.id")
+    List<Driver> findDeliveryLeaderboard(Pageable pageable);
+    
+    /**
+     * 配送员所属用户的邮箱（STOMP 位置上报按该身份限流）
+     */
+    @Query("SELECT u.email FROM Driver d JOIN d.user u WHERE d.id = :driverId")
+    Optional<String> findUserEmailById(@Param("driverId") Long driverId);
+    
+    /**
+     * 只更新位置（高频写入，不读取、不回写整行，避免覆盖并发修改的在线状态）
+     * 
+     * @return 更新行数（0 表示配送员不存在）
+     */
+    @Modifying
+    @Query("UPDATE Driver d SET d.currentLatitude = :latitude, d.currentLongitude = :longitude, " +
+           "d.updatedAt = CURRENT_TIMESTAMP WHERE d.id = :driverId")
+    int updateLocation(
+        @Param("driverId") Long driverId,
+        @Param("latitude") BigDecimal latitude,
+        @Param("longitude") BigDecimal longitude
+    );
+    
+    /**
+     * 原子累加一次完成的配送
+     * 
+     * @param userId 配送员的用户ID（订单上记录的是 User）
+     * @param timed 是否有取餐/送达时间（0 或 1）
+     * @param minutes 取餐到送达的分钟数
+     * @param estimated 是否有预计送达时间（0 或 1）
+     * @param onTime 是否准时送达（0 或 1）
+     * @param earnings 本单配送费
+     */
+    @Modifying
+    @Query(value = "UPDATE drivers SET total_deliveries = total_deliveries + 1, " +
+           "timed_deliveries = timed_deliveries + :timed, " +
+           "total_delivery_minutes = total_delivery_minutes + :minutes, " +
+           "estimated_deliveries = estimated_deliveries + :estimated, " +
+           "on_time_deliveries = on_time_deliveries + :onTime, " +
+           "total_earnings = total_earnings + :earnings " +
+           "WHERE user_id = :userId",
+           nativeQuery = true)
+    int recordCompletedDelivery(
+        @Param("userId") Long userId,
+        @Param("timed") int timed,
+        @Param("minutes") long minutes,
+        @Param("estimated") int estimated,
+        @Param("onTime") int onTime,
+        @Param("earnings") BigDecimal earnings
+    );
+    
+    /**
+     * 原子累加一次已接单后被取消的配送
+     */
+    @Modifying
+    @Query(value = "UPDATE drivers SET cancelled_deliveries = cancelled_deliveries + 1 WHERE user_id = :userId",
+           nativeQuery = true)
+    int recordCancelledDelivery(@Param("userId") Long userId);
+    
+    /**
+     * 原子更新评分（增量），同一条 UPDATE 中重算平均分
+     * 没有任何评分时恢复为注册时的默认 5.00
+     */
+    @Modifying
+    @Query(value = "UPDATE drivers SET " +
+           "rating_count = rating_count + :countDelta, " +
+           "rating_sum = rating_sum + :sumDelta, " +
+           "rating = CASE WHEN rating_count + :countDelta > 0 " +
+           "THEN ROUND(CAST(rating_sum + :sumDelta AS numeric) / (rating_count + :countDelta), 2) ELSE 5.00 END " +
+           "WHERE user_id = :userId",
+           nativeQuery = true)
+    int applyRatingDelta(
+        @Param("userId") Long userId,
+        @Param("countDelta") int countDelta,
+        @Param("sumDelta") long sumDelta
+    );
+    
+    /**
+     * 全部配送员当前存储的统计（批量重建时与订单历史在同一快照中读取）
+     * Returns: [userId, completed, cancelled, timed, minutes, estimated, onTime, earnings, ratingCount, ratingSum]
+     */
+    @Query("SELECT d.user.id, d.totalDeliveries, d.cancelledDeliveries, d.timedDeliveries, " +
+           "d.totalDeliveryMinutes, d.estimatedDeliveries, d.onTimeDeliveries, d.totalEarnings, " +
+           "d.ratingCount, d.ratingSum FROM Driver d")
+    List<Object[]> findStatsRows();
+    
+    /**
+     * 批量重建时按修正量更新统计（修正量 = 重算值 - 快照中的存储值），
+     * 快照之后提交的增量更新不受影响；同一条 UPDATE 中重算平均分
+     */
+    @Modifying
+    @Query(value = "UPDATE drivers SET " +
+           "total_deliveries = total_deliveries + :completed, " +
+           "cancelled_deliveries = cancelled_deliveries + :cancelled, " +
+           "timed_deliveries = timed_deliveries + :timed, " +
+           "total_delivery_minutes = total_delivery_minutes + :minutes, " +
+           "estimated_deliveries = estimated_deliveries + :estimated, " +
+           "on_time_deliveries = on_time_deliveries + :onTime, " +
+           "total_earnings = total_earnings + :earnings, " +
+           "rating_count = rating_count + :ratingCount, rating_sum = rating_sum + :ratingSum, " +
+           "rating = CASE WHEN rating_count + :ratingCount > 0 " +
+           "THEN ROUND(CAST(rating_sum + :ratingSum AS numeric) / (rating_count + :ratingCount), 2) ELSE 5.00 END " +
+           "WHERE user_id = :userId",
+           nativeQuery = true)
+    int applyStatsCorrection(
+        @Param("userId") Long userId,
+        @Param("completed") int completed,
+        @Param("cancelled") int cancelled,
+        @Param("timed") int timed,
+        @Param("minutes") long minutes,
+        @Param("estimated") int estimated,
+        @Param("onTime") int onTime,
+        @Param("earnings") BigDecimal earnings,
+        @Param("ratingCount") int ratingCount,
+        @Param("ratingSum") long ratingSum
+    );
 }
@@ -11,6 +11,7 @@ import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * MenuItem Repository - Data access for MenuItem entities
@@ -74,6 +75,41 @@ public interface MenuItemRepository extends JpaRepository<MenuItem, Long> {
      */
     boolean existsByIdAndRestaurant(Long id, Restaurant restaurant);
     
+    /**
+     * Check if a menu item belongs to a restaurant owned by a specific user
+     * Used by: Menu item ownership verification (single query)
+     */
+    boolean existsByIdAndRestaurantOwnerId(Long id, Long ownerId);
+    
+    /**
+     * Load fields needed by the suggestion index (no entity hydration)
+     * Returns: [id, name, restaurantId]
+     */
+    @Query("SELECT m.id, m.name, m.restaurant.id FROM MenuItem m WHERE m.isAvailable = true AND m.restaurant.isActive = true")
+    List<Object[]> findSuggestionRows();
+    
+    /**
+     * Load suggestion index rows for one restaurant's available menu items
+     * Returns: [id, name, restaurantId]
+     */
+    @Query("SELECT m.id, m.name, m.restaurant.id FROM MenuItem m WHERE m.isAvailable = true AND m.restaurant.id = :restaurantId")
+    List<Object[]> findSuggestionRowsByRestaurantId(@Param("restaurantId") Long restaurantId);
+    
+    /**
+     * Load fields needed by the facet index, ordered by ID
+     * Returns: [id, price, isVegetarian, isVegan]
+     */
+    @Query("SELECT m.id, m.price, m.isVegetarian, m.isVegan FROM MenuItem m ORDER BY m.id")
+    List<Object[]> findFacetRows();
+    
+    /**
+     * Available menu item IDs matching a keyword (facet candidate set,
+     * same keyword condition as searchMenuItems)
+     */
+    @Query("SELECT m.id FROM MenuItem m WHERE m.isAvailable = true AND " +
+            "(:keyword IS NULL OR LOWER(m.name) LIKE CONCAT('%', :keyword, '%') OR LOWER(m.description) LIKE CONCAT('%', :keyword, '%'))")
+    List<Long> searchAvailableMenuItemIds(@Param("keyword") String keyword);
+    
     /**
      * 综合搜索菜品
      * 支持多条件过滤和排序
@@ -3,6 +3,7 @@ package com.shydelivery.doordashsimulator.repository;
 import com.shydelivery.doordashsimulator.entity.Notification;
 import com.shydelivery.doordashsimulator.entity.Notification.NotificationType;
 import com.shydelivery.doordashsimulator.entity.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
@@ -39,6 +40,18 @@ public interface NotificationRepository extends JpaRepository<Notification, Long
     @Query("SELECT COUNT(n) FROM Notification n WHERE n.user = :user AND n.isRead = false")
     Long countUnreadByUser(@Param("user") User user);
 
+    /**
+     * 按邮箱统计用户的未读通知数量（收件箱缓存加载用，不需要先查询用户）
+     */
+    @Query("SELECT COUNT(n) FROM Notification n WHERE n.user.email = :email AND n.isRead = false")
+    long countUnreadByUserEmail(@Param("email") String email);
+
+    /**
+     * 按邮箱查找用户最近的通知（同一时间按 ID 倒序，与批量插入顺序一致）
+     */
+    @Query("SELECT n FROM Notification n WHERE n.user.email = :email ORDER BY n.createdAt DESC, n.id DESC")
+    List<Notification> findByUserEmailOrderByCreatedAtDesc(@Param("email") String email, Pageable pageable);
+
     /**
      * 查找指定订单的所有通知
      */
@@ -3,6 +3,7 @@ package com.shydelivery.doordashsimulator.repository;
 import com.shydelivery.doordashsimulator.entity.Order;
 import com.shydelivery.doordashsimulator.entity.OrderItem;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -21,4 +22,12 @@ public interface OrderItemRepository extends JpaRepository<OrderItem, Long> {
      * @return list of order items
      */
     List<OrderItem> findByOrder(Order order);
+    
+    /**
+     * Total quantity ordered per menu item, used as popularity weight
+     * 
+     * @return rows of [menuItemId, totalQuantity]
+     */
+    @Query("SELECT oi.menuItem.id, SUM(oi.quantity) FROM OrderItem oi GROUP BY oi.menuItem.id")
+    List<Object[]> sumQuantityByMenuItem();
 }
@@ -4,13 +4,16 @@ import com.shydelivery.doordashsimulator.entity.Order;
 import com.shydelivery.doordashsimulator.entity.Order.OrderStatus;
 import com.shydelivery.doordashsimulator.entity.Restaurant;
 import com.shydelivery.doordashsimulator.entity.User;
+import jakarta.persistence.QueryHint;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * Order Repository - Data access for Order entities
@@ -86,6 +89,14 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
      */
     boolean existsByIdAndRestaurant(Long id, Restaurant restaurant);
     
+    /**
+     * Load an order with its customer, restaurant, delivery address and driver in one query
+     * Used by: Ownership verification (the loaded aggregate is reused by the caller)
+     */
+    @Query("SELECT o FROM Order o JOIN FETCH o.customer JOIN FETCH o.restaurant " +
+           "LEFT JOIN FETCH o.deliveryAddress LEFT JOIN FETCH o.driver WHERE o.id = :id")
+    Optional<Order> findAggregateById(@Param("id") Long id);
+    
     /**
      * Find all orders assigned to a specific driver
      * Used by: DRIVER role to view their deliveries
@@ -103,4 +114,18 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
      * Used by: DRIVER role to filter their deliveries
      */
     List<Order> findByDriverAndStatus(User driver, OrderStatus status);
+    
+    /**
+     * Stream every driver-assigned order with its review's delivery rating, grouped by driver
+     * The fetch-size hint makes the PostgreSQL driver use a server-side cursor (inside a transaction),
+     * so the full history is never materialised in memory.
+     * Used by: DriverStatsService batch rebuild
+     * Returns: [driverUserId, status, pickedUpAt, actualDelivery, estimatedDelivery, deliveryFee, deliveryRating]
+     */
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("SELECT o.driver.id, o.status, o.pickedUpAt, o.actualDelivery, o.estimatedDelivery, o.deliveryFee, rv.deliveryRating " +
+           "FROM Order o LEFT JOIN Review rv ON rv.order = o " +
+           "WHERE o.driver IS NOT NULL AND o.status IN ('DELIVERED', 'CANCELLED') " +
+           "ORDER BY o.driver.id")
+    Stream<Object[]> streamDriverOrderRows();
 }
@@ -0,0 +1,111 @@
+package com.shydelivery.doordashsimulator.repository;
+
+import com.shydelivery.doordashsimulator.entity.PromotionCampaign;
+import com.shydelivery.doordashsimulator.entity.PromotionCampaign.CampaignStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * PromotionCampaign Repository
+ */
+@Repository
+public interface PromotionCampaignRepository extends JpaRepository<PromotionCampaign, Long> {
+
+    /**
+     * 可认领的活动：未结束，且没有节点持有未过期的租约（新建的活动，或执行节点已宕机）
+     */
+    @Query("SELECT c.id FROM PromotionCampaign c WHERE c.status IN :statuses " +
+           "AND (c.leaseUntil IS NULL OR c.leaseUntil < :now) ORDER BY c.id")
+    List<Long> findClaimableIds(@Param("statuses") Collection<CampaignStatus> statuses,
+                                @Param("now") LocalDateTime now);
+
+    /**
+     * 最近的活动
+     */
+    List<PromotionCampaign> findTop20ByOrderByIdDesc();
+
+    /**
+     * 认领活动（CAS）：只有未结束且租约为空或已过期时成功，同时标记为 RUNNING
+     *
+     * @return 1 表示本节点取得租约
+     */
+    @Modifying
+    @Query("UPDATE PromotionCampaign c SET c.status = :running, c.ownerNode = :node, c.leaseUntil = :leaseUntil, " +
+           "c.startedAt = COALESCE(c.startedAt, :now) " +
+           "WHERE c.id = :id AND c.status IN :statuses AND (c.leaseUntil IS NULL OR c.leaseUntil < :now)")
+    int claim(@Param("id") Long id,
+              @Param("node") String node,
+              @Param("now") LocalDateTime now,
+              @Param("leaseUntil") LocalDateTime leaseUntil,
+              @Param("running") CampaignStatus running,
+              @Param("statuses") Collection<CampaignStatus> statuses);
+
+    /**
+     * 续约（只在仍为 RUNNING 且由本节点持有时成功）
+     *
+     * @return 0 表示活动已被取消或租约已被其他节点接管
+     */
+    @Modifying
+    @Query("UPDATE PromotionCampaign c SET c.leaseUntil = :leaseUntil " +
+           "WHERE c.id = :id AND c.status = :running AND c.ownerNode = :node")
+    int renewLease(@Param("id") Long id,
+                   @Param("node") String node,
+                   @Param("leaseUntil") LocalDateTime leaseUntil,
+                   @Param("running") CampaignStatus running);
+
+    /**
+     * 记录一块的发送进度并续约（与该块的通知写入在同一事务中）
+     *
+     * @return 0 表示活动已被取消或租约已被其他节点接管，调用方回滚该块
+     */
+    @Modifying
+    @Query("UPDATE PromotionCampaign c SET c.lastUserId = :lastUserId, " +
+           "c.recipientCount = c.recipientCount + :recipients, c.leaseUntil = :leaseUntil " +
+           "WHERE c.id = :id AND c.status = :running AND c.ownerNode = :node")
+    int recordProgress(@Param("id") Long id,
+                       @Param("lastUserId") Long lastUserId,
+                       @Param("recipients") long recipients,
+                       @Param("node") String node,
+                       @Param("leaseUntil") LocalDateTime leaseUntil,
+                       @Param("running") CampaignStatus running);
+
+    /**
+     * 累加实时推送数
+     */
+    @Modifying
+    @Query("UPDATE PromotionCampaign c SET c.liveSent = c.liveSent + :count WHERE c.id = :id")
+    int addLiveSent(@Param("id") Long id, @Param("count") long count);
+
+    /**
+     * 发送结束（完成或失败），释放租约；已被取消或被其他节点接管时不修改
+     */
+    @Modifying
+    @Query("UPDATE PromotionCampaign c SET c.status = :status, c.finishedAt = :finishedAt, c.errorMessage = :error, " +
+           "c.leaseUntil = NULL WHERE c.id = :id AND c.status = :running AND c.ownerNode = :node")
+    int finish(@Param("id") Long id,
+               @Param("node") String node,
+               @Param("status") CampaignStatus status,
+               @Param("finishedAt") LocalDateTime finishedAt,
+               @Param("error") String error,
+               @Param("running") CampaignStatus running);
+
+    /**
+     * 取消未结束的活动（执行节点在下一块写入时检测到并停止）
+     *
+     * @return 0 表示活动已结束
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE PromotionCampaign c SET c.status = :cancelled, c.finishedAt = :now, c.leaseUntil = NULL " +
+           "WHERE c.id = :id AND c.status IN :statuses")
+    int cancel(@Param("id") Long id,
+               @Param("now") LocalDateTime now,
+               @Param("cancelled") CampaignStatus cancelled,
+               @Param("statuses") Collection<CampaignStatus> statuses);
+}
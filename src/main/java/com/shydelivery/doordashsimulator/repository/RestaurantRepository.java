@@ -5,12 +5,16 @@ import com.shydelivery.doordashsimulator.entity.User;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
+import java.time.LocalTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Restaurant Repository - 餐厅数据访问接口
@@ -28,6 +32,11 @@ public interface RestaurantRepository extends JpaRepository<Restaurant, Long> {
      */
     List<Restaurant> findByOwnerId(Long ownerId);
     
+    /**
+     * 判断餐厅是否属于指定所有者（所有权校验，单次查询）
+     */
+    boolean existsByIdAndOwnerId(Long id, Long ownerId);
+    
     /**
      * 根据菜系类型查找餐厅
      */
@@ -43,9 +52,51 @@ public interface RestaurantRepository extends JpaRepository<Restaurant, Long> {
      */
     List<Restaurant> findByRatingGreaterThanEqual(Double rating);
     
+    /**
+     * 搜索联想索引数据（仅加载必要字段，避免实体加载）
+     * 返回：[id, name, cuisineType, rating]
+     */
+    @Query("SELECT r.id, r.name, r.cuisineType, r.rating FROM Restaurant r WHERE r.isActive = true")
+    List<Object[]> findSuggestionRows();
+    
+    /**
+     * 分面索引数据（按 ID 升序）
+     * 返回：[id, cuisineType, rating]
+     */
+    @Query("SELECT r.id, r.cuisineType, r.rating FROM Restaurant r ORDER BY r.id")
+    List<Object[]> findFacetRows();
+    
+    /**
+     * 餐厅当前评分（评价变化后刷新分面索引的评分区间）
+     */
+    @Query("SELECT r.rating FROM Restaurant r WHERE r.id = :restaurantId")
+    Optional<BigDecimal> findRatingById(@Param("restaurantId") Long restaurantId);
+    
+    /**
+     * 购物车展示所需的餐厅字段（一次查询多个餐厅）
+     * 返回：[id, name, deliveryFee]
+     */
+    @Query("SELECT r.id, r.name, r.deliveryFee FROM Restaurant r WHERE r.id IN :ids")
+    List<Object[]> findCartHeaderRows(@Param("ids") Collection<Long> ids);
+    
+    /**
+     * 营业时间索引数据（按 ID 升序）
+     * 返回：[id, openingTime, closingTime, isActive]
+     */
+    @Query("SELECT r.id, r.openingTime, r.closingTime, r.isActive FROM Restaurant r ORDER BY r.id")
+    List<Object[]> findOpeningHoursRows();
+    
+    /**
+     * 按关键词查询餐厅ID（分面统计候选集，条件与 searchRestaurants 的关键词条件一致）
+     */
+    @Query("SELECT r.id FROM Restaurant r WHERE " +
+            "(:keyword IS NULL OR LOWER(r.name) LIKE CONCAT('%', :keyword, '%') OR LOWER(r.description) LIKE CONCAT('%', :keyword, '%'))")
+    List<Long> searchRestaurantIds(@Param("keyword") String keyword);
+    
     /**
      * 综合搜索餐厅
      * 支持多条件过滤和排序
+     * openOnly = true 时按营业时间过滤（支持跨午夜营业，开门时间等于关门时间视为 24 小时营业）
      */
     @Query("SELECT r FROM Restaurant r WHERE " +
             "(:keyword IS NULL OR LOWER(r.name) LIKE CONCAT('%', :keyword, '%') OR LOWER(r.description) LIKE CONCAT('%', :keyword, '%')) AND " +
@@ -56,7 +107,10 @@ public interface RestaurantRepository extends JpaRepository<Restaurant, Long> {
             "(:maxDeliveryFee IS NULL OR r.deliveryFee <= :maxDeliveryFee) AND " +
             "(:minOrderAmount IS NULL OR r.minimumOrder >= :minOrderAmount) AND " +
             "(:maxOrderAmount IS NULL OR r.minimumOrder <= :maxOrderAmount) AND " +
-            "(:openOnly IS NULL OR :openOnly = false OR r.isActive = true)")
+            "(:openOnly IS NULL OR :openOnly = false OR (r.isActive = true AND (" +
+            "r.openingTime = r.closingTime OR " +
+            "(r.openingTime < r.closingTime AND r.openingTime <= :now AND r.closingTime > :now) OR " +
+            "(r.openingTime > r.closingTime AND (r.openingTime <= :now OR r.closingTime > :now)))))")
     Page<Restaurant> searchRestaurants(
             @Param("keyword") String keyword,
             @Param("cuisineType") String cuisineType,
@@ -67,6 +121,76 @@ public interface RestaurantRepository extends JpaRepository<Restaurant, Long> {
             @Param("minOrderAmount") BigDecimal minOrderAmount,
             @Param("maxOrderAmount") BigDecimal maxOrderAmount,
             @Param("openOnly") Boolean openOnly,
+            @Param("now") LocalTime now,
             Pageable pageable
     );
+    
+    /**
+     * 原子更新餐厅评价统计（增量）
+     * 在同一条 UPDATE 中累加各计数/总和并重算平均分，并发写入不会互相覆盖
+     * （PostgreSQL 中 SET 右侧引用的是更新前的行值）
+     */
+    @Modifying
+    @Query(value = "UPDATE restaurants SET " +
+            "review_count = review_count + :countDelta, " +
+            "rating_sum = rating_sum + :ratingDelta, " +
+            "food_rating_sum = food_rating_sum + :foodDelta, " +
+            "delivery_rating_sum = delivery_rating_sum + :deliveryDelta, " +
+            "positive_review_count = positive_review_count + :positiveDelta, " +
+            "negative_review_count = negative_review_count + :negativeDelta, " +
+            "rating = CASE WHEN review_count + :countDelta > 0 " +
+            "THEN ROUND((rating_sum + :ratingDelta) / (review_count + :countDelta), 2) ELSE 0 END " +
+            "WHERE id = :restaurantId",
+            nativeQuery = true)
+    int applyReviewDelta(
+            @Param("restaurantId") Long restaurantId,
+            @Param("countDelta") int countDelta,
+            @Param("ratingDelta") BigDecimal ratingDelta,
+            @Param("foodDelta") long foodDelta,
+            @Param("deliveryDelta") long deliveryDelta,
+            @Param("positiveDelta") int positiveDelta,
+            @Param("negativeDelta") int negativeDelta
+    );
+    
+    /**
+     * 当前存储的评价统计（用于对账）
+     * 返回：[id, reviewCount, ratingSum, foodRatingSum, deliveryRatingSum, positiveReviewCount, negativeReviewCount]
+     */
+    @Query("SELECT r.id, r.reviewCount, r.ratingSum, r.foodRatingSum, r.deliveryRatingSum, " +
+            "r.positiveReviewCount, r.negativeReviewCount FROM Restaurant r")
+    List<Object[]> findReviewStatsRows();
+    
+    /**
+     * 对账时覆盖评价统计
+     * 仅当存储值仍等于读取时的值才更新（比较并交换），避免覆盖对账期间的增量写入
+     */
+    @Modifying
+    @Query(value = "UPDATE restaurants SET " +
+            "review_count = :reviewCount, " +
+            "rating_sum = :ratingSum, " +
+            "food_rating_sum = :foodSum, " +
+            "delivery_rating_sum = :deliverySum, " +
+            "positive_review_count = :positiveCount, " +
+            "negative_review_count = :negativeCount, " +
+            "rating = CASE WHEN :reviewCount > 0 THEN ROUND(CAST(:ratingSum AS numeric) / :reviewCount, 2) ELSE 0 END " +
+            "WHERE id = :restaurantId AND review_count = :expectedCount AND rating_sum = :expectedRatingSum",
+            nativeQuery = true)
+    int overwriteReviewStats(
+            @Param("restaurantId") Long restaurantId,
+            @Param("expectedCount") int expectedCount,
+            @Param("expectedRatingSum") BigDecimal expectedRatingSum,
+            @Param("reviewCount") int reviewCount,
+            @Param("ratingSum") BigDecimal ratingSum,
+            @Param("foodSum") long foodSum,
+            @Param("deliverySum") long deliverySum,
+            @Param("positiveCount") int positiveCount,
+            @Param("negativeCount") int negativeCount
+    );
+    
+    /**
+     * 全站评价总分与总数（排名分先验均分）
+     * 返回：[[SUM(ratingSum), SUM(reviewCount)]]
+     */
+    @Query("SELECT SUM(r.ratingSum), SUM(r.reviewCount) FROM Restaurant r")
+    List<Object[]> sumReviewStats();
 }
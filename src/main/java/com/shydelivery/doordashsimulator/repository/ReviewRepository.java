@@ -3,12 +3,14 @@ package com.shydelivery.doordashsimulator.repository;
 import com.shydelivery.doordashsimulator.entity.Restaurant;
 import com.shydelivery.doordashsimulator.entity.Review;
 import com.shydelivery.doordashsimulator.entity.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -54,6 +56,94 @@ public interface ReviewRepository extends JpaRepository<Review, Long> {
      */
     List<Review> findByRestaurantIdOrderByCreatedAtDesc(Long restaurantId);
     
+    /**
+     * 餐厅评价流 - 第一页
+     * 
+     * 按 (createdAt DESC, id DESC) 顺序沿 idx_review_restaurant_created 索引扫描，
+     * 只取一页所需的列并在同一条 SQL 中连接订单和客户，避免逐条懒加载。
+     * 评分区间为 [minRating, ratingBelow)，调用方负责换算正面/负面/闭区间。
+     * 
+     * @return [id, orderId, orderNumber, customerId, firstName, lastName,
+     *          foodRating, deliveryRating, overallRating, comment, createdAt]
+     */
+    @Query("SELECT r.id, o.id, o.orderNumber, c.id, c.firstName, c.lastName, " +
+           "r.foodRating, r.deliveryRating, r.overallRating, r.comment, r.createdAt " +
+           "FROM Review r JOIN r.order o JOIN r.customer c " +
+           "WHERE r.restaurant.id = :restaurantId " +
+           "AND r.overallRating >= :minRating AND r.overallRating < :ratingBelow " +
+           "ORDER BY r.createdAt DESC, r.id DESC")
+    List<Object[]> findFeedRows(
+            @Param("restaurantId") Long restaurantId,
+            @Param("minRating") BigDecimal minRating,
+            @Param("ratingBelow") BigDecimal ratingBelow,
+            Pageable pageable
+    );
+    
+    /**
+     * 餐厅评价流 - 游标之后的一页（键集分页）
+     * 
+     * 以上一页最后一条的 (createdAt, id) 作为起点，翻页代价与页码无关。
+     * 冗余的 createdAt <= :cursorCreatedAt 条件让数据库把游标作为索引扫描的起点，
+     * 而不是从最新一条开始逐行过滤。返回列同 findFeedRows。
+     */
+    @Query("SELECT r.id, o.id, o.orderNumber, c.id, c.firstName, c.lastName, " +
+           "r.foodRating, r.deliveryRating, r.overallRating, r.comment, r.createdAt " +
+           "FROM Review r JOIN r.order o JOIN r.customer c " +
+           "WHERE r.restaurant.id = :restaurantId " +
+           "AND r.createdAt <= :cursorCreatedAt " +
+           "AND (r.createdAt < :cursorCreatedAt OR (r.createdAt = :cursorCreatedAt AND r.id < :cursorId)) " +
+           "AND r.overallRating >= :minRating AND r.overallRating < :ratingBelow " +
+           "ORDER BY r.createdAt DESC, r.id DESC")
+    List<Object[]> findFeedRowsAfter(
+            @Param("restaurantId") Long restaurantId,
+            @Param("cursorCreatedAt") LocalDateTime cursorCreatedAt,
+            @Param("cursorId") Long cursorId,
+            @Param("minRating") BigDecimal minRating,
+            @Param("ratingBelow") BigDecimal ratingBelow,
+            Pageable pageable
+    );
+    
+    /**
+     * 餐厅评价流 - 按评价倾向（sentiment）过滤的第一页
+     * 
+     * sentiment 为 overall_rating 派生的生成列（1 正面 / -1 负面），
+     * 走 idx_review_restaurant_sentiment_created 的范围扫描。返回列同 findFeedRows。
+     */
+    @Query("SELECT r.id, o.id, o.orderNumber, c.id, c.firstName, c.lastName, " +
+           "r.foodRating, r.deliveryRating, r.overallRating, r.comment, r.createdAt " +
+           "FROM Review r JOIN r.order o JOIN r.customer c " +
+           "WHERE r.restaurant.id = :restaurantId AND r.sentiment = :sentiment " +
+           "AND r.overallRating >= :minRating AND r.overallRating < :ratingBelow " +
+           "ORDER BY r.createdAt DESC, r.id DESC")
+    List<Object[]> findFeedRowsBySentiment(
+            @Param("restaurantId") Long restaurantId,
+            @Param("sentiment") Short sentiment,
+            @Param("minRating") BigDecimal minRating,
+            @Param("ratingBelow") BigDecimal ratingBelow,
+            Pageable pageable
+    );
+    
+    /**
+     * 餐厅评价流 - 按评价倾向过滤、游标之后的一页。返回列同 findFeedRows
+     */
+    @Query("SELECT r.id, o.id, o.orderNumber, c.id, c.firstName, c.lastName, " +
+           "r.foodRating, r.deliveryRating, r.overallRating, r.comment, r.createdAt " +
+           "FROM Review r JOIN r.order o JOIN r.customer c " +
+           "WHERE r.restaurant.id = :restaurantId AND r.sentiment = :sentiment " +
+           "AND r.createdAt <= :cursorCreatedAt " +
+           "AND (r.createdAt < :cursorCreatedAt OR (r.createdAt = :cursorCreatedAt AND r.id < :cursorId)) " +
+           "AND r.overallRating >= :minRating AND r.overallRating < :ratingBelow " +
+           "ORDER BY r.createdAt DESC, r.id DESC")
+    List<Object[]> findFeedRowsBySentimentAfter(
+            @Param("restaurantId") Long restaurantId,
+            @Param("sentiment") Short sentiment,
+            @Param("cursorCreatedAt") LocalDateTime cursorCreatedAt,
+            @Param("cursorId") Long cursorId,
+            @Param("minRating") BigDecimal minRating,
+            @Param("ratingBelow") BigDecimal ratingBelow,
+            Pageable pageable
+    );
+    
     /**
      * 查找餐厅的正面评价（评分 >= 4.0）
      * 
@@ -99,6 +189,17 @@ public interface ReviewRepository extends JpaRepository<Review, Long> {
     @Query("SELECT COUNT(r) FROM Review r WHERE r.restaurant.id = :restaurantId")
     Long countReviewsByRestaurant(@Param("restaurantId") Long restaurantId);
     
+    /**
+     * 按餐厅汇总评价统计（对账任务使用，一次 GROUP BY 代替逐个餐厅查询）
+     * 
+     * @return [restaurantId, count, overallSum, foodSum, deliverySum, positiveCount, negativeCount]
+     */
+    @Query("SELECT r.restaurant.id, COUNT(r), SUM(r.overallRating), SUM(r.foodRating), SUM(r.deliveryRating), " +
+           "SUM(CASE WHEN r.overallRating >= 4.0 THEN 1 ELSE 0 END), " +
+           "SUM(CASE WHEN r.overallRating < 3.0 THEN 1 ELSE 0 END) " +
+           "FROM Review r GROUP BY r.restaurant.id")
+    List<Object[]> aggregateStatsByRestaurant();
+    
     /**
      * 检查订单是否已有评价
      * 
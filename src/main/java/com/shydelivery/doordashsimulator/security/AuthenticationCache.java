@@ -0,0 +1,211 @@
+package com.shydelivery.doordashsimulator.security;
+
+import com.shydelivery.doordashsimulator.entity.User;
+import com.shydelivery.doordashsimulator.repository.UserRepository;
+import io.jsonwebtoken.Claims;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 认证缓存（JwtAuthenticationFilter 的快速路径）
+ *
+ * - 已验证 Token：以 Token 的 SHA-256 摘要为键（内存中不保存原始 Token），
+ *   保存主体邮箱和过期时间，直到 Token 过期；同一 Token 的后续请求不再解析和验签
+ * - 用户主体：邮箱 → 用户 ID、角色和激活状态。UserService 停用/启用、删除用户时在事务提交后失效；
+ *   principal-ttl 兜底其他节点或直接改库的变更
+ *
+ * 两者都有容量上限，满时不再缓存新条目（仍走完整验证/查询）；过期条目每分钟清理。
+ * 无效 Token 和不存在的用户不缓存。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class AuthenticationCache {
+
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final JwtTokenProvider tokenProvider;
+    private final UserRepository userRepository;
+
+    @Value("${auth.cache.max-tokens:100000}")
+    private int maxTokens;
+
+    @Value("${auth.cache.max-principals:50000}")
+    private int maxPrincipals;
+
+    @Value("${auth.cache.principal-ttl-seconds:300}")
+    private long principalTtlSeconds;
+
+    private final Map<TokenKey, VerifiedToken> tokens = new ConcurrentHashMap<>();
+    private final Map<String, CachedPrincipal> principals = new ConcurrentHashMap<>();
+
+    /** 失效计数：加载期间发生失效时，丢弃这次加载的结果 */
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final LongAdder tokenHits = new LongAdder();
+    private final LongAdder tokenMisses = new LongAdder();
+    private final LongAdder invalidTokens = new LongAdder();
+    private final LongAdder principalHits = new LongAdder();
+    private final LongAdder principalLoads = new LongAdder();
+
+    private record TokenKey(long a, long b, long c, long d) {
+    }
+
+    private record VerifiedToken(String email, long expiresAtMillis) {
+    }
+
+    /**
+     * 缓存的用户主体
+     */
+    public record CachedPrincipal(Long userId, User.UserRole role, boolean active,
+                                  List<GrantedAuthority> authorities, long loadedAtNanos) {
+    }
+
+    /**
+     * 验证 Token，返回主体邮箱；无效或已过期返回 null
+     */
+    public String verify(String token) {
+        TokenKey key = keyOf(token);
+        VerifiedToken cached = tokens.get(key);
+        if (cached != null) {
+            if (cached.expiresAtMillis() > System.currentTimeMillis()) {
+                tokenHits.increment();
+                return cached.email();
+            }
+            tokens.remove(key, cached);
+        }
+
+        tokenMisses.increment();
+        Claims claims = tokenProvider.parseToken(token);
+        if (claims == null || claims.getSubject() == null) {
+            invalidTokens.increment();
+            return null;
+        }
+        Date expiration = claims.getExpiration();
+        if (tokens.size() < maxTokens) {
+            tokens.put(key, new VerifiedToken(claims.getSubject(),
+                    expiration != null ? expiration.getTime() : Long.MAX_VALUE));
+        }
+        return claims.getSubject();
+    }
+
+    /**
+     * 获取用户主体，用户不存在返回 null
+     */
+    public CachedPrincipal principal(String email) {
+        CachedPrincipal cached = principals.get(email);
+        if (cached != null) {
+            if (System.nanoTime() - cached.loadedAtNanos() < TimeUnit.SECONDS.toNanos(principalTtlSeconds)) {
+                principalHits.increment();
+                return cached;
+            }
+            principals.remove(email, cached);
+        }
+
+        long generation = invalidations.get();
+        User user = userRepository.findByEmail(email).orElse(null);
+        principalLoads.increment();
+        if (user == null || user.getRole() == null) {
+            return null;
+        }
+        CachedPrincipal loaded = new CachedPrincipal(user.getId(), user.getRole(),
+                !Boolean.FALSE.equals(user.getIsActive()),
+                Collections.singletonList(new SimpleGrantedAuthority("ROLE_" + user.getRole().name())),
+                System.nanoTime());
+        if (principals.size() < maxPrincipals) {
+            principals.put(email, loaded);
+            if (invalidations.get() != generation) {
+                principals.remove(email, loaded);
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * 用户角色/状态变更或删除后调用：事务提交后失效（无事务时立即失效）
+     */
+    public void invalidate(String email) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evictPrincipal(email);
+                }
+            });
+        } else {
+            evictPrincipal(email);
+        }
+    }
+
+    /**
+     * 定期清理过期的 Token 和主体
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        long ttlNanos = TimeUnit.SECONDS.toNanos(principalTtlSeconds);
+        long nowNanos = System.nanoTime();
+        int before = tokens.size() + principals.size();
+        tokens.values().removeIf(token -> token.expiresAtMillis() <= now);
+        principals.values().removeIf(principal -> nowNanos - principal.loadedAtNanos() >= ttlNanos);
+        int evicted = before - tokens.size() - principals.size();
+        if (evicted > 0) {
+            log.debug("认证缓存清理过期条目: evicted={}, tokens={}, principals={}",
+                    evicted, tokens.size(), principals.size());
+        }
+    }
+
+    /**
+     * 认证缓存统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("tokens", tokens.size());
+        stats.put("tokenHits", tokenHits.sum());
+        stats.put("tokenMisses", tokenMisses.sum());
+        stats.put("invalidTokens", invalidTokens.sum());
+        stats.put("principals", principals.size());
+        stats.put("principalHits", principalHits.sum());
+        stats.put("principalLoads", principalLoads.sum());
+        stats.put("invalidations", invalidations.get());
+        return stats;
+    }
+
+    private void evictPrincipal(String email) {
+        invalidations.incrementAndGet();
+        principals.remove(email);
+    }
+
+    private static TokenKey keyOf(String token) {
+        MessageDigest digest = SHA256.get();
+        ByteBuffer hash = ByteBuffer.wrap(digest.digest(token.getBytes(StandardCharsets.US_ASCII)));
+        return new TokenKey(hash.getLong(), hash.getLong(), hash.getLong(), hash.getLong());
+    }
+}
@@ -2,27 +2,21 @@ package com.shydelivery.doordashsimulator.security;
 
 import com.nimbusds.jose.JOSEException;
 import com.nimbusds.jose.JWSVerifier;
-import com.nimbusds.jose.crypto.RSASSAVerifier;
-import com.nimbusds.jose.jwk.JWK;
-import com.nimbusds.jose.jwk.JWKSet;
-import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jwt.JWTClaimsSet;
 import com.nimbusds.jwt.SignedJWT;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import jakarta.annotation.PostConstruct;
-import java.net.URL;
 import java.text.ParseException;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Map;
 
 /**
  * AWS Cognito JWT Token 验证器
  * 
  * 职责：
- * 1. 从 AWS Cognito 下载公钥 (JWKS)
+ * 1. 从 JwksKeyStore 获取公钥验证器（后台刷新，见 JwksKeyStore）
  * 2. 验证 JWT 签名
  * 3. 验证 Token 是否过期
  * 4. 验证 Issuer (颁发者)
@@ -32,9 +26,6 @@ import java.util.Map;
 @Slf4j
 public class CognitoJwtValidator {
     
-    @Value("${aws.cognito.jwksUrl}")
-    private String jwksUrl;
-    
     @Value("${aws.cognito.issuer}")
     private String expectedIssuer;
     
@@ -44,36 +35,10 @@ public class CognitoJwtValidator {
     @Value("${aws.cognito.userPoolId}")
     private String userPoolId;
     
-    private Map<String, RSAKey> keyMap = new HashMap<>();
+    private final JwksKeyStore keyStore;
     
-    /**
-     * 初始化：从 AWS Cognito 下载公钥
-     */
-    @PostConstruct
-    public void init() {
-        try {
-            log.info("Initializing Cognito JWT Validator...");
-            log.info("JWKS URL: {}", jwksUrl);
-            log.info("Expected Issuer: {}", expectedIssuer);
-            
-            // 从 AWS Cognito 下载 JWKS (JSON Web Key Set)
-            JWKSet jwkSet = JWKSet.load(new URL(jwksUrl));
-            
-            // 将所有公钥存储到 Map 中（key = kid）
-            jwkSet.getKeys().forEach(jwk -> {
-                if (jwk instanceof RSAKey) {
-                    RSAKey rsaKey = (RSAKey) jwk;
-                    keyMap.put(rsaKey.getKeyID(), rsaKey);
-                    log.info("Loaded RSA key with kid: {}", rsaKey.getKeyID());
-                }
-            });
-            
-            log.info("Successfully loaded {} keys from Cognito JWKS", keyMap.size());
-            
-        } catch (Exception e) {
-            log.error("Failed to initialize Cognito JWT Validator: {}", e.getMessage(), e);
-            throw new RuntimeException("Failed to load Cognito public keys", e);
-        }
+    public CognitoJwtValidator(JwksKeyStore keyStore) {
+        this.keyStore = keyStore;
     }
     
     /**
@@ -94,39 +59,39 @@ public class CognitoJwtValidator {
                 throw new SecurityException("Token header missing 'kid' field");
             }
             
-            // 3. 根据 kid 获取对应的公钥
-            RSAKey rsaKey = keyMap.get(kid);
-            if (rsaKey == null) {
+            // 3. 根据 kid 获取预先构建的验证器（未知 kid 时按需刷新 JWKS）
+            JWSVerifier verifier = keyStore.verifier(kid);
+            if (verifier == null) {
                 log.error("No public key found for kid: {}", kid);
                 throw new SecurityException("Invalid token: no matching public key");
             }
             
             // 4. 验证签名
-            JWSVerifier verifier = new RSASSAVerifier(rsaKey);
             if (!signedJWT.verify(verifier)) {
                 throw new SecurityException("Invalid token signature");
             }
             
             // 5. 验证过期时间
-            Date expirationTime = signedJWT.getJWTClaimsSet().getExpirationTime();
+            JWTClaimsSet claims = signedJWT.getJWTClaimsSet();
+            Date expirationTime = claims.getExpirationTime();
             if (expirationTime == null || expirationTime.before(new Date())) {
                 throw new SecurityException("Token has expired");
             }
             
             // 6. 验证 Issuer (颁发者)
-            String issuer = signedJWT.getJWTClaimsSet().getIssuer();
+            String issuer = claims.getIssuer();
             if (!expectedIssuer.equals(issuer)) {
                 log.error("Invalid issuer. Expected: {}, Got: {}", expectedIssuer, issuer);
                 throw new SecurityException("Invalid token issuer");
             }
             
             // 7. 验证 Token Use (应该是 "id" 表示 ID Token)
-            String tokenUse = (String) signedJWT.getJWTClaimsSet().getClaim("token_use");
+            String tokenUse = (String) claims.getClaim("token_use");
             if (!"id".equals(tokenUse)) {
                 log.warn("Token use is not 'id': {}", tokenUse);
             }
             
-            log.debug("Token validation successful for subject: {}", signedJWT.getJWTClaimsSet().getSubject());
+            log.debug("Token validation successful for subject: {}", claims.getSubject());
             return signedJWT;
             
         } catch (ParseException e) {
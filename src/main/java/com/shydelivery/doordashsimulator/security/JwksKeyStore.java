@@ -0,0 +1,172 @@
+package com.shydelivery.doordashsimulator.security;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.crypto.RSASSAVerifier;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.RSAKey;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.text.ParseException;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cognito JWKS 公钥存储
+ *
+ * - 启动不访问网络：配置了 jwksFile 时先从本地文件加载（离线环境），
+ *   远程 JWKS 由后台定时任务加载和刷新（启动后立即执行一次）
+ * - 每次加载构建新的不可变 kid → 验证器映射后整体替换，验证时无锁读取；
+ *   每个 kid 预先构建一个 RSASSAVerifier（线程安全）复用，未变化的 kid 沿用原验证器
+ * - 遇到未知 kid（密钥轮换）时按需刷新，两次刷新至少间隔 jwksMinRefreshSeconds，
+ *   伪造 kid 的请求不会打爆 JWKS 端点
+ * - 刷新失败时保留上一次的密钥集
+ */
+@Slf4j
+@Component
+public class JwksKeyStore {
+
+    @Value("${aws.cognito.jwksUrl:}")
+    private String jwksUrl;
+
+    @Value("${aws.cognito.jwksFile:}")
+    private String jwksFile;
+
+    @Value("${aws.cognito.jwksMinRefreshSeconds:30}")
+    private long minRefreshSeconds;
+
+    @Value("${aws.cognito.jwksTimeoutMs:3000}")
+    private int timeoutMs;
+
+    private static final int SIZE_LIMIT_BYTES = 512 * 1024;
+
+    private record Entry(RSAKey key, JWSVerifier verifier) {
+    }
+
+    private volatile Map<String, Entry> keys = Map.of();
+
+    private final Object refreshLock = new Object();
+    private long lastAttemptNanos;
+    private volatile String source = "none";
+    private volatile LocalDateTime lastLoadedAt;
+
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder refreshFailures = new LongAdder();
+    private final LongAdder onDemandRefreshes = new LongAdder();
+    private final LongAdder unknownKid = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        log.info("JWKS key store: url={}, file={}", jwksUrl, StringUtils.hasText(jwksFile) ? jwksFile : "-");
+        if (StringUtils.hasText(jwksFile)) {
+            try {
+                swap(JWKSet.load(new File(jwksFile)), "file");
+            } catch (IOException | ParseException | JOSEException e) {
+                log.error("Failed to load JWKS from file {}: {}", jwksFile, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 后台定时刷新远程 JWKS
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${aws.cognito.jwksRefreshMinutes:60}", timeUnit = TimeUnit.MINUTES)
+    public void scheduledRefresh() {
+        synchronized (refreshLock) {
+            refreshRemote();
+        }
+    }
+
+    /**
+     * 获取 kid 对应的验证器；未知 kid 时按需刷新一次（受最小间隔限制），仍找不到返回 null
+     */
+    public JWSVerifier verifier(String kid) {
+        Entry entry = keys.get(kid);
+        if (entry != null) {
+            return entry.verifier();
+        }
+        unknownKid.increment();
+        synchronized (refreshLock) {
+            entry = keys.get(kid);
+            if (entry == null
+                    && System.nanoTime() - lastAttemptNanos >= TimeUnit.SECONDS.toNanos(minRefreshSeconds)) {
+                onDemandRefreshes.increment();
+                refreshRemote();
+                entry = keys.get(kid);
+            }
+        }
+        return entry != null ? entry.verifier() : null;
+    }
+
+    /**
+     * 密钥存储状态
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("kids", keys.keySet());
+        stats.put("source", source);
+        stats.put("lastLoadedAt", lastLoadedAt);
+        stats.put("refreshes", refreshes.sum());
+        stats.put("refreshFailures", refreshFailures.sum());
+        stats.put("onDemandRefreshes", onDemandRefreshes.sum());
+        stats.put("unknownKid", unknownKid.sum());
+        return stats;
+    }
+
+    /**
+     * 调用方持有 refreshLock
+     */
+    private void refreshRemote() {
+        if (!StringUtils.hasText(jwksUrl)) {
+            return;
+        }
+        lastAttemptNanos = System.nanoTime();
+        try {
+            swap(JWKSet.load(new URL(jwksUrl), timeoutMs, timeoutMs, SIZE_LIMIT_BYTES), "remote");
+            refreshes.increment();
+        } catch (IOException | ParseException | JOSEException e) {
+            refreshFailures.increment();
+            log.warn("Failed to refresh JWKS from {} (keeping {} cached keys): {}",
+                    jwksUrl, keys.size(), e.toString());
+        }
+    }
+
+    private void swap(JWKSet jwkSet, String from) throws JOSEException {
+        Map<String, Entry> current = keys;
+        Map<String, Entry> next = new HashMap<>();
+        for (JWK jwk : jwkSet.getKeys()) {
+            if (!(jwk instanceof RSAKey rsaKey) || rsaKey.getKeyID() == null
+                    || (rsaKey.getKeyUse() != null && rsaKey.getKeyUse() != KeyUse.SIGNATURE)) {
+                continue;
+            }
+            Entry existing = current.get(rsaKey.getKeyID());
+            next.put(rsaKey.getKeyID(), existing != null && existing.key().equals(rsaKey)
+                    ? existing
+                    : new Entry(rsaKey, new RSASSAVerifier(rsaKey)));
+        }
+        if (next.isEmpty()) {
+            log.warn("JWKS from {} contains no RSA signing keys, keeping {} cached keys", from, current.size());
+            return;
+        }
+        keys = Map.copyOf(next);
+        source = from;
+        lastLoadedAt = LocalDateTime.now();
+        if (!next.keySet().equals(current.keySet())) {
+            log.info("Loaded {} RSA keys from {} JWKS: {}", next.size(), from, next.keySet());
+        }
+    }
+}
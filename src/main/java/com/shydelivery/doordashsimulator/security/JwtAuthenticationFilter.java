@@ -1,7 +1,5 @@
 package com.shydelivery.doordashsimulator.security;
 
-import com.shydelivery.doordashsimulator.entity.User;
-import com.shydelivery.doordashsimulator.repository.UserRepository;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -23,16 +21,21 @@ import java.util.List;
 
 /**
  * JWT 认证过滤器（本地版本）
+ *
+ * Token 验证和用户角色都经过 AuthenticationCache：稳态下每个请求只是一次摘要计算和两次哈希表查找
  */
 @Component
 @Slf4j
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
     
+    private static final List<GrantedAuthority> DEFAULT_AUTHORITIES =
+            Collections.singletonList(new SimpleGrantedAuthority("ROLE_USER"));
+    
     @Autowired
-    private JwtTokenProvider tokenProvider;
+    private AuthenticationCache authenticationCache;
     
     @Autowired
-    private UserRepository userRepository;
+    private RequestIdentity requestIdentity;
     
     @Override
     protected void doFilterInternal(
@@ -48,46 +51,49 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             if (token != null && !token.isEmpty()) {
                 log.debug("Found JWT token in request");
                 
-                // 2. 验证 Token
-                if (tokenProvider.validateToken(token)) {
-                    // 3. 提取用户邮箱
-                    String email = tokenProvider.getEmailFromToken(token);
-                    
+                // 2. 验证 Token 并提取用户邮箱（同一 Token 只解析验签一次）
+                String email = authenticationCache.verify(token);
+                if (email != null) {
                     log.debug("Token validated for user: {}", email);
                     
-                    // 4. 从数据库获取用户信息
-                    User user = userRepository.findByEmail(email).orElse(null);
+                    // 3. 获取用户角色（缓存，用户状态变更时失效）
+                    AuthenticationCache.CachedPrincipal principal = authenticationCache.principal(email);
                     
                     List<GrantedAuthority> authorities;
-                    if (user != null && user.getRole() != null) {
-                        // 使用数据库中的角色
-                        authorities = Collections.singletonList(
-                                new SimpleGrantedAuthority("ROLE_" + user.getRole().name())
-                        );
-                        log.debug("User {} has role: {} from database", email, user.getRole());
-                    } else {
+                    if (principal == null) {
                         // 默认权限
-                        authorities = Collections.singletonList(
-                                new SimpleGrantedAuthority("ROLE_USER")
-                        );
+                        authorities = DEFAULT_AUTHORITIES;
                         log.warn("User not found for email: {}, using default ROLE_USER", email);
+                    } else if (principal.active()) {
+                        // 使用数据库中的角色
+                        authorities = principal.authorities();
+                        log.debug("User {} has role: {}", email, principal.role());
+                    } else {
+                        // 已停用的账号不能登录或刷新 Token，已签发的 Token 同样不再认证
+                        authorities = null;
+                        log.debug("User {} is disabled, skipping authentication", email);
                     }
                     
-                    // 5. 创建 Authentication 对象
-                    UsernamePasswordAuthenticationToken authentication =
-                            new UsernamePasswordAuthenticationToken(
-                                    email,      // Principal (用户标识)
-                                    null,       // Credentials (凭证，不需要)
-                                    authorities // Authorities (权限列表)
-                            );
-                    
-                    // 6. 设置请求详情
-                    authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
-                    
-                    // 7. 设置到 SecurityContext
-                    SecurityContextHolder.getContext().setAuthentication(authentication);
-                    
-                    log.debug("SecurityContext updated for user: {}", email);
+                    if (authorities != null) {
+                        // 4. 创建 Authentication 对象
+                        UsernamePasswordAuthenticationToken authentication =
+                                new UsernamePasswordAuthenticationToken(
+                                        email,      // Principal (用户标识)
+                                        null,       // Credentials (凭证，不需要)
+                                        authorities // Authorities (权限列表)
+                                );
+                        
+                        // 5. 设置请求详情
+                        authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+                        
+                        // 6. 设置到 SecurityContext
+                        SecurityContextHolder.getContext().setAuthentication(authentication);
+                        
+                        // 7. 绑定请求级身份，后续所有权校验不再按邮箱查询用户
+                        requestIdentity.bind(email, principal);
+                        
+                        log.debug("SecurityContext updated for user: {}", email);
+                    }
                 }
             }
         } catch (Exception e) {
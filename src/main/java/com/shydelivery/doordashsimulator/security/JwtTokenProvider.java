@@ -2,6 +2,7 @@ package com.shydelivery.doordashsimulator.security;
 
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
@@ -12,6 +13,8 @@ import java.util.Date;
 /**
  * JWT Token Provider (本地版本)
  * 用于生成和验证 JWT tokens
+ *
+ * 签名密钥和解析器只在启动时构建一次（JwtParser 不可变、线程安全）
  */
 @Component
 @Slf4j
@@ -25,6 +28,18 @@ public class JwtTokenProvider {
     
     @Value("${jwt.refresh-expiration:604800000}") // 默认 7 天
     private Long refreshExpiration;
+
+    private SecretKey key;
+
+    private JwtParser parser;
+
+    @PostConstruct
+    public void init() {
+        key = Keys.hmacShaKeyFor(jwtSecret.getBytes());
+        parser = Jwts.parserBuilder()
+                .setSigningKey(key)
+                .build();
+    }
     
     /**
      * 生成访问 Token
@@ -33,8 +48,6 @@ public class JwtTokenProvider {
         Date now = new Date();
         Date expiryDate = new Date(now.getTime() + jwtExpiration);
         
-        SecretKey key = Keys.hmacShaKeyFor(jwtSecret.getBytes());
-        
         return Jwts.builder()
                 .setSubject(email)
                 .setIssuedAt(now)
@@ -50,8 +63,6 @@ public class JwtTokenProvider {
         Date now = new Date();
         Date expiryDate = new Date(now.getTime() + refreshExpiration);
         
-        SecretKey key = Keys.hmacShaKeyFor(jwtSecret.getBytes());
-        
         return Jwts.builder()
                 .setSubject(email)
                 .setIssuedAt(now)
@@ -65,15 +76,19 @@ public class JwtTokenProvider {
      * 从 Token 中提取用户邮箱
      */
     public String getEmailFromToken(String token) {
-        SecretKey key = Keys.hmacShaKeyFor(jwtSecret.getBytes());
-        
-        Claims claims = Jwts.parserBuilder()
-                .setSigningKey(key)
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
-        
-        return claims.getSubject();
+        return parser.parseClaimsJws(token).getBody().getSubject();
+    }
+
+    /**
+     * 解析并验证 Token（一次完成），无效时返回 null
+     */
+    public Claims parseToken(String token) {
+        try {
+            return parser.parseClaimsJws(token).getBody();
+        } catch (JwtException | IllegalArgumentException e) {
+            log.error("Invalid JWT token: {}", e.getMessage());
+            return null;
+        }
     }
     
     /**
@@ -81,13 +96,7 @@ public class JwtTokenProvider {
      */
     public boolean validateToken(String token) {
         try {
-            SecretKey key = Keys.hmacShaKeyFor(jwtSecret.getBytes());
-            
-            Jwts.parserBuilder()
-                    .setSigningKey(key)
-                    .build()
-                    .parseClaimsJws(token);
-            
+            parser.parseClaimsJws(token);
             return true;
         } catch (JwtException | IllegalArgumentException e) {
             log.error("Invalid JWT token: {}", e.getMessage());
@@ -0,0 +1,106 @@
+package com.shydelivery.doordashsimulator.security;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shydelivery.doordashsimulator.dto.response.ErrorResponse;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 限流过滤器（位于 JwtAuthenticationFilter 之后，按已认证主体和角色限流）
+ *
+ * 超出限额返回 429 和 Retry-After（秒），不进入业务处理、不占用数据库连接
+ */
+@Component
+@Slf4j
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    @Autowired
+    private RateLimiter rateLimiter;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Override
+    protected void doFilterInternal(
+            HttpServletRequest request,
+            HttpServletResponse response,
+            FilterChain filterChain
+    ) throws ServletException, IOException {
+
+        String method = request.getMethod();
+        if ("OPTIONS".equals(method)) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        RateLimiter.Route route = routeOf(method, request.getRequestURI().substring(request.getContextPath().length()));
+
+        String principal;
+        String role = null;
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.isAuthenticated()
+                && !(authentication instanceof AnonymousAuthenticationToken)) {
+            principal = authentication.getName();
+            for (GrantedAuthority authority : authentication.getAuthorities()) {
+                if (authority.getAuthority().startsWith("ROLE_")) {
+                    role = authority.getAuthority().substring(5);
+                    break;
+                }
+            }
+        } else {
+            principal = "ip:" + request.getRemoteAddr();
+        }
+
+        long waitNanos = rateLimiter.tryAcquire(route, principal, role);
+        if (waitNanos > 0) {
+            long retryAfterSeconds = Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+            log.debug("请求被限流: route={}, principal={}, retryAfter={}s", route, principal, retryAfterSeconds);
+
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader("Retry-After", String.valueOf(retryAfterSeconds));
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.setCharacterEncoding("UTF-8");
+            objectMapper.writeValue(response.getWriter(), new ErrorResponse(
+                    HttpStatus.TOO_MANY_REQUESTS.value(),
+                    "Too Many Requests",
+                    "请求过于频繁，请 " + retryAfterSeconds + " 秒后重试",
+                    request.getRequestURI()
+            ));
+            return;
+        }
+
+        filterChain.doFilter(request, response);
+    }
+
+    /**
+     * 请求所属的路由分组（路径不含 context-path）
+     */
+    private static RateLimiter.Route routeOf(String method, String path) {
+        if ("PUT".equals(method) && "/drivers/location".equals(path)) {
+            return RateLimiter.Route.LOCATION;
+        }
+        if (path.equals("/search") || path.startsWith("/search/")) {
+            return RateLimiter.Route.SEARCH;
+        }
+        if ("POST".equals(method) && ("/orders".equals(path)
+                || (path.startsWith("/cart/") && path.endsWith("/checkout")))) {
+            return RateLimiter.Route.ORDER_CREATE;
+        }
+        return RateLimiter.Route.DEFAULT;
+    }
+}
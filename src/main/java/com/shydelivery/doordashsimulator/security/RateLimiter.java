@@ -0,0 +1,214 @@
+package com.shydelivery.doordashsimulator.security;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 令牌桶限流器（按主体 + 路由分组）
+ *
+ * - 每个（路由分组, 主体）一个桶，主体为登录用户邮箱，匿名请求为客户端 IP；
+ *   STOMP 位置上报按配送员所属用户的邮箱和角色计，与 HTTP 共用同一个桶
+ * - 限额按角色配置：{@code 角色=每秒令牌数/桶容量}，多个角色逗号分隔，* 匹配其他角色和匿名；
+ *   分组配置为空表示不限流
+ * - 桶只保存一个 AtomicLong（GCRA：下一个令牌的理论到达时间），补充令牌即比较时间，
+ *   一次 CAS 完成扣减，没有锁也没有后台补充线程
+ * - 桶数量有上限，满时新主体共用该角色的溢出桶（计入 overflowed），不会因此放开限流；已补满的桶每分钟清理
+ */
+@Slf4j
+@Component
+public class RateLimiter {
+
+    /**
+     * 路由分组
+     */
+    public enum Route {
+        /** PUT /drivers/location、STOMP /app/location/update */
+        LOCATION,
+        /** /search/** */
+        SEARCH,
+        /** POST /orders */
+        ORDER_CREATE,
+        /** 其他所有请求 */
+        DEFAULT
+    }
+
+    private static final String ANY_ROLE = "*";
+    private static final String OVERFLOW_PREFIX = "overflow:";
+
+    @Value("${rate-limit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${rate-limit.location:DRIVER=5/10,*=2/10}")
+    private String locationRule;
+
+    @Value("${rate-limit.search:*=10/20}")
+    private String searchRule;
+
+    @Value("${rate-limit.order-create:*=0.2/5}")
+    private String orderCreateRule;
+
+    @Value("${rate-limit.default:*=100/200}")
+    private String defaultRule;
+
+    @Value("${rate-limit.max-buckets:200000}")
+    private int maxBuckets;
+
+    /**
+     * intervalNanos：每个令牌的补充间隔；toleranceNanos：桶容量 × 间隔
+     */
+    private record Limit(double perSecond, int burst, long intervalNanos, long toleranceNanos) {
+    }
+
+    private final Map<Route, Map<String, Limit>> limits = new EnumMap<>(Route.class);
+    private final Map<Route, ConcurrentHashMap<String, AtomicLong>> buckets = new EnumMap<>(Route.class);
+    private final LongAdder[] allowed = new LongAdder[Route.values().length];
+    private final LongAdder[] rejected = new LongAdder[Route.values().length];
+    private final LongAdder overflowed = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        limits.put(Route.LOCATION, parseRule(locationRule));
+        limits.put(Route.SEARCH, parseRule(searchRule));
+        limits.put(Route.ORDER_CREATE, parseRule(orderCreateRule));
+        limits.put(Route.DEFAULT, parseRule(defaultRule));
+        for (Route route : Route.values()) {
+            buckets.put(route, new ConcurrentHashMap<>());
+            allowed[route.ordinal()] = new LongAdder();
+            rejected[route.ordinal()] = new LongAdder();
+        }
+        log.info("Rate limiter: enabled={}, limits={}", enabled, limits);
+    }
+
+    /**
+     * 尝试获取一个令牌
+     *
+     * @param route 路由分组
+     * @param principal 主体标识
+     * @param role 主体角色（不带 ROLE_ 前缀），匿名为 null
+     * @return 0 表示放行；否则为需要等待的纳秒数
+     */
+    public long tryAcquire(Route route, String principal, String role) {
+        if (!enabled) {
+            return 0;
+        }
+        Map<String, Limit> routeLimits = limits.get(route);
+        Limit limit = role != null ? routeLimits.get(role) : null;
+        if (limit == null) {
+            limit = routeLimits.get(ANY_ROLE);
+            if (limit == null) {
+                return 0;
+            }
+        }
+
+        long now = System.nanoTime();
+        ConcurrentHashMap<String, AtomicLong> routeBuckets = buckets.get(route);
+        AtomicLong tat = routeBuckets.get(principal);
+        if (tat == null) {
+            String key = principal;
+            if (bucketCount() >= maxBuckets) {
+                overflowed.increment();
+                key = OVERFLOW_PREFIX + (role != null ? role : ANY_ROLE);
+            }
+            tat = routeBuckets.computeIfAbsent(key, k -> new AtomicLong(now));
+        }
+
+        while (true) {
+            long current = tat.get();
+            long next = Math.max(current, now) + limit.intervalNanos();
+            long wait = next - now - limit.toleranceNanos();
+            if (wait > 0) {
+                rejected[route.ordinal()].increment();
+                return wait;
+            }
+            if (tat.compareAndSet(current, next)) {
+                allowed[route.ordinal()].increment();
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * 清理已补满的桶（与新建桶等价）
+     *
+     * 与并发请求的竞争最多让该主体多得到一次完整突发，可以接受
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void evictIdle() {
+        long now = System.nanoTime();
+        int before = bucketCount();
+        for (ConcurrentHashMap<String, AtomicLong> routeBuckets : buckets.values()) {
+            routeBuckets.values().removeIf(tat -> tat.get() - now <= 0);
+        }
+        int evicted = before - bucketCount();
+        if (evicted > 0) {
+            log.debug("限流器清理空闲桶: evicted={}, buckets={}", evicted, bucketCount());
+        }
+    }
+
+    /**
+     * 限流统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        for (Route route : Route.values()) {
+            Map<String, String> routeLimits = new LinkedHashMap<>();
+            limits.get(route).forEach((role, limit) ->
+                    routeLimits.put(role, limit.perSecond() + "/s, burst " + limit.burst()));
+            Map<String, Object> routeStats = new LinkedHashMap<>();
+            routeStats.put("limits", routeLimits);
+            routeStats.put("buckets", buckets.get(route).size());
+            routeStats.put("allowed", allowed[route.ordinal()].sum());
+            routeStats.put("rejected", rejected[route.ordinal()].sum());
+            stats.put(route.name(), routeStats);
+        }
+        stats.put("overflowed", overflowed.sum());
+        return stats;
+    }
+
+    private int bucketCount() {
+        int count = 0;
+        for (ConcurrentHashMap<String, AtomicLong> routeBuckets : buckets.values()) {
+            count += routeBuckets.size();
+        }
+        return count;
+    }
+
+    /**
+     * 解析 "DRIVER=5/10,*=2/10"
+     */
+    private static Map<String, Limit> parseRule(String rule) {
+        Map<String, Limit> parsed = new HashMap<>();
+        if (!StringUtils.hasText(rule)) {
+            return parsed;
+        }
+        for (String entry : rule.split(",")) {
+            String[] roleAndLimit = entry.trim().split("=");
+            String[] rateAndBurst = roleAndLimit.length == 2 ? roleAndLimit[1].split("/") : new String[0];
+            if (rateAndBurst.length != 2) {
+                throw new IllegalArgumentException("限流配置格式应为 角色=每秒令牌数/桶容量: " + entry);
+            }
+            double perSecond = Double.parseDouble(rateAndBurst[0].trim());
+            int burst = Integer.parseInt(rateAndBurst[1].trim());
+            if (perSecond <= 0 || burst < 1) {
+                throw new IllegalArgumentException("限流速率必须大于 0 且桶容量至少为 1: " + entry);
+            }
+            long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / perSecond);
+            parsed.put(roleAndLimit[0].trim(), new Limit(perSecond, burst, intervalNanos, intervalNanos * burst));
+        }
+        return Map.copyOf(parsed);
+    }
+}
@@ -0,0 +1,69 @@
+package com.shydelivery.doordashsimulator.security;
+
+import com.shydelivery.doordashsimulator.entity.User;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+/**
+ * 请求级身份上下文
+ *
+ * JwtAuthenticationFilter 认证成功后把主体（用户 ID、角色）绑定到当前请求，
+ * AuthorizationService 做所有权校验时直接取用户 ID，不再按邮箱查询 users 表。
+ * 没有请求上下文（WebSocket、定时任务）或邮箱与绑定主体不一致时，
+ * 从 AuthenticationCache 获取（未命中时查询一次）并绑定到当前请求。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RequestIdentity {
+
+    private static final String ATTRIBUTE = RequestIdentity.class.getName();
+
+    private final AuthenticationCache authenticationCache;
+
+    /**
+     * 已解析的身份
+     */
+    public record Identity(String email, Long userId, User.UserRole role) {
+    }
+
+    /**
+     * 认证过滤器调用：把已认证的主体绑定到当前请求
+     */
+    public void bind(String email, AuthenticationCache.CachedPrincipal principal) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes != null && principal != null) {
+            attributes.setAttribute(ATTRIBUTE, new Identity(email, principal.userId(), principal.role()),
+                    RequestAttributes.SCOPE_REQUEST);
+        }
+    }
+
+    /**
+     * 解析邮箱对应的身份
+     *
+     * @throws UsernameNotFoundException 用户不存在
+     */
+    public Identity resolve(String email) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes != null
+                && attributes.getAttribute(ATTRIBUTE, RequestAttributes.SCOPE_REQUEST) instanceof Identity bound
+                && bound.email().equals(email)) {
+            return bound;
+        }
+
+        AuthenticationCache.CachedPrincipal principal = authenticationCache.principal(email);
+        if (principal == null) {
+            log.warn("用户不存在: email={}", email);
+            throw new UsernameNotFoundException("用户不存在: " + email);
+        }
+        Identity identity = new Identity(email, principal.userId(), principal.role());
+        if (attributes != null) {
+            attributes.setAttribute(ATTRIBUTE, identity, RequestAttributes.SCOPE_REQUEST);
+        }
+        return identity;
+    }
+}
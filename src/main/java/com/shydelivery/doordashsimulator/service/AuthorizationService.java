@@ -1,8 +1,8 @@
 package com.shydelivery.doordashsimulator.service;
 
-import com.shydelivery.doordashsimulator.entity.MenuItem;
 import com.shydelivery.doordashsimulator.entity.Order;
 import com.shydelivery.doordashsimulator.entity.Restaurant;
+import com.shydelivery.doordashsimulator.entity.Review;
 import com.shydelivery.doordashsimulator.entity.User;
 import com.shydelivery.doordashsimulator.entity.User.UserRole;
 import com.shydelivery.doordashsimulator.exception.ResourceNotFoundException;
@@ -11,12 +11,16 @@ import com.shydelivery.doordashsimulator.repository.OrderRepository;
 import com.shydelivery.doordashsimulator.repository.RestaurantRepository;
 import com.shydelivery.doordashsimulator.repository.ReviewRepository;
 import com.shydelivery.doordashsimulator.repository.UserRepository;
+import com.shydelivery.doordashsimulator.security.RequestIdentity;
+import com.shydelivery.doordashsimulator.security.RequestIdentity.Identity;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
+import java.util.Objects;
+
 /**
  * 授权服务 - 负责资源所有权验证
  * 
@@ -26,6 +30,11 @@ import org.springframework.stereotype.Service;
  * - 验证菜单项所有权
  * - 其他资源权限验证
  * 
+ * 当前用户的 ID 来自请求级身份上下文（RequestIdentity），不再按邮箱查询用户；
+ * 每次校验只有一次查询：不需要实体的校验用 exists 查询，
+ * 需要实体的校验（load* 方法）一次加载资源聚合并在内存中比较所有者，
+ * 调用方直接复用返回的实体，不再重复 findById。
+ * 
  * @author DoorDash Team
  */
 @Slf4j
@@ -38,6 +47,7 @@ public class AuthorizationService {
     private final OrderRepository orderRepository;
     private final MenuItemRepository menuItemRepository;
     private final ReviewRepository reviewRepository;
+    private final RequestIdentity requestIdentity;
     
     /**
      * 验证餐厅所有权
@@ -51,27 +61,49 @@ public class AuthorizationService {
     public void verifyRestaurantOwnership(Long restaurantId, String email) {
         log.debug("验证餐厅所有权: restaurantId={}, email={}", restaurantId, email);
         
-        // 查找餐厅
+        Identity identity = requestIdentity.resolve(email);
+        
+        // 单次 exists 查询；失败时再区分餐厅不存在和无权访问
+        if (!restaurantRepository.existsByIdAndOwnerId(restaurantId, identity.userId())) {
+            if (!restaurantRepository.existsById(restaurantId)) {
+                log.warn("餐厅不存在: id={}", restaurantId);
+                throw new ResourceNotFoundException("餐厅不存在，ID: " + restaurantId);
+            }
+            log.warn("访问被拒绝: 用户 {} 尝试访问餐厅 {}, 但不是所有者", email, restaurantId);
+            throw new AccessDeniedException("您没有权限访问此餐厅");
+        }
+        
+        log.debug("餐厅所有权验证成功: 用户 {} 是餐厅 {} 的所有者", email, restaurantId);
+    }
+    
+    /**
+     * 验证餐厅所有权并返回餐厅实体
+     * 
+     * @param restaurantId 餐厅 ID
+     * @param email 用户邮箱
+     * @return 餐厅实体
+     * @throws ResourceNotFoundException 餐厅不存在
+     * @throws UsernameNotFoundException 用户不存在
+     * @throws AccessDeniedException 用户不是餐厅所有者
+     */
+    public Restaurant loadRestaurantForOwner(Long restaurantId, String email) {
+        log.debug("加载并验证餐厅所有权: restaurantId={}, email={}", restaurantId, email);
+        
         Restaurant restaurant = restaurantRepository.findById(restaurantId)
             .orElseThrow(() -> {
                 log.warn("餐厅不存在: id={}", restaurantId);
                 return new ResourceNotFoundException("餐厅不存在，ID: " + restaurantId);
             });
         
-        // 查找用户
-        User user = userRepository.findByEmail(email)
-            .orElseThrow(() -> {
-                log.warn("用户不存在: email={}", email);
-                return new UsernameNotFoundException("用户不存在: " + email);
-            });
+        Identity identity = requestIdentity.resolve(email);
         
-        // 验证所有权
-        if (!restaurant.getOwner().getId().equals(user.getId())) {
+        // owner 是懒加载代理，取 ID 不会触发查询
+        if (!Objects.equals(restaurant.getOwner().getId(), identity.userId())) {
             log.warn("访问被拒绝: 用户 {} 尝试访问餐厅 {}, 但不是所有者", email, restaurantId);
             throw new AccessDeniedException("您没有权限访问此餐厅");
         }
         
-        log.debug("餐厅所有权验证成功: 用户 {} 是餐厅 {} 的所有者", email, restaurantId);
+        return restaurant;
     }
     
     /**
@@ -119,29 +151,32 @@ public class AuthorizationService {
      * @throws AccessDeniedException 用户不是订单客户
      */
     public void verifyOrderCustomer(Long orderId, String email) {
+        loadOrderForCustomer(orderId, email);
+    }
+    
+    /**
+     * 验证用户是否为订单的客户，并返回订单（含客户、餐厅、地址、配送员）
+     * 
+     * @param orderId 订单 ID
+     * @param email 用户邮箱
+     * @return 订单实体
+     * @throws ResourceNotFoundException 订单不存在
+     * @throws UsernameNotFoundException 用户不存在
+     * @throws AccessDeniedException 用户不是订单客户
+     */
+    public Order loadOrderForCustomer(Long orderId, String email) {
         log.debug("验证订单客户权限: orderId={}, email={}", orderId, email);
         
-        // 查找订单
-        Order order = orderRepository.findById(orderId)
-            .orElseThrow(() -> {
-                log.warn("订单不存在: id={}", orderId);
-                return new ResourceNotFoundException("订单不存在，ID: " + orderId);
-            });
-        
-        // 查找用户
-        User user = userRepository.findByEmail(email)
-            .orElseThrow(() -> {
-                log.warn("用户不存在: email={}", email);
-                return new UsernameNotFoundException("用户不存在: " + email);
-            });
+        Order order = loadOrder(orderId);
+        Identity identity = requestIdentity.resolve(email);
         
-        // 验证是否为订单客户
-        if (!order.getCustomer().getId().equals(user.getId())) {
+        if (!isCustomer(order, identity)) {
             log.warn("访问被拒绝: 用户 {} 尝试访问订单 {}, 但不是订单客户", email, orderId);
             throw new AccessDeniedException("您没有权限访问此订单");
         }
         
         log.debug("订单客户权限验证成功: 用户 {} 是订单 {} 的客户", email, orderId);
+        return order;
     }
     
     /**
@@ -154,29 +189,32 @@ public class AuthorizationService {
      * @throws AccessDeniedException 用户不是餐厅所有者
      */
     public void verifyOrderRestaurantOwner(Long orderId, String email) {
+        loadOrderForRestaurantOwner(orderId, email);
+    }
+    
+    /**
+     * 验证用户是否为订单所属餐厅的所有者，并返回订单
+     * 
+     * @param orderId 订单 ID
+     * @param email 用户邮箱（餐厅老板）
+     * @return 订单实体
+     * @throws ResourceNotFoundException 订单不存在
+     * @throws UsernameNotFoundException 用户不存在
+     * @throws AccessDeniedException 用户不是餐厅所有者
+     */
+    public Order loadOrderForRestaurantOwner(Long orderId, String email) {
         log.debug("验证订单餐厅所有者权限: orderId={}, email={}", orderId, email);
         
-        // 查找订单
-        Order order = orderRepository.findById(orderId)
-            .orElseThrow(() -> {
-                log.warn("订单不存在: id={}", orderId);
-                return new ResourceNotFoundException("订单不存在，ID: " + orderId);
-            });
-        
-        // 查找用户
-        User user = userRepository.findByEmail(email)
-            .orElseThrow(() -> {
-                log.warn("用户不存在: email={}", email);
-                return new UsernameNotFoundException("用户不存在: " + email);
-            });
+        Order order = loadOrder(orderId);
+        Identity identity = requestIdentity.resolve(email);
         
-        // 验证是否为餐厅所有者
-        if (!order.getRestaurant().getOwner().getId().equals(user.getId())) {
+        if (!isRestaurantOwner(order, identity)) {
             log.warn("访问被拒绝: 用户 {} 尝试访问订单 {}, 但不是餐厅所有者", email, orderId);
             throw new AccessDeniedException("您没有权限访问此订单");
         }
         
         log.debug("订单餐厅所有者权限验证成功: 用户 {} 是订单 {} 所属餐厅的所有者", email, orderId);
+        return order;
     }
     
     /**
@@ -189,23 +227,35 @@ public class AuthorizationService {
      * @throws AccessDeniedException 用户无权访问订单
      */
     public void verifyOrderAccess(Long orderId, String email) {
+        loadOrderForAccess(orderId, email);
+    }
+    
+    /**
+     * 验证用户是否可以访问订单（客户或餐厅所有者），并返回订单
+     * 
+     * @param orderId 订单 ID
+     * @param email 用户邮箱
+     * @return 订单实体
+     * @throws ResourceNotFoundException 订单不存在
+     * @throws UsernameNotFoundException 用户不存在
+     * @throws AccessDeniedException 用户无权访问订单
+     */
+    public Order loadOrderForAccess(Long orderId, String email) {
         log.debug("验证订单访问权限: orderId={}, email={}", orderId, email);
         
-        try {
-            // 尝试验证是订单客户
-            verifyOrderCustomer(orderId, email);
+        Order order = loadOrder(orderId);
+        Identity identity = requestIdentity.resolve(email);
+        
+        if (isCustomer(order, identity)) {
             log.debug("用户 {} 是订单 {} 的客户", email, orderId);
-        } catch (AccessDeniedException e1) {
-            try {
-                // 尝试验证是餐厅所有者
-                verifyOrderRestaurantOwner(orderId, email);
-                log.debug("用户 {} 是订单 {} 所属餐厅的所有者", email, orderId);
-            } catch (AccessDeniedException e2) {
-                // 两者都不是，拒绝访问
-                log.warn("访问被拒绝: 用户 {} 无权访问订单 {}", email, orderId);
-                throw new AccessDeniedException("您没有权限访问此订单");
-            }
+        } else if (isRestaurantOwner(order, identity)) {
+            log.debug("用户 {} 是订单 {} 所属餐厅的所有者", email, orderId);
+        } else {
+            // 两者都不是，拒绝访问
+            log.warn("访问被拒绝: 用户 {} 无权访问订单 {}", email, orderId);
+            throw new AccessDeniedException("您没有权限访问此订单");
         }
+        return order;
     }
     
     /**
@@ -239,15 +289,17 @@ public class AuthorizationService {
     public void verifyMenuItemOwnership(Long menuItemId, String email) {
         log.debug("验证菜单项所有权: menuItemId={}, email={}", menuItemId, email);
         
-        // 查找菜单项
-        MenuItem menuItem = menuItemRepository.findById(menuItemId)
-            .orElseThrow(() -> {
-                log.warn("菜单项不存在: id={}", menuItemId);
-                return new ResourceNotFoundException("菜单项不存在，ID: " + menuItemId);
-            });
+        Identity identity = requestIdentity.resolve(email);
         
-        // 通过餐厅所有权验证
-        verifyRestaurantOwnership(menuItem.getRestaurant().getId(), email);
+        // 菜单项 → 餐厅 → 所有者，一次 exists 查询；失败时再区分不存在和无权访问
+        if (!menuItemRepository.existsByIdAndRestaurantOwnerId(menuItemId, identity.userId())) {
+            if (!menuItemRepository.existsById(menuItemId)) {
+                log.warn("菜单项不存在: id={}", menuItemId);
+                throw new ResourceNotFoundException("菜单项不存在，ID: " + menuItemId);
+            }
+            log.warn("访问被拒绝: 用户 {} 尝试访问菜单项 {}, 但不是餐厅所有者", email, menuItemId);
+            throw new AccessDeniedException("您没有权限访问此餐厅");
+        }
         
         log.debug("菜单项所有权验证成功: 用户 {} 拥有菜单项 {} 所属的餐厅", email, menuItemId);
     }
@@ -262,27 +314,33 @@ public class AuthorizationService {
      * @throws AccessDeniedException 配送员未被分配到该订单
      */
     public void verifyDriverAssignment(Long orderId, String email) {
+        loadOrderForDriver(orderId, email);
+    }
+    
+    /**
+     * 验证配送员是否被分配到该订单，并返回订单
+     * 
+     * @param orderId 订单 ID
+     * @param email 配送员邮箱
+     * @return 订单实体
+     * @throws ResourceNotFoundException 订单不存在
+     * @throws UsernameNotFoundException 用户不存在
+     * @throws AccessDeniedException 配送员未被分配到该订单
+     */
+    public Order loadOrderForDriver(Long orderId, String email) {
         log.debug("验证配送员分配: orderId={}, email={}", orderId, email);
         
-        Order order = orderRepository.findById(orderId)
-            .orElseThrow(() -> {
-                log.warn("订单不存在: id={}", orderId);
-                return new ResourceNotFoundException("订单不存在，ID: " + orderId);
-            });
-        
-        User driver = userRepository.findByEmail(email)
-            .orElseThrow(() -> {
-                log.warn("用户不存在: email={}", email);
-                return new UsernameNotFoundException("用户不存在: " + email);
-            });
+        Order order = loadOrder(orderId);
+        Identity identity = requestIdentity.resolve(email);
         
         // 验证订单是否分配给该配送员
-        if (order.getDriver() == null || !order.getDriver().getId().equals(driver.getId())) {
+        if (order.getDriver() == null || !Objects.equals(order.getDriver().getId(), identity.userId())) {
             log.warn("访问被拒绝: 配送员 {} 未被分配到订单 {}", email, orderId);
             throw new AccessDeniedException("您未被分配到此订单");
         }
         
         log.debug("配送员分配验证成功: 配送员 {} 被分配到订单 {}", email, orderId);
+        return order;
     }
     
     /**
@@ -323,30 +381,36 @@ public class AuthorizationService {
      * @param email 用户邮箱
      */
     public void verifyReviewOwnership(Long reviewId, String email) {
+        loadReviewForCustomer(reviewId, email);
+    }
+    
+    /**
+     * 验证评价所有权并返回评价实体
+     * 
+     * @param reviewId 评价 ID
+     * @param email 用户邮箱
+     * @return 评价实体
+     */
+    public Review loadReviewForCustomer(Long reviewId, String email) {
         log.debug("验证评价所有权: reviewId={}, email={}", reviewId, email);
         
         // 获取评价
-        com.shydelivery.doordashsimulator.entity.Review review = 
-            reviewRepository.findById(reviewId)
-                .orElseThrow(() -> {
-                    log.warn("评价不存在: reviewId={}", reviewId);
-                    return new ResourceNotFoundException("评价不存在，ID: " + reviewId);
-                });
-        
-        // 获取当前用户
-        User user = userRepository.findByEmail(email)
+        Review review = reviewRepository.findById(reviewId)
             .orElseThrow(() -> {
-                log.warn("用户不存在: email={}", email);
-                return new UsernameNotFoundException("用户不存在: " + email);
+                log.warn("评价不存在: reviewId={}", reviewId);
+                return new ResourceNotFoundException("评价不存在，ID: " + reviewId);
             });
         
+        Identity identity = requestIdentity.resolve(email);
+        
         // 验证评价是否属于该用户
-        if (!review.getCustomer().getId().equals(user.getId())) {
+        if (!Objects.equals(review.getCustomer().getId(), identity.userId())) {
             log.warn("访问被拒绝: 评价 {} 不属于用户 {}", reviewId, email);
             throw new AccessDeniedException("您没有权限修改此评价");
         }
         
-        log.debug("评价所有权验证成功: reviewId={}, customerId={}", reviewId, user.getId());
+        log.debug("评价所有权验证成功: reviewId={}, customerId={}", reviewId, identity.userId());
+        return review;
     }
     
     /**
@@ -360,28 +424,36 @@ public class AuthorizationService {
     public Order verifyOrderOwnershipForReview(Long orderId, String email) {
         log.debug("验证订单所有权（用于评价）: orderId={}, email={}", orderId, email);
         
-        // 获取订单
-        Order order = orderRepository.findById(orderId)
-            .orElseThrow(() -> {
-                log.warn("订单不存在: orderId={}", orderId);
-                return new ResourceNotFoundException("订单不存在，ID: " + orderId);
-            });
-        
-        // 获取当前用户
-        User user = userRepository.findByEmail(email)
-            .orElseThrow(() -> {
-                log.warn("用户不存在: email={}", email);
-                return new UsernameNotFoundException("用户不存在: " + email);
-            });
+        Order order = loadOrder(orderId);
+        Identity identity = requestIdentity.resolve(email);
         
         // 验证订单是否属于该用户
-        if (!order.getCustomer().getId().equals(user.getId())) {
+        if (!isCustomer(order, identity)) {
             log.warn("访问被拒绝: 订单 {} 不属于用户 {}", orderId, email);
             throw new AccessDeniedException("您只能评价自己的订单");
         }
         
-        log.debug("订单所有权验证成功（用于评价）: orderId={}, customerId={}", orderId, user.getId());
+        log.debug("订单所有权验证成功（用于评价）: orderId={}, customerId={}", orderId, identity.userId());
         return order;
     }
+    
+    /**
+     * 一次查询加载订单聚合（客户、餐厅、配送地址、配送员）
+     */
+    private Order loadOrder(Long orderId) {
+        return orderRepository.findAggregateById(orderId)
+            .orElseThrow(() -> {
+                log.warn("订单不存在: id={}", orderId);
+                return new ResourceNotFoundException("订单不存在，ID: " + orderId);
+            });
+    }
+    
+    private boolean isCustomer(Order order, Identity identity) {
+        return Objects.equals(order.getCustomer().getId(), identity.userId());
+    }
+    
+    private boolean isRestaurantOwner(Order order, Identity identity) {
+        // 餐厅已随订单加载，owner 是懒加载代理，取 ID 不会触发查询
+        return Objects.equals(order.getRestaurant().getOwner().getId(), identity.userId());
+    }
 }
-
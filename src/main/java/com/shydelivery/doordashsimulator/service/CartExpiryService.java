@@ -0,0 +1,111 @@
+package com.shydelivery.doordashsimulator.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 过期购物车停用服务（数据库侧）
+ *
+ * 常驻内存的购物车由 CartStore 的时间轮持续过期；这里定期停用其余的过期购物车：
+ * - 每块一条集合更新语句（按 (is_active, expires_at) 索引取 chunk-size 行），每块独立提交，
+ *   事务和行锁持有时间有上限；SKIP LOCKED 让多实例同时清理时互不等待
+ * - 已停用的行不再满足条件，下一块直接从索引开头继续，不需要游标
+ * - 常驻购物车如果在内存中已续期，之后的写回会把 is_active 重新写为 true，以内存为准；
+ *   因此这里不修改 version（CartStore 的写回按 version 比较并交换，修改后写回会被当作冲突丢弃）
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CartExpiryService {
+
+    private static final String DEACTIVATE_CHUNK_SQL =
+            "UPDATE carts SET is_active = false WHERE id IN (" +
+            "SELECT id FROM carts WHERE is_active = true AND expires_at < ? " +
+            "ORDER BY expires_at LIMIT ? FOR UPDATE SKIP LOCKED)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${cart.expiry.chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${cart.expiry.max-chunks-per-run:1000}")
+    private int maxChunksPerRun;
+
+    private final LongAdder runs = new LongAdder();
+    private final LongAdder totalExpired = new LongAdder();
+    private final LongAdder totalChunks = new LongAdder();
+    private final LongAdder totalChunkNanos = new LongAdder();
+    private final LongAccumulator maxChunkNanos = new LongAccumulator(Math::max, 0);
+
+    private volatile LocalDateTime lastRunAt;
+    private volatile long lastRunExpired;
+    private volatile long lastRunChunks;
+    private volatile long lastRunMs;
+
+    /**
+     * 定期停用过期购物车（默认每 5 分钟，替代每晚一次的全量清理）
+     */
+    @Scheduled(fixedDelayString = "${cart.expiry.sweep-interval-ms:300000}")
+    public void deactivateExpiredCarts() {
+        LocalDateTime now = LocalDateTime.now();
+        long start = System.nanoTime();
+        long expired = 0;
+        int chunks = 0;
+
+        while (chunks < maxChunksPerRun) {
+            long chunkStart = System.nanoTime();
+            int updated = jdbcTemplate.update(DEACTIVATE_CHUNK_SQL, Timestamp.valueOf(now), chunkSize);
+            long chunkNanos = System.nanoTime() - chunkStart;
+            chunks++;
+            expired += updated;
+            totalChunkNanos.add(chunkNanos);
+            maxChunkNanos.accumulate(chunkNanos);
+            if (updated < chunkSize) {
+                break;
+            }
+        }
+
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        runs.increment();
+        totalExpired.add(expired);
+        totalChunks.add(chunks);
+        lastRunAt = now;
+        lastRunExpired = expired;
+        lastRunChunks = chunks;
+        lastRunMs = elapsedMs;
+
+        if (expired > 0) {
+            log.info("停用过期购物车: expired={}, chunks={}, 耗时={}ms", expired, chunks, elapsedMs);
+        }
+    }
+
+    /**
+     * 过期清理统计
+     */
+    public Map<String, Object> getStats() {
+        long chunks = totalChunks.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("chunkSize", chunkSize);
+        stats.put("runs", runs.sum());
+        stats.put("totalExpired", totalExpired.sum());
+        stats.put("lastRunAt", lastRunAt);
+        stats.put("lastRunExpired", lastRunExpired);
+        stats.put("lastRunChunks", lastRunChunks);
+        stats.put("lastRunMs", lastRunMs);
+        stats.put("avgChunkMs", chunks == 0 ? 0.0 : totalChunkNanos.sum() / 1e6 / chunks);
+        stats.put("maxChunkMs", maxChunkNanos.get() / 1e6);
+        return stats;
+    }
+}
@@ -6,129 +6,86 @@ import com.shydelivery.doordashsimulator.dto.response.CartDTO;
 import com.shydelivery.doordashsimulator.dto.response.CartItemDTO;
 import com.shydelivery.doordashsimulator.entity.*;
 import com.shydelivery.doordashsimulator.repository.*;
+import com.shydelivery.doordashsimulator.security.RequestIdentity;
+import com.shydelivery.doordashsimulator.service.CartStore.CartSnapshot;
+import com.shydelivery.doordashsimulator.service.CartStore.ItemSnapshot;
+import com.shydelivery.doordashsimulator.service.MenuCatalog.MenuItemView;
+import com.shydelivery.doordashsimulator.service.MenuCatalog.MenuSnapshot;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
-import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
  * 购物车服务
  * 提供购物车管理功能
+ * 
+ * 购物车读写走 CartStore（内存常驻 + 批量写回），这里只负责校验和组装 DTO；
+ * 菜品信息来自 MenuCatalog 的菜单快照，商品项记录取价时的菜单版本，版本未变时不需要比较价格
  */
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class CartService {
     
-    private final CartRepository cartRepository;
-    private final CartItemRepository cartItemRepository;
-    private final MenuItemRepository menuItemRepository;
+    private final CartStore cartStore;
+    private final MenuCatalog menuCatalog;
     private final RestaurantRepository restaurantRepository;
-    private final UserRepository userRepository;
+    private final RequestIdentity requestIdentity;
     
     /**
      * 添加商品到购物车
      */
-    @Transactional
     public CartDTO addToCart(Long menuItemId, AddToCartRequest request, String customerEmail) {
         log.info("Adding item to cart - menuItemId: {}, quantity: {}, customer: {}", 
                 menuItemId, request.getQuantity(), customerEmail);
         
-        // 获取菜品
-        MenuItem menuItem = menuItemRepository.findById(menuItemId)
-                .orElseThrow(() -> new IllegalArgumentException("菜品不存在，ID: " + menuItemId));
+        // 从菜单快照获取菜品（价格连同菜单版本一起记录）
+        Long restaurantId = menuCatalog.restaurantOf(menuItemId);
+        MenuSnapshot menu = restaurantId != null ? menuCatalog.get(restaurantId) : null;
+        MenuItemView menuItem = menu != null ? menu.item(menuItemId) : null;
+        if (menuItem == null) {
+            throw new IllegalArgumentException("菜品不存在，ID: " + menuItemId);
+        }
         
         // 检查菜品是否可用
-        if (!menuItem.getIsAvailable()) {
-            throw new IllegalStateException("菜品当前不可用: " + menuItem.getName());
+        if (!menuItem.available()) {
+            throw new IllegalStateException("菜品当前不可用: " + menuItem.name());
         }
         
-        // 获取用户
-        User customer = userRepository.findByEmail(customerEmail)
-                .orElseThrow(() -> new IllegalArgumentException("用户不存在"));
+        Long customerId = customerId(customerEmail);
         
-        Restaurant restaurant = menuItem.getRestaurant();
+        Restaurant restaurant = restaurantRepository.findById(restaurantId)
+                .orElseThrow(() -> new IllegalArgumentException("餐厅不存在，ID: " + restaurantId));
         
         // 检查餐厅是否营业
         if (!restaurant.getIsActive()) {
             throw new IllegalStateException("餐厅当前未营业: " + restaurant.getName());
         }
         
-        // 查找或创建购物车
-        Cart cart = cartRepository.findByCustomerAndRestaurantAndIsActiveTrue(customer, restaurant)
-                .orElseGet(() -> createCart(customer, restaurant));
+        // 已有该商品时增加数量，否则新增；购物车不存在时创建，过期时续期
+        CartSnapshot cart = cartStore.addItem(customerId, restaurantId, menuItemId,
+                request.getQuantity(), menuItem.price(), menu.version(), request.getSpecialInstructions());
         
-        // 检查购物车是否过期，如果过期则续期
-        if (cart.isExpired()) {
-            cart.renew();
-        }
-        
-        // 查找购物车中是否已有该商品
-        CartItem existingItem = cartItemRepository.findByCartAndMenuItem(cart, menuItem)
-                .orElse(null);
-        
-        if (existingItem != null) {
-            // 如果已存在，增加数量
-            existingItem.increaseQuantity(request.getQuantity());
-            if (request.getSpecialInstructions() != null) {
-                existingItem.setSpecialInstructions(request.getSpecialInstructions());
-            }
-            cartItemRepository.save(existingItem);
-            log.info("Updated existing cart item quantity: {}", existingItem.getQuantity());
-        } else {
-            // 如果不存在，创建新商品项
-            CartItem newItem = CartItem.builder()
-                    .cart(cart)
-                    .menuItem(menuItem)
-                    .quantity(request.getQuantity())
-                    .priceAtAdd(menuItem.getPrice())
-                    .specialInstructions(request.getSpecialInstructions())
-                    .build();
-            
-            cart.addItem(newItem);
-            cartItemRepository.save(newItem);
-            log.info("Added new item to cart: {}", menuItem.getName());
-        }
-        
-        // 更新购物车的更新时间
-        cart = cartRepository.save(cart);
-        
-        return convertToDTO(cart);
+        return convertToDTO(cart, restaurant);
     }
     
     /**
      * 更新购物车商品
      */
-    @Transactional
     public CartDTO updateCartItem(Long cartItemId, UpdateCartItemRequest request, String customerEmail) {
         log.info("Updating cart item - cartItemId: {}, customer: {}", cartItemId, customerEmail);
         
-        CartItem cartItem = cartItemRepository.findById(cartItemId)
-                .orElseThrow(() -> new IllegalArgumentException("购物车商品不存在，ID: " + cartItemId));
-        
-        // 验证购物车所有权
-        if (!cartItem.getCart().getCustomer().getEmail().equals(customerEmail)) {
-            throw new IllegalArgumentException("无权限修改此购物车商品");
-        }
-        
-        // 更新数量
-        if (request.getQuantity() != null) {
-            cartItem.setQuantity(request.getQuantity());
-        }
-        
-        // 更新特殊要求
-        if (request.getSpecialInstructions() != null) {
-            cartItem.setSpecialInstructions(request.getSpecialInstructions());
-        }
-        
-        cartItemRepository.save(cartItem);
-        Cart cart = cartRepository.save(cartItem.getCart());
+        // 只在当前用户的购物车中查找，其他用户的商品项视为不存在
+        CartSnapshot cart = cartStore.updateItem(customerId(customerEmail), cartItemId,
+                request.getQuantity(), request.getSpecialInstructions());
         
         return convertToDTO(cart);
     }
@@ -136,24 +93,11 @@ public class CartService {
     /**
      * 从购物车删除商品
      */
-    @Transactional
     public CartDTO removeFromCart(Long cartItemId, String customerEmail) {
         log.info("Removing item from cart - cartItemId: {}, customer: {}", cartItemId, customerEmail);
         
-        CartItem cartItem = cartItemRepository.findById(cartItemId)
-                .orElseThrow(() -> new IllegalArgumentException("购物车商品不存在，ID: " + cartItemId));
-        
-        // 验证购物车所有权
-        if (!cartItem.getCart().getCustomer().getEmail().equals(customerEmail)) {
-            throw new IllegalArgumentException("无权限删除此购物车商品");
-        }
-        
-        Cart cart = cartItem.getCart();
-        cart.removeItem(cartItem);
-        cartItemRepository.delete(cartItem);
-        
-        // 如果购物车为空，可以选择删除或保留购物车
-        cart = cartRepository.save(cart);
+        // 如果购物车为空，保留购物车
+        CartSnapshot cart = cartStore.removeItem(customerId(customerEmail), cartItemId);
         
         return convertToDTO(cart);
     }
@@ -161,25 +105,16 @@ public class CartService {
     /**
      * 清空购物车
      */
-    @Transactional
     public void clearCart(Long restaurantId, String customerEmail) {
         log.info("Clearing cart for restaurant: {}, customer: {}", restaurantId, customerEmail);
         
-        User customer = userRepository.findByEmail(customerEmail)
-                .orElseThrow(() -> new IllegalArgumentException("用户不存在"));
-        
-        Restaurant restaurant = restaurantRepository.findById(restaurantId)
-                .orElseThrow(() -> new IllegalArgumentException("餐厅不存在，ID: " + restaurantId));
-        
-        Cart cart = cartRepository.findByCustomerAndRestaurantAndIsActiveTrue(customer, restaurant)
-                .orElse(null);
+        Long customerId = customerId(customerEmail);
         
-        if (cart != null) {
-            cartItemRepository.deleteByCartId(cart.getId());
-            cart.clearItems();
-            cartRepository.save(cart);
-            log.info("Cart cleared successfully");
+        if (!restaurantRepository.existsById(restaurantId)) {
+            throw new IllegalArgumentException("餐厅不存在，ID: " + restaurantId);
         }
+        
+        cartStore.clear(customerId, restaurantId);
     }
     
     /**
@@ -189,14 +124,12 @@ public class CartService {
     public CartDTO getCart(Long restaurantId, String customerEmail) {
         log.info("Getting cart for restaurant: {}, customer: {}", restaurantId, customerEmail);
         
-        User customer = userRepository.findByEmail(customerEmail)
-                .orElseThrow(() -> new IllegalArgumentException("用户不存在"));
+        Long customerId = customerId(customerEmail);
         
         Restaurant restaurant = restaurantRepository.findById(restaurantId)
                 .orElseThrow(() -> new IllegalArgumentException("餐厅不存在，ID: " + restaurantId));
         
-        Cart cart = cartRepository.findByCustomerAndRestaurantAndIsActiveTrue(customer, restaurant)
-                .orElse(null);
+        CartSnapshot cart = cartStore.get(customerId, restaurantId);
         
         if (cart == null || cart.isEmpty()) {
             // 返回空购物车
@@ -214,7 +147,7 @@ public class CartService {
                     .build();
         }
         
-        return convertToDTO(cart);
+        return convertToDTO(cart, restaurant);
     }
     
     /**
@@ -224,63 +157,82 @@ public class CartService {
     public List<CartDTO> getAllCarts(String customerEmail) {
         log.info("Getting all carts for customer: {}", customerEmail);
         
-        User customer = userRepository.findByEmail(customerEmail)
-                .orElseThrow(() -> new IllegalArgumentException("用户不存在"));
-        
-        List<Cart> carts = cartRepository.findByCustomerAndIsActiveTrueOrderByUpdatedAtDesc(customer);
+        List<CartSnapshot> carts = cartStore.getAll(customerId(customerEmail));
         
-        return carts.stream()
-                .filter(cart -> !cart.isEmpty())
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
+        return convertToDTOs(carts.stream().filter(cart -> !cart.isEmpty()).toList(), null);
     }
     
     /**
-     * 定时清理过期购物车（每天凌晨2点执行）
+     * 当前用户 ID（请求内已解析的身份，不查询 users 表）
      */
-    @Scheduled(cron = "0 0 2 * * ?")
-    @Transactional
-    public void cleanupExpiredCarts() {
-        log.info("Starting cleanup of expired carts");
-        
-        LocalDateTime now = LocalDateTime.now();
-        List<Cart> expiredCarts = cartRepository.findExpiredCarts(now);
-        
-        for (Cart cart : expiredCarts) {
-            cart.setIsActive(false);
-            cartRepository.save(cart);
+    private Long customerId(String customerEmail) {
+        return requestIdentity.resolve(customerEmail).userId();
+    }
+    
+    /**
+     * 转换单个购物车快照为 DTO（餐厅已加载）
+     */
+    private CartDTO convertToDTO(CartSnapshot cart, Restaurant restaurant) {
+        return convertToDTOs(List.of(cart), restaurant).get(0);
+    }
+    
+    /**
+     * 转换单个购物车快照为 DTO（餐厅按 ID 查询）
+     */
+    private CartDTO convertToDTO(CartSnapshot cart) {
+        return convertToDTO(cart, null);
+    }
+    
+    /**
+     * 批量转换购物车快照为 DTO
+     * 菜品来自菜单快照（不查询），未加载的餐厅一次查询，查询数与购物车数和商品项数无关
+     */
+    private List<CartDTO> convertToDTOs(List<CartSnapshot> carts, Restaurant knownRestaurant) {
+        Map<Long, RestaurantView> restaurants = new HashMap<>();
+        if (knownRestaurant != null) {
+            restaurants.put(knownRestaurant.getId(), new RestaurantView(
+                    knownRestaurant.getName(), knownRestaurant.getDeliveryFee()));
+        }
+        Set<Long> restaurantIds = carts.stream()
+                .map(CartSnapshot::restaurantId)
+                .filter(id -> !restaurants.containsKey(id))
+                .collect(Collectors.toSet());
+        if (!restaurantIds.isEmpty()) {
+            for (Object[] row : restaurantRepository.findCartHeaderRows(restaurantIds)) {
+                restaurants.put((Long) row[0], new RestaurantView((String) row[1], (BigDecimal) row[2]));
+            }
         }
         
-        log.info("Cleaned up {} expired carts", expiredCarts.size());
+        return carts.stream()
+                .map(cart -> {
+                    RestaurantView restaurant = restaurants.get(cart.restaurantId());
+                    if (restaurant == null) {
+                        throw new IllegalArgumentException("餐厅不存在，ID: " + cart.restaurantId());
+                    }
+                    return convertToDTO(cart, restaurant, menuCatalog.get(cart.restaurantId()));
+                })
+                .collect(Collectors.toList());
     }
     
     /**
-     * 创建新购物车
+     * 购物车展示所需的餐厅字段
      */
-    private Cart createCart(User customer, Restaurant restaurant) {
-        Cart cart = Cart.builder()
-                .customer(customer)
-                .restaurant(restaurant)
-                .isActive(true)
-                .expiresAt(LocalDateTime.now().plusDays(7))
-                .build();
-        
-        return cartRepository.save(cart);
+    private record RestaurantView(String name, BigDecimal deliveryFee) {
     }
     
     /**
-     * 转换购物车实体为 DTO
+     * 转换购物车快照为 DTO
      */
-    private CartDTO convertToDTO(Cart cart) {
-        List<CartItemDTO> itemDTOs = cart.getItems().stream()
-                .map(this::convertItemToDTO)
+    private CartDTO convertToDTO(CartSnapshot cart, RestaurantView restaurant, MenuSnapshot menu) {
+        List<CartItemDTO> itemDTOs = cart.items().stream()
+                .map(item -> convertItemToDTO(item, menu))
                 .collect(Collectors.toList());
         
         BigDecimal subtotal = itemDTOs.stream()
                 .map(CartItemDTO::getSubtotal)
                 .reduce(BigDecimal.ZERO, BigDecimal::add);
         
-        BigDecimal deliveryFee = cart.getRestaurant().getDeliveryFee();
+        BigDecimal deliveryFee = restaurant.deliveryFee();
         BigDecimal total = subtotal.add(deliveryFee);
         
         boolean hasUnavailableItems = itemDTOs.stream()
@@ -290,43 +242,49 @@ public class CartService {
                 .anyMatch(CartItemDTO::getPriceChanged);
         
         return CartDTO.builder()
-                .id(cart.getId())
-                .customerId(cart.getCustomer().getId())
-                .restaurantId(cart.getRestaurant().getId())
-                .restaurantName(cart.getRestaurant().getName())
+                .id(cart.id())
+                .customerId(cart.customerId())
+                .restaurantId(cart.restaurantId())
+                .restaurantName(restaurant.name())
                 .items(itemDTOs)
-                .totalItems(cart.getTotalItems())
+                .totalItems(cart.totalItems())
                 .subtotal(subtotal)
                 .deliveryFee(deliveryFee)
                 .total(total)
-                .isActive(cart.getIsActive())
+                .isActive(cart.active())
+                .version(cart.version())
                 .hasUnavailableItems(hasUnavailableItems)
                 .hasPriceChanges(hasPriceChanges)
-                .expiresAt(cart.getExpiresAt())
-                .createdAt(cart.getCreatedAt())
-                .updatedAt(cart.getUpdatedAt())
+                .expiresAt(cart.expiresAt())
+                .createdAt(cart.createdAt())
+                .updatedAt(cart.updatedAt())
                 .build();
     }
     
     /**
      * 转换购物车商品项为 DTO
+     * 取价时的菜单版本与当前版本相同：价格未变且仍可售，不需要比较；否则与菜单快照逐项比较
+     * （菜品已删除时视为不可用）
      */
-    private CartItemDTO convertItemToDTO(CartItem item) {
+    private CartItemDTO convertItemToDTO(ItemSnapshot item, MenuSnapshot menu) {
+        MenuItemView menuItem = menu != null ? menu.item(item.menuItemId()) : null;
+        boolean menuUnchanged = menu != null && item.menuVersion() == menu.version();
+        BigDecimal currentPrice = menuUnchanged || menuItem == null ? item.priceAtAdd() : menuItem.price();
         return CartItemDTO.builder()
-                .id(item.getId())
-                .menuItemId(item.getMenuItem().getId())
-                .menuItemName(item.getMenuItem().getName())
-                .menuItemDescription(item.getMenuItem().getDescription())
-                .priceAtAdd(item.getPriceAtAdd())
-                .currentPrice(item.getCurrentPrice())
-                .priceChanged(item.hasPriceChanged())
-                .quantity(item.getQuantity())
-                .subtotal(item.getSubtotal())
-                .specialInstructions(item.getSpecialInstructions())
-                .isAvailable(item.isMenuItemAvailable())
-                .imageUrl(item.getMenuItem().getImageUrl())
-                .createdAt(item.getCreatedAt())
-                .updatedAt(item.getUpdatedAt())
+                .id(item.id())
+                .menuItemId(item.menuItemId())
+                .menuItemName(menuItem != null ? menuItem.name() : null)
+                .menuItemDescription(menuItem != null ? menuItem.description() : null)
+                .priceAtAdd(item.priceAtAdd())
+                .currentPrice(currentPrice)
+                .priceChanged(!menuUnchanged && menuItem != null && !item.priceAtAdd().equals(currentPrice))
+                .quantity(item.quantity())
+                .subtotal(item.subtotal())
+                .specialInstructions(item.specialInstructions())
+                .isAvailable(menuUnchanged || (menuItem != null && menuItem.available()))
+                .imageUrl(menuItem != null ? menuItem.imageUrl() : null)
+                .createdAt(item.createdAt())
+                .updatedAt(item.updatedAt())
                 .build();
     }
 }
@@ -0,0 +1,1020 @@
+package com.shydelivery.doordashsimulator.service;
+
+import com.shydelivery.doordashsimulator.exception.BusinessException;
+import com.shydelivery.doordashsimulator.util.TimingWheel;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * 购物车内存存储（写回缓存）
+ *
+ * - 活跃购物车按客户常驻内存（客户 → 餐厅 → 购物车），首次访问时一次查询加载该客户的全部活跃购物车；
+ *   之后的增删改只修改内存，返回不可变快照
+ * - 购物车和商品项的 ID 预先从表序列按块分配，商品项在写入数据库之前就有稳定 ID（接口按 ID 修改/删除）
+ * - 修改后的购物车标记为脏，后台定时写回：安静 flush-quiet-ms 后写回（连续修改合并为一次写入），
+ *   最久不超过 max-staleness-ms；一批购物车在一个事务中用 JDBC 批量 upsert 写入
+ * - 写回语义：整批事务提交后才标记为已写入，且只有写回期间没有新修改的购物车才会被标记；
+ *   数据库中不会出现写了一半的购物车。批次失败时逐个购物车重试，定位出错的购物车；
+ *   单个购物车连续失败 max-write-attempts 次后隔离（丢弃内存中的修改，记录错误日志和 quarantined 计数），
+ *   不会让一个坏购物车拖住整批。正常停机时全部写回，进程崩溃最多丢失 max-staleness-ms 内的修改
+ * - 多节点：数据库是权威状态。carts.version 是每个购物车的写回版本，每次写回（包括结算）
+ *   都要求数据库中的版本等于本节点读取或上次写回时的版本（比较并交换），
+ *   比较失败的购物车（其他节点已写入或已结算）丢弃本节点未写回的修改，下次访问重新加载；
+ *   商品项的写入和删除只在同一事务中版本比较成功后进行，不会删除其他节点添加的商品项。
+ *   距上次校验超过 validate-interval-ms 的访问前，用一次按客户的索引查询校验常驻购物车的版本，
+ *   不一致时从数据库重新加载；间隔内的访问不查数据库，可能读到其他节点写回前的状态，
+ *   但基于旧版本的写回和结算都会在版本比较时失败，不会覆盖其他节点的结果。
+ *   其他节点尚未写回的修改在冲突时丢失（最多 max-staleness-ms），
+ *   需要避免时应把同一客户的请求固定路由到同一节点（粘性路由），此时可以进一步调大校验间隔
+ * - 空闲且已写回的客户每分钟淘汰，超过 max-customers 时按最近访问时间淘汰已写回的客户
+ * - 常驻购物车的过期由分层时间轮持续处理：到期的购物车移出内存并标记为不活跃，随下一次写回落库；
+ *   不在内存中的过期购物车由 CartExpiryService 分块停用
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CartStore {
+
+    private static final int FLUSH_BATCH_SIZE = 500;
+
+    private static final String LOAD_SQL =
+            "SELECT c.id, c.restaurant_id, c.expires_at, c.created_at, c.updated_at, c.version, " +
+            "i.id, i.menu_item_id, i.quantity, i.price_at_add, i.special_instructions, i.created_at, i.updated_at " +
+            "FROM carts c LEFT JOIN cart_items i ON i.cart_id = c.id " +
+            "WHERE c.customer_id = ? AND c.is_active = true ORDER BY c.id, i.id";
+
+    /** 校验常驻购物车：客户未过期的活跃购物车，加上常驻购物车本身（可能已被停用） */
+    private static final String VALIDATE_SQL =
+            "SELECT id, restaurant_id, version FROM carts WHERE customer_id = ? " +
+            "AND ((is_active = true AND expires_at > ?) OR id = ANY (?))";
+
+    /** 比较并交换：只有数据库中的版本等于最后一个参数时才更新（新购物车直接插入） */
+    private static final String UPSERT_CART_SQL =
+            "INSERT INTO carts (id, customer_id, restaurant_id, is_active, expires_at, created_at, updated_at, version) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?) " +
+            "ON CONFLICT (id) DO UPDATE SET is_active = EXCLUDED.is_active, " +
+            "expires_at = EXCLUDED.expires_at, updated_at = EXCLUDED.updated_at, version = EXCLUDED.version " +
+            "WHERE carts.version = ?";
+
+    private static final String UPSERT_ITEM_SQL =
+            "INSERT INTO cart_items (id, cart_id, menu_item_id, quantity, price_at_add, special_instructions, " +
+            "created_at, updated_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?) " +
+            "ON CONFLICT (id) DO UPDATE SET quantity = EXCLUDED.quantity, price_at_add = EXCLUDED.price_at_add, " +
+            "special_instructions = EXCLUDED.special_instructions, updated_at = EXCLUDED.updated_at " +
+            "WHERE cart_items.updated_at <= EXCLUDED.updated_at";
+
+    private static final String DELETE_REMOVED_ITEMS_SQL =
+            "DELETE FROM cart_items WHERE cart_id = ? AND id <> ALL (?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${cart.store.flush-quiet-ms:2000}")
+    private long flushQuietMs;
+
+    @Value("${cart.store.max-staleness-ms:10000}")
+    private long maxStalenessMs;
+
+    @Value("${cart.store.idle-ttl-minutes:30}")
+    private long idleTtlMinutes;
+
+    @Value("${cart.store.max-customers:100000}")
+    private int maxCustomers;
+
+    @Value("${cart.store.id-block-size:50}")
+    private int idBlockSize;
+
+    @Value("${cart.store.expiry-days:7}")
+    private long expiryDays;
+
+    @Value("${cart.store.validate-interval-ms:5000}")
+    private long validateIntervalMs;
+
+    @Value("${cart.store.max-write-attempts:5}")
+    private int maxWriteAttempts;
+
+    @Value("${cart.expiry.wheel-tick-ms:1000}")
+    private long wheelTickMs;
+
+    private final Map<Long, CustomerCarts> customers = new ConcurrentHashMap<>();
+    private final Set<CartState> dirty = ConcurrentHashMap.newKeySet();
+
+    /** 写回串行执行：同一购物车的两次写回不能乱序提交 */
+    private final Object flushLock = new Object();
+
+    /** 常驻购物车的过期时间轮（加锁顺序：客户 → 时间轮） */
+    private TimingWheel<CartState> expiryWheel;
+
+    private final IdBlock cartIds = new IdBlock("carts");
+    private final IdBlock itemIds = new IdBlock("cart_items");
+
+    private final LongAdder mutations = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder cartsFlushed = new LongAdder();
+    private final LongAdder itemRowsWritten = new LongAdder();
+    private final LongAdder flushFailures = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder quarantined = new LongAdder();
+    private final LongAdder reloads = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder checkouts = new LongAdder();
+    private final LongAccumulator maxStalenessObservedMs = new LongAccumulator(Math::max, 0);
+
+    /**
+     * 购物车快照（不可变）
+     */
+    public record CartSnapshot(Long id, Long customerId, Long restaurantId, boolean active, long version,
+                               LocalDateTime expiresAt, LocalDateTime createdAt, LocalDateTime updatedAt,
+                               List<ItemSnapshot> items) {
+
+        public boolean isEmpty() {
+            return items.isEmpty();
+        }
+
+        public int totalItems() {
+            return items.stream().mapToInt(ItemSnapshot::quantity).sum();
+        }
+    }
+
+    /**
+     * 购物车商品项快照（不可变）
+     * menuVersion 为取得 priceAtAdd 时的餐厅菜单版本（见 MenuCatalog），从数据库加载的商品项为 -1
+     */
+    public record ItemSnapshot(Long id, Long menuItemId, int quantity, BigDecimal priceAtAdd, long menuVersion,
+                               String specialInstructions, LocalDateTime createdAt, LocalDateTime updatedAt) {
+
+        public BigDecimal subtotal() {
+            return priceAtAdd.multiply(BigDecimal.valueOf(quantity));
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        // 64 格 × 4 层：1 秒 tick 覆盖约 194 天
+        expiryWheel = new TimingWheel<>(wheelTickMs, 64, 4, System.currentTimeMillis());
+    }
+
+    // ========== 购物车操作（只修改内存） ==========
+
+    /**
+     * 添加商品：已有该菜品时增加数量，否则新增商品项；购物车不存在时创建，已过期时续期
+     *
+     * @param menuVersion 价格所属的餐厅菜单版本
+     */
+    public CartSnapshot addItem(Long customerId, Long restaurantId, Long menuItemId, int quantity,
+                                BigDecimal price, long menuVersion, String specialInstructions) {
+        return withCustomer(customerId, carts -> {
+            LocalDateTime now = LocalDateTime.now();
+            CartState cart = carts.byRestaurant.get(restaurantId);
+            if (cart == null) {
+                cart = new CartState(carts, cartIds.next(), restaurantId, now, now.plusDays(expiryDays));
+                carts.byRestaurant.put(restaurantId, cart);
+                scheduleExpiry(cart);
+            } else if (now.isAfter(cart.expiresAt)) {
+                // 已过期但时间轮尚未处理：续期，原时间轮条目到达时重新排期
+                cart.expiresAt = now.plusDays(expiryDays);
+            }
+
+            ItemState item = cart.findByMenuItem(menuItemId);
+            if (item != null) {
+                if (quantity > 0) {
+                    item.quantity += quantity;
+                }
+                if (specialInstructions != null) {
+                    item.specialInstructions = specialInstructions;
+                }
+            } else {
+                item = new ItemState(itemIds.next(), menuItemId, quantity, price, specialInstructions, now);
+                item.menuVersion = menuVersion;
+                cart.items.add(item);
+            }
+            changed(cart, item, now);
+            return cart.snapshot();
+        });
+    }
+
+    /**
+     * 修改商品项数量（大于 0 时生效）和特殊要求
+     *
+     * @throws IllegalArgumentException 商品项不在该客户的活跃购物车中
+     */
+    public CartSnapshot updateItem(Long customerId, Long cartItemId, Integer quantity, String specialInstructions) {
+        return withCustomer(customerId, carts -> {
+            CartState cart = carts.findByItem(cartItemId);
+            ItemState item = cart.findItem(cartItemId);
+            if (quantity != null && quantity > 0) {
+                item.quantity = quantity;
+            }
+            if (specialInstructions != null) {
+                item.specialInstructions = specialInstructions;
+            }
+            changed(cart, item, LocalDateTime.now());
+            return cart.snapshot();
+        });
+    }
+
+    /**
+     * 删除商品项
+     *
+     * @throws IllegalArgumentException 商品项不在该客户的活跃购物车中
+     */
+    public CartSnapshot removeItem(Long customerId, Long cartItemId) {
+        return withCustomer(customerId, carts -> {
+            CartState cart = carts.findByItem(cartItemId);
+            cart.items.remove(cart.findItem(cartItemId));
+            cart.removalVersion = cart.version + 1;
+            changed(cart, null, LocalDateTime.now());
+            return cart.snapshot();
+        });
+    }
+
+    /**
+     * 清空客户在某餐厅的购物车（保留购物车本身）
+     */
+    public void clear(Long customerId, Long restaurantId) {
+        withCustomer(customerId, carts -> {
+            CartState cart = carts.byRestaurant.get(restaurantId);
+            if (cart != null && !cart.items.isEmpty()) {
+                cart.items.clear();
+                cart.removalVersion = cart.version + 1;
+                changed(cart, null, LocalDateTime.now());
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 客户在某餐厅的活跃购物车，没有返回 null
+     */
+    public CartSnapshot get(Long customerId, Long restaurantId) {
+        return withCustomer(customerId, carts -> {
+            CartState cart = carts.byRestaurant.get(restaurantId);
+            return cart != null ? cart.snapshot() : null;
+        });
+    }
+
+    /**
+     * 客户的全部活跃购物车，按更新时间倒序
+     */
+    public List<CartSnapshot> getAll(Long customerId) {
+        return withCustomer(customerId, carts -> carts.byRestaurant.values().stream()
+                .map(CartState::snapshot)
+                .sorted(Comparator.comparing(CartSnapshot::updatedAt).reversed())
+                .toList());
+    }
+
+    /**
+     * 结算：在一个事务中执行 createOrder 并把购物车（含全部商品项）写为不活跃，
+     * 提交后购物车移出内存；createOrder 抛出异常时事务回滚，购物车保持不变
+     *
+     * 整个事务期间持有该客户的锁，同一客户的购物车修改等待结算完成。
+     * 停用写入同样比较版本（并写入新版本）：购物车已被其他节点修改时整个事务回滚；
+     * 结算之后其他节点对该购物车的旧写回都会因版本不一致而失败，不会重新激活购物车
+     *
+     * @param expectedVersion 客户端看到的购物车版本，为 null 时不检查
+     * @throws BusinessException 购物车为空，或购物车在客户端查看之后被修改过（包括在其他节点上）
+     */
+    public <T> T checkout(Long customerId, Long restaurantId, Long expectedVersion,
+                          Function<CartSnapshot, T> createOrder) {
+        return withCustomer(customerId, carts -> {
+            CartState cart = carts.byRestaurant.get(restaurantId);
+            if (cart == null || cart.items.isEmpty()) {
+                throw new BusinessException("购物车为空，无法结算");
+            }
+            if (expectedVersion != null && expectedVersion != cart.version) {
+                throw new BusinessException("购物车已被修改，请刷新后重新结算");
+            }
+
+            CartSnapshot snapshot = cart.snapshot();
+            LocalDateTime now = LocalDateTime.now();
+            FlushRecord deactivation = new FlushRecord(cart, cart.version + 1, cart.flushedVersion, cart.id,
+                    customerId, restaurantId, false, cart.expiresAt, cart.createdAt, now,
+                    cart.items.stream().map(ItemState::copy).toList(),
+                    cart.items.stream().map(item -> item.id).toArray(Long[]::new));
+
+            boolean[] applied = new boolean[1];
+            T result = new TransactionTemplate(transactionManager).execute(status -> {
+                T order = createOrder.apply(snapshot);
+                applied[0] = write(List.of(deactivation))[0];
+                if (!applied[0]) {
+                    status.setRollbackOnly();
+                }
+                return order;
+            });
+            if (!applied[0]) {
+                conflicts.increment();
+                discard(cart);
+                throw new BusinessException("购物车已被修改，请刷新后重新结算");
+            }
+
+            carts.byRestaurant.remove(restaurantId);
+            cart.active = false;
+            cart.updatedAt = now;
+            cart.version = deactivation.version();
+            cart.flushedVersion = cart.version;
+            if (cart.dirty) {
+                cart.dirty = false;
+                carts.dirtyCarts--;
+                dirty.remove(cart);
+            }
+            checkouts.increment();
+            return result;
+        });
+    }
+
+    // ========== 过期 ==========
+
+    /**
+     * 推进时间轮，停用到期的常驻购物车（移出内存，is_active = false 随写回落库）
+     */
+    @Scheduled(fixedDelayString = "${cart.expiry.wheel-tick-ms:1000}")
+    public void advanceExpiry() {
+        List<CartState> due = new ArrayList<>();
+        synchronized (expiryWheel) {
+            expiryWheel.advance(System.currentTimeMillis(), due::add);
+        }
+        // 时间轮锁外处理，避免与客户锁形成反向加锁
+        LocalDateTime now = LocalDateTime.now();
+        for (CartState cart : due) {
+            synchronized (cart.owner) {
+                // 已淘汰、加载竞争中落选的客户，或已被替换的购物车
+                if (customers.get(cart.owner.customerId) != cart.owner
+                        || cart.owner.byRestaurant.get(cart.restaurantId) != cart) {
+                    continue;
+                }
+                if (!now.isAfter(cart.expiresAt)) {
+                    scheduleExpiry(cart);
+                    continue;
+                }
+                cart.owner.byRestaurant.remove(cart.restaurantId);
+                cart.active = false;
+                changed(cart, null, now);
+                expired.increment();
+            }
+        }
+        if (!due.isEmpty()) {
+            log.debug("购物车时间轮到期: due={}, wheel={}", due.size(), expiryWheel.size());
+        }
+    }
+
+    private void scheduleExpiry(CartState cart) {
+        long deadline = cart.expiresAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        synchronized (expiryWheel) {
+            if (expiryWheel.add(cart, deadline)) {
+                return;
+            }
+            // 已经到期：放到下一个 tick 处理
+            expiryWheel.add(cart, System.currentTimeMillis() + wheelTickMs);
+        }
+    }
+
+    // ========== 写回 ==========
+
+    /**
+     * 写回到期的脏购物车（安静 flush-quiet-ms 或已脏 max-staleness-ms）
+     */
+    @Scheduled(fixedDelayString = "${cart.store.flush-tick-ms:500}")
+    public void flushDue() {
+        long now = System.nanoTime();
+        long quietNanos = TimeUnit.MILLISECONDS.toNanos(flushQuietMs);
+        long stalenessNanos = TimeUnit.MILLISECONDS.toNanos(maxStalenessMs);
+        flush(cart -> now - cart.lastChangeNanos >= quietNanos || now - cart.firstDirtyNanos >= stalenessNanos);
+    }
+
+    /**
+     * 立即写回全部脏购物车（停机、直接读写购物车表之前调用）
+     */
+    @PreDestroy
+    public void flushAll() {
+        flush(cart -> true);
+    }
+
+    private void flush(Predicate<CartState> due) {
+        synchronized (flushLock) {
+            List<CartState> batch = new ArrayList<>();
+            for (CartState cart : dirty) {
+                if (due.test(cart)) {
+                    batch.add(cart);
+                    if (batch.size() == FLUSH_BATCH_SIZE) {
+                        writeBatch(batch);
+                        batch.clear();
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                writeBatch(batch);
+            }
+        }
+    }
+
+    /**
+     * 一个购物车的写回内容
+     *
+     * @param version         写入后的版本
+     * @param expectedVersion 数据库中应有的版本（比较并交换）
+     */
+    private record FlushRecord(CartState cart, long version, long expectedVersion, Long id, Long customerId,
+                               Long restaurantId, boolean active, LocalDateTime expiresAt, LocalDateTime createdAt,
+                               LocalDateTime updatedAt, List<ItemState> changedItems, Long[] removalKeep) {
+    }
+
+    private void writeBatch(List<CartState> carts) {
+        List<FlushRecord> records = new ArrayList<>(carts.size());
+        for (CartState cart : carts) {
+            synchronized (cart.owner) {
+                List<ItemState> changedItems = new ArrayList<>();
+                for (ItemState item : cart.items) {
+                    if (item.changedVersion > cart.flushedVersion) {
+                        changedItems.add(item.copy());
+                    }
+                }
+                Long[] keep = cart.removalVersion > cart.flushedVersion
+                        ? cart.items.stream().map(item -> item.id).toArray(Long[]::new)
+                        : null;
+                records.add(new FlushRecord(cart, cart.version, cart.flushedVersion, cart.id, cart.owner.customerId,
+                        cart.restaurantId, cart.active, cart.expiresAt, cart.createdAt, cart.updatedAt,
+                        changedItems, keep));
+                // 写回结束前，该客户的校验和结算等待（见 awaitFlush）
+                cart.owner.flushing++;
+            }
+        }
+
+        long start = System.nanoTime();
+        try {
+            boolean[] applied = writeInTransaction(records);
+            for (int i = 0; i < records.size(); i++) {
+                finish(records.get(i), applied[i], null);
+            }
+            flushes.increment();
+        } catch (Exception e) {
+            flushFailures.increment();
+            if (records.size() == 1) {
+                finish(records.get(0), false, e);
+                return;
+            }
+            log.warn("购物车批量写回失败，逐个重试 {} 个购物车: {}", records.size(), e.getMessage());
+            for (FlushRecord record : records) {
+                boolean applied;
+                try {
+                    applied = writeInTransaction(List.of(record))[0];
+                } catch (Exception single) {
+                    finish(record, false, single);
+                    continue;
+                }
+                finish(record, applied, null);
+            }
+        }
+        log.debug("购物车写回: carts={}, 耗时={}ms", records.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private boolean[] writeInTransaction(List<FlushRecord> records) {
+        return new TransactionTemplate(transactionManager).execute(status -> write(records));
+    }
+
+    /**
+     * 一个购物车写回结束（每条记录调用一次）：
+     * - 写入成功：标记已写入，写回期间没有新修改时清除脏标记
+     * - 版本比较失败：购物车已被其他节点修改或已结算，丢弃本节点未写回的修改，下次访问重新加载
+     * - 出错：保持待写入状态下次重试，连续失败 max-write-attempts 次后隔离
+     */
+    private void finish(FlushRecord record, boolean applied, Exception error) {
+        CartState cart = record.cart();
+        CustomerCarts owner = cart.owner;
+        synchronized (owner) {
+            owner.flushing--;
+            owner.notifyAll();
+
+            if (error != null) {
+                cart.writeFailures++;
+                if (cart.writeFailures >= maxWriteAttempts) {
+                    quarantined.increment();
+                    log.error("购物车连续 {} 次写回失败，已隔离并丢弃内存中的修改: cartId={}, customerId={}, error={}",
+                            cart.writeFailures, cart.id, owner.customerId, error.getMessage());
+                    discard(cart);
+                } else {
+                    log.warn("购物车写回失败，保持待写入状态: cartId={}, attempt={}, error={}",
+                            cart.id, cart.writeFailures, error.getMessage());
+                }
+                return;
+            }
+            if (!applied) {
+                conflicts.increment();
+                log.warn("购物车已被其他节点修改或已结算，丢弃本节点未写回的修改: cartId={}, customerId={}",
+                        cart.id, owner.customerId);
+                discard(cart);
+                return;
+            }
+
+            maxStalenessObservedMs.accumulate(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - cart.firstDirtyNanos));
+            cart.persisted = true;
+            cart.writeFailures = 0;
+            cart.flushedVersion = Math.max(cart.flushedVersion, record.version());
+            if (cart.version == record.version()) {
+                cart.dirty = false;
+                owner.dirtyCarts--;
+                dirty.remove(cart);
+            }
+        }
+        itemRowsWritten.add(record.changedItems().size());
+        cartsFlushed.increment();
+    }
+
+    /**
+     * 丢弃购物车的内存状态（调用方持有客户锁），客户下次访问时从数据库重新加载
+     */
+    private void discard(CartState cart) {
+        CustomerCarts owner = cart.owner;
+        if (owner.byRestaurant.get(cart.restaurantId) == cart) {
+            owner.byRestaurant.remove(cart.restaurantId);
+        }
+        if (cart.dirty) {
+            cart.dirty = false;
+            owner.dirtyCarts--;
+            dirty.remove(cart);
+        }
+        owner.stale = true;
+    }
+
+    /**
+     * 写入购物车（调用方提供事务），返回每条记录的版本比较是否成功；
+     * 商品项只为比较成功的购物车写入，此时该购物车行已被本事务锁定
+     */
+    private boolean[] write(List<FlushRecord> records) {
+        return jdbcTemplate.execute((ConnectionCallback<boolean[]>) connection -> {
+            boolean[] applied = new boolean[records.size()];
+            try (PreparedStatement carts = connection.prepareStatement(UPSERT_CART_SQL)) {
+                for (FlushRecord record : records) {
+                    carts.setLong(1, record.id());
+                    carts.setLong(2, record.customerId());
+                    carts.setLong(3, record.restaurantId());
+                    carts.setBoolean(4, record.active());
+                    carts.setTimestamp(5, Timestamp.valueOf(record.expiresAt()));
+                    carts.setTimestamp(6, Timestamp.valueOf(record.createdAt()));
+                    carts.setTimestamp(7, Timestamp.valueOf(record.updatedAt()));
+                    carts.setLong(8, record.version());
+                    carts.setLong(9, record.expectedVersion());
+                    carts.addBatch();
+                }
+                int[] counts = carts.executeBatch();
+                for (int i = 0; i < counts.length; i++) {
+                    applied[i] = counts[i] > 0;
+                }
+            }
+
+            try (PreparedStatement items = connection.prepareStatement(UPSERT_ITEM_SQL);
+                 PreparedStatement removals = connection.prepareStatement(DELETE_REMOVED_ITEMS_SQL)) {
+                boolean hasItems = false;
+                boolean hasRemovals = false;
+                for (int i = 0; i < records.size(); i++) {
+                    FlushRecord record = records.get(i);
+                    if (!applied[i]) {
+                        continue;
+                    }
+                    for (ItemState item : record.changedItems()) {
+                        items.setLong(1, item.id);
+                        items.setLong(2, record.id());
+                        items.setLong(3, item.menuItemId);
+                        items.setInt(4, item.quantity);
+                        items.setBigDecimal(5, item.priceAtAdd);
+                        items.setString(6, item.specialInstructions);
+                        items.setTimestamp(7, Timestamp.valueOf(item.createdAt));
+                        items.setTimestamp(8, Timestamp.valueOf(item.updatedAt));
+                        items.addBatch();
+                        hasItems = true;
+                    }
+
+                    if (record.removalKeep() != null) {
+                        Array keep = connection.createArrayOf("bigint", record.removalKeep());
+                        removals.setLong(1, record.id());
+                        removals.setArray(2, keep);
+                        removals.addBatch();
+                        hasRemovals = true;
+                    }
+                }
+                if (hasItems) {
+                    items.executeBatch();
+                }
+                if (hasRemovals) {
+                    removals.executeBatch();
+                }
+            }
+            return applied;
+        });
+    }
+
+    // ========== 常驻与淘汰 ==========
+
+    /**
+     * 淘汰空闲且已写回的客户；超过 max-customers 时按最近访问时间继续淘汰已写回的客户
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void evictIdle() {
+        long now = System.nanoTime();
+        long ttlNanos = TimeUnit.MINUTES.toNanos(idleTtlMinutes);
+        int before = customers.size();
+        for (CustomerCarts carts : customers.values()) {
+            if (now - carts.lastAccessNanos >= ttlNanos) {
+                tryEvict(carts);
+            }
+        }
+        int excess = customers.size() - maxCustomers;
+        if (excess > 0) {
+            customers.values().stream()
+                    .sorted(Comparator.comparingLong(carts -> carts.lastAccessNanos))
+                    .limit(excess)
+                    .toList()
+                    .forEach(this::tryEvict);
+        }
+        int evicted = before - customers.size();
+        if (evicted > 0) {
+            evictions.add(evicted);
+            log.debug("购物车存储淘汰空闲客户: evicted={}, resident={}", evicted, customers.size());
+        }
+    }
+
+    /**
+     * 购物车存储统计
+     */
+    public Map<String, Object> getStats() {
+        int residentCarts = 0;
+        for (CustomerCarts carts : customers.values()) {
+            residentCarts += carts.byRestaurant.size();
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("residentCustomers", customers.size());
+        stats.put("residentCarts", residentCarts);
+        stats.put("dirtyCarts", dirty.size());
+        stats.put("mutations", mutations.sum());
+        stats.put("loads", loads.sum());
+        stats.put("flushes", flushes.sum());
+        stats.put("cartsFlushed", cartsFlushed.sum());
+        stats.put("itemRowsWritten", itemRowsWritten.sum());
+        stats.put("flushFailures", flushFailures.sum());
+        stats.put("conflicts", conflicts.sum());
+        stats.put("quarantined", quarantined.sum());
+        stats.put("reloads", reloads.sum());
+        stats.put("maxStalenessObservedMs", maxStalenessObservedMs.get());
+        stats.put("evictions", evictions.sum());
+        stats.put("expired", expired.sum());
+        stats.put("checkouts", checkouts.sum());
+        synchronized (expiryWheel) {
+            stats.put("expiryWheelEntries", expiryWheel.size());
+        }
+        return stats;
+    }
+
+    private void tryEvict(CustomerCarts carts) {
+        synchronized (carts) {
+            // 已移出内存但尚未写回的购物车（过期）也要等写回完成
+            if (carts.dirtyCarts == 0) {
+                carts.evicted = true;
+                customers.remove(carts.customerId, carts);
+            }
+        }
+    }
+
+    private <T> T withCustomer(Long customerId, Function<CustomerCarts, T> action) {
+        while (true) {
+            CustomerCarts carts = customers.get(customerId);
+            boolean fresh = false;
+            if (carts == null) {
+                CustomerCarts loaded = load(customerId);
+                carts = customers.putIfAbsent(customerId, loaded);
+                if (carts == null) {
+                    carts = loaded;
+                    fresh = true;
+                    synchronized (loaded) {
+                        loaded.byRestaurant.values().forEach(this::scheduleExpiry);
+                    }
+                }
+            }
+            synchronized (carts) {
+                awaitFlush(carts);
+                if (!carts.evicted) {
+                    long now = System.nanoTime();
+                    if (carts.stale || !fresh
+                            && now - carts.validatedNanos >= TimeUnit.MILLISECONDS.toNanos(validateIntervalMs)) {
+                        validate(carts);
+                    }
+                    carts.lastAccessNanos = now;
+                    return action.apply(carts);
+                }
+            }
+        }
+    }
+
+    /**
+     * 等待该客户正在进行的写回结束（调用方持有客户锁，等待期间释放）
+     */
+    private static void awaitFlush(CustomerCarts carts) {
+        while (carts.flushing > 0) {
+            try {
+                carts.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("等待购物车写回时被中断", e);
+            }
+        }
+    }
+
+    /**
+     * 校验常驻购物车与数据库一致（调用方持有客户锁）：
+     * 已写入过的常驻购物车版本必须等于数据库中的版本，数据库中未过期的活跃购物车必须都在内存中；
+     * 否则重新加载，版本仍一致的常驻购物车（包括未写回的修改）和尚未写入的新购物车保留
+     */
+    private void validate(CustomerCarts carts) {
+        Long[] residentIds = carts.byRestaurant.values().stream()
+                .filter(cart -> cart.persisted)
+                .map(cart -> cart.id)
+                .toArray(Long[]::new);
+        Map<Long, Long> versions = new HashMap<>();
+        boolean[] unknown = new boolean[1];
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(VALIDATE_SQL);
+            statement.setLong(1, carts.customerId);
+            statement.setTimestamp(2, Timestamp.valueOf(LocalDateTime.now()));
+            statement.setArray(3, connection.createArrayOf("bigint", residentIds));
+            return statement;
+        }, rs -> {
+            long id = rs.getLong(1);
+            versions.put(id, rs.getLong(3));
+            // 不在内存中的活跃购物车：与加载时一样，同一餐厅只认 ID 最大的一个
+            CartState resident = carts.byRestaurant.get(rs.getLong(2));
+            if (resident == null || resident.id < id) {
+                unknown[0] = true;
+            }
+        });
+
+        boolean consistent = !carts.stale && !unknown[0];
+        for (CartState cart : carts.byRestaurant.values()) {
+            if (cart.persisted && !Long.valueOf(cart.flushedVersion).equals(versions.get(cart.id))) {
+                consistent = false;
+            }
+        }
+        carts.validatedNanos = System.nanoTime();
+        if (consistent) {
+            return;
+        }
+
+        reloads.increment();
+        Map<Long, CartState> loaded = read(carts);
+        Map<Long, CartState> kept = new HashMap<>();
+        for (CartState cart : List.copyOf(carts.byRestaurant.values())) {
+            CartState current = loaded.get(cart.restaurantId);
+            boolean keep = cart.persisted
+                    ? Long.valueOf(cart.flushedVersion).equals(versions.get(cart.id))
+                    && (current == null || current.id == cart.id)
+                    : current == null;
+            if (keep) {
+                kept.put(cart.restaurantId, cart);
+                loaded.remove(cart.restaurantId);
+            } else {
+                if (cart.dirty) {
+                    conflicts.increment();
+                    log.warn("购物车已被其他节点修改，丢弃本节点未写回的修改: cartId={}, customerId={}",
+                            cart.id, carts.customerId);
+                }
+                discard(cart);
+            }
+        }
+        carts.byRestaurant.clear();
+        carts.byRestaurant.putAll(kept);
+        carts.byRestaurant.putAll(loaded);
+        carts.stale = false;
+        loaded.values().forEach(this::scheduleExpiry);
+    }
+
+    private void changed(CartState cart, ItemState item, LocalDateTime now) {
+        long nanos = System.nanoTime();
+        cart.version++;
+        cart.updatedAt = now;
+        cart.lastChangeNanos = nanos;
+        if (item != null) {
+            item.updatedAt = now;
+            item.changedVersion = cart.version;
+        }
+        if (!cart.dirty) {
+            cart.dirty = true;
+            cart.owner.dirtyCarts++;
+            cart.firstDirtyNanos = nanos;
+            dirty.add(cart);
+        }
+        mutations.increment();
+    }
+
+    /**
+     * 一次查询加载客户的全部活跃购物车和商品项
+     */
+    private CustomerCarts load(Long customerId) {
+        loads.increment();
+        CustomerCarts carts = new CustomerCarts(customerId);
+        carts.byRestaurant.putAll(read(carts));
+        return carts;
+    }
+
+    /**
+     * 读取客户的活跃购物车（餐厅 → 购物车），版本取数据库中的写回版本
+     */
+    private Map<Long, CartState> read(CustomerCarts carts) {
+        Map<Long, CartState> byRestaurant = new LinkedHashMap<>();
+        jdbcTemplate.query(LOAD_SQL, rs -> {
+            long cartId = rs.getLong(1);
+            long restaurantId = rs.getLong(2);
+            CartState cart = byRestaurant.get(restaurantId);
+            if (cart == null || cart.id != cartId) {
+                // 同一餐厅有多个活跃购物车时保留 ID 最大的一个
+                cart = new CartState(carts, cartId, restaurantId,
+                        rs.getTimestamp(4).toLocalDateTime(), rs.getTimestamp(3).toLocalDateTime());
+                cart.updatedAt = rs.getTimestamp(5).toLocalDateTime();
+                cart.version = rs.getLong(6);
+                cart.flushedVersion = cart.version;
+                cart.persisted = true;
+                byRestaurant.put(restaurantId, cart);
+            }
+            long itemId = rs.getLong(7);
+            if (!rs.wasNull()) {
+                ItemState item = new ItemState(itemId, rs.getLong(8), rs.getInt(9), rs.getBigDecimal(10),
+                        rs.getString(11), rs.getTimestamp(12).toLocalDateTime());
+                item.updatedAt = rs.getTimestamp(13).toLocalDateTime();
+                cart.items.add(item);
+            }
+        }, carts.customerId);
+        return byRestaurant;
+    }
+
+    /**
+     * 客户的常驻购物车（读写都在该对象的锁内进行）
+     */
+    private static final class CustomerCarts {
+        final Long customerId;
+        final Map<Long, CartState> byRestaurant = new LinkedHashMap<>();
+        long lastAccessNanos = System.nanoTime();
+        int dirtyCarts;
+        boolean evicted;
+        /** 正在写回的购物车数，大于 0 时校验和结算等待 */
+        int flushing;
+        long validatedNanos = System.nanoTime();
+        /** 有购物车因冲突或隔离被丢弃，下次访问重新加载 */
+        boolean stale;
+
+        CustomerCarts(Long customerId) {
+            this.customerId = customerId;
+        }
+
+        CartState findByItem(Long cartItemId) {
+            for (CartState cart : byRestaurant.values()) {
+                if (cart.findItem(cartItemId) != null) {
+                    return cart;
+                }
+            }
+            throw new IllegalArgumentException("购物车商品不存在，ID: " + cartItemId);
+        }
+    }
+
+    private static final class CartState {
+        final CustomerCarts owner;
+        final long id;
+        final Long restaurantId;
+        final LocalDateTime createdAt;
+        final List<ItemState> items = new ArrayList<>();
+        boolean active = true;
+        LocalDateTime expiresAt;
+        LocalDateTime updatedAt;
+
+        /** 每次修改加一；flushedVersion 为最近一次提交的写回对应的版本（即数据库中的 carts.version） */
+        long version;
+        long flushedVersion;
+        /** 数据库中已有该购物车的行 */
+        boolean persisted;
+        /** 连续写回失败次数 */
+        int writeFailures;
+        /** 最近一次删除商品项时的版本，大于 flushedVersion 时写回需要删除多余的行 */
+        long removalVersion;
+        boolean dirty;
+        long firstDirtyNanos;
+        long lastChangeNanos;
+
+        CartState(CustomerCarts owner, long id, Long restaurantId, LocalDateTime createdAt, LocalDateTime expiresAt) {
+            this.owner = owner;
+            this.id = id;
+            this.restaurantId = restaurantId;
+            this.createdAt = createdAt;
+            this.updatedAt = createdAt;
+            this.expiresAt = expiresAt;
+        }
+
+        ItemState findItem(Long cartItemId) {
+            for (ItemState item : items) {
+                if (item.id == cartItemId) {
+                    return item;
+                }
+            }
+            return null;
+        }
+
+        ItemState findByMenuItem(Long menuItemId) {
+            for (ItemState item : items) {
+                if (item.menuItemId == menuItemId) {
+                    return item;
+                }
+            }
+            return null;
+        }
+
+        CartSnapshot snapshot() {
+            List<ItemSnapshot> itemSnapshots = new ArrayList<>(items.size());
+            for (ItemState item : items) {
+                itemSnapshots.add(new ItemSnapshot(item.id, item.menuItemId, item.quantity, item.priceAtAdd,
+                        item.menuVersion, item.specialInstructions, item.createdAt, item.updatedAt));
+            }
+            return new CartSnapshot(id, owner.customerId, restaurantId, active, version, expiresAt, createdAt,
+                    updatedAt, List.copyOf(itemSnapshots));
+        }
+    }
+
+    private static final class ItemState {
+        final long id;
+        final long menuItemId;
+        final BigDecimal priceAtAdd;
+        final LocalDateTime createdAt;
+        int quantity;
+        String specialInstructions;
+        LocalDateTime updatedAt;
+        long changedVersion;
+        /** 价格所属的餐厅菜单版本，未知时为 -1 */
+        long menuVersion = -1;
+
+        ItemState(long id, long menuItemId, int quantity, BigDecimal priceAtAdd, String specialInstructions,
+                  LocalDateTime createdAt) {
+            this.id = id;
+            this.menuItemId = menuItemId;
+            this.quantity = quantity;
+            this.priceAtAdd = priceAtAdd;
+            this.specialInstructions = specialInstructions;
+            this.createdAt = createdAt;
+            this.updatedAt = createdAt;
+        }
+
+        ItemState copy() {
+            ItemState copy = new ItemState(id, menuItemId, quantity, priceAtAdd, specialInstructions, createdAt);
+            copy.updatedAt = updatedAt;
+            copy.menuVersion = menuVersion;
+            return copy;
+        }
+    }
+
+    /**
+     * 从表序列按块分配 ID
+     */
+    private final class IdBlock {
+        private final String sql;
+        private long[] block = new long[0];
+        private int next;
+
+        IdBlock(String table) {
+            this.sql = "SELECT nextval(pg_get_serial_sequence('" + table + "', 'id')) FROM generate_series(1, ?)";
+        }
+
+        synchronized long next() {
+            if (next == block.length) {
+                block = jdbcTemplate.query(sql, (ResultSet rs, int row) -> rs.getLong(1), idBlockSize)
+                        .stream().mapToLong(Long::longValue).toArray();
+                next = 0;
+            }
+            return block[next++];
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package com.shydelivery.doordashsimulator.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeType;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * WebSocket 集群广播
+ *
+ * 作为 brokerChannel 的拦截器：本节点发往集群前缀（默认 /topic/delivery/、/topic/driver/、
+ * /topic/notifications/）的消息照常交给本地 SimpleBroker，同时编码后经 ClusterTransport
+ * 发给其他节点；其他节点收到后带上来源节点头重新送入自己的 brokerChannel，
+ * 由本地 SimpleBroker 投递给本节点上的订阅会话（带来源头的消息不会再次发布）。
+ *
+ * 发布是异步的：拦截器只把帧放入有界队列，发布线程每次最多取 publish-batch 帧
+ * 一次发出；队列满时丢弃并计数，不阻塞业务线程。
+ *
+ * 帧格式（文本，负载以 Base64 编码，超过 max-frame-chars 时分片）：
+ *   v1|节点ID|消息序号|分片序号|分片总数|发送时间(微秒)|contentType|负载分片|destination
+ *
+ * 除 WebSocket 消息外，也承载节点间的内部消息（例如缓存失效）：publish(topic, payload) 发出的帧
+ * destination 以 @ 开头，其他节点收到后交给 subscribe(topic, listener) 注册的监听器，不进入 brokerChannel。
+ * 与 WebSocket 广播一样是尽力投递，依赖它的一方需要有兜底（例如缓存最长有效期）。
+ */
+@Slf4j
+@Service
+public class ClusterBroadcastService implements ChannelInterceptor {
+
+    /** 从其他节点转入的消息带此头，避免再次发布 */
+    public static final String ORIGIN_HEADER = "clusterOrigin";
+
+    private static final String VERSION = "v1";
+    private static final String INTERNAL_PREFIX = "@";
+    private static final int MAX_DESTINATION_LENGTH = 512;
+    private static final long PARTIAL_TTL_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final ClusterTransport transport;
+    private final MessageChannel brokerChannel;
+
+    @Value("${websocket.cluster.prefixes:/topic/delivery/,/topic/driver/,/topic/notifications/}")
+    private List<String> prefixes;
+
+    @Value("${websocket.cluster.publish-queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${websocket.cluster.publish-batch:200}")
+    private int publishBatch;
+
+    @Value("${websocket.cluster.max-frame-chars:6000}")
+    private int maxFrameChars;
+
+    private final String nodeId = UUID.randomUUID().toString().substring(0, 8);
+    private final AtomicLong sequence = new AtomicLong();
+    private BlockingQueue<String> outbound;
+    private final Map<String, Partial> partials = new ConcurrentHashMap<>();
+    private final Map<String, Consumer<String>> listeners = new ConcurrentHashMap<>();
+
+    private volatile boolean running;
+    private Thread publisher;
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder publishedFrames = new LongAdder();
+    private final LongAdder publishBatches = new LongAdder();
+    private final LongAdder publishErrors = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder receivedFrames = new LongAdder();
+    private final LongAdder latencyMicros = new LongAdder();
+    private final AtomicLong maxLatencyMicros = new AtomicLong();
+
+    /**
+     * brokerChannel 依赖本拦截器（见 WebSocketConfig），这里延迟注入以打破循环
+     */
+    public ClusterBroadcastService(ObjectProvider<ClusterTransport> transport,
+                                   @Lazy @Qualifier("brokerChannel") MessageChannel brokerChannel) {
+        this.transport = transport.getIfAvailable();
+        this.brokerChannel = brokerChannel;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (transport == null) {
+            log.info("未配置集群传输，WebSocket 广播仅在本节点投递");
+            return;
+        }
+        outbound = new ArrayBlockingQueue<>(queueCapacity);
+        running = true;
+        publisher = new Thread(this::publishLoop, "ws-cluster-publisher");
+        publisher.setDaemon(true);
+        publisher.start();
+        transport.start(this::onFrame);
+        log.info("WebSocket 集群广播已启动: node={}, transport={}, prefixes={}", nodeId, transport.name(), prefixes);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (transport != null) {
+            transport.stop();
+        }
+        if (publisher != null) {
+            publisher.interrupt();
+        }
+    }
+
+    /**
+     * 拦截本节点发往 brokerChannel 的消息
+     */
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        if (!running || message.getHeaders().containsKey(ORIGIN_HEADER)
+                || SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.MESSAGE
+                || !(message.getPayload() instanceof byte[] payload)) {
+            return message;
+        }
+        String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        if (destination == null || destination.length() > MAX_DESTINATION_LENGTH || !isClustered(destination)) {
+            return message;
+        }
+        Object contentType = message.getHeaders().get(MessageHeaders.CONTENT_TYPE);
+        enqueue(destination, contentType != null ? contentType.toString() : "", payload);
+        return message;
+    }
+
+    /**
+     * 向其他节点发送一条内部消息（未配置集群传输时忽略）
+     */
+    public void publish(String topic, String payload) {
+        if (running) {
+            enqueue(INTERNAL_PREFIX + topic, "", payload.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * 接收其他节点发来的内部消息（在传输的接收线程上回调，监听器应尽快返回）
+     */
+    public void subscribe(String topic, Consumer<String> listener) {
+        listeners.put(topic, listener);
+    }
+
+    /**
+     * 集群广播统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long receivedCount = received.sum();
+        stats.put("node", nodeId);
+        stats.put("transport", transport != null ? transport.name() : "none");
+        stats.put("queueDepth", outbound != null ? outbound.size() : 0);
+        stats.put("published", published.sum());
+        stats.put("publishedFrames", publishedFrames.sum());
+        stats.put("publishBatches", publishBatches.sum());
+        stats.put("publishErrors", publishErrors.sum());
+        stats.put("dropped", dropped.sum());
+        stats.put("received", receivedCount);
+        stats.put("receivedFrames", receivedFrames.sum());
+        stats.put("pendingPartials", partials.size());
+        stats.put("avgLatencyMicros", receivedCount > 0 ? latencyMicros.sum() / receivedCount : 0L);
+        stats.put("maxLatencyMicros", maxLatencyMicros.get());
+        return stats;
+    }
+
+    private boolean isClustered(String destination) {
+        for (String prefix : prefixes) {
+            if (destination.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void enqueue(String destination, String contentType, byte[] payload) {
+        for (String frame : encode(destination, contentType, payload)) {
+            if (!outbound.offer(frame)) {
+                dropped.increment();
+                log.warn("集群广播队列已满，丢弃消息: destination={}", destination);
+                return;
+            }
+        }
+        published.increment();
+    }
+
+    private List<String> encode(String destination, String contentType, byte[] payload) {
+        String body = Base64.getEncoder().encodeToString(payload);
+        long messageId = sequence.incrementAndGet();
+        long sentAt = currentMicros();
+        int total = Math.max(1, (body.length() + maxFrameChars - 1) / maxFrameChars);
+        List<String> frames = new ArrayList<>(total);
+        for (int i = 0; i < total; i++) {
+            String chunk = body.substring(i * maxFrameChars, Math.min(body.length(), (i + 1) * maxFrameChars));
+            frames.add(VERSION + '|' + nodeId + '|' + messageId + '|' + i + '|' + total + '|' + sentAt + '|'
+                    + contentType + '|' + chunk + '|' + destination);
+        }
+        return frames;
+    }
+
+    private void publishLoop() {
+        List<String> batch = new ArrayList<>(publishBatch);
+        while (running) {
+            try {
+                String first = outbound.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                outbound.drainTo(batch, publishBatch - 1);
+                try {
+                    transport.publish(batch);
+                    publishedFrames.add(batch.size());
+                    publishBatches.increment();
+                } catch (Exception e) {
+                    publishErrors.increment();
+                    log.warn("集群广播发布失败，丢弃 {} 帧: {}", batch.size(), e.getMessage());
+                }
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * 处理传输层收到的一帧（运行在传输的接收线程上）
+     */
+    private void onFrame(String frame) {
+        String[] parts = frame.split("\\|", 9);
+        if (parts.length != 9 || !VERSION.equals(parts[0]) || nodeId.equals(parts[1])) {
+            return;
+        }
+        receivedFrames.increment();
+        int seq = Integer.parseInt(parts[3]);
+        int total = Integer.parseInt(parts[4]);
+
+        String body;
+        if (total == 1) {
+            body = parts[7];
+        } else {
+            String key = parts[1] + ':' + parts[2];
+            Partial partial = partials.computeIfAbsent(key, k -> new Partial(total));
+            partial.chunks[seq] = parts[7];
+            if (++partial.received < total) {
+                evictStalePartials();
+                return;
+            }
+            partials.remove(key);
+            body = String.join("", partial.chunks);
+        }
+
+        if (parts[8].startsWith(INTERNAL_PREFIX)) {
+            Consumer<String> listener = listeners.get(parts[8].substring(INTERNAL_PREFIX.length()));
+            if (listener != null) {
+                listener.accept(new String(Base64.getDecoder().decode(body), StandardCharsets.UTF_8));
+            }
+        } else {
+            SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+            accessor.setDestination(parts[8]);
+            if (!parts[6].isEmpty()) {
+                accessor.setContentType(MimeType.valueOf(parts[6]));
+            }
+            accessor.setHeader(ORIGIN_HEADER, parts[1]);
+            brokerChannel.send(MessageBuilder.createMessage(Base64.getDecoder().decode(body), accessor.getMessageHeaders()));
+        }
+
+        long latency = Math.max(0, currentMicros() - Long.parseLong(parts[5]));
+        received.increment();
+        latencyMicros.add(latency);
+        maxLatencyMicros.accumulateAndGet(latency, Math::max);
+    }
+
+    private void evictStalePartials() {
+        long cutoff = System.nanoTime() - PARTIAL_TTL_NANOS;
+        Iterator<Partial> iterator = partials.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().createdAtNanos - cutoff < 0) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static long currentMicros() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000 + now.getNano() / 1000;
+    }
+
+    /**
+     * 分片消息的接收缓冲（只在接收线程上访问）
+     */
+    private static class Partial {
+        final String[] chunks;
+        final long createdAtNanos = System.nanoTime();
+        int received;
+
+        Partial(int total) {
+            chunks = new String[total];
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.shydelivery.doordashsimulator.service;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 集群消息传输
+ *
+ * ClusterBroadcastService 通过它把本节点的 WebSocket 广播发给其他节点。
+ * 帧是已编码的文本（见 ClusterBroadcastService），传输层只负责原样收发。
+ * 实现按 websocket.cluster.transport 选择（默认 none）；没有实现时只在本节点投递。
+ */
+public interface ClusterTransport {
+
+    /**
+     * 传输名称（统计用）
+     */
+    String name();
+
+    /**
+     * 发送一批帧（按顺序）；失败时抛出异常，由调用方计数
+     */
+    void publish(List<String> frames) throws Exception;
+
+    /**
+     * 开始接收帧（包括本节点自己发出的帧，由调用方过滤）
+     */
+    void start(Consumer<String> receiver);
+
+    /**
+     * 停止接收
+     */
+    void stop();
+}
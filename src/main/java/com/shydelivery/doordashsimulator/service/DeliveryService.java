@@ -33,6 +33,8 @@ public class DeliveryService {
     private final OrderRepository orderRepository;
     private final AuthorizationService authorizationService;
     private final DeliveryFeeCalculator feeCalculator;  // Phase 2: 新增
+    private final RankingScoreService rankingScoreService;
+    private final DriverStatsService driverStatsService;
     
     /**
      * 获取可配送的订单列表 (DRIVER 角色)
@@ -133,12 +135,8 @@ public class DeliveryService {
     public DeliveryDTO markAsPickedUp(Long orderId, String driverEmail) {
         log.info("标记订单已取餐: orderId={}, driver={}", orderId, driverEmail);
         
-        // 验证配送员分配
-        authorizationService.verifyDriverAssignment(orderId, driverEmail);
-        
-        // 获取订单
-        Order order = orderRepository.findById(orderId)
-            .orElseThrow(() -> new ResourceNotFoundException("订单不存在，ID: " + orderId));
+        // 验证配送员分配，返回已加载的订单
+        Order order = authorizationService.loadOrderForDriver(orderId, driverEmail);
         
         // 验证状态（必须是 READY_FOR_PICKUP）
         if (order.getStatus() != OrderStatus.READY_FOR_PICKUP) {
@@ -168,12 +166,8 @@ public class DeliveryService {
     public DeliveryDTO markAsInTransit(Long orderId, String driverEmail) {
         log.info("标记订单配送中: orderId={}, driver={}", orderId, driverEmail);
         
-        // 验证配送员分配
-        authorizationService.verifyDriverAssignment(orderId, driverEmail);
-        
-        // 获取订单
-        Order order = orderRepository.findById(orderId)
-            .orElseThrow(() -> new ResourceNotFoundException("订单不存在，ID: " + orderId));
+        // 验证配送员分配，返回已加载的订单
+        Order order = authorizationService.loadOrderForDriver(orderId, driverEmail);
         
         // 验证状态（必须是 PICKED_UP）
         if (order.getStatus() != OrderStatus.PICKED_UP) {
@@ -202,12 +196,8 @@ public class DeliveryService {
     public DeliveryDTO markAsDelivered(Long orderId, String driverEmail) {
         log.info("标记订单已送达: orderId={}, driver={}", orderId, driverEmail);
         
-        // 验证配送员分配
-        authorizationService.verifyDriverAssignment(orderId, driverEmail);
-        
-        // 获取订单
-        Order order = orderRepository.findById(orderId)
-            .orElseThrow(() -> new ResourceNotFoundException("订单不存在，ID: " + orderId));
+        // 验证配送员分配，返回已加载的订单
+        Order order = authorizationService.loadOrderForDriver(orderId, driverEmail);
         
         // 验证状态（必须是 IN_TRANSIT）
         if (order.getStatus() != OrderStatus.IN_TRANSIT) {
@@ -220,6 +210,8 @@ public class DeliveryService {
         
         // 保存
         Order saved = orderRepository.save(order);
+        rankingScoreService.recordOrder(saved.getRestaurant().getId());
+        driverStatsService.recordDelivered(saved);
         log.info("订单 {} 已送达", orderId);
         
         return convertToDeliveryDTO(saved);
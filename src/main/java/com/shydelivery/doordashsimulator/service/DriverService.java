@@ -12,6 +12,7 @@ import com.shydelivery.doordashsimulator.repository.DriverRepository;
 import com.shydelivery.doordashsimulator.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -121,14 +122,26 @@ public class DriverService {
     public DriverDTO updateLocation(UpdateDriverLocationRequest request, String userEmail) {
         Driver driver = findDriverByUserEmail(userEmail);
         
-        driver.updateLocation(request.getLatitude(), request.getLongitude());
-        
-        Driver updated = driverRepository.save(driver);
+        // 定向 UPDATE，不回写整行（实体保持未修改，提交时不会产生整行更新）
+        driverRepository.updateLocation(driver.getId(), request.getLatitude(), request.getLongitude());
         
         log.debug("配送员位置已更新: driverId={}, lat={}, lon={}", 
             driver.getId(), request.getLatitude(), request.getLongitude());
         
-        return convertToDTO(updated);
+        DriverDTO dto = convertToDTO(driver);
+        dto.setCurrentLatitude(request.getLatitude());
+        dto.setCurrentLongitude(request.getLongitude());
+        return dto;
+    }
+    
+    /**
+     * 按配送员ID更新位置（WebSocket 位置上报），只写位置列
+     */
+    @Transactional
+    public void updateLocation(Long driverId, BigDecimal latitude, BigDecimal longitude) {
+        if (driverRepository.updateLocation(driverId, latitude, longitude) == 0) {
+            throw new BusinessException("配送员不存在");
+        }
     }
     
     /**
@@ -137,6 +150,7 @@ public class DriverService {
     public DriverEarningsDTO getEarnings(String userEmail) {
         Driver driver = findDriverByUserEmail(userEmail);
         
+        // 累计收益和配送数已冗余在配送员表上
         BigDecimal averageEarnings = BigDecimal.ZERO;
         if (driver.getTotalDeliveries() > 0) {
             averageEarnings = driver.getTotalEarnings()
@@ -155,6 +169,25 @@ public class DriverService {
             .build();
     }
     
+    /**
+     * 配送员排行榜
+     * 
+     * 统计数据已冗余在配送员表上，排行榜为一次索引有序扫描（LIMIT N）
+     * 
+     * @param sortBy rating（评分，默认）/ deliveries（配送量）
+     * @param limit 返回条数（1 - 100）
+     */
+    @Transactional(readOnly = true)
+    public List<DriverDTO> getLeaderboard(String sortBy, Integer limit) {
+        int size = limit != null && limit > 0 ? Math.min(limit, 100) : 10;
+        List<Driver> drivers = "deliveries".equalsIgnoreCase(sortBy)
+            ? driverRepository.findDeliveryLeaderboard(PageRequest.of(0, size))
+            : driverRepository.findRatingLeaderboard(PageRequest.of(0, size));
+        return drivers.stream()
+            .map(this::convertToDTO)
+            .collect(Collectors.toList());
+    }
+    
     /**
      * 获取所有在线配送员
      */
@@ -188,14 +221,12 @@ public class DriverService {
     // ==================== Helper Methods ====================
     
     /**
-     * 根据用户邮箱查找配送员
+     * 根据用户邮箱查找配送员（单次查询，同时加载用户信息）
      */
     private Driver findDriverByUserEmail(String email) {
-        User user = userRepository.findByEmail(email)
-            .orElseThrow(() -> new BusinessException("用户不存在"));
-        
-        return driverRepository.findByUser(user)
-            .orElseThrow(() -> new BusinessException("该用户不是配送员"));
+        return driverRepository.findByUserEmail(email)
+            .orElseThrow(() -> new BusinessException(
+                userRepository.existsByEmail(email) ? "该用户不是配送员" : "用户不存在"));
     }
     
     /**
@@ -242,8 +273,12 @@ public class DriverService {
             .currentLongitude(driver.getCurrentLongitude())
             .rating(driver.getRating())
             .totalDeliveries(driver.getTotalDeliveries())
-            .completedDeliveries(driver.getTotalDeliveries())  // TODO: 从实体获取
-            .totalEarnings(BigDecimal.ZERO)  // TODO: 从实体获取
+            .completedDeliveries(driver.getTotalDeliveries())
+            .cancelledDeliveries(driver.getCancelledDeliveries())
+            .completionRate(driver.getCompletionRate())
+            .averageDeliveryMinutes(driver.getAverageDeliveryMinutes())
+            .onTimeRate(driver.getOnTimeRate())
+            .totalEarnings(driver.getTotalEarnings())
             .availableBalance(BigDecimal.ZERO)
             .isActive(true)
             .createdAt(driver.getCreatedAt())
@@ -0,0 +1,251 @@
+package com.shydelivery.doordashsimulator.service;
+
+import com.shydelivery.doordashsimulator.entity.Order;
+import com.shydelivery.doordashsimulator.entity.Order.OrderStatus;
+import com.shydelivery.doordashsimulator.repository.DriverRepository;
+import com.shydelivery.doordashsimulator.repository.OrderRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * 配送员统计服务
+ *
+ * 配送员表上冗余存储评分、完成/取消数、配送时长、准时率和收益（见 Driver），
+ * 个人资料和排行榜读取时只需一次单行/索引查询。
+ *
+ * 增量更新（与业务写操作在同一事务内，单条原子 UPDATE）：
+ * - 订单送达: 完成数、配送时长、准时、配送费
+ * - 已接单的订单被取消: 取消数
+ * - 评价的配送评分创建/修改/删除: 评分
+ *
+ * 批量重建：每天凌晨 3:15 通过服务端游标按配送员顺序流式读取订单历史，
+ * 逐个配送员汇总，与同一快照中的存储值比较后分批写入修正量；
+ * 内存占用与订单总量无关（只保存每个配送员一份存储值）。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DriverStatsService {
+
+    private final DriverRepository driverRepository;
+    private final OrderRepository orderRepository;
+    private final PlatformTransactionManager transactionManager;
+
+    /** 每个写事务最多修正的配送员数 */
+    private static final int CORRECTION_CHUNK_SIZE = 200;
+
+    /**
+     * 订单送达
+     */
+    public void recordDelivered(Order order) {
+        if (order.getDriver() == null) {
+            return;
+        }
+        DeliveryStats delta = new DeliveryStats();
+        delta.addDelivered(order.getPickedUpAt(), order.getActualDelivery(),
+                order.getEstimatedDelivery(), order.getDeliveryFee());
+        driverRepository.recordCompletedDelivery(order.getDriver().getId(),
+                delta.timed, delta.minutes, delta.estimated, delta.onTime, delta.earnings);
+    }
+
+    /**
+     * 已接单的订单被取消
+     */
+    public void recordCancelled(Order order) {
+        if (order.getDriver() != null) {
+            driverRepository.recordCancelledDelivery(order.getDriver().getId());
+        }
+    }
+
+    /**
+     * 配送评分变化（创建: oldRating = null；删除: newRating = null）
+     */
+    public void recordRatingChange(Order order, Integer oldRating, Integer newRating) {
+        if (order.getDriver() == null || Objects.equals(oldRating, newRating)) {
+            return;
+        }
+        int countDelta = (newRating != null ? 1 : 0) - (oldRating != null ? 1 : 0);
+        long sumDelta = (newRating != null ? newRating : 0) - (oldRating != null ? oldRating : 0);
+        driverRepository.applyRatingDelta(order.getDriver().getId(), countDelta, sumDelta);
+    }
+
+    /**
+     * 流式重建全部配送员统计（每天凌晨 3:15）
+     *
+     * 读事务使用 REPEATABLE READ：订单历史与配送员当前存储值来自同一快照，
+     * 增量更新与业务写操作同事务提交，因此快照中二者一致。
+     * 写入的是修正量（重算值 - 快照存储值），每 CORRECTION_CHUNK_SIZE 个配送员一个独立短事务，
+     * 快照之后提交的增量不会被覆盖，行锁也只在各自的小事务内持有。
+     */
+    @Scheduled(cron = "0 15 3 * * ?")
+    public void rebuildAll() {
+        long start = System.currentTimeMillis();
+        TransactionTemplate snapshotTransaction = new TransactionTemplate(transactionManager);
+        snapshotTransaction.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        snapshotTransaction.setReadOnly(true);
+        TransactionTemplate chunkTransaction = new TransactionTemplate(transactionManager);
+        chunkTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        try {
+            long[] counters = snapshotTransaction.execute(status -> {
+                Map<Long, DeliveryStats> stored = new HashMap<>();
+                for (Object[] row : driverRepository.findStatsRows()) {
+                    stored.put((Long) row[0], DeliveryStats.fromStored(row));
+                }
+                List<Map.Entry<Long, DeliveryStats>> corrections = new ArrayList<>();
+                long rows = 0;
+                long corrected = 0;
+                try (Stream<Object[]> stream = orderRepository.streamDriverOrderRows()) {
+                    Long currentDriver = null;
+                    DeliveryStats stats = new DeliveryStats();
+                    Iterator<Object[]> iterator = stream.iterator();
+                    while (iterator.hasNext()) {
+                        Object[] row = iterator.next();
+                        rows++;
+                        Long driverId = (Long) row[0];
+                        if (!driverId.equals(currentDriver)) {
+                            if (currentDriver != null) {
+                                addCorrection(corrections, currentDriver, stats, stored);
+                                if (corrections.size() >= CORRECTION_CHUNK_SIZE) {
+                                    corrected += flush(chunkTransaction, corrections);
+                                }
+                            }
+                            currentDriver = driverId;
+                            stats = new DeliveryStats();
+                        }
+                        if (row[1] == OrderStatus.DELIVERED) {
+                            stats.addDelivered((LocalDateTime) row[2], (LocalDateTime) row[3],
+                                    (LocalDateTime) row[4], (BigDecimal) row[5]);
+                        } else {
+                            stats.cancelled++;
+                        }
+                        if (row[6] != null) {
+                            stats.ratingCount++;
+                            stats.ratingSum += (Integer) row[6];
+                        }
+                    }
+                    if (currentDriver != null) {
+                        addCorrection(corrections, currentDriver, stats, stored);
+                    }
+                }
+                corrected += flush(chunkTransaction, corrections);
+                return new long[]{rows, stored.size(), corrected};
+            });
+            log.info("配送员统计重建完成: orders={}, drivers={}, corrected={}, 耗时={}ms",
+                    counters[0], counters[1], counters[2], System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("配送员统计重建失败: {}", e.getMessage());
+        }
+    }
+
+    private static void addCorrection(List<Map.Entry<Long, DeliveryStats>> corrections, Long driverUserId,
+                                      DeliveryStats recomputed, Map<Long, DeliveryStats> stored) {
+        DeliveryStats snapshot = stored.get(driverUserId);
+        if (snapshot == null) {
+            return;
+        }
+        DeliveryStats delta = recomputed.minus(snapshot);
+        if (!delta.isZero()) {
+            corrections.add(Map.entry(driverUserId, delta));
+        }
+    }
+
+    private int flush(TransactionTemplate chunkTransaction, List<Map.Entry<Long, DeliveryStats>> corrections) {
+        if (corrections.isEmpty()) {
+            return 0;
+        }
+        Integer written = chunkTransaction.execute(status -> {
+            int count = 0;
+            for (Map.Entry<Long, DeliveryStats> correction : corrections) {
+                DeliveryStats delta = correction.getValue();
+                count += driverRepository.applyStatsCorrection(correction.getKey(), delta.completed,
+                        delta.cancelled, delta.timed, delta.minutes, delta.estimated, delta.onTime,
+                        delta.earnings, delta.ratingCount, delta.ratingSum);
+            }
+            return count;
+        });
+        corrections.clear();
+        return written != null ? written : 0;
+    }
+
+    /**
+     * 单个配送员的统计累加器（增量更新时也用于计算单次配送的差值）
+     */
+    private static class DeliveryStats {
+        int completed;
+        int cancelled;
+        int timed;
+        long minutes;
+        int estimated;
+        int onTime;
+        BigDecimal earnings = BigDecimal.ZERO;
+        int ratingCount;
+        long ratingSum;
+
+        void addDelivered(LocalDateTime pickedUpAt, LocalDateTime deliveredAt,
+                          LocalDateTime estimatedAt, BigDecimal deliveryFee) {
+            completed++;
+            if (pickedUpAt != null && deliveredAt != null) {
+                timed++;
+                minutes += Math.max(0, Duration.between(pickedUpAt, deliveredAt).toMinutes());
+            }
+            if (estimatedAt != null && deliveredAt != null) {
+                estimated++;
+                if (!deliveredAt.isAfter(estimatedAt)) {
+                    onTime++;
+                }
+            }
+            if (deliveryFee != null) {
+                earnings = earnings.add(deliveryFee);
+            }
+        }
+
+        static DeliveryStats fromStored(Object[] row) {
+            DeliveryStats stats = new DeliveryStats();
+            stats.completed = (Integer) row[1];
+            stats.cancelled = (Integer) row[2];
+            stats.timed = (Integer) row[3];
+            stats.minutes = (Long) row[4];
+            stats.estimated = (Integer) row[5];
+            stats.onTime = (Integer) row[6];
+            stats.earnings = row[7] != null ? (BigDecimal) row[7] : BigDecimal.ZERO;
+            stats.ratingCount = (Integer) row[8];
+            stats.ratingSum = (Long) row[9];
+            return stats;
+        }
+
+        DeliveryStats minus(DeliveryStats other) {
+            DeliveryStats delta = new DeliveryStats();
+            delta.completed = completed - other.completed;
+            delta.cancelled = cancelled - other.cancelled;
+            delta.timed = timed - other.timed;
+            delta.minutes = minutes - other.minutes;
+            delta.estimated = estimated - other.estimated;
+            delta.onTime = onTime - other.onTime;
+            delta.earnings = earnings.subtract(other.earnings);
+            delta.ratingCount = ratingCount - other.ratingCount;
+            delta.ratingSum = ratingSum - other.ratingSum;
+            return delta;
+        }
+
+        boolean isZero() {
+            return completed == 0 && cancelled == 0 && timed == 0 && minutes == 0 && estimated == 0
+                    && onTime == 0 && earnings.signum() == 0 && ratingCount == 0 && ratingSum == 0;
+        }
+    }
+}
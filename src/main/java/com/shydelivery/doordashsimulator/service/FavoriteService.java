@@ -270,7 +270,7 @@ public class FavoriteService {
                 .minimumOrder(restaurant.getMinimumOrder())
                 .imageUrl(null) // Restaurant 实体没有 imageUrl 字段
                 .averageRating(restaurant.getRating() != null ? restaurant.getRating().doubleValue() : 0.0)
-                .reviewCount(0) // 需要从 Review 表查询，暂时设为0
+                .reviewCount(restaurant.getReviewCount())
                 .isActive(restaurant.getIsActive())
                 .note(favorite.getNote())
                 .favoritedAt(favorite.getCreatedAt())
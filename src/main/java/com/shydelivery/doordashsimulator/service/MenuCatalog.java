@@ -0,0 +1,257 @@
+package com.shydelivery.doordashsimulator.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 餐厅菜单快照（按菜单版本号缓存）
+ *
+ * - restaurants.menu_version 在菜品新增/修改/删除的同一事务中加一（MenuItemService 调用 menuChanged），
+ *   版本号相同即菜单内容相同
+ * - 每个餐厅缓存一份不可变快照：版本号 + 全部菜品的展示和定价字段，一条语句同时读出版本号和菜品
+ * - 本节点的菜单修改提交后立即丢弃快照；其他节点的修改最迟 revalidate-ms 后发现：
+ *   到期时只查询一个整数版本号，未变化则继续使用快照，变化才重新加载
+ * - 消费方记录取价时的版本号（例如购物车商品项），之后一次整数比较即可判断价格和供应状态是否可能变化，
+ *   只有版本变化时才逐项比较
+ * - 下单等需要最新菜单的场景用 getCurrent，每次都校验版本号
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MenuCatalog {
+
+    private static final String LOAD_SQL =
+            "SELECT r.menu_version, m.id, m.name, m.description, m.price, m.is_available, m.image_url " +
+            "FROM restaurants r LEFT JOIN menu_items m ON m.restaurant_id = r.id WHERE r.id = ? ORDER BY m.id";
+
+    private static final String VERSION_SQL = "SELECT menu_version FROM restaurants WHERE id = ?";
+
+    private static final String BUMP_SQL = "UPDATE restaurants SET menu_version = menu_version + 1 WHERE id = ?";
+
+    private static final String ITEM_RESTAURANT_SQL = "SELECT restaurant_id FROM menu_items WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${menu.catalog.revalidate-ms:2000}")
+    private long revalidateMs;
+
+    @Value("${menu.catalog.idle-ttl-minutes:30}")
+    private long idleTtlMinutes;
+
+    private final Map<Long, Entry> snapshots = new ConcurrentHashMap<>();
+
+    /** 菜品 → 餐厅（菜品不会更换餐厅，ID 不复用，可以一直缓存） */
+    private final Map<Long, Long> itemRestaurants = new ConcurrentHashMap<>();
+
+    /** 每丢弃一次快照加一；加载期间发生过丢弃时，加载结果在下次访问时必须先校验版本号 */
+    private final AtomicLong invalidationCount = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder versionBumps = new LongAdder();
+
+    /**
+     * 菜单快照（不可变）
+     */
+    public record MenuSnapshot(Long restaurantId, long version, Map<Long, MenuItemView> items) {
+
+        public MenuItemView item(Long menuItemId) {
+            return items.get(menuItemId);
+        }
+    }
+
+    /**
+     * 菜品的展示和定价字段
+     */
+    public record MenuItemView(Long id, String name, String description, BigDecimal price,
+                               boolean available, String imageUrl) {
+    }
+
+    private static final class Entry {
+        final MenuSnapshot snapshot;
+        volatile long checkedNanos;
+        volatile long lastAccessNanos;
+        volatile boolean verified;
+
+        Entry(MenuSnapshot snapshot, long now, boolean verified) {
+            this.snapshot = snapshot;
+            this.checkedNanos = now;
+            this.lastAccessNanos = now;
+            this.verified = verified;
+        }
+    }
+
+    // ========== 读取 ==========
+
+    /**
+     * 餐厅菜单快照（最多落后其他节点的修改 revalidate-ms），餐厅不存在时返回 null
+     */
+    public MenuSnapshot get(Long restaurantId) {
+        long now = System.nanoTime();
+        Entry entry = snapshots.get(restaurantId);
+        if (entry != null) {
+            entry.lastAccessNanos = now;
+            if (entry.verified && now - entry.checkedNanos < TimeUnit.MILLISECONDS.toNanos(revalidateMs)) {
+                hits.increment();
+                return entry.snapshot;
+            }
+        }
+        return revalidate(restaurantId, entry, now);
+    }
+
+    /**
+     * 最新的餐厅菜单快照（每次校验版本号：一条只读一个整数的查询），餐厅不存在时返回 null
+     */
+    public MenuSnapshot getCurrent(Long restaurantId) {
+        long now = System.nanoTime();
+        Entry entry = snapshots.get(restaurantId);
+        if (entry != null) {
+            entry.lastAccessNanos = now;
+        }
+        return revalidate(restaurantId, entry, now);
+    }
+
+    /**
+     * 菜品所属餐厅 ID，菜品不存在时返回 null
+     */
+    public Long restaurantOf(Long menuItemId) {
+        Long restaurantId = itemRestaurants.get(menuItemId);
+        if (restaurantId != null) {
+            return restaurantId;
+        }
+        List<Long> rows = jdbcTemplate.queryForList(ITEM_RESTAURANT_SQL, Long.class, menuItemId);
+        if (rows.isEmpty()) {
+            return null;
+        }
+        itemRestaurants.put(menuItemId, rows.get(0));
+        return rows.get(0);
+    }
+
+    // ========== 修改 ==========
+
+    /**
+     * 菜单已修改：在修改菜品的事务中把餐厅菜单版本号加一，事务提交后丢弃本节点的快照
+     */
+    public void menuChanged(Long restaurantId) {
+        jdbcTemplate.update(BUMP_SQL, restaurantId);
+        versionBumps.increment();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidate(restaurantId);
+                }
+            });
+        } else {
+            invalidate(restaurantId);
+        }
+    }
+
+    private void invalidate(Long restaurantId) {
+        invalidationCount.incrementAndGet();
+        if (snapshots.remove(restaurantId) != null) {
+            invalidations.increment();
+        }
+    }
+
+    // ========== 校验与加载 ==========
+
+    private MenuSnapshot revalidate(Long restaurantId, Entry entry, long now) {
+        if (entry != null) {
+            List<Long> rows = jdbcTemplate.queryForList(VERSION_SQL, Long.class, restaurantId);
+            if (rows.isEmpty()) {
+                snapshots.remove(restaurantId, entry);
+                return null;
+            }
+            revalidations.increment();
+            if (rows.get(0) == entry.snapshot.version()) {
+                entry.checkedNanos = now;
+                entry.verified = true;
+                return entry.snapshot;
+            }
+        }
+        return load(restaurantId, now);
+    }
+
+    private MenuSnapshot load(Long restaurantId, long now) {
+        long invalidationsBefore = invalidationCount.get();
+        long[] version = {-1};
+        Map<Long, MenuItemView> items = new LinkedHashMap<>();
+        jdbcTemplate.query(LOAD_SQL, rs -> {
+            version[0] = rs.getLong(1);
+            long id = rs.getLong(2);
+            if (!rs.wasNull()) {
+                items.put(id, new MenuItemView(id, rs.getString(3), rs.getString(4), rs.getBigDecimal(5),
+                        rs.getBoolean(6), rs.getString(7)));
+            }
+        }, restaurantId);
+        if (version[0] < 0) {
+            snapshots.remove(restaurantId);
+            return null;
+        }
+        loads.increment();
+
+        MenuSnapshot snapshot = new MenuSnapshot(restaurantId, version[0], Collections.unmodifiableMap(items));
+        for (Long menuItemId : items.keySet()) {
+            itemRestaurants.put(menuItemId, restaurantId);
+        }
+        // 加载期间有菜单修改提交：读到的可能是修改前的菜单，先放入但下次访问时校验版本号
+        Entry loaded = new Entry(snapshot, now, invalidationCount.get() == invalidationsBefore);
+        snapshots.merge(restaurantId, loaded,
+                (current, candidate) -> current.snapshot.version() > candidate.snapshot.version() ? current : candidate);
+        return snapshot;
+    }
+
+    // ========== 淘汰与统计 ==========
+
+    /**
+     * 淘汰长时间未访问的餐厅菜单
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void evictIdle() {
+        long now = System.nanoTime();
+        long ttlNanos = TimeUnit.MINUTES.toNanos(idleTtlMinutes);
+        snapshots.forEach((restaurantId, entry) -> {
+            if (now - entry.lastAccessNanos >= ttlNanos && snapshots.remove(restaurantId, entry)) {
+                entry.snapshot.items().keySet().forEach(itemRestaurants::remove);
+            }
+        });
+    }
+
+    /**
+     * 菜单快照统计
+     */
+    public Map<String, Object> getStats() {
+        int items = 0;
+        for (Entry entry : snapshots.values()) {
+            items += entry.snapshot.items().size();
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("restaurants", snapshots.size());
+        stats.put("menuItems", items);
+        stats.put("hits", hits.sum());
+        stats.put("revalidations", revalidations.sum());
+        stats.put("loads", loads.sum());
+        stats.put("invalidations", invalidations.sum());
+        stats.put("versionBumps", versionBumps.sum());
+        return stats;
+    }
+}
@@ -22,6 +22,8 @@ import java.util.stream.Collectors;
  * RBAC 权限模型:
  * - PUBLIC: 查看餐厅的可用菜单项
  * - RESTAURANT_OWNER: 管理自己餐厅的菜单项(CRUD)
+ * 
+ * 每次新增/修改/删除都在同一事务中把餐厅菜单版本号加一（MenuCatalog）
  */
 @Slf4j
 @Service
@@ -31,6 +33,9 @@ public class MenuItemService {
     private final MenuItemRepository menuItemRepository;
     private final RestaurantRepository restaurantRepository;
     private final AuthorizationService authorizationService;
+    private final SuggestionService suggestionService;
+    private final SearchFacetService searchFacetService;
+    private final MenuCatalog menuCatalog;
     
     /**
      * 获取餐厅的所有可用菜单项（公开接口）
@@ -62,11 +67,8 @@ public class MenuItemService {
     public List<MenuItemDTO> getAllMenuItems(Long restaurantId, String ownerEmail) {
         log.info("获取餐厅所有菜单: restaurantId={}, owner={}", restaurantId, ownerEmail);
         
-        // 验证餐厅所有权
-        authorizationService.verifyRestaurantOwnership(restaurantId, ownerEmail);
-        
-        Restaurant restaurant = restaurantRepository.findById(restaurantId)
-            .orElseThrow(() -> new ResourceNotFoundException("餐厅不存在，ID: " + restaurantId));
+        // 验证餐厅所有权，返回已加载的餐厅
+        Restaurant restaurant = authorizationService.loadRestaurantForOwner(restaurantId, ownerEmail);
         
         return menuItemRepository.findByRestaurant(restaurant)
                 .stream()
@@ -102,12 +104,8 @@ public class MenuItemService {
         log.info("创建菜单项: restaurant={}, name={}, owner={}", 
                 request.getRestaurantId(), request.getName(), ownerEmail);
         
-        // 验证餐厅所有权
-        authorizationService.verifyRestaurantOwnership(request.getRestaurantId(), ownerEmail);
-        
-        // 获取餐厅
-        Restaurant restaurant = restaurantRepository.findById(request.getRestaurantId())
-            .orElseThrow(() -> new ResourceNotFoundException("餐厅不存在，ID: " + request.getRestaurantId()));
+        // 验证餐厅所有权，返回已加载的餐厅
+        Restaurant restaurant = authorizationService.loadRestaurantForOwner(request.getRestaurantId(), ownerEmail);
         
         // 创建菜单项
         MenuItem menuItem = new MenuItem();
@@ -124,8 +122,13 @@ public class MenuItemService {
         
         // 保存
         MenuItem saved = menuItemRepository.save(menuItem);
+        menuCatalog.menuChanged(restaurant.getId());
         log.info("菜单项创建成功: id={}, name={}", saved.getId(), saved.getName());
         
+        // 更新搜索联想和分面索引
+        suggestionService.indexMenuItem(saved);
+        searchFacetService.indexMenuItem(saved);
+        
         return convertToDTO(saved);
     }
     
@@ -179,8 +182,13 @@ public class MenuItemService {
         
         // 保存更新
         MenuItem updated = menuItemRepository.save(menuItem);
+        menuCatalog.menuChanged(updated.getRestaurant().getId());
         log.info("菜单项更新成功: id={}", updated.getId());
         
+        // 更新搜索联想和分面索引
+        suggestionService.indexMenuItem(updated);
+        searchFacetService.indexMenuItem(updated);
+        
         return convertToDTO(updated);
     }
     
@@ -198,8 +206,15 @@ public class MenuItemService {
         authorizationService.verifyMenuItemOwnership(id, ownerEmail);
         
         // 删除菜单项
-        menuItemRepository.deleteById(id);
+        MenuItem menuItem = menuItemRepository.findById(id)
+            .orElseThrow(() -> new ResourceNotFoundException("菜单项不存在，ID: " + id));
+        menuItemRepository.delete(menuItem);
+        menuCatalog.menuChanged(menuItem.getRestaurant().getId());
         log.info("菜单项删除成功: id={}", id);
+        
+        // 更新搜索联想和分面索引
+        suggestionService.removeMenuItem(id);
+        searchFacetService.removeMenuItem(id);
     }
     
     /**
@@ -0,0 +1,259 @@
+package com.shydelivery.doordashsimulator.service;
+
+import com.shydelivery.doordashsimulator.dto.response.NotificationDTO;
+import com.shydelivery.doordashsimulator.entity.Notification;
+import com.shydelivery.doordashsimulator.entity.User;
+import com.shydelivery.doordashsimulator.exception.ResourceNotFoundException;
+import com.shydelivery.doordashsimulator.repository.NotificationRepository;
+import com.shydelivery.doordashsimulator.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * 通知投递服务
+ *
+ * 由 NotificationDispatcher 的工作线程（或队列满时的调用线程）按批调用：
+ * - 一批通知在一个事务中通过 JDBC 批量插入（一次往返，返回生成的 ID）
+ * - 同一用户的多条通知合并为一个 WebSocket 帧推送：
+ *   只有一条时帧内容为单个通知对象（与原格式一致），多条时为通知数组
+ *
+ * 每批使用独立事务，与触发通知的业务事务互不影响。
+ * WebSocket 帧在事务提交后才发送：批量事务提交失败时分发器改用 deliver 逐条投递，
+ * 以隔离出错的那一条，此前不会有任何帧发出，客户端不会收到重复或未落库的通知。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class NotificationDeliveryService {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO notifications (user_id, notification_type, title, message, order_id, delivery_id, " +
+            "is_read, priority, extra_data, created_at) VALUES (?, ?, ?, ?, ?, ?, false, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NotificationRepository notificationRepository;
+    private final UserRepository userRepository;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final NotificationInboxCache inboxCache;
+
+    private final LongAdder inserted = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder frames = new LongAdder();
+
+    /**
+     * 批量保存并推送通知
+     *
+     * @return 成功保存的通知数
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public int deliverBatch(List<NotificationEvent> events) {
+        if (events.isEmpty()) {
+            return 0;
+        }
+        Map<Long, String> emails = resolveEmails(events);
+        List<NotificationDTO> saved = insertBatch(events);
+
+        // 按接收人分组（保持入队顺序），每个用户一个 WebSocket 帧
+        Map<String, List<NotificationDTO>> byRecipient = new LinkedHashMap<>();
+        for (int i = 0; i < events.size(); i++) {
+            String email = emails.get(events.get(i).userId());
+            if (email != null) {
+                byRecipient.computeIfAbsent(email, k -> new ArrayList<>(2)).add(saved.get(i));
+            }
+        }
+        for (Map.Entry<String, List<NotificationDTO>> entry : byRecipient.entrySet()) {
+            inboxCache.onCreated(entry.getKey(), entry.getValue());
+        }
+        afterCommit(() -> {
+            for (Map.Entry<String, List<NotificationDTO>> entry : byRecipient.entrySet()) {
+                List<NotificationDTO> notifications = entry.getValue();
+                sendWebSocketNotification(entry.getKey(),
+                        notifications.size() == 1 ? notifications.get(0) : notifications);
+            }
+            inserted.add(events.size());
+            batches.increment();
+            log.debug("通知批量投递完成: notifications={}, frames={}", events.size(), byRecipient.size());
+        });
+        return events.size();
+    }
+
+    /**
+     * 保存并推送一条通知（批量失败时的逐条回退）
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void deliver(NotificationEvent event) {
+        String email = event.recipientEmail();
+        User user;
+        if (email != null) {
+            // 已知邮箱时只需外键引用，不查询用户表
+            user = userRepository.getReferenceById(event.userId());
+        } else {
+            user = userRepository.findById(event.userId())
+                    .orElseThrow(() -> new ResourceNotFoundException("用户不存在，ID: " + event.userId()));
+            email = user.getEmail();
+        }
+
+        Notification notification = new Notification();
+        notification.setUser(user);
+        notification.setType(event.type());
+        notification.setTitle(event.title());
+        notification.setMessage(event.message());
+        notification.setOrderId(event.orderId());
+        notification.setDeliveryId(event.deliveryId());
+        notification.setPriority(event.priority());
+        notification.setExtraData(event.extraData());
+
+        Notification saved = notificationRepository.save(notification);
+        NotificationDTO dto = NotificationService.convertToDTO(saved);
+
+        inboxCache.onCreated(email, List.of(dto));
+        String recipient = email;
+        afterCommit(() -> {
+            sendWebSocketNotification(recipient, dto);
+            inserted.increment();
+            batches.increment();
+        });
+
+        log.debug("通知已创建并发送: notificationId={}, userId={}, type={}",
+                saved.getId(), event.userId(), event.type());
+    }
+
+    /**
+     * 投递统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long batchCount = batches.sum();
+        stats.put("inserted", inserted.sum());
+        stats.put("batches", batchCount);
+        stats.put("avgBatchSize", batchCount > 0 ? (double) inserted.sum() / batchCount : 0.0);
+        stats.put("frames", frames.sum());
+        return stats;
+    }
+
+    /**
+     * 入队时未携带邮箱的事件，一次 IN 查询补齐
+     */
+    private Map<Long, String> resolveEmails(List<NotificationEvent> events) {
+        Map<Long, String> emails = new HashMap<>();
+        for (NotificationEvent event : events) {
+            if (event.recipientEmail() != null) {
+                emails.put(event.userId(), event.recipientEmail());
+            }
+        }
+        Set<Long> missing = events.stream()
+                .map(NotificationEvent::userId)
+                .filter(id -> !emails.containsKey(id))
+                .collect(Collectors.toSet());
+        if (!missing.isEmpty()) {
+            userRepository.findAllById(missing).forEach(user -> emails.put(user.getId(), user.getEmail()));
+        }
+        return emails;
+    }
+
+    /**
+     * JDBC 批量插入，按事件顺序返回带 ID 的 DTO
+     */
+    private List<NotificationDTO> insertBatch(List<NotificationEvent> events) {
+        LocalDateTime now = LocalDateTime.now();
+        Timestamp createdAt = Timestamp.valueOf(now);
+        return jdbcTemplate.execute((ConnectionCallback<List<NotificationDTO>>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_SQL, new String[]{"id"})) {
+                for (NotificationEvent event : events) {
+                    statement.setLong(1, event.userId());
+                    statement.setString(2, event.type().name());
+                    statement.setString(3, event.title());
+                    statement.setString(4, event.message());
+                    setNullableLong(statement, 5, event.orderId());
+                    setNullableLong(statement, 6, event.deliveryId());
+                    statement.setString(7, event.priority().name());
+                    statement.setString(8, event.extraData());
+                    statement.setTimestamp(9, createdAt);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+
+                List<NotificationDTO> saved = new ArrayList<>(events.size());
+                try (ResultSet keys = statement.getGeneratedKeys()) {
+                    for (NotificationEvent event : events) {
+                        Long id = keys.next() ? keys.getLong(1) : null;
+                        saved.add(NotificationDTO.builder()
+                                .id(id)
+                                .type(event.type())
+                                .title(event.title())
+                                .message(event.message())
+                                .orderId(event.orderId())
+                                .deliveryId(event.deliveryId())
+                                .isRead(false)
+                                .priority(event.priority())
+                                .extraData(event.extraData())
+                                .createdAt(now)
+                                .timeAgo("刚刚")
+                                .build());
+                    }
+                }
+                return saved;
+            }
+        });
+    }
+
+    private static void setNullableLong(PreparedStatement statement, int index, Long value) throws java.sql.SQLException {
+        if (value != null) {
+            statement.setLong(index, value);
+        } else {
+            statement.setNull(index, Types.BIGINT);
+        }
+    }
+
+    /**
+     * 在当前事务提交后执行（回滚时丢弃）
+     */
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * WebSocket 实时推送通知
+     */
+    private void sendWebSocketNotification(String userEmail, Object payload) {
+        try {
+            String destination = "/topic/notifications/" + userEmail;
+            messagingTemplate.convertAndSend(destination, payload);
+            frames.increment();
+            log.debug("WebSocket 通知已发送: destination={}", destination);
+        } catch (Exception e) {
+            log.error("WebSocket 通知发送失败: {}", e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package com.shydelivery.doordashsimulator.service;
+
+import com.shydelivery.doordashsimulator.entity.Notification.Priority;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 通知分发管道
+ *
+ * 每个优先级一个有界队列，工作线程（运行在 notificationExecutor 上）
+ * 总是先处理高优先级队列：URGENT &gt; HIGH &gt; NORMAL &gt; LOW。
+ *
+ * 队列满时的处理策略：
+ * - URGENT / HIGH: 由调用线程直接投递（CallerRuns），不丢弃
+ * - NORMAL / LOW: 丢弃新事件并计数（促销等可丢失的通知不应拖慢业务请求）
+ *
+ * 工作线程拿到第一条事件后最多再等待 linger-ms，把这段时间内到达的事件
+ * （最多 max-batch 条，仍按优先级顺序取出）凑成一批交给 NotificationDeliveryService：
+ * 一次 JDBC 批量插入，同一用户的多条通知合并为一个 WebSocket 帧。
+ * 批量失败时逐条重试，只有真正出错的那条计为失败。
+ *
+ * 在事务中提交的事件会在事务提交后才入队，回滚的业务操作不会发出通知。
+ * 统计：各队列深度、入队/投递/丢弃/调用线程投递/失败次数、排队等待时间、批次与帧数。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class NotificationDispatcher {
+
+    /** 按处理顺序排列的优先级 */
+    private static final Priority[] DISPATCH_ORDER = {
+            Priority.URGENT, Priority.HIGH, Priority.NORMAL, Priority.LOW
+    };
+
+    private final NotificationDeliveryService deliveryService;
+    private final Executor notificationExecutor;
+
+    @Value("${notification.pipeline.workers:4}")
+    private int workers;
+
+    @Value("${notification.pipeline.capacity-per-priority:1000}")
+    private int capacityPerPriority;
+
+    @Value("${notification.pipeline.max-batch:100}")
+    private int maxBatch;
+
+    @Value("${notification.pipeline.linger-ms:5}")
+    private long lingerMs;
+
+    private final Map<Priority, Lane> lanes = new LinkedHashMap<>();
+
+    /** 所有队列中的事件总数（工作线程在此等待） */
+    private final Semaphore pending = new Semaphore(0);
+
+    private final LongAdder waitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final LongAdder batchFallbacks = new LongAdder();
+
+    private volatile boolean running;
+
+    @PostConstruct
+    void start() {
+        for (Priority priority : DISPATCH_ORDER) {
+            lanes.put(priority, new Lane(capacityPerPriority));
+        }
+        running = true;
+        for (int i = 0; i < workers; i++) {
+            notificationExecutor.execute(this::workLoop);
+        }
+        log.info("通知分发管道已启动: workers={}, capacityPerPriority={}, maxBatch={}, lingerMs={}",
+                workers, capacityPerPriority, maxBatch, lingerMs);
+    }
+
+    /**
+     * 提交通知事件（存在活动事务时，事务提交后再入队）
+     */
+    public void submit(NotificationEvent event) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueue(event);
+                }
+            });
+        } else {
+            enqueue(event);
+        }
+    }
+
+    /**
+     * 管道统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long delivered = 0;
+        for (Map.Entry<Priority, Lane> entry : lanes.entrySet()) {
+            Lane lane = entry.getValue();
+            Map<String, Object> laneStats = new LinkedHashMap<>();
+            laneStats.put("depth", lane.queue.size());
+            laneStats.put("capacity", capacityPerPriority);
+            laneStats.put("enqueued", lane.enqueued.sum());
+            laneStats.put("delivered", lane.delivered.sum());
+            laneStats.put("callerRuns", lane.callerRuns.sum());
+            laneStats.put("dropped", lane.dropped.sum());
+            laneStats.put("failed", lane.failed.sum());
+            stats.put(entry.getKey().name(), laneStats);
+            delivered += lane.delivered.sum();
+        }
+        stats.put("workers", workers);
+        stats.put("avgWaitMicros", delivered > 0 ? waitNanos.sum() / delivered / 1000 : 0L);
+        stats.put("maxWaitMicros", maxWaitNanos.get() / 1000);
+        stats.put("batchFallbacks", batchFallbacks.sum());
+        stats.put("writer", deliveryService.getStats());
+        return stats;
+    }
+
+    /**
+     * 上下文关闭时先让工作线程退出循环（最多等待一次 1s 的轮询）：
+     * notificationExecutor 作为生命周期 Bean 停止时会等待正在运行的任务结束，
+     * 如果等到 @PreDestroy 才停止，关闭过程会卡满整个生命周期超时（默认 30s）
+     */
+    @EventListener(ContextClosedEvent.class)
+    void onContextClosed() {
+        running = false;
+    }
+
+    /**
+     * 停止工作线程，并尽量投递剩余事件
+     */
+    @PreDestroy
+    void stop() {
+        running = false;
+        List<NotificationEvent> batch = new ArrayList<>(maxBatch);
+        int drained = 0;
+        for (Priority priority : DISPATCH_ORDER) {
+            NotificationEvent event;
+            while ((event = lanes.get(priority).queue.poll()) != null) {
+                batch.add(event);
+                drained++;
+                if (batch.size() >= maxBatch) {
+                    deliverBatch(batch);
+                    batch.clear();
+                }
+            }
+        }
+        deliverBatch(batch);
+        log.info("通知分发管道已停止，关闭前投递剩余事件 {} 条", drained);
+    }
+
+    private void enqueue(NotificationEvent event) {
+        Priority priority = event.priority() != null ? event.priority() : Priority.NORMAL;
+        Lane lane = lanes.get(priority);
+        if (lane.queue.offer(event)) {
+            lane.enqueued.increment();
+            pending.release();
+            return;
+        }
+        if (priority == Priority.URGENT || priority == Priority.HIGH) {
+            lane.callerRuns.increment();
+            deliver(event, lane);
+        } else {
+            lane.dropped.increment();
+            log.warn("通知队列已满，丢弃通知: priority={}, type={}, userId={}",
+                    priority, event.type(), event.userId());
+        }
+    }
+
+    private void workLoop() {
+        List<NotificationEvent> batch = new ArrayList<>(maxBatch);
+        long lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMs);
+        while (running) {
+            try {
+                if (!pending.tryAcquire(1, TimeUnit.SECONDS)) {
+                    continue;
+                }
+                // 凑批：截止时间前等待后续事件，过了截止时间只取已经在队列中的
+                int permits = 1;
+                long deadline = System.nanoTime() + lingerNanos;
+                while (permits < maxBatch) {
+                    long remaining = deadline - System.nanoTime();
+                    boolean acquired = remaining > 0
+                            ? pending.tryAcquire(remaining, TimeUnit.NANOSECONDS)
+                            : pending.tryAcquire();
+                    if (!acquired) {
+                        break;
+                    }
+                    permits++;
+                }
+                for (int i = 0; i < permits; i++) {
+                    for (Priority priority : DISPATCH_ORDER) {
+                        NotificationEvent event = lanes.get(priority).queue.poll();
+                        if (event != null) {
+                            batch.add(event);
+                            break;
+                        }
+                    }
+                }
+                deliverBatch(batch);
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void deliverBatch(List<NotificationEvent> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        for (NotificationEvent event : batch) {
+            recordWait(event);
+        }
+        try {
+            deliveryService.deliverBatch(batch);
+            for (NotificationEvent event : batch) {
+                lanes.get(event.priority()).delivered.increment();
+            }
+        } catch (Exception e) {
+            // 整批已回滚，逐条重试以隔离出错的事件
+            batchFallbacks.increment();
+            log.warn("通知批量投递失败，改为逐条投递: size={}, error={}", batch.size(), e.getMessage());
+            for (NotificationEvent event : batch) {
+                deliverOne(event, lanes.get(event.priority()));
+            }
+        }
+    }
+
+    private void deliver(NotificationEvent event, Lane lane) {
+        recordWait(event);
+        deliverOne(event, lane);
+    }
+
+    private void recordWait(NotificationEvent event) {
+        long waited = System.nanoTime() - event.enqueuedAtNanos();
+        waitNanos.add(waited);
+        maxWaitNanos.accumulateAndGet(waited, Math::max);
+    }
+
+    private void deliverOne(NotificationEvent event, Lane lane) {
+        try {
+            deliveryService.deliver(event);
+            lane.delivered.increment();
+        } catch (Exception e) {
+            lane.failed.increment();
+            log.error("通知投递失败: userId={}, type={}, error={}", event.userId(), event.type(), e.getMessage());
+        }
+    }
+
+    /**
+     * 单个优先级的队列及计数
+     */
+    private static class Lane {
+        final BlockingQueue<NotificationEvent> queue;
+        final LongAdder enqueued = new LongAdder();
+        final LongAdder delivered = new LongAdder();
+        final LongAdder callerRuns = new LongAdder();
+        final LongAdder dropped = new LongAdder();
+        final LongAdder failed = new LongAdder();
+
+        Lane(int capacity) {
+            queue = new ArrayBlockingQueue<>(capacity);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.shydelivery.doordashsimulator.service;
+
+import com.shydelivery.doordashsimulator.entity.Notification.NotificationType;
+import com.shydelivery.doordashsimulator.entity.Notification.Priority;
+
+/**
+ * 通知事件 - 入队时捕获的不可变快照
+ *
+ * 所有字段在调用方线程（业务事务内）取值，extraData 已序列化为 JSON 字符串，
+ * 工作线程处理时不会触碰任何懒加载实体。
+ *
+ * @param userId 接收用户 ID
+ * @param recipientEmail 接收用户邮箱（WebSocket 推送目标，为 null 时投递时再查询）
+ * @param type 通知类型
+ * @param title 标题
+ * @param message 消息内容
+ * @param orderId 关联订单 ID
+ * @param deliveryId 关联配送 ID
+ * @param priority 优先级
+ * @param extraData 额外数据（JSON）
+ * @param enqueuedAtNanos 入队时间（System.nanoTime，用于统计排队等待时间）
+ */
+public record NotificationEvent(
+        Long userId,
+        String recipientEmail,
+        NotificationType type,
+        String title,
+        String message,
+        Long orderId,
+        Long deliveryId,
+        Priority priority,
+        String extraData,
+        long enqueuedAtNanos) {
+}
@@ -0,0 +1,417 @@
+package com.shydelivery.doordashsimulator.service;
+
+import com.shydelivery.doordashsimulator.dto.response.NotificationDTO;
+import com.shydelivery.doordashsimulator.entity.Notification;
+import com.shydelivery.doordashsimulator.repository.NotificationRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 用户通知收件箱缓存
+ *
+ * 每个活跃用户（按邮箱）在内存中保存：
+ * - 未读通知数
+ * - 最近 recent-size 条通知的环形缓冲（新的在前）
+ *
+ * 未读数轮询和第一页通知直接由内存返回，不访问数据库。
+ * 首次访问时加载（未读数 + 最近 N 条，两条按邮箱的查询），空闲超过 idle-ttl 后淘汰。
+ *
+ * 变更（新通知、标记已读、全部已读、删除）在数据库事务提交后应用到缓存。
+ * 加载期间发生的变更会使这次加载作废（不写入缓存），下次访问重新加载，
+ * 避免把加载开始前读到的旧快照装进缓存。
+ * 变更若落在提交与回调之间，加载可能已读到它；对缓冲中已有的通知按 ID 判断，不会重复计数。
+ *
+ * 多节点：本节点提交的变更应用到本地缓存后，经 ClusterBroadcastService 通知其他节点丢弃该用户的缓存
+ * （下次访问重新加载）。集群消息是尽力投递，另有 max-age-seconds 兜底：
+ * 加载超过该时长的收件箱即使一直被轮询也会重新加载。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class NotificationInboxCache {
+
+    private static final String INVALIDATION_TOPIC = "notification-inbox";
+    private static final String ALL_USERS = "*";
+
+    private final NotificationRepository notificationRepository;
+    private final ClusterBroadcastService clusterBroadcastService;
+
+    @Value("${notification.cache.recent-size:20}")
+    private int recentSize;
+
+    @Value("${notification.cache.idle-ttl-minutes:10}")
+    private long idleTtlMinutes;
+
+    @Value("${notification.cache.max-users:100000}")
+    private int maxUsers;
+
+    @Value("${notification.cache.max-age-seconds:60}")
+    private long maxAgeSeconds;
+
+    private final Map<String, Inbox> inboxes = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder staleLoads = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder remoteInvalidations = new LongAdder();
+
+    @PostConstruct
+    public void subscribe() {
+        clusterBroadcastService.subscribe(INVALIDATION_TOPIC, this::onRemoteInvalidation);
+    }
+
+    /**
+     * 未读通知数
+     */
+    public long getUnreadCount(String email) {
+        Inbox inbox = acquire(email);
+        synchronized (inbox) {
+            return inbox.unread;
+        }
+    }
+
+    /**
+     * 最近的通知（新的在前）
+     *
+     * @return 缓存无法完整提供 limit 条时返回 null，由调用方查询数据库
+     */
+    public List<NotificationDTO> getRecent(String email, int limit) {
+        Inbox inbox = acquire(email);
+        synchronized (inbox) {
+            if (limit > inbox.recent.size() && !inbox.complete) {
+                return null;
+            }
+            List<NotificationDTO> result = new ArrayList<>(Math.min(limit, inbox.recent.size()));
+            for (NotificationDTO notification : inbox.recent) {
+                if (result.size() >= limit) {
+                    break;
+                }
+                result.add(copy(notification));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 全部未读通知
+     *
+     * @return 部分未读通知不在缓冲中时返回 null，由调用方查询数据库
+     */
+    public List<NotificationDTO> getUnread(String email) {
+        Inbox inbox = acquire(email);
+        synchronized (inbox) {
+            List<NotificationDTO> result = new ArrayList<>();
+            for (NotificationDTO notification : inbox.recent) {
+                if (!Boolean.TRUE.equals(notification.getIsRead())) {
+                    result.add(copy(notification));
+                }
+            }
+            return result.size() == inbox.unread ? result : null;
+        }
+    }
+
+    /**
+     * 用户是否在线（收件箱已加载，即最近在轮询通知）
+     */
+    public boolean isActive(String email) {
+        Inbox inbox = inboxes.get(email);
+        return inbox != null && inbox.loaded;
+    }
+
+    /**
+     * 新通知已保存（按同一用户的插入顺序，旧的在前）
+     */
+    public void onCreated(String email, List<NotificationDTO> notifications) {
+        afterCommit(email, inbox -> {
+            for (NotificationDTO notification : notifications) {
+                if (find(inbox, notification.getId()) != null) {
+                    continue;
+                }
+                inbox.recent.addFirst(notification);
+                if (!Boolean.TRUE.equals(notification.getIsRead())) {
+                    inbox.unread++;
+                }
+            }
+            while (inbox.recent.size() > recentSize) {
+                inbox.recent.removeLast();
+                inbox.complete = false;
+            }
+        });
+    }
+
+    /**
+     * 单条通知标记为已读（wasUnread: 标记前是否未读）
+     */
+    public void onRead(String email, Long notificationId, boolean wasUnread, LocalDateTime readAt) {
+        afterCommit(email, inbox -> {
+            NotificationDTO cached = find(inbox, notificationId);
+            boolean unread = cached != null ? !Boolean.TRUE.equals(cached.getIsRead()) : wasUnread;
+            if (cached != null) {
+                cached.setIsRead(true);
+                cached.setReadAt(readAt);
+            }
+            if (unread) {
+                inbox.unread = Math.max(0, inbox.unread - 1);
+            }
+        });
+    }
+
+    /**
+     * 全部标记为已读
+     */
+    public void onAllRead(String email, LocalDateTime readAt) {
+        afterCommit(email, inbox -> {
+            inbox.unread = 0;
+            for (NotificationDTO notification : inbox.recent) {
+                if (!Boolean.TRUE.equals(notification.getIsRead())) {
+                    notification.setIsRead(true);
+                    notification.setReadAt(readAt);
+                }
+            }
+        });
+    }
+
+    /**
+     * 通知已删除
+     */
+    public void onDeleted(String email, Long notificationId, boolean wasUnread) {
+        afterCommit(email, inbox -> {
+            NotificationDTO cached = find(inbox, notificationId);
+            boolean unread = cached != null ? !Boolean.TRUE.equals(cached.getIsRead()) : wasUnread;
+            if (cached != null) {
+                inbox.recent.remove(cached);
+            }
+            if (unread) {
+                inbox.unread = Math.max(0, inbox.unread - 1);
+            }
+        });
+    }
+
+    /**
+     * 丢弃某用户的缓存（下次访问重新加载）
+     */
+    public void invalidate(String email) {
+        afterCommit(email, null);
+    }
+
+    /**
+     * 丢弃全部缓存（批量删除等无法逐个用户应用的变更之后调用），包括其他节点
+     */
+    public void invalidateAll() {
+        clearLocal();
+        clusterBroadcastService.publish(INVALIDATION_TOPIC, ALL_USERS);
+    }
+
+    /**
+     * 淘汰空闲的用户缓存（每分钟）
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void evictIdle() {
+        long cutoff = System.nanoTime() - TimeUnit.MINUTES.toNanos(idleTtlMinutes);
+        int evicted = 0;
+        Iterator<Map.Entry<String, Inbox>> iterator = inboxes.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Inbox inbox = iterator.next().getValue();
+            if (inbox.loaded && inbox.lastAccessNanos - cutoff < 0) {
+                iterator.remove();
+                evicted++;
+            }
+        }
+        if (evicted > 0) {
+            evictions.add(evicted);
+            log.debug("通知收件箱缓存淘汰空闲用户: evicted={}, remaining={}", evicted, inboxes.size());
+        }
+    }
+
+    /**
+     * 缓存统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("users", inboxes.size());
+        stats.put("hits", hits.sum());
+        stats.put("loads", loads.sum());
+        stats.put("staleLoads", staleLoads.sum());
+        stats.put("evictions", evictions.sum());
+        stats.put("expired", expired.sum());
+        stats.put("remoteInvalidations", remoteInvalidations.sum());
+        return stats;
+    }
+
+    /**
+     * 取得已加载的收件箱；未加载时查询数据库
+     *
+     * 加载先放入占位对象再查询，查询期间的变更把占位标记为 stale；
+     * stale 的加载结果只返回给本次调用，不留在缓存中。
+     */
+    private Inbox acquire(String email) {
+        Inbox inbox = inboxes.get(email);
+        if (inbox != null && inbox.loaded) {
+            long now = System.nanoTime();
+            if (now - inbox.loadedAtNanos < TimeUnit.SECONDS.toNanos(maxAgeSeconds)) {
+                inbox.lastAccessNanos = now;
+                hits.increment();
+                return inbox;
+            }
+            expired.increment();
+            drop(email, inbox);
+        }
+        Inbox placeholder = new Inbox();
+        if (inboxes.size() < maxUsers) {
+            Inbox existing = inboxes.putIfAbsent(email, placeholder);
+            if (existing != null && existing.loaded) {
+                hits.increment();
+                return existing;
+            }
+        }
+
+        long unread = notificationRepository.countUnreadByUserEmail(email);
+        List<Notification> recent = notificationRepository.findByUserEmailOrderByCreatedAtDesc(
+                email, PageRequest.of(0, recentSize));
+        loads.increment();
+
+        synchronized (placeholder) {
+            placeholder.unread = unread;
+            for (Notification notification : recent) {
+                placeholder.recent.addLast(NotificationService.convertToDTO(notification));
+            }
+            placeholder.complete = recent.size() < recentSize;
+            placeholder.lastAccessNanos = System.nanoTime();
+            placeholder.loadedAtNanos = placeholder.lastAccessNanos;
+            placeholder.loaded = true;
+            if (placeholder.stale) {
+                staleLoads.increment();
+                inboxes.remove(email, placeholder);
+            }
+        }
+        return placeholder;
+    }
+
+    /**
+     * 事务提交后应用变更（无事务时立即应用）；mutation 为 null 表示丢弃缓存
+     */
+    private void afterCommit(String email, Consumer<Inbox> mutation) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apply(email, mutation);
+                }
+            });
+        } else {
+            apply(email, mutation);
+        }
+    }
+
+    private void apply(String email, Consumer<Inbox> mutation) {
+        clusterBroadcastService.publish(INVALIDATION_TOPIC, email);
+        Inbox inbox = inboxes.get(email);
+        if (inbox == null) {
+            // 未缓存：下次加载时会从数据库读到这次变更
+            return;
+        }
+        synchronized (inbox) {
+            if (!inbox.loaded || mutation == null) {
+                inbox.stale = true;
+                inboxes.remove(email, inbox);
+                return;
+            }
+            mutation.accept(inbox);
+        }
+    }
+
+    /**
+     * 其他节点提交了变更：丢弃本地缓存（加载中的占位标记为 stale，加载结果不留在缓存中）
+     */
+    private void onRemoteInvalidation(String email) {
+        remoteInvalidations.increment();
+        if (ALL_USERS.equals(email)) {
+            clearLocal();
+            return;
+        }
+        Inbox inbox = inboxes.get(email);
+        if (inbox != null) {
+            drop(email, inbox);
+        }
+    }
+
+    private void drop(String email, Inbox inbox) {
+        synchronized (inbox) {
+            inbox.stale = true;
+            inboxes.remove(email, inbox);
+        }
+    }
+
+    private void clearLocal() {
+        for (Inbox inbox : inboxes.values()) {
+            synchronized (inbox) {
+                inbox.stale = true;
+            }
+        }
+        inboxes.clear();
+    }
+
+    private static NotificationDTO find(Inbox inbox, Long notificationId) {
+        for (NotificationDTO notification : inbox.recent) {
+            if (notification.getId().equals(notificationId)) {
+                return notification;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 返回给调用方的副本（缓存中的对象会被后续变更修改；timeAgo 按当前时间重新计算）
+     */
+    private static NotificationDTO copy(NotificationDTO notification) {
+        return NotificationDTO.builder()
+                .id(notification.getId())
+                .type(notification.getType())
+                .title(notification.getTitle())
+                .message(notification.getMessage())
+                .orderId(notification.getOrderId())
+                .deliveryId(notification.getDeliveryId())
+                .isRead(notification.getIsRead())
+                .readAt(notification.getReadAt())
+                .priority(notification.getPriority())
+                .extraData(notification.getExtraData())
+                .createdAt(notification.getCreatedAt())
+                .timeAgo(NotificationService.calculateTimeAgo(notification.getCreatedAt()))
+                .build();
+    }
+
+    /**
+     * 单个用户的收件箱（所有字段在 synchronized(this) 下读写，lastAccessNanos 除外）
+     */
+    private static class Inbox {
+        final ArrayDeque<NotificationDTO> recent = new ArrayDeque<>();
+        long unread;
+        /** recent 是否包含该用户的全部通知 */
+        boolean complete;
+        volatile boolean loaded;
+        boolean stale;
+        volatile long lastAccessNanos;
+        long loadedAtNanos;
+    }
+}
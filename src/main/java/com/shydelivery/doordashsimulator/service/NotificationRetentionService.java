@@ -0,0 +1,263 @@
+package com.shydelivery.doordashsimulator.service;
+
+import com.shydelivery.doordashsimulator.entity.Notification.NotificationType;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 通知保留期清理服务
+ *
+ * 过期规则（满足任一即删除）：
+ * - 已读且阅读时间早于 read-days 天前
+ * - 创建时间早于该类型的保留天数（type-days 中配置，未配置的类型使用 default-days）
+ *
+ * 每天凌晨 4:30 按主键区间分块删除：先取可能过期的最大 ID，从最小 ID 开始
+ * 每次删除 [lo, lo + width) 区间内的过期行，每块单独提交，锁持有时间短。
+ * 区间宽度按实测耗时自适应（超过 target-chunk-ms 减半，远低于则加倍），
+ * 每块之后暂停 耗时 × pause-factor，数据库变慢时清理自动放慢。
+ *
+ * 单次运行超过 max-run-minutes 时停止，不保存进度：下次运行仍从最小 ID 开始扫描
+ * （已读通知的过期取决于阅读时间，任何 ID 区间都可能出现新的过期行，每次都需要完整扫描）。
+ * 已清理过的区间没有过期行，重新扫描的代价只是按主键范围读一遍。
+ * 有通知被删除时，所有节点的收件箱缓存都会失效（见 NotificationInboxCache.invalidateAll）。
+ *
+ * 统计：累计删除行数、最近一次运行的分块数/耗时、表大小历史（每次运行后记录）。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class NotificationRetentionService {
+
+    private static final int MIN_CHUNK_WIDTH = 100;
+    private static final int SIZE_HISTORY = 30;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NotificationInboxCache inboxCache;
+
+    @Value("${notification.retention.enabled:true}")
+    private boolean enabled;
+
+    @Value("${notification.retention.read-days:30}")
+    private int readDays;
+
+    @Value("${notification.retention.default-days:180}")
+    private int defaultDays;
+
+    @Value("${notification.retention.type-days:PROMOTION=7,SYSTEM_MESSAGE=30}")
+    private String typeDaysConfig;
+
+    @Value("${notification.retention.initial-chunk-width:5000}")
+    private int initialChunkWidth;
+
+    @Value("${notification.retention.max-chunk-width:50000}")
+    private int maxChunkWidth;
+
+    @Value("${notification.retention.target-chunk-ms:200}")
+    private long targetChunkMs;
+
+    @Value("${notification.retention.pause-factor:1.0}")
+    private double pauseFactor;
+
+    @Value("${notification.retention.max-run-minutes:30}")
+    private long maxRunMinutes;
+
+    /** 按类型的保留天数（与 default-days 不同的类型） */
+    private final Map<NotificationType, Integer> typeDays = new EnumMap<>(NotificationType.class);
+
+    private String deleteSql;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final LongAdder totalPurged = new LongAdder();
+    private volatile Map<String, Object> lastRun = Map.of();
+    private final Deque<Map<String, Object>> sizeHistory = new ArrayDeque<>();
+
+    @PostConstruct
+    void init() {
+        for (String entry : typeDaysConfig.split(",")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            String[] parts = entry.split("=");
+            if (parts.length != 2) {
+                throw new IllegalStateException("notification.retention.type-days 格式错误: " + entry);
+            }
+            typeDays.put(NotificationType.valueOf(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+        }
+
+        // 每种类型一个 WHEN 分支，参数顺序：lo, hi, 已读 cutoff, 各类型 cutoff, 默认 cutoff
+        StringBuilder sql = new StringBuilder(
+                "DELETE FROM notifications WHERE id >= ? AND id < ? AND ((is_read AND read_at < ?) OR created_at < CASE notification_type");
+        for (NotificationType type : typeDays.keySet()) {
+            sql.append(" WHEN '").append(type.name()).append("' THEN ?");
+        }
+        sql.append(" ELSE ? END)");
+        deleteSql = sql.toString();
+        log.info("通知保留策略: readDays={}, defaultDays={}, typeDays={}", readDays, defaultDays, typeDays);
+    }
+
+    /**
+     * 清理过期通知（每天凌晨 4:30）
+     */
+    @Scheduled(cron = "${notification.retention.cron:0 30 4 * * ?}")
+    public void purgeExpired() {
+        if (!enabled || !running.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            purge();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("通知保留期清理失败: {}", e.getMessage());
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * 清理统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("running", running.get());
+        stats.put("totalPurged", totalPurged.sum());
+        stats.put("lastRun", lastRun);
+        synchronized (sizeHistory) {
+            stats.put("tableSizeHistory", new ArrayList<>(sizeHistory));
+        }
+        return stats;
+    }
+
+    private void purge() throws InterruptedException {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MINUTES.toNanos(maxRunMinutes);
+        LocalDateTime now = LocalDateTime.now();
+
+        List<Object> cutoffs = new ArrayList<>();
+        cutoffs.add(Timestamp.valueOf(now.minusDays(readDays)));
+        LocalDateTime newestCutoff = now.minusDays(defaultDays);
+        for (int days : typeDays.values()) {
+            LocalDateTime cutoff = now.minusDays(days);
+            cutoffs.add(Timestamp.valueOf(cutoff));
+            if (cutoff.isAfter(newestCutoff)) {
+                newestCutoff = cutoff;
+            }
+        }
+        cutoffs.add(Timestamp.valueOf(now.minusDays(defaultDays)));
+        LocalDateTime readCutoff = now.minusDays(readDays);
+        if (readCutoff.isAfter(newestCutoff)) {
+            newestCutoff = readCutoff;
+        }
+
+        // ID 随创建时间递增：创建时间晚于最新截止点的行不可能过期
+        Long minId = jdbcTemplate.queryForObject("SELECT MIN(id) FROM notifications", Long.class);
+        Long maxId = jdbcTemplate.queryForObject(
+                "SELECT MAX(id) FROM notifications WHERE created_at < ?", Long.class, Timestamp.valueOf(newestCutoff));
+
+        long purged = 0;
+        int chunks = 0;
+        long chunkNanosTotal = 0;
+        long chunkNanosMax = 0;
+        boolean completed = true;
+
+        if (minId != null && maxId != null) {
+            long width = initialChunkWidth;
+            long lo = minId;
+            while (lo <= maxId) {
+                if (System.nanoTime() > deadline) {
+                    completed = false;
+                    log.warn("通知保留期清理达到最长运行时间，本次停止（下次从头扫描）: nextId={}, maxId={}", lo, maxId);
+                    break;
+                }
+                long hi = Math.min(lo + width, maxId + 1);
+                Object[] args = new Object[cutoffs.size() + 2];
+                args[0] = lo;
+                args[1] = hi;
+                for (int i = 0; i < cutoffs.size(); i++) {
+                    args[i + 2] = cutoffs.get(i);
+                }
+
+                long chunkStart = System.nanoTime();
+                int deleted = jdbcTemplate.update(deleteSql, args);
+                long elapsed = System.nanoTime() - chunkStart;
+
+                purged += deleted;
+                totalPurged.add(deleted);
+                chunks++;
+                chunkNanosTotal += elapsed;
+                chunkNanosMax = Math.max(chunkNanosMax, elapsed);
+                lo = hi;
+
+                long elapsedMs = TimeUnit.NANOSECONDS.toMillis(elapsed);
+                if (elapsedMs > targetChunkMs) {
+                    width = Math.max(MIN_CHUNK_WIDTH, width / 2);
+                } else if (elapsedMs < targetChunkMs / 4) {
+                    width = Math.min(maxChunkWidth, width * 2);
+                }
+                long pauseNanos = (long) (elapsed * pauseFactor);
+                if (pauseNanos > 0) {
+                    TimeUnit.NANOSECONDS.sleep(pauseNanos);
+                }
+            }
+        }
+
+        if (purged > 0) {
+            // 被删除的通知可能还在用户的收件箱缓存中（包括其他节点）
+            inboxCache.invalidateAll();
+        }
+        recordTableSize();
+
+        Map<String, Object> run = new LinkedHashMap<>();
+        run.put("startedAt", now);
+        run.put("purged", purged);
+        run.put("chunks", chunks);
+        run.put("completed", completed);
+        run.put("avgChunkMs", chunks > 0 ? TimeUnit.NANOSECONDS.toMillis(chunkNanosTotal / chunks) : 0L);
+        run.put("maxChunkMs", TimeUnit.NANOSECONDS.toMillis(chunkNanosMax));
+        run.put("durationMs", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        lastRun = run;
+        log.info("通知保留期清理完成: {}", run);
+    }
+
+    /**
+     * 记录表大小（含索引和 TOAST）和估算行数
+     */
+    private void recordTableSize() {
+        try {
+            Map<String, Object> row = jdbcTemplate.queryForMap(
+                    "SELECT pg_total_relation_size('notifications') AS bytes, " +
+                    "(SELECT reltuples::bigint FROM pg_class WHERE relname = 'notifications') AS estimated_rows");
+            Map<String, Object> sample = new LinkedHashMap<>();
+            sample.put("at", LocalDateTime.now());
+            sample.put("bytes", row.get("bytes"));
+            sample.put("estimatedRows", row.get("estimated_rows"));
+            synchronized (sizeHistory) {
+                sizeHistory.addLast(sample);
+                while (sizeHistory.size() > SIZE_HISTORY) {
+                    sizeHistory.removeFirst();
+                }
+            }
+        } catch (Exception e) {
+            log.warn("读取通知表大小失败: {}", e.getMessage());
+        }
+    }
+}
@@ -12,8 +12,7 @@ import com.shydelivery.doordashsimulator.repository.NotificationRepository;
 import com.shydelivery.doordashsimulator.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -32,6 +31,10 @@ import java.util.stream.Collectors;
  * 2. WebSocket 实时推送
  * 3. 通知查询和管理
  * 4. 批量操作
+ * 
+ * 通知的保存与推送由 NotificationDispatcher 异步完成（按优先级排队），
+ * 本类的 notify* 方法只负责在调用方线程上构建不可变事件并入队。
+ * 未读数和最近通知由 NotificationInboxCache 在内存中维护，读写操作在此同步更新缓存。
  */
 @Slf4j
 @Service
@@ -40,35 +43,38 @@ public class NotificationService {
 
     private final NotificationRepository notificationRepository;
     private final UserRepository userRepository;
-    private final SimpMessagingTemplate messagingTemplate;
+    private final NotificationDispatcher dispatcher;
+    private final NotificationInboxCache inboxCache;
+    private final NotificationRetentionService retentionService;
     private final ObjectMapper objectMapper;
 
     /**
-     * 创建并发送通知
+     * 创建并发送通知（异步，经由 NotificationDispatcher）
      * 
      * @param userId 用户 ID
      * @param type 通知类型
      * @param title 标题
      * @param message 消息内容
-     * @return 创建的通知 DTO
      */
-    @Transactional
-    @Async
     public void createAndSendNotification(
             Long userId,
             NotificationType type,
             String title,
             String message) {
-        createAndSendNotification(userId, type, title, message, null, null, Priority.NORMAL, null);
+        createAndSendNotification(userId, null, type, title, message, null, null, Priority.NORMAL, null);
     }
 
     /**
      * 创建并发送通知（完整版）
+     * 
+     * 在调用线程上捕获全部数据（包括序列化 extraData），生成不可变事件后入队；
+     * 保存和推送由分发管道的工作线程完成，调用方不再承担数据库写入和 WebSocket 推送的耗时。
+     * 
+     * @param recipientEmail 接收用户邮箱（调用方已知时传入，可省去投递时的用户查询）
      */
-    @Transactional
-    @Async
     public void createAndSendNotification(
             Long userId,
+            String recipientEmail,
             NotificationType type,
             String title,
             String message,
@@ -77,53 +83,33 @@ public class NotificationService {
             Priority priority,
             Map<String, Object> extraData) {
 
-        log.info("创建通知: userId={}, type={}, title={}", userId, type, title);
-
-        // 获取用户
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new ResourceNotFoundException("用户不存在，ID: " + userId));
-
-        // 创建通知实体
-        Notification notification = new Notification();
-        notification.setUser(user);
-        notification.setType(type);
-        notification.setTitle(title);
-        notification.setMessage(message);
-        notification.setOrderId(orderId);
-        notification.setDeliveryId(deliveryId);
-        notification.setPriority(priority);
-
-        // 处理额外数据
+        String extraJson = null;
         if (extraData != null && !extraData.isEmpty()) {
             try {
-                notification.setExtraData(objectMapper.writeValueAsString(extraData));
+                extraJson = objectMapper.writeValueAsString(extraData);
             } catch (Exception e) {
                 log.warn("无法序列化额外数据: {}", e.getMessage());
             }
         }
 
-        // 保存通知
-        Notification saved = notificationRepository.save(notification);
-
-        // 转换为 DTO
-        NotificationDTO dto = convertToDTO(saved);
+        dispatcher.submit(new NotificationEvent(
+                userId, recipientEmail, type, title, message, orderId, deliveryId,
+                priority != null ? priority : Priority.NORMAL, extraJson, System.nanoTime()));
 
-        // WebSocket 实时推送
-        sendWebSocketNotification(user.getEmail(), dto);
-
-        log.info("通知已创建并发送: notificationId={}, userId={}, type={}", 
-                saved.getId(), userId, type);
+        log.debug("通知已入队: userId={}, type={}, priority={}", userId, type, priority);
     }
 
     /**
      * 订单状态更新通知
+     * 
+     * 订单相关字段在调用方事务内读取，工作线程不会访问 Order 实体
      */
-    @Async
     public void notifyOrderStatusChange(Order order, String statusMessage) {
         NotificationType type = mapOrderStatusToNotificationType(order.getStatus());
         
         createAndSendNotification(
                 order.getCustomer().getId(),
+                order.getCustomer().getEmail(),
                 type,
                 "订单状态更新",
                 statusMessage,
@@ -133,13 +119,12 @@ public class NotificationService {
                 createOrderExtraData(order)
         );
 
-        log.info("订单状态通知已发送: orderId={}, status={}", order.getId(), order.getStatus());
+        log.info("订单状态通知已提交: orderId={}, status={}", order.getId(), order.getStatus());
     }
 
     /**
      * 配送员接单通知
      */
-    @Async
     public void notifyDriverAssigned(Long customerId, Long orderId, String driverName) {
         String message = String.format("配送员 %s 已接单，正在前往餐厅取餐", driverName);
         
@@ -148,6 +133,7 @@ public class NotificationService {
         
         createAndSendNotification(
                 customerId,
+                null,
                 NotificationType.DELIVERY_ASSIGNED,
                 "配送员已分配",
                 message,
@@ -161,7 +147,6 @@ public class NotificationService {
     /**
      * 配送员即将到达通知
      */
-    @Async
     public void notifyDriverNearby(Long customerId, Long orderId, int estimatedMinutes) {
         String message = String.format("配送员距离您还有约 %d 分钟，请准备接收订单", estimatedMinutes);
         
@@ -170,6 +155,7 @@ public class NotificationService {
         
         createAndSendNotification(
                 customerId,
+                null,
                 NotificationType.DELIVERY_NEAR,
                 "配送员即将到达",
                 message,
@@ -183,13 +169,13 @@ public class NotificationService {
     /**
      * 支付通知
      */
-    @Async
     public void notifyPaymentStatus(Long userId, Long orderId, boolean success, String message) {
         NotificationType type = success ? NotificationType.PAYMENT_SUCCESS : NotificationType.PAYMENT_FAILED;
         Priority priority = success ? Priority.NORMAL : Priority.HIGH;
         
         createAndSendNotification(
                 userId,
+                null,
                 type,
                 success ? "支付成功" : "支付失败",
                 message,
@@ -203,10 +189,10 @@ public class NotificationService {
     /**
      * 促销活动通知
      */
-    @Async
     public void notifyPromotion(Long userId, String title, String message) {
         createAndSendNotification(
                 userId,
+                null,
                 NotificationType.PROMOTION,
                 title,
                 message,
@@ -217,6 +203,22 @@ public class NotificationService {
         );
     }
 
+    /**
+     * 通知分发管道统计
+     */
+    public Map<String, Object> getPipelineStats() {
+        Map<String, Object> stats = new HashMap<>(dispatcher.getStats());
+        stats.put("inboxCache", inboxCache.getStats());
+        return stats;
+    }
+
+    /**
+     * 通知保留期清理统计
+     */
+    public Map<String, Object> getRetentionStats() {
+        return retentionService.getStats();
+    }
+
     /**
      * 获取用户的所有通知
      */
@@ -227,33 +229,47 @@ public class NotificationService {
 
         return notificationRepository.findByUserOrderByCreatedAtDesc(user)
                 .stream()
-                .map(this::convertToDTO)
+                .map(NotificationService::convertToDTO)
                 .collect(Collectors.toList());
     }
 
     /**
-     * 获取用户的未读通知
+     * 获取用户最近的通知（第一页，由收件箱缓存提供）
+     */
+    public List<NotificationDTO> getRecentNotifications(String userEmail, int limit) {
+        List<NotificationDTO> cached = inboxCache.getRecent(userEmail, limit);
+        if (cached != null) {
+            return cached;
+        }
+        return notificationRepository.findByUserEmailOrderByCreatedAtDesc(userEmail, PageRequest.of(0, limit))
+                .stream()
+                .map(NotificationService::convertToDTO)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 获取用户的未读通知（未读通知都在收件箱缓存中时不访问数据库）
      */
-    @Transactional(readOnly = true)
     public List<NotificationDTO> getUnreadNotifications(String userEmail) {
+        List<NotificationDTO> cached = inboxCache.getUnread(userEmail);
+        if (cached != null) {
+            return cached;
+        }
+
         User user = userRepository.findByEmail(userEmail)
                 .orElseThrow(() -> new ResourceNotFoundException("用户不存在: " + userEmail));
 
         return notificationRepository.findByUserAndIsReadFalseOrderByCreatedAtDesc(user)
                 .stream()
-                .map(this::convertToDTO)
+                .map(NotificationService::convertToDTO)
                 .collect(Collectors.toList());
     }
 
     /**
-     * 获取未读通知数量
+     * 获取未读通知数量（由收件箱缓存提供，仅首次访问查询数据库）
      */
-    @Transactional(readOnly = true)
     public Long getUnreadCount(String userEmail) {
-        User user = userRepository.findByEmail(userEmail)
-                .orElseThrow(() -> new ResourceNotFoundException("用户不存在: " + userEmail));
-
-        return notificationRepository.countUnreadByUser(user);
+        return inboxCache.getUnreadCount(userEmail);
     }
 
     /**
@@ -269,8 +285,10 @@ public class NotificationService {
             throw new IllegalArgumentException("无权访问此通知");
         }
 
+        boolean wasUnread = !Boolean.TRUE.equals(notification.getIsRead());
         notification.markAsRead();
         Notification updated = notificationRepository.save(notification);
+        inboxCache.onRead(userEmail, notificationId, wasUnread, updated.getReadAt());
 
         log.info("通知已标记为已读: notificationId={}, userId={}", notificationId, userEmail);
 
@@ -285,7 +303,9 @@ public class NotificationService {
         User user = userRepository.findByEmail(userEmail)
                 .orElseThrow(() -> new ResourceNotFoundException("用户不存在: " + userEmail));
 
-        int count = notificationRepository.markAllAsReadByUser(user, LocalDateTime.now());
+        LocalDateTime readAt = LocalDateTime.now();
+        int count = notificationRepository.markAllAsReadByUser(user, readAt);
+        inboxCache.onAllRead(userEmail, readAt);
 
         log.info("批量标记通知为已读: userId={}, count={}", userEmail, count);
 
@@ -306,27 +326,15 @@ public class NotificationService {
         }
 
         notificationRepository.delete(notification);
+        inboxCache.onDeleted(userEmail, notificationId, !Boolean.TRUE.equals(notification.getIsRead()));
 
         log.info("通知已删除: notificationId={}, userId={}", notificationId, userEmail);
     }
 
-    /**
-     * WebSocket 实时推送通知
-     */
-    private void sendWebSocketNotification(String userEmail, NotificationDTO notification) {
-        try {
-            String destination = "/topic/notifications/" + userEmail;
-            messagingTemplate.convertAndSend(destination, notification);
-            log.debug("WebSocket 通知已发送: destination={}, type={}", destination, notification.getType());
-        } catch (Exception e) {
-            log.error("WebSocket 通知发送失败: {}", e.getMessage(), e);
-        }
-    }
-
     /**
      * 将通知实体转换为 DTO
      */
-    private NotificationDTO convertToDTO(Notification notification) {
+    static NotificationDTO convertToDTO(Notification notification) {
         return NotificationDTO.builder()
                 .id(notification.getId())
                 .type(notification.getType())
@@ -346,7 +354,7 @@ public class NotificationService {
     /**
      * 计算时间描述（如："5分钟前"）
      */
-    private String calculateTimeAgo(LocalDateTime createdAt) {
+    static String calculateTimeAgo(LocalDateTime createdAt) {
         Duration duration = Duration.between(createdAt, LocalDateTime.now());
         
         long seconds = duration.getSeconds();
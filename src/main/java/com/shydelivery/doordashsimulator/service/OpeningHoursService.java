@@ -0,0 +1,217 @@
+package com.shydelivery.doordashsimulator.service;
+
+import com.shydelivery.doordashsimulator.entity.Restaurant;
+import com.shydelivery.doordashsimulator.repository.RestaurantRepository;
+import com.shydelivery.doordashsimulator.util.IdOrdinalMap;
+import com.shydelivery.doordashsimulator.util.OpeningHoursIndex;
+import com.shydelivery.doordashsimulator.util.PostingList;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 营业时间服务
+ *
+ * 维护 OpeningHoursIndex，回答"某时刻哪些餐厅在营业"：
+ * - 下单校验: isOpen(restaurant, time)
+ * - 搜索分面: countOpen(候选餐厅ID, time)，候选位图与营业位图按位与
+ *
+ * 只有 isActive = true 的餐厅会进入索引。
+ * 启动时及每小时全量重建，RestaurantService 写操作提交后增量更新（回滚的修改不进入索引），
+ * 重建期间的增量更新在替换索引后重放。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class OpeningHoursService {
+
+    private final RestaurantRepository restaurantRepository;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private IdOrdinalMap ordinals = new IdOrdinalMap();
+    private OpeningHoursIndex index = new OpeningHoursIndex();
+
+    /** 全量重建期间应用的增量更新（非重建期间为 null；写锁保护） */
+    private List<Runnable> pendingUpdates;
+
+    /**
+     * 判断餐厅在指定时刻是否营业（已停用的餐厅视为不营业）
+     */
+    public boolean isOpen(Restaurant restaurant, LocalDateTime time) {
+        if (!Boolean.TRUE.equals(restaurant.getIsActive())) {
+            return false;
+        }
+        lock.readLock().lock();
+        try {
+            int ordinal = ordinals.ordinalOf(restaurant.getId());
+            if (ordinal >= 0 && index.isIndexed(ordinal)) {
+                return index.isOpen(ordinal, OpeningHoursIndex.minuteOfWeek(time));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        // 尚未进入索引（例如刚创建），直接按实体的营业时间判断
+        return OpeningHoursIndex.isWithinHours(
+                restaurant.getOpeningTime(), restaurant.getClosingTime(), time.toLocalTime());
+    }
+
+    /**
+     * 统计候选餐厅中在指定时刻营业的数量
+     */
+    public long countOpen(Collection<Long> restaurantIds, LocalDateTime time) {
+        lock.readLock().lock();
+        try {
+            PostingList candidates = ordinals.toPostingList(restaurantIds);
+            return candidates.andCardinality(index.openAt(OpeningHoursIndex.minuteOfWeek(time)));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 查询在指定时刻营业的全部餐厅ID
+     */
+    public List<Long> findOpenRestaurantIds(LocalDateTime time) {
+        lock.readLock().lock();
+        try {
+            PostingList open = index.openAt(OpeningHoursIndex.minuteOfWeek(time));
+            List<Long> ids = new ArrayList<>();
+            for (int w = 0; w < open.wordCount(); w++) {
+                for (long bits = open.word(w); bits != 0; bits &= bits - 1) {
+                    ids.add(ordinals.idAt((w << 6) + Long.numberOfTrailingZeros(bits)));
+                }
+            }
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 全量重建索引
+     *
+     * 读取数据库期间提交的增量更新照常作用于旧索引，同时记录下来，
+     * 新索引替换旧索引后按顺序重放，避免被重建前读到的旧营业时间覆盖。
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelay = 3_600_000, fixedDelay = 3_600_000)
+    public synchronized void rebuild() {
+        long start = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            pendingUpdates = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try {
+            IdOrdinalMap newOrdinals = new IdOrdinalMap();
+            OpeningHoursIndex newIndex = new OpeningHoursIndex();
+            for (Object[] row : restaurantRepository.findOpeningHoursRows()) {
+                int ordinal = newOrdinals.ordinalForWrite((Long) row[0]);
+                if (Boolean.TRUE.equals(row[3])) {
+                    newIndex.put(ordinal, (LocalTime) row[1], (LocalTime) row[2]);
+                }
+            }
+
+            int replayed;
+            lock.writeLock().lock();
+            try {
+                ordinals = newOrdinals;
+                index = newIndex;
+                replayed = pendingUpdates.size();
+                pendingUpdates.forEach(Runnable::run);
+            } finally {
+                pendingUpdates = null;
+                lock.writeLock().unlock();
+            }
+            log.info("营业时间索引重建完成: restaurants={}, segments={}, 约 {}KB, 重放增量={}, 耗时={}ms",
+                    newOrdinals.size(), newIndex.getSegmentCount(), newIndex.estimateMemoryBytes() / 1024,
+                    replayed, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            lock.writeLock().lock();
+            try {
+                pendingUpdates = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            log.error("营业时间索引重建失败，保留旧索引: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 餐厅创建/更新后增量更新索引（事务提交后生效）
+     */
+    public void indexRestaurant(Restaurant restaurant) {
+        Long id = restaurant.getId();
+        boolean active = Boolean.TRUE.equals(restaurant.getIsActive());
+        LocalTime opening = restaurant.getOpeningTime();
+        LocalTime closing = restaurant.getClosingTime();
+        afterCommit(() -> apply(() -> {
+            int ordinal = ordinals.ordinalForWrite(id);
+            if (ordinal < 0) {
+                return;
+            }
+            if (active) {
+                index.put(ordinal, opening, closing);
+            } else {
+                index.remove(ordinal);
+            }
+        }));
+    }
+
+    /**
+     * 餐厅删除后增量更新索引（事务提交后生效）
+     */
+    public void removeRestaurant(Long restaurantId) {
+        afterCommit(() -> apply(() -> {
+            int ordinal = ordinals.ordinalOf(restaurantId);
+            if (ordinal >= 0) {
+                index.remove(ordinal);
+            }
+        }));
+    }
+
+    /**
+     * 事务提交后执行（回滚时丢弃）；无事务时立即执行
+     */
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * 在写锁内对当前索引执行增量更新；全量重建进行中时同时记录，供新索引重放
+     */
+    private void apply(Runnable update) {
+        lock.writeLock().lock();
+        try {
+            update.run();
+            if (pendingUpdates != null) {
+                pendingUpdates.add(update);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -1,11 +1,11 @@
 package com.shydelivery.doordashsimulator.service;
 
+import com.shydelivery.doordashsimulator.dto.request.CheckoutRequest;
 import com.shydelivery.doordashsimulator.dto.request.CreateOrderRequest;
 import com.shydelivery.doordashsimulator.dto.request.UpdateOrderStatusRequest;
 import com.shydelivery.doordashsimulator.dto.response.OrderDTO;
 import com.shydelivery.doordashsimulator.dto.response.OrderItemDTO;
 import com.shydelivery.doordashsimulator.entity.Address;
-import com.shydelivery.doordashsimulator.entity.MenuItem;
 import com.shydelivery.doordashsimulator.entity.Order;
 import com.shydelivery.doordashsimulator.entity.Order.OrderStatus;
 import com.shydelivery.doordashsimulator.entity.Order.PaymentStatus;
@@ -13,6 +13,7 @@ import com.shydelivery.doordashsimulator.entity.OrderItem;
 import com.shydelivery.doordashsimulator.entity.Payment;
 import com.shydelivery.doordashsimulator.entity.Restaurant;
 import com.shydelivery.doordashsimulator.entity.User;
+import com.shydelivery.doordashsimulator.exception.BusinessException;
 import com.shydelivery.doordashsimulator.exception.ResourceNotFoundException;
 import com.shydelivery.doordashsimulator.repository.AddressRepository;
 import com.shydelivery.doordashsimulator.repository.MenuItemRepository;
@@ -21,17 +22,26 @@ import com.shydelivery.doordashsimulator.repository.OrderRepository;
 import com.shydelivery.doordashsimulator.repository.PaymentRepository;
 import com.shydelivery.doordashsimulator.repository.RestaurantRepository;
 import com.shydelivery.doordashsimulator.repository.UserRepository;
+import com.shydelivery.doordashsimulator.security.RequestIdentity;
+import com.shydelivery.doordashsimulator.service.MenuCatalog.MenuItemView;
+import com.shydelivery.doordashsimulator.service.MenuCatalog.MenuSnapshot;
 import com.shydelivery.doordashsimulator.util.DeliveryFeeCalculator;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -56,6 +66,9 @@ public class OrderService {
     private final AddressRepository addressRepository;
     private final AuthorizationService authorizationService;
     private final PaymentRepository paymentRepository;
+    private final OpeningHoursService openingHoursService;
+    private final RankingScoreService rankingScoreService;
+    private final DriverStatsService driverStatsService;
     
     // Phase 2: 动态配送费计算器
     private final DeliveryFeeCalculator deliveryFeeCalculator;
@@ -65,9 +78,30 @@ public class OrderService {
     // Phase 2: 实时通知服务
     private final NotificationService notificationService;
     
+    private final CartStore cartStore;
+    private final MenuCatalog menuCatalog;
+    private final RequestIdentity requestIdentity;
+    private final JdbcTemplate jdbcTemplate;
+    
     // Tax rate: 8.5%
     private static final BigDecimal TAX_RATE = BigDecimal.valueOf(0.085);
     
+    /**
+     * 购物车结算写入订单项：只写入属于该餐厅、可售且当前价格等于购物车价格快照的菜品，
+     * 返回写入的行（连同菜品名称）；行数少于购物车商品项数即校验失败
+     */
+    private static final String INSERT_CART_ITEMS_SQL =
+        "WITH cart (menu_item_id, quantity, unit_price, special_requests) AS (" +
+        "SELECT * FROM unnest(?::bigint[], ?::integer[], ?::numeric[], ?::text[])), " +
+        "inserted AS (" +
+        "INSERT INTO order_items (order_id, menu_item_id, quantity, unit_price, subtotal, special_requests) " +
+        "SELECT ?, c.menu_item_id, c.quantity, c.unit_price, c.unit_price * c.quantity, c.special_requests " +
+        "FROM cart c JOIN menu_items m ON m.id = c.menu_item_id " +
+        "WHERE m.restaurant_id = ? AND m.is_available = true AND m.price = c.unit_price " +
+        "RETURNING id, menu_item_id, quantity, unit_price, subtotal, special_requests) " +
+        "SELECT i.id, i.menu_item_id, m.name, i.quantity, i.unit_price, i.subtotal, i.special_requests " +
+        "FROM inserted i JOIN menu_items m ON m.id = i.menu_item_id";
+    
     /**
      * 创建订单 (CUSTOMER 角色)
      * 
@@ -86,12 +120,230 @@ public class OrderService {
         Restaurant restaurant = restaurantRepository.findById(request.getRestaurantId())
             .orElseThrow(() -> new ResourceNotFoundException("餐厅不存在，ID: " + request.getRestaurantId()));
         
-        // TODO: 验证餐厅营业状态和营业时间
+        // 验证餐厅营业状态和营业时间
+        verifyRestaurantOpen(restaurant);
+        
+        // 创建订单实体
+        Order order = newOrder(customer, restaurant, request.getPaymentMethod(), request.getSpecialInstructions());
+        
+        // 获取配送地址
+        Address deliveryAddress = resolveDeliveryAddress(
+            customer, request.getDeliveryAddressId(), request.getDeliveryAddress());
+        order.setDeliveryAddress(deliveryAddress);
+        
+        // 计算订单金额（从最新菜单快照获取真实价格：只校验一次菜单版本号，不逐个查询菜品）
+        MenuSnapshot menu = menuCatalog.getCurrent(restaurant.getId());
+        List<OrderItem> orderItems = new ArrayList<>();
+        List<String> itemNames = new ArrayList<>();
+        BigDecimal subtotal = BigDecimal.ZERO;
+        
+        for (CreateOrderRequest.OrderItemRequest itemRequest : request.getItems()) {
+            // 获取菜单项（不在该餐厅菜单中时区分不存在和不属于该餐厅）
+            MenuItemView menuItem = menu != null ? menu.item(itemRequest.getMenuItemId()) : null;
+            if (menuItem == null) {
+                throw menuItemNotInMenu(itemRequest.getMenuItemId(), restaurant);
+            }
+            
+            // 验证菜单项可用
+            if (!menuItem.available()) {
+                throw new IllegalStateException(
+                    "菜单项 " + menuItem.name() + " 暂时不可用");
+            }
+            
+            // 创建订单项
+            OrderItem orderItem = new OrderItem();
+            orderItem.setOrder(order);
+            orderItem.setMenuItem(menuItemRepository.getReferenceById(menuItem.id()));
+            orderItem.setQuantity(itemRequest.getQuantity());
+            orderItem.setUnitPrice(menuItem.price());  // 保存当前价格快照
+            orderItem.setSpecialRequests(itemRequest.getSpecialInstructions());
+            orderItem.calculateSubtotal();  // 计算小计
+            
+            orderItems.add(orderItem);
+            itemNames.add(menuItem.name());
+            
+            // 累加到订单总额
+            subtotal = subtotal.add(orderItem.getSubtotal());
+        }
+        
+        // 验证订单至少有一个项
+        if (orderItems.isEmpty()) {
+            throw new IllegalArgumentException("订单必须至少包含一个菜品");
+        }
+        
+        // Phase 2: 动态配送费、税费和预计送达时间
+        int estimatedDeliveryMinutes = priceOrder(order, restaurant, deliveryAddress, subtotal);
+        
+        // 保存订单
+        Order saved = orderRepository.save(order);
+        
+        // 保存订单项（菜品名称取自菜单快照，不加载菜品实体）
+        List<OrderItemDTO> itemDTOs = new ArrayList<>(orderItems.size());
+        for (int i = 0; i < orderItems.size(); i++) {
+            OrderItem orderItem = orderItems.get(i);
+            orderItem.setOrder(saved);  // 确保关联到已保存的订单
+            orderItemRepository.save(orderItem);
+            itemDTOs.add(OrderItemDTO.builder()
+                .id(orderItem.getId())
+                .menuItemId(orderItem.getMenuItem().getId())
+                .menuItemName(itemNames.get(i))
+                .quantity(orderItem.getQuantity())
+                .unitPrice(orderItem.getUnitPrice())
+                .subtotal(orderItem.getSubtotal())
+                .specialInstructions(orderItem.getSpecialRequests())
+                .build());
+        }
+        
+        // 自动创建支付记录
+        Payment payment = createPaymentForOrder(saved, customer);
+        
+        log.info("订单创建成功: orderNumber={}, items={}, totalAmount={}", 
+            saved.getOrderNumber(), orderItems.size(), saved.getTotalAmount());
+        
+        // Phase 2: 发送订单创建通知
+        notifyOrderCreated(saved, restaurant, estimatedDeliveryMinutes);
+        
+        return convertToDTO(saved, itemDTOs, payment);
+    }
+    
+    /**
+     * 请求的菜品不在餐厅菜单中：菜品不存在（404），或属于其他餐厅
+     */
+    private RuntimeException menuItemNotInMenu(Long menuItemId, Restaurant restaurant) {
+        Long ownerId = menuCatalog.restaurantOf(menuItemId);
+        MenuSnapshot ownerMenu = ownerId != null ? menuCatalog.get(ownerId) : null;
+        MenuItemView menuItem = ownerMenu != null ? ownerMenu.item(menuItemId) : null;
+        if (menuItem == null || ownerId.equals(restaurant.getId())) {
+            return new ResourceNotFoundException("菜单项不存在，ID: " + menuItemId);
+        }
+        return new IllegalArgumentException(
+            "菜单项 " + menuItem.name() + " 不属于餐厅 " + restaurant.getName());
+    }
+    
+    /**
+     * 购物车结算 (CUSTOMER 角色)
+     * 
+     * 一个事务内把活跃购物车转换为订单，购物车同时被停用（见 CartStore.checkout）：
+     * - 直接使用购物车中的商品项和加入时的价格快照，不再逐个查询菜品
+     * - 价格和供应状态在写入订单项的同一条语句中校验：菜品必须属于该餐厅、可售，
+     *   且当前价格等于加入时的价格；有任何不一致则整个事务回滚，购物车保持不变
+     * - cartVersion 与购物车当前版本不一致时拒绝结算（客户端看到的不是最新购物车）
+     * 
+     * @param restaurantId 餐厅 ID
+     * @param request 结算请求
+     * @param customerEmail 客户邮箱
+     * @return 创建的订单 DTO
+     */
+    public OrderDTO checkoutCart(Long restaurantId, CheckoutRequest request, String customerEmail) {
+        log.info("购物车结算: restaurant={}, customer={}", restaurantId, customerEmail);
+        
+        Long customerId = requestIdentity.resolve(customerEmail).userId();
+        
+        return cartStore.checkout(customerId, restaurantId, request.getCartVersion(), cart -> {
+            User customer = authorizationService.getUserAndVerifyCustomer(customerEmail);
+            
+            Restaurant restaurant = restaurantRepository.findById(restaurantId)
+                .orElseThrow(() -> new ResourceNotFoundException("餐厅不存在，ID: " + restaurantId));
+            verifyRestaurantOpen(restaurant);
+            
+            Order order = newOrder(customer, restaurant, request.getPaymentMethod(), request.getSpecialInstructions());
+            Address deliveryAddress = resolveDeliveryAddress(
+                customer, request.getDeliveryAddressId(), request.getDeliveryAddress());
+            order.setDeliveryAddress(deliveryAddress);
+            
+            // 订单金额使用购物车中的价格快照（写入订单项时校验与当前价格一致）
+            BigDecimal subtotal = cart.items().stream()
+                .map(CartStore.ItemSnapshot::subtotal)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+            int estimatedDeliveryMinutes = priceOrder(order, restaurant, deliveryAddress, subtotal);
+            
+            Order saved = orderRepository.save(order);
+            List<OrderItemDTO> itemDTOs = insertCartItems(saved, restaurantId, cart);
+            Payment payment = createPaymentForOrder(saved, customer);
+            
+            log.info("购物车结算成功: orderNumber={}, items={}, totalAmount={}", 
+                saved.getOrderNumber(), itemDTOs.size(), saved.getTotalAmount());
+            
+            notifyOrderCreated(saved, restaurant, estimatedDeliveryMinutes);
+            
+            return convertToDTO(saved, itemDTOs, payment);
+        });
+    }
+    
+    /**
+     * 一条语句写入购物车的全部订单项，同时校验价格快照和供应状态
+     * 
+     * @throws BusinessException 有菜品已下架、不可售、不属于该餐厅或价格已变化（事务回滚）
+     */
+    private List<OrderItemDTO> insertCartItems(Order order, Long restaurantId, CartStore.CartSnapshot cart) {
+        List<CartStore.ItemSnapshot> items = cart.items();
+        List<OrderItemDTO> inserted = jdbcTemplate.execute((ConnectionCallback<List<OrderItemDTO>>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_CART_ITEMS_SQL)) {
+                statement.setArray(1, connection.createArrayOf("bigint",
+                    items.stream().map(CartStore.ItemSnapshot::menuItemId).toArray()));
+                statement.setArray(2, connection.createArrayOf("integer",
+                    items.stream().map(CartStore.ItemSnapshot::quantity).toArray()));
+                statement.setArray(3, connection.createArrayOf("numeric",
+                    items.stream().map(CartStore.ItemSnapshot::priceAtAdd).toArray()));
+                statement.setArray(4, connection.createArrayOf("text",
+                    items.stream().map(CartStore.ItemSnapshot::specialInstructions).toArray()));
+                statement.setLong(5, order.getId());
+                statement.setLong(6, restaurantId);
+                List<OrderItemDTO> rows = new ArrayList<>(items.size());
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        rows.add(OrderItemDTO.builder()
+                            .id(rs.getLong(1))
+                            .menuItemId(rs.getLong(2))
+                            .menuItemName(rs.getString(3))
+                            .quantity(rs.getInt(4))
+                            .unitPrice(rs.getBigDecimal(5))
+                            .subtotal(rs.getBigDecimal(6))
+                            .specialInstructions(rs.getString(7))
+                            .build());
+                    }
+                }
+                return rows;
+            }
+        });
+        
+        if (inserted.size() != items.size()) {
+            // 菜品名称取自菜单快照（已删除的菜品显示 ID）
+            Set<Long> insertedIds = inserted.stream().map(OrderItemDTO::getMenuItemId).collect(Collectors.toSet());
+            MenuSnapshot menu = menuCatalog.get(restaurantId);
+            String names = items.stream()
+                .map(CartStore.ItemSnapshot::menuItemId)
+                .filter(id -> !insertedIds.contains(id))
+                .map(id -> {
+                    MenuItemView menuItem = menu != null ? menu.item(id) : null;
+                    return menuItem != null ? menuItem.name() : "ID " + id;
+                })
+                .collect(Collectors.joining(", "));
+            throw new BusinessException("以下菜品已下架或价格已变化，请刷新购物车后重新结算: " + names);
+        }
+        
+        inserted.sort(Comparator.comparing(OrderItemDTO::getId));
+        return inserted;
+    }
+    
+    /**
+     * 验证餐厅营业状态和营业时间
+     */
+    private void verifyRestaurantOpen(Restaurant restaurant) {
         if (!restaurant.getIsActive()) {
             throw new IllegalStateException("餐厅已关闭，无法下单");
         }
-        
-        // 创建订单实体
+        if (!openingHoursService.isOpen(restaurant, LocalDateTime.now())) {
+            throw new IllegalStateException("餐厅当前不在营业时间内（营业时间 "
+                + restaurant.getOpeningTime() + " - " + restaurant.getClosingTime() + "），无法下单");
+        }
+    }
+    
+    /**
+     * 创建待支付的订单实体（生成订单号，初始状态 PENDING）
+     */
+    private Order newOrder(User customer, Restaurant restaurant, Order.PaymentMethod paymentMethod,
+                           String specialInstructions) {
         Order order = new Order();
         order.setCustomer(customer);
         order.setRestaurant(restaurant);
@@ -101,16 +353,21 @@ public class OrderService {
         
         // 设置初始状态
         order.setStatus(OrderStatus.PENDING);
-        order.setPaymentMethod(request.getPaymentMethod());
+        order.setPaymentMethod(paymentMethod);
         order.setPaymentStatus(PaymentStatus.PENDING);
-        order.setSpecialInstructions(request.getSpecialInstructions());
-        
-        // 获取配送地址
+        order.setSpecialInstructions(specialInstructions);
+        return order;
+    }
+    
+    /**
+     * 获取配送地址：内联地址 → 地址 ID → 默认地址 → 临时默认地址
+     */
+    private Address resolveDeliveryAddress(User customer, Long deliveryAddressId,
+                                           CreateOrderRequest.DeliveryAddressRequest addressReq) {
         Address deliveryAddress = null;
         
         // 优先使用内联地址
-        if (request.getDeliveryAddress() != null) {
-            CreateOrderRequest.DeliveryAddressRequest addressReq = request.getDeliveryAddress();
+        if (addressReq != null) {
             Address tempAddress = new Address();
             tempAddress.setUser(customer);
             tempAddress.setStreetAddress(addressReq.getStreetAddress());
@@ -124,8 +381,8 @@ public class OrderService {
             deliveryAddress = addressRepository.save(tempAddress);
         }
         // 否则使用地址 ID
-        else if (request.getDeliveryAddressId() != null) {
-            deliveryAddress = addressRepository.findById(request.getDeliveryAddressId())
+        else if (deliveryAddressId != null) {
+            deliveryAddress = addressRepository.findById(deliveryAddressId)
                 .orElse(null);
         }
         
@@ -150,51 +407,15 @@ public class OrderService {
             deliveryAddress = addressRepository.save(tempAddress);
         }
         
-        order.setDeliveryAddress(deliveryAddress);
-        
-        // 计算订单金额（从菜单项获取真实价格）
-        List<OrderItem> orderItems = new ArrayList<>();
-        BigDecimal subtotal = BigDecimal.ZERO;
-        
-        for (CreateOrderRequest.OrderItemRequest itemRequest : request.getItems()) {
-            // 获取菜单项
-            MenuItem menuItem = menuItemRepository.findById(itemRequest.getMenuItemId())
-                .orElseThrow(() -> new ResourceNotFoundException(
-                    "菜单项不存在，ID: " + itemRequest.getMenuItemId()));
-            
-            // 验证菜单项属于该餐厅
-            if (!menuItem.getRestaurant().getId().equals(restaurant.getId())) {
-                throw new IllegalArgumentException(
-                    "菜单项 " + menuItem.getName() + " 不属于餐厅 " + restaurant.getName());
-            }
-            
-            // 验证菜单项可用
-            if (!menuItem.getIsAvailable()) {
-                throw new IllegalStateException(
-                    "菜单项 " + menuItem.getName() + " 暂时不可用");
-            }
-            
-            // 创建订单项
-            OrderItem orderItem = new OrderItem();
-            orderItem.setOrder(order);
-            orderItem.setMenuItem(menuItem);
-            orderItem.setQuantity(itemRequest.getQuantity());
-            orderItem.setUnitPrice(menuItem.getPrice());  // 保存当前价格快照
-            orderItem.setSpecialRequests(itemRequest.getSpecialInstructions());
-            orderItem.calculateSubtotal();  // 计算小计
-            
-            orderItems.add(orderItem);
-            
-            // 累加到订单总额
-            subtotal = subtotal.add(orderItem.getSubtotal());
-        }
-        
-        // 验证订单至少有一个项
-        if (orderItems.isEmpty()) {
-            throw new IllegalArgumentException("订单必须至少包含一个菜品");
-        }
-        
-        // Phase 2: 使用动态配送费计算器
+        return deliveryAddress;
+    }
+    
+    /**
+     * 计算配送费（Phase 2 动态定价）、税费和总额，设置预计送达时间
+     * 
+     * @return 预计配送分钟数
+     */
+    private int priceOrder(Order order, Restaurant restaurant, Address deliveryAddress, BigDecimal subtotal) {
         BigDecimal deliveryFee;
         int estimatedDeliveryMinutes = 45; // 默认预计时间
         
@@ -262,22 +483,13 @@ public class OrderService {
         // 设置预计送达时间（基于动态计算的时间）
         order.setEstimatedDelivery(LocalDateTime.now().plusMinutes(estimatedDeliveryMinutes));
         
-        // 保存订单
-        Order saved = orderRepository.save(order);
-        
-        // 保存订单项
-        for (OrderItem orderItem : orderItems) {
-            orderItem.setOrder(saved);  // 确保关联到已保存的订单
-            orderItemRepository.save(orderItem);
-        }
-        
-        // 自动创建支付记录
-        createPaymentForOrder(saved, customer);
-        
-        log.info("订单创建成功: orderNumber={}, items={}, totalAmount={}", 
-            saved.getOrderNumber(), orderItems.size(), saved.getTotalAmount());
-        
-        // Phase 2: 发送订单创建通知
+        return estimatedDeliveryMinutes;
+    }
+    
+    /**
+     * 发送订单创建通知
+     */
+    private void notifyOrderCreated(Order saved, Restaurant restaurant, int estimatedDeliveryMinutes) {
         String notificationMessage = String.format(
             "您的订单 %s 已创建成功！餐厅 %s 正在确认订单。预计 %d 分钟后送达。",
             saved.getOrderNumber(),
@@ -285,8 +497,6 @@ public class OrderService {
             estimatedDeliveryMinutes
         );
         notificationService.notifyOrderStatusChange(saved, notificationMessage);
-        
-        return convertToDTO(saved);
     }
     
     /**
@@ -319,11 +529,8 @@ public class OrderService {
     public List<OrderDTO> getRestaurantOrders(Long restaurantId, String ownerEmail) {
         log.info("获取餐厅订单: restaurantId={}, owner={}", restaurantId, ownerEmail);
         
-        // 验证餐厅所有权
-        authorizationService.verifyRestaurantOwnership(restaurantId, ownerEmail);
-        
-        Restaurant restaurant = restaurantRepository.findById(restaurantId)
-            .orElseThrow(() -> new ResourceNotFoundException("餐厅不存在，ID: " + restaurantId));
+        // 验证餐厅所有权（返回已加载的餐厅）
+        Restaurant restaurant = authorizationService.loadRestaurantForOwner(restaurantId, ownerEmail);
         
         return orderRepository.findByRestaurant(restaurant)
                 .stream()
@@ -342,11 +549,8 @@ public class OrderService {
     public OrderDTO getOrderById(Long orderId, String userEmail) {
         log.info("获取订单详情: orderId={}, user={}", orderId, userEmail);
         
-        // 验证访问权限（客户或餐厅所有者）
-        authorizationService.verifyOrderAccess(orderId, userEmail);
-        
-        Order order = orderRepository.findById(orderId)
-            .orElseThrow(() -> new ResourceNotFoundException("订单不存在，ID: " + orderId));
+        // 验证访问权限（客户或餐厅所有者），返回已加载的订单
+        Order order = authorizationService.loadOrderForAccess(orderId, userEmail);
         
         return convertToDTO(order);
     }
@@ -368,11 +572,8 @@ public class OrderService {
     public OrderDTO updateOrderStatus(Long orderId, UpdateOrderStatusRequest request, String userEmail) {
         log.info("更新订单状态: orderId={}, newStatus={}, user={}", orderId, request.getStatus(), userEmail);
         
-        // 验证访问权限
-        authorizationService.verifyOrderAccess(orderId, userEmail);
-        
-        Order order = orderRepository.findById(orderId)
-            .orElseThrow(() -> new ResourceNotFoundException("订单不存在，ID: " + orderId));
+        // 验证访问权限，返回已加载的订单
+        Order order = authorizationService.loadOrderForAccess(orderId, userEmail);
         
         // 验证状态转换的合法性
         validateStatusTransition(order.getStatus(), request.getStatus());
@@ -392,6 +593,12 @@ public class OrderService {
         }
         
         Order updated = orderRepository.save(order);
+        if (updated.getStatus() == OrderStatus.DELIVERED) {
+            rankingScoreService.recordOrder(updated.getRestaurant().getId());
+            driverStatsService.recordDelivered(updated);
+        } else if (updated.getStatus() == OrderStatus.CANCELLED) {
+            driverStatsService.recordCancelled(updated);
+        }
         log.info("订单状态更新成功: orderId={}, status={}", orderId, updated.getStatus());
         
         return convertToDTO(updated);
@@ -408,11 +615,8 @@ public class OrderService {
     public OrderDTO cancelOrder(Long orderId, String customerEmail) {
         log.info("取消订单: orderId={}, customer={}", orderId, customerEmail);
         
-        // 验证是订单客户
-        authorizationService.verifyOrderCustomer(orderId, customerEmail);
-        
-        Order order = orderRepository.findById(orderId)
-            .orElseThrow(() -> new ResourceNotFoundException("订单不存在，ID: " + orderId));
+        // 验证是订单客户，返回已加载的订单
+        Order order = authorizationService.loadOrderForCustomer(orderId, customerEmail);
         
         // 只有 PENDING 状态的订单可以取消
         if (order.getStatus() != OrderStatus.PENDING) {
@@ -440,6 +644,13 @@ public class OrderService {
         
         // 查找关联的支付记录
         Payment payment = paymentRepository.findByOrder(order).orElse(null);
+        return convertToDTO(order, itemDTOs, payment);
+    }
+    
+    /**
+     * 将 Order 实体转换为 DTO（订单项和支付记录已就绪）
+     */
+    private OrderDTO convertToDTO(Order order, List<OrderItemDTO> itemDTOs, Payment payment) {
         Long paymentId = payment != null ? payment.getId() : null;
         String paymentTransactionId = payment != null ? payment.getTransactionId() : null;
         
@@ -515,11 +726,8 @@ public class OrderService {
     public OrderDTO markOrderReadyForPickup(Long orderId, String ownerEmail) {
         log.info("标记订单为准备完成: orderId={}, owner={}", orderId, ownerEmail);
         
-        // 验证是订单的餐厅老板
-        authorizationService.verifyOrderRestaurantOwner(orderId, ownerEmail);
-        
-        Order order = orderRepository.findById(orderId)
-            .orElseThrow(() -> new ResourceNotFoundException("订单不存在，ID: " + orderId));
+        // 验证是订单的餐厅老板，返回已加载的订单
+        Order order = authorizationService.loadOrderForRestaurantOwner(orderId, ownerEmail);
         
         // 验证当前状态必须是 PREPARING
         if (order.getStatus() != OrderStatus.PREPARING) {
@@ -539,8 +747,9 @@ public class OrderService {
      * 
      * @param order 订单
      * @param customer 客户
+     * @return 支付记录，创建失败时为 null
      */
-    private void createPaymentForOrder(Order order, User customer) {
+    private Payment createPaymentForOrder(Order order, User customer) {
         log.info("为订单创建支付记录: orderId={}, orderNumber={}", order.getId(), order.getOrderNumber());
         
         try {
@@ -559,15 +768,17 @@ public class OrderService {
                 .notes("订单创建时自动生成的支付记录")
                 .build();
             
-            paymentRepository.save(payment);
+            Payment saved = paymentRepository.save(payment);
             
             log.info("支付记录创建成功: orderId={}, paymentMethod={}, amount={}", 
                 order.getId(), paymentMethod, order.getTotalAmount());
+            return saved;
                 
         } catch (Exception e) {
             log.error("创建支付记录失败: orderId={}, error={}", order.getId(), e.getMessage());
             // 不抛出异常，避免影响订单创建
             // 可以在后续手动创建支付记录
+            return null;
         }
     }
     
@@ -0,0 +1,311 @@
+package com.shydelivery.doordashsimulator.service;
+
+import com.shydelivery.doordashsimulator.exception.ServiceUnavailableException;
+import com.shydelivery.doordashsimulator.service.PaymentGateway.ChargeRequest;
+import com.shydelivery.doordashsimulator.service.PaymentGateway.ChargeResult;
+import com.shydelivery.doordashsimulator.util.CircuitBreaker;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 支付网关调用调度（舱壁 + 熔断 + 超时 + 幂等重试）
+ *
+ * - 网关调用不在请求线程和数据库事务中执行：PaymentService 先提交 PROCESSING 状态，
+ *   再把扣款交给这里，请求立即返回；结果通过回调在一个新的短事务中写回
+ * - 舱壁：固定 threads 个线程执行网关调用，最多 threads + queue-capacity 个支付在途；
+ *   名额在请求事务之前预留（reserve），已满时直接拒绝，网关变慢不会拖垮 Tomcat 线程和连接池
+ * - 熔断：连续 breaker-failure-threshold 次结果未知（超时/错误）后打开，打开期间新支付直接拒绝，
+ *   在途支付的重试不调用网关；breaker-open-ms 后放行一个探测调用
+ * - 每次调用最多等待 attempt-timeout-ms；结果未知时按指数退避重试，最多 max-attempts 次，
+ *   每次使用同一幂等键（payment-{id}），网关保证不会重复扣款
+ * - 重试用尽仍无结果的支付保持 PROCESSING，由 PaymentService 的对账任务稍后用同一幂等键重新提交
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PaymentDispatcher {
+
+    private final PaymentGateway gateway;
+
+    @Value("${payment.executor.threads:16}")
+    private int threads;
+
+    @Value("${payment.executor.queue-capacity:256}")
+    private int queueCapacity;
+
+    @Value("${payment.executor.attempt-timeout-ms:3000}")
+    private long attemptTimeoutMs;
+
+    @Value("${payment.executor.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${payment.executor.retry-backoff-ms:200}")
+    private long retryBackoffMs;
+
+    @Value("${payment.executor.breaker-failure-threshold:5}")
+    private int breakerFailureThreshold;
+
+    @Value("${payment.executor.breaker-open-ms:10000}")
+    private long breakerOpenMs;
+
+    private ThreadPoolExecutor workers;
+    private ScheduledExecutorService retryScheduler;
+    private Semaphore permits;
+    private CircuitBreaker breaker;
+
+    /** 本节点在途的支付（对账时跳过） */
+    private final Set<Long> inFlight = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder dispatched = new LongAdder();
+    private final LongAdder approved = new LongAdder();
+    private final LongAdder declined = new LongAdder();
+    private final LongAdder attemptFailures = new LongAdder();
+    private final LongAdder attemptTimeouts = new LongAdder();
+    private final LongAdder shortCircuited = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder unresolved = new LongAdder();
+    private final LongAdder callbackFailures = new LongAdder();
+    private final LongAdder rejectedBusy = new LongAdder();
+    private final LongAdder rejectedOpen = new LongAdder();
+    private final LongAdder gatewayCalls = new LongAdder();
+    private final LongAdder gatewayNanos = new LongAdder();
+    private final LongAccumulator maxGatewayNanos = new LongAccumulator(Math::max, 0);
+
+    private static final class Job {
+        final Long paymentId;
+        final ChargeRequest request;
+        final Consumer<ChargeResult> onResult;
+        int attempts;
+
+        Job(Long paymentId, ChargeRequest request, Consumer<ChargeResult> onResult) {
+            this.paymentId = paymentId;
+            this.request = request;
+            this.onResult = onResult;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        // 队列不设上限：在途数量由 permits 限制，提交永远不会被拒绝
+        workers = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new CustomizableThreadFactory("payment-"));
+        retryScheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("payment-retry-"));
+        permits = new Semaphore(threads + queueCapacity);
+        breaker = new CircuitBreaker(breakerFailureThreshold, breakerOpenMs);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        retryScheduler.shutdownNow();
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(attemptTimeoutMs * 2, TimeUnit.MILLISECONDS)) {
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            workers.shutdownNow();
+        }
+        // 未完成的支付保持 PROCESSING，重启后由对账任务继续
+        if (!inFlight.isEmpty()) {
+            log.warn("停机时仍有 {} 个支付在途，将由对账任务继续处理", inFlight.size());
+        }
+    }
+
+    // ========== 名额 ==========
+
+    /**
+     * 预留一个在途名额（在修改支付状态之前调用）
+     *
+     * @throws ServiceUnavailableException 熔断打开（建议在剩余熔断时间后重试）
+     *         或在途支付已满（建议在一次网关调用超时后重试）
+     */
+    public void reserve() {
+        if (breaker.isRejecting()) {
+            rejectedOpen.increment();
+            throw new ServiceUnavailableException("支付网关暂时不可用，请稍后重试",
+                    retryAfterSeconds(breaker.remainingOpenMillis()));
+        }
+        if (!permits.tryAcquire()) {
+            rejectedBusy.increment();
+            throw new ServiceUnavailableException("支付请求过多，请稍后重试", retryAfterSeconds(attemptTimeoutMs));
+        }
+    }
+
+    /**
+     * 预留一个在途名额，不可用时返回 false（对账任务使用）
+     */
+    public boolean tryReserve() {
+        return !breaker.isRejecting() && permits.tryAcquire();
+    }
+
+    /**
+     * 当前可预留的名额数，熔断拒绝期内为 0（对账任务据此决定认领多少支付）
+     */
+    public int availablePermits() {
+        return breaker.isRejecting() ? 0 : permits.availablePermits();
+    }
+
+    /**
+     * 释放未使用的名额（预留后支付状态修改失败时调用）
+     */
+    public void cancelReservation() {
+        permits.release();
+    }
+
+    public boolean isInFlight(Long paymentId) {
+        return inFlight.contains(paymentId);
+    }
+
+    // ========== 调度 ==========
+
+    /**
+     * 提交扣款（必须已预留名额）；网关给出明确答复时在 payment 线程上调用 onResult
+     */
+    public void dispatch(Long paymentId, ChargeRequest request, Consumer<ChargeResult> onResult) {
+        if (!inFlight.add(paymentId)) {
+            // 已在途（例如对账与请求同时提交），共用一次网关调用
+            permits.release();
+            return;
+        }
+        dispatched.increment();
+        submit(new Job(paymentId, request, onResult));
+    }
+
+    private void submit(Job job) {
+        try {
+            workers.execute(() -> attempt(job));
+        } catch (RuntimeException e) {
+            // 线程池已关闭（停机中）：保持 PROCESSING，由对账任务继续
+            release(job);
+        }
+    }
+
+    private void attempt(Job job) {
+        job.attempts++;
+        if (!breaker.tryAcquire()) {
+            shortCircuited.increment();
+            retryOrGiveUp(job, "熔断中");
+            return;
+        }
+
+        ChargeResult result;
+        long start = System.nanoTime();
+        try {
+            result = gateway.charge(job.request, Duration.ofMillis(attemptTimeoutMs));
+        } catch (RuntimeException e) {
+            recordGatewayCall(start);
+            breaker.onFailure();
+            attemptFailures.increment();
+            if (e instanceof PaymentGateway.GatewayException gatewayException && gatewayException.isTimeout()) {
+                attemptTimeouts.increment();
+            }
+            retryOrGiveUp(job, e.getMessage());
+            return;
+        }
+        recordGatewayCall(start);
+        breaker.onSuccess();
+
+        if (result.approved()) {
+            approved.increment();
+        } else {
+            declined.increment();
+        }
+        try {
+            job.onResult.accept(result);
+        } catch (RuntimeException e) {
+            // 写回失败（例如数据库不可用）：保持 PROCESSING，对账时用同一幂等键取回同一结果
+            callbackFailures.increment();
+            log.error("支付结果写回失败: paymentId={}, error={}", job.paymentId, e.getMessage());
+        } finally {
+            release(job);
+        }
+    }
+
+    private void retryOrGiveUp(Job job, String reason) {
+        if (job.attempts < maxAttempts) {
+            retries.increment();
+            long delayMs = retryBackoffMs << (job.attempts - 1);
+            log.debug("支付网关调用结果未知，{}ms 后重试: paymentId={}, attempt={}, reason={}",
+                    delayMs, job.paymentId, job.attempts, reason);
+            try {
+                retryScheduler.schedule(() -> submit(job), delayMs, TimeUnit.MILLISECONDS);
+            } catch (RuntimeException e) {
+                release(job);
+            }
+            return;
+        }
+        unresolved.increment();
+        log.warn("支付网关调用 {} 次均无结果，等待对账: paymentId={}, reason={}",
+                job.attempts, job.paymentId, reason);
+        release(job);
+    }
+
+    private static long retryAfterSeconds(long millis) {
+        return Math.max(1, TimeUnit.MILLISECONDS.toSeconds(millis + 999));
+    }
+
+    private void release(Job job) {
+        inFlight.remove(job.paymentId);
+        permits.release();
+    }
+
+    private void recordGatewayCall(long start) {
+        long nanos = System.nanoTime() - start;
+        gatewayCalls.increment();
+        gatewayNanos.add(nanos);
+        maxGatewayNanos.accumulate(nanos);
+    }
+
+    // ========== 统计 ==========
+
+    /**
+     * 支付调度统计
+     */
+    public Map<String, Object> getStats() {
+        long calls = gatewayCalls.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("gateway", gateway.name());
+        stats.put("breakerState", breaker.state().name());
+        stats.put("breakerOpenCount", breaker.openCount());
+        stats.put("threads", threads);
+        stats.put("inFlight", inFlight.size());
+        stats.put("queued", workers.getQueue().size());
+        stats.put("availablePermits", permits.availablePermits());
+        stats.put("dispatched", dispatched.sum());
+        stats.put("approved", approved.sum());
+        stats.put("declined", declined.sum());
+        stats.put("attemptFailures", attemptFailures.sum());
+        stats.put("attemptTimeouts", attemptTimeouts.sum());
+        stats.put("shortCircuited", shortCircuited.sum());
+        stats.put("retries", retries.sum());
+        stats.put("unresolved", unresolved.sum());
+        stats.put("callbackFailures", callbackFailures.sum());
+        stats.put("rejectedBusy", rejectedBusy.sum());
+        stats.put("rejectedOpen", rejectedOpen.sum());
+        stats.put("avgGatewayMs", calls == 0 ? 0.0 : gatewayNanos.sum() / 1e6 / calls);
+        stats.put("maxGatewayMs", maxGatewayNanos.get() / 1e6);
+        stats.put("gatewayStats", gateway.getStats());
+        return stats;
+    }
+}
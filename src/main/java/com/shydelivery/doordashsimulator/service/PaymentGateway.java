@@ -0,0 +1,76 @@
+package com.shydelivery.doordashsimulator.service;
+
+import com.shydelivery.doordashsimulator.entity.PaymentMethod;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * 第三方支付网关
+ *
+ * PaymentDispatcher 在舱壁线程池中调用它（阻塞调用，不在数据库事务内）。
+ * 实现按 payment.gateway.type 选择；默认为本地模拟网关（SimulatedPaymentGateway）。
+ */
+public interface PaymentGateway {
+
+    /**
+     * 网关名称（统计用）
+     */
+    String name();
+
+    /**
+     * 扣款
+     *
+     * 同一幂等键重复调用返回第一次的结果，不会重复扣款；因此结果未知时可以用同一幂等键安全重试。
+     *
+     * @param timeout 等待网关响应的上限
+     * @return 网关的明确答复（批准或拒绝）
+     * @throws GatewayException 结果未知（超时、网络错误、网关内部错误）
+     */
+    ChargeResult charge(ChargeRequest request, Duration timeout);
+
+    /**
+     * 网关统计（可选）
+     */
+    default Map<String, Object> getStats() {
+        return Map.of();
+    }
+
+    /**
+     * 扣款请求
+     */
+    record ChargeRequest(String idempotencyKey, BigDecimal amount, PaymentMethod paymentMethod) {
+    }
+
+    /**
+     * 网关答复：approved 时带交易号，否则带拒绝原因
+     */
+    record ChargeResult(boolean approved, String transactionId, String declineReason) {
+
+        public static ChargeResult approved(String transactionId) {
+            return new ChargeResult(true, transactionId, null);
+        }
+
+        public static ChargeResult declined(String reason) {
+            return new ChargeResult(false, null, reason);
+        }
+    }
+
+    /**
+     * 结果未知的网关调用失败（可以用同一幂等键重试）
+     */
+    class GatewayException extends RuntimeException {
+
+        private final boolean timeout;
+
+        public GatewayException(String message, boolean timeout) {
+            super(message);
+            this.timeout = timeout;
+        }
+
+        public boolean isTimeout() {
+            return timeout;
+        }
+    }
+}
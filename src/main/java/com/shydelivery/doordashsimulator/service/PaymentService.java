@@ -7,28 +7,58 @@ import com.shydelivery.doordashsimulator.entity.*;
 import com.shydelivery.doordashsimulator.repository.OrderRepository;
 import com.shydelivery.doordashsimulator.repository.PaymentRepository;
 import com.shydelivery.doordashsimulator.repository.UserRepository;
+import com.shydelivery.doordashsimulator.service.PaymentGateway.ChargeRequest;
+import com.shydelivery.doordashsimulator.service.PaymentGateway.ChargeResult;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
 import java.util.List;
-import java.util.UUID;
 import java.util.stream.Collectors;
 
 /**
  * 支付服务
+ * 
+ * 网关扣款异步执行（见 PaymentDispatcher）：processPayment 只在短事务内把支付置为 PROCESSING，
+ * 网关答复后由回调在新的短事务中写回结果；长时间停留在 PROCESSING 的支付由对账任务重新提交
+ * （多节点时每个支付只被一个节点认领）
  */
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class PaymentService {
     
+    /**
+     * 认领待对账的支付：updated_at 改为当前时间，stale-after-ms 内任何节点都不会再认领；
+     * SKIP LOCKED 让多节点同时对账时互不等待
+     */
+    private static final String CLAIM_STALE_SQL =
+        "UPDATE payments SET updated_at = ? WHERE id IN (" +
+        "SELECT id FROM payments WHERE status = 'PROCESSING' AND updated_at < ? " +
+        "ORDER BY updated_at LIMIT ? FOR UPDATE SKIP LOCKED) " +
+        "RETURNING id, amount, payment_method";
+    
     private final PaymentRepository paymentRepository;
     private final OrderRepository orderRepository;
     private final UserRepository userRepository;
+    private final PaymentDispatcher paymentDispatcher;
+    private final PlatformTransactionManager transactionManager;
+    private final JdbcTemplate jdbcTemplate;
+    
+    @Value("${payment.reconcile.stale-after-ms:60000}")
+    private long reconcileStaleAfterMs;
+    
+    @Value("${payment.reconcile.batch-size:100}")
+    private int reconcileBatchSize;
     
     /**
      * 创建支付记录
@@ -75,52 +105,131 @@ public class PaymentService {
     }
     
     /**
-     * 处理支付（模拟第三方支付）
+     * 处理支付（异步调用第三方支付网关）
+     * 
+     * 短事务内把支付置为 PROCESSING 并提交，网关调用交给 PaymentDispatcher 的舱壁线程池，
+     * 请求线程和数据库连接不等待网关。返回 PROCESSING 状态的支付，客户端轮询支付详情获取结果。
      */
-    @Transactional
     public PaymentDTO processPayment(Long paymentId, String customerEmail) {
         log.info("处理支付: paymentId={}, customerEmail={}", paymentId, customerEmail);
         
-        Payment payment = paymentRepository.findById(paymentId)
-            .orElseThrow(() -> new RuntimeException("支付记录不存在: " + paymentId));
-        
-        // 验证支付属于该客户
-        if (!payment.getCustomer().getEmail().equals(customerEmail)) {
-            throw new RuntimeException("无权操作此支付记录");
-        }
+        // 预留网关调用名额（熔断打开或在途支付已满时直接拒绝，支付状态不变）
+        paymentDispatcher.reserve();
         
-        // 验证支付状态
-        if (payment.getStatus() != PaymentStatus.PENDING) {
-            throw new RuntimeException("支付状态不正确，当前状态: " + payment.getStatus());
+        PaymentDTO accepted;
+        try {
+            accepted = new TransactionTemplate(transactionManager).execute(status -> {
+                Payment payment = paymentRepository.findById(paymentId)
+                    .orElseThrow(() -> new RuntimeException("支付记录不存在: " + paymentId));
+                
+                // 验证支付属于该客户
+                if (!payment.getCustomer().getEmail().equals(customerEmail)) {
+                    throw new RuntimeException("无权操作此支付记录");
+                }
+                
+                // 验证支付状态
+                if (payment.getStatus() != PaymentStatus.PENDING) {
+                    throw new RuntimeException("支付状态不正确，当前状态: " + payment.getStatus());
+                }
+                
+                // 更新状态为处理中
+                payment.setStatus(PaymentStatus.PROCESSING);
+                return convertToDTO(paymentRepository.save(payment));
+            });
+        } catch (RuntimeException e) {
+            paymentDispatcher.cancelReservation();
+            throw e;
         }
         
-        // 更新状态为处理中
-        payment.setStatus(PaymentStatus.PROCESSING);
-        payment = paymentRepository.save(payment);
+        // 事务已提交，网关答复后回调 completePayment
+        paymentDispatcher.dispatch(paymentId, chargeRequest(paymentId, accepted.getAmount(), accepted.getPaymentMethod()),
+            result -> completePayment(paymentId, result));
         
-        // 模拟第三方支付处理（实际应调用支付网关API）
-        try {
-            String transactionId = simulateThirdPartyPayment(payment);
-            payment.markAsCompleted(transactionId);
-            payment = paymentRepository.save(payment);
-            
-            // 更新订单的支付状态为已完成
-            updateOrderPaymentStatus(payment.getOrder(), Order.PaymentStatus.COMPLETED);
-            
-            log.info("支付成功: paymentId={}, transactionId={}", paymentId, transactionId);
-        } catch (Exception e) {
-            String failureReason = "支付处理失败: " + e.getMessage();
-            payment.markAsFailed(failureReason);
-            payment = paymentRepository.save(payment);
-            
-            // 更新订单的支付状态为失败
-            updateOrderPaymentStatus(payment.getOrder(), Order.PaymentStatus.FAILED);
+        return accepted;
+    }
+    
+    /**
+     * 写回网关答复（PaymentDispatcher 回调，新的短事务）
+     * 支付已不在 PROCESSING（例如已由管理员确认）时忽略
+     */
+    void completePayment(Long paymentId, ChargeResult result) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            Payment payment = paymentRepository.findById(paymentId).orElse(null);
+            if (payment == null || payment.getStatus() != PaymentStatus.PROCESSING) {
+                log.info("支付已不在处理中，忽略网关答复: paymentId={}", paymentId);
+                return;
+            }
             
-            log.error("支付失败: paymentId={}, reason={}", paymentId, failureReason);
-            throw new RuntimeException(failureReason);
+            if (result.approved()) {
+                payment.markAsCompleted(result.transactionId());
+                paymentRepository.save(payment);
+                
+                // 更新订单的支付状态为已完成
+                updateOrderPaymentStatus(payment.getOrder(), Order.PaymentStatus.COMPLETED);
+                
+                log.info("支付成功: paymentId={}, transactionId={}", paymentId, result.transactionId());
+            } else {
+                String failureReason = "支付处理失败: " + result.declineReason();
+                payment.markAsFailed(failureReason);
+                paymentRepository.save(payment);
+                
+                // 更新订单的支付状态为失败
+                updateOrderPaymentStatus(payment.getOrder(), Order.PaymentStatus.FAILED);
+                
+                log.warn("支付失败: paymentId={}, reason={}", paymentId, failureReason);
+            }
+        });
+    }
+    
+    /**
+     * 待对账的支付（认领语句返回的列）
+     */
+    private record StalePayment(Long id, BigDecimal amount, PaymentMethod paymentMethod) {
+    }
+    
+    /**
+     * 对账：停留在 PROCESSING 超过 stale-after-ms 的支付（重试用尽、结果写回失败、进程重启）
+     * 用同一幂等键重新提交；网关对已处理的幂等键返回原结果，不会重复扣款
+     * 
+     * 每次最多认领本节点可用名额数的支付（一条语句认领，见 CLAIM_STALE_SQL），
+     * 每个支付只由认领它的节点提交；认领后未能提交的支付在下一个 stale-after-ms 后重新认领
+     */
+    @Scheduled(fixedDelayString = "${payment.reconcile.interval-ms:30000}")
+    public void reconcileProcessingPayments() {
+        int limit = Math.min(reconcileBatchSize, paymentDispatcher.availablePermits());
+        if (limit <= 0) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime staleBefore = now.minusNanos(reconcileStaleAfterMs * 1_000_000);
+        List<StalePayment> claimed = jdbcTemplate.query(CLAIM_STALE_SQL,
+            (rs, rowNum) -> new StalePayment(rs.getLong(1), rs.getBigDecimal(2), PaymentMethod.valueOf(rs.getString(3))),
+            Timestamp.valueOf(now), Timestamp.valueOf(staleBefore), limit);
+        
+        int resubmitted = 0;
+        for (StalePayment payment : claimed) {
+            Long paymentId = payment.id();
+            if (paymentDispatcher.isInFlight(paymentId)) {
+                continue;
+            }
+            if (!paymentDispatcher.tryReserve()) {
+                break;
+            }
+            paymentDispatcher.dispatch(paymentId, chargeRequest(paymentId, payment.amount(), payment.paymentMethod()),
+                result -> completePayment(paymentId, result));
+            resubmitted++;
         }
         
-        return convertToDTO(payment);
+        if (!claimed.isEmpty()) {
+            log.info("支付对账重新提交: resubmitted={}, claimed={}", resubmitted, claimed.size());
+        }
+    }
+    
+    /**
+     * 网关扣款请求（幂等键由支付 ID 决定，所有重试和对账使用同一个键）
+     */
+    private static ChargeRequest chargeRequest(Long paymentId, BigDecimal amount, PaymentMethod paymentMethod) {
+        return new ChargeRequest("payment-" + paymentId, amount, paymentMethod);
     }
     
     /**
@@ -281,28 +390,6 @@ public class PaymentService {
             .collect(Collectors.toList());
     }
     
-    /**
-     * 模拟第三方支付处理
-     */
-    private String simulateThirdPartyPayment(Payment payment) {
-        // 实际应用中，这里应该调用第三方支付网关API
-        // 例如: Stripe, PayPal, Square 等
-        
-        log.info("模拟第三方支付: paymentId={}, amount={}, method={}", 
-            payment.getId(), payment.getAmount(), payment.getPaymentMethod());
-        
-        // 模拟随机失败（10%概率）
-        if (Math.random() < 0.1) {
-            throw new RuntimeException("第三方支付网关拒绝");
-        }
-        
-        // 生成模拟交易ID
-        String transactionId = "TXN-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
-        
-        log.info("第三方支付成功: transactionId={}", transactionId);
-        return transactionId;
-    }
-    
     /**
      * 更新订单的支付状态
      */
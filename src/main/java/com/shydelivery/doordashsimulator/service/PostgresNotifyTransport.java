@@ -0,0 +1,137 @@
+package com.shydelivery.doordashsimulator.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 基于 PostgreSQL LISTEN/NOTIFY 的集群传输
+ *
+ * 发送：一批帧用一条 SELECT pg_notify(channel, f) FROM unnest(?) 发出（一次往返，
+ * 使用连接池连接，自动提交后立即投递）。
+ * 接收：独立的 JDBC 连接（不占用连接池）执行 LISTEN，后台线程轮询通知；
+ * 连接断开后按 1s → 30s 指数退避重连。断开期间其他节点的消息会丢失，
+ * 与 WebSocket 本身“尽力投递”的语义一致。
+ *
+ * NOTIFY 负载上限约 8000 字节，大消息由 ClusterBroadcastService 分片。
+ *
+ * 只在 websocket.cluster.transport=postgres 时启用（多实例部署显式开启），默认单节点不建立 LISTEN 连接。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "websocket.cluster.transport", havingValue = "postgres")
+public class PostgresNotifyTransport implements ClusterTransport {
+
+    private static final String PUBLISH_SQL = "SELECT pg_notify(?, f) FROM unnest(?::text[]) AS f";
+    private static final long MAX_BACKOFF_MS = 30_000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${spring.datasource.url}")
+    private String url;
+
+    @Value("${spring.datasource.username}")
+    private String username;
+
+    @Value("${spring.datasource.password}")
+    private String password;
+
+    @Value("${websocket.cluster.channel:ws_fanout}")
+    private String channel;
+
+    private volatile boolean running;
+    private Thread listener;
+
+    @Override
+    public String name() {
+        return "postgres";
+    }
+
+    @Override
+    public void publish(List<String> frames) {
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            Array array = connection.createArrayOf("text", frames.toArray());
+            try (PreparedStatement statement = connection.prepareStatement(PUBLISH_SQL)) {
+                statement.setString(1, channel);
+                statement.setArray(2, array);
+                statement.execute();
+            } finally {
+                array.free();
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public synchronized void start(Consumer<String> receiver) {
+        if (!channel.matches("[a-z_][a-z0-9_]*")) {
+            throw new IllegalStateException("websocket.cluster.channel 只能包含小写字母、数字和下划线: " + channel);
+        }
+        running = true;
+        listener = new Thread(() -> listenLoop(receiver), "ws-cluster-listener");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    @Override
+    public synchronized void stop() {
+        running = false;
+        if (listener != null) {
+            listener.interrupt();
+        }
+    }
+
+    private void listenLoop(Consumer<String> receiver) {
+        long backoff = 1000;
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(url, username, password)) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + channel);
+                }
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                log.info("集群广播监听已建立: channel={}", channel);
+                backoff = 1000;
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(500);
+                    if (notifications == null) {
+                        continue;
+                    }
+                    for (PGNotification notification : notifications) {
+                        try {
+                            receiver.accept(notification.getParameter());
+                        } catch (Exception e) {
+                            log.warn("处理集群广播失败: {}", e.getMessage());
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("集群广播监听连接失败，{}ms 后重连: {}", backoff, e.getMessage());
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                backoff = Math.min(MAX_BACKOFF_MS, backoff * 2);
+            }
+        }
+    }
+}
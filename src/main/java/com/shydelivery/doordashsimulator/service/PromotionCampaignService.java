@@ -0,0 +1,503 @@
+package com.shydelivery.doordashsimulator.service;
+
+import com.shydelivery.doordashsimulator.dto.request.CreatePromotionCampaignRequest;
+import com.shydelivery.doordashsimulator.dto.response.NotificationDTO;
+import com.shydelivery.doordashsimulator.dto.response.PromotionCampaignDTO;
+import com.shydelivery.doordashsimulator.entity.Notification.NotificationType;
+import com.shydelivery.doordashsimulator.entity.Notification.Priority;
+import com.shydelivery.doordashsimulator.entity.PromotionCampaign;
+import com.shydelivery.doordashsimulator.entity.PromotionCampaign.CampaignStatus;
+import com.shydelivery.doordashsimulator.exception.BusinessException;
+import com.shydelivery.doordashsimulator.exception.ResourceNotFoundException;
+import com.shydelivery.doordashsimulator.repository.PromotionCampaignRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.StringReader;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 促销活动服务
+ *
+ * 面向大量用户的批量促销通知（notifyPromotion 只适合单个用户）：
+ * 1. 按角色 / 城市 / 下单历史筛选目标用户，服务端游标（fetch-size 行一批）按用户 ID 顺序流式读取
+ * 2. 每 chunk-size 个接收人一个事务：一次 nextval 批量分配通知 ID，COPY 写入通知表，
+ *    同一事务内记录进度（last_user_id），中断后从进度处续发
+ * 3. 实时推送只发给当前在线的用户（收件箱缓存中有记录，即最近在轮询通知的用户），
+ *    按 live-rate-per-second 限速，不挤占订单等事务性通知的推送
+ *
+ * 活动在单独的单线程执行器上依次运行，不占用通知分发管道的工作线程。
+ *
+ * 多实例：发送前先在数据库中认领活动（CAS 取得租约，owner_node/lease_until），
+ * 同一活动同一时刻只有一个节点发送；执行节点每 lease-check-ms 续约，
+ * 各节点同时扫描租约已过期的未完成活动并接管续发（节点宕机的情况）。
+ * 取消只修改数据库状态：每块的进度更新要求活动仍为 RUNNING 且租约属于本节点，
+ * 否则回滚该块并停止，任何节点上的取消都会在当前块结束时生效，且不会被改写为 COMPLETED。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PromotionCampaignService {
+
+    private static final String COPY_SQL =
+            "COPY notifications (id, user_id, notification_type, title, message, is_read, priority, extra_data, created_at) " +
+            "FROM STDIN WITH (FORMAT csv)";
+    private static final String ALLOCATE_IDS_SQL =
+            "SELECT nextval(pg_get_serial_sequence('notifications', 'id')) FROM generate_series(1, ?)";
+
+    private final PromotionCampaignRepository campaignRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final NotificationInboxCache inboxCache;
+    private final SimpMessagingTemplate messagingTemplate;
+
+    @Value("${campaign.chunk-size:5000}")
+    private int chunkSize;
+
+    @Value("${campaign.fetch-size:5000}")
+    private int fetchSize;
+
+    @Value("${campaign.live-rate-per-second:500}")
+    private int liveRatePerSecond;
+
+    @Value("${campaign.lease-seconds:60}")
+    private long leaseSeconds;
+
+    private static final Set<CampaignStatus> UNFINISHED = EnumSet.of(CampaignStatus.PENDING, CampaignStatus.RUNNING);
+
+    /** 本节点标识（租约持有者） */
+    private final String nodeId = UUID.randomUUID().toString().substring(0, 8);
+
+    private final ExecutorService runner = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("campaign-"));
+    /** 已提交到执行器、尚未开始的活动（避免重复排队） */
+    private final Set<Long> queued = ConcurrentHashMap.newKeySet();
+    /** 本节点正在发送的活动 */
+    private volatile Long current;
+    /** 续约失败（已取消或被接管），当前活动在下一块之前停止 */
+    private volatile boolean stopRequested;
+
+    /**
+     * 创建促销活动（事务提交后开始发送）
+     */
+    @Transactional
+    public PromotionCampaignDTO createCampaign(CreatePromotionCampaignRequest request, String createdBy) {
+        if (request.getOrderedWithinDays() != null && request.getMinOrders() == null) {
+            throw new BusinessException("指定下单时间窗口时必须同时指定最少下单数");
+        }
+        PromotionCampaign campaign = campaignRepository.save(PromotionCampaign.builder()
+                .title(request.getTitle())
+                .message(request.getMessage())
+                .targetRole(request.getTargetRole())
+                .targetCity(request.getTargetCity() != null && !request.getTargetCity().isBlank()
+                        ? request.getTargetCity().trim() : null)
+                .minOrders(request.getMinOrders())
+                .orderedWithinDays(request.getOrderedWithinDays())
+                .createdBy(createdBy)
+                .build());
+
+        Long campaignId = campaign.getId();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                enqueue(campaignId);
+            }
+        });
+        log.info("促销活动已创建: campaignId={}, createdBy={}", campaignId, createdBy);
+        return convertToDTO(campaign);
+    }
+
+    /**
+     * 查询活动进度
+     */
+    @Transactional(readOnly = true)
+    public PromotionCampaignDTO getCampaign(Long campaignId) {
+        return campaignRepository.findById(campaignId)
+                .map(this::convertToDTO)
+                .orElseThrow(() -> new ResourceNotFoundException("促销活动不存在，ID: " + campaignId));
+    }
+
+    /**
+     * 最近的活动
+     */
+    @Transactional(readOnly = true)
+    public List<PromotionCampaignDTO> getRecentCampaigns() {
+        return campaignRepository.findTop20ByOrderByIdDesc().stream()
+                .map(this::convertToDTO)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 取消活动（已写入的通知保留，正在发送的活动在当前块完成后停止，无论在哪个节点上发送）
+     */
+    @Transactional
+    public PromotionCampaignDTO cancelCampaign(Long campaignId) {
+        PromotionCampaign campaign = campaignRepository.findById(campaignId)
+                .orElseThrow(() -> new ResourceNotFoundException("促销活动不存在，ID: " + campaignId));
+        if (campaignRepository.cancel(campaignId, LocalDateTime.now(), CampaignStatus.CANCELLED, UNFINISHED) == 0) {
+            throw new BusinessException("活动已结束，无法取消: " + campaign.getStatus());
+        }
+        log.info("促销活动已取消: campaignId={}", campaignId);
+        return getCampaign(campaignId);
+    }
+
+    /**
+     * 启动时及每 lease-check-ms：续约本节点正在发送的活动，认领无人持有租约的未完成活动
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${campaign.lease-check-ms:20000}", fixedDelayString = "${campaign.lease-check-ms:20000}")
+    public void maintainLeases() {
+        Long running = current;
+        if (running != null && !stopRequested) {
+            Integer renewed = new TransactionTemplate(transactionManager).execute(s ->
+                    campaignRepository.renewLease(running, nodeId, leaseUntil(), CampaignStatus.RUNNING));
+            if (renewed == null || renewed == 0) {
+                stopRequested = true;
+                log.info("促销活动续约失败（已取消或被其他节点接管），当前块后停止: campaignId={}", running);
+            }
+        }
+        List<Long> claimable = campaignRepository.findClaimableIds(UNFINISHED, LocalDateTime.now());
+        int added = 0;
+        for (Long campaignId : claimable) {
+            if (!campaignId.equals(current) && enqueue(campaignId)) {
+                added++;
+            }
+        }
+        if (added > 0) {
+            log.info("续发未完成的促销活动: {} 个", added);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        runner.shutdownNow();
+    }
+
+    private boolean enqueue(Long campaignId) {
+        if (!queued.add(campaignId)) {
+            return false;
+        }
+        runner.execute(() -> run(campaignId));
+        return true;
+    }
+
+    private void run(Long campaignId) {
+        queued.remove(campaignId);
+        LocalDateTime now = LocalDateTime.now();
+        Integer claimed = new TransactionTemplate(transactionManager).execute(s ->
+                campaignRepository.claim(campaignId, nodeId, now, leaseUntil(), CampaignStatus.RUNNING, UNFINISHED));
+        if (claimed == null || claimed == 0) {
+            // 已结束，或其他节点持有租约
+            return;
+        }
+        PromotionCampaign campaign = campaignRepository.findById(campaignId).orElse(null);
+        if (campaign == null) {
+            return;
+        }
+        current = campaignId;
+        stopRequested = false;
+
+        long start = System.nanoTime();
+        Sender sender = new Sender(campaign);
+        try {
+            stream(campaign, sender);
+            if (finish(campaignId, CampaignStatus.COMPLETED, null) == 0) {
+                log.info("促销活动已被取消或由其他节点接管，不标记完成: campaignId={}", campaignId);
+            }
+        } catch (CampaignStoppedException e) {
+            log.info("促销活动停止发送（已取消或由其他节点接管）: campaignId={}", campaignId);
+        } catch (Exception e) {
+            log.error("促销活动发送失败: campaignId={}, error={}", campaignId, e.getMessage(), e);
+            String error = e.getMessage() != null && e.getMessage().length() > 500
+                    ? e.getMessage().substring(0, 500) : e.getMessage();
+            finish(campaignId, CampaignStatus.FAILED, error);
+        } finally {
+            current = null;
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        log.info("促销活动发送结束: campaignId={}, recipients={}, liveSent={}, 耗时={}s, 速率={}/s",
+                campaignId, sender.recipients, sender.liveSent, String.format("%.1f", seconds),
+                seconds > 0 ? Math.round(sender.recipients / seconds) : sender.recipients);
+    }
+
+    /**
+     * 服务端游标流式读取目标用户（只读事务内，游标需要关闭自动提交），每块在独立事务中写入
+     */
+    private void stream(PromotionCampaign campaign, Sender sender) {
+        List<Object> params = new ArrayList<>();
+        String sql = buildRecipientQuery(campaign, params);
+
+        JdbcTemplate cursor = new JdbcTemplate(jdbcTemplate.getDataSource());
+        cursor.setFetchSize(fetchSize);
+
+        TransactionTemplate readTransaction = new TransactionTemplate(transactionManager);
+        readTransaction.setReadOnly(true);
+        readTransaction.executeWithoutResult(status -> {
+            cursor.query(sql, rs -> {
+                sender.add(rs.getLong(1), rs.getString(2));
+                if (sender.size() >= chunkSize) {
+                    sender.flush();
+                }
+            }, params.toArray());
+            sender.flush();
+        });
+    }
+
+    private String buildRecipientQuery(PromotionCampaign campaign, List<Object> params) {
+        StringBuilder sql = new StringBuilder(
+                "SELECT u.id, u.email FROM users u WHERE u.is_active = true AND u.id > ?");
+        params.add(campaign.getLastUserId());
+        if (campaign.getTargetRole() != null) {
+            sql.append(" AND u.role = ?");
+            params.add(campaign.getTargetRole().name());
+        }
+        if (campaign.getTargetCity() != null) {
+            sql.append(" AND EXISTS (SELECT 1 FROM addresses a WHERE a.user_id = u.id AND LOWER(a.city) = LOWER(?))");
+            params.add(campaign.getTargetCity());
+        }
+        if (campaign.getMinOrders() != null) {
+            sql.append(" AND (SELECT COUNT(*) FROM orders o WHERE o.customer_id = u.id");
+            if (campaign.getOrderedWithinDays() != null) {
+                sql.append(" AND o.created_at >= ?");
+                params.add(Timestamp.valueOf(LocalDateTime.now().minusDays(campaign.getOrderedWithinDays())));
+            }
+            sql.append(") >= ?");
+            params.add(campaign.getMinOrders());
+        }
+        sql.append(" ORDER BY u.id");
+        return sql.toString();
+    }
+
+    private int finish(Long campaignId, CampaignStatus status, String error) {
+        Integer updated = new TransactionTemplate(transactionManager).execute(s ->
+                campaignRepository.finish(campaignId, nodeId, status, LocalDateTime.now(), error, CampaignStatus.RUNNING));
+        return updated != null ? updated : 0;
+    }
+
+    private LocalDateTime leaseUntil() {
+        return LocalDateTime.now().plusSeconds(leaseSeconds);
+    }
+
+    private PromotionCampaignDTO convertToDTO(PromotionCampaign campaign) {
+        return PromotionCampaignDTO.builder()
+                .id(campaign.getId())
+                .title(campaign.getTitle())
+                .message(campaign.getMessage())
+                .targetRole(campaign.getTargetRole())
+                .targetCity(campaign.getTargetCity())
+                .minOrders(campaign.getMinOrders())
+                .orderedWithinDays(campaign.getOrderedWithinDays())
+                .status(campaign.getStatus())
+                .recipientCount(campaign.getRecipientCount())
+                .liveSent(campaign.getLiveSent())
+                .createdBy(campaign.getCreatedBy())
+                .errorMessage(campaign.getErrorMessage())
+                .createdAt(campaign.getCreatedAt())
+                .startedAt(campaign.getStartedAt())
+                .finishedAt(campaign.getFinishedAt())
+                .build();
+    }
+
+    private static String csv(String value) {
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * 单个活动的分块写入与实时推送（只在活动执行线程上使用）
+     */
+    private class Sender {
+        private final Long campaignId;
+        private final String title;
+        private final String message;
+        private final String extraData;
+        /** 每行通知中与接收人无关的部分（CSV） */
+        private final String rowSuffix;
+        private final TransactionTemplate chunkTransaction;
+        private final long liveIntervalNanos;
+
+        private final long[] userIds = new long[chunkSize];
+        private final String[] emails = new String[chunkSize];
+        private int size;
+        private long nextLiveSlot = System.nanoTime();
+
+        long recipients;
+        long liveSent;
+
+        Sender(PromotionCampaign campaign) {
+            campaignId = campaign.getId();
+            title = campaign.getTitle();
+            message = campaign.getMessage();
+            extraData = "{\"campaignId\":" + campaignId + "}";
+            rowSuffix = "," + csv(NotificationType.PROMOTION.name()) + "," + csv(title) + "," + csv(message)
+                    + ",false," + csv(Priority.LOW.name()) + "," + csv(extraData) + ",";
+            chunkTransaction = new TransactionTemplate(transactionManager);
+            chunkTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+            liveIntervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, liveRatePerSecond);
+        }
+
+        void add(long userId, String email) {
+            userIds[size] = userId;
+            emails[size] = email;
+            size++;
+        }
+
+        int size() {
+            return size;
+        }
+
+        void flush() {
+            if (stopRequested) {
+                throw new CampaignStoppedException();
+            }
+            if (size == 0) {
+                return;
+            }
+            int count = size;
+            LocalDateTime createdAt = LocalDateTime.now();
+            List<LiveNotification> live = chunkTransaction.execute(status -> {
+                long[] ids = copyChunk(count, createdAt);
+                if (campaignRepository.recordProgress(campaignId, userIds[count - 1], count,
+                        nodeId, leaseUntil(), CampaignStatus.RUNNING) == 0) {
+                    // 已取消或租约已被其他节点接管：回滚本块
+                    throw new CampaignStoppedException();
+                }
+                // 收件箱缓存更新注册在本块事务上，提交后立即生效（而不是等整个活动结束）
+                return cacheLive(ids, count, createdAt);
+            });
+            recipients += count;
+            pushLive(live);
+            size = 0;
+        }
+
+        private long[] copyChunk(int count, LocalDateTime createdAt) {
+            return jdbcTemplate.execute((ConnectionCallback<long[]>) connection -> {
+                long[] ids = new long[count];
+                try (PreparedStatement statement = connection.prepareStatement(ALLOCATE_IDS_SQL)) {
+                    statement.setInt(1, count);
+                    try (ResultSet rs = statement.executeQuery()) {
+                        for (int i = 0; i < count && rs.next(); i++) {
+                            ids[i] = rs.getLong(1);
+                        }
+                    }
+                }
+                String timestamp = csv(Timestamp.valueOf(createdAt).toString());
+                StringBuilder rows = new StringBuilder(count * (rowSuffix.length() + 48));
+                for (int i = 0; i < count; i++) {
+                    rows.append(ids[i]).append(',').append(userIds[i]).append(rowSuffix).append(timestamp).append('\n');
+                }
+                try {
+                    connection.unwrap(PGConnection.class).getCopyAPI()
+                            .copyIn(COPY_SQL, new StringReader(rows.toString()));
+                } catch (java.io.IOException e) {
+                    throw new java.sql.SQLException("COPY 写入促销通知失败", e);
+                }
+                return ids;
+            });
+        }
+
+        /**
+         * 在线用户（收件箱已缓存）的通知：更新收件箱缓存（块事务提交后生效），返回待推送列表
+         */
+        private List<LiveNotification> cacheLive(long[] ids, int count, LocalDateTime createdAt) {
+            List<LiveNotification> live = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                String email = emails[i];
+                if (!inboxCache.isActive(email)) {
+                    continue;
+                }
+                NotificationDTO notification = NotificationDTO.builder()
+                        .id(ids[i])
+                        .type(NotificationType.PROMOTION)
+                        .title(title)
+                        .message(message)
+                        .isRead(false)
+                        .priority(Priority.LOW)
+                        .extraData(extraData)
+                        .createdAt(createdAt)
+                        .timeAgo("刚刚")
+                        .build();
+                inboxCache.onCreated(email, List.of(notification));
+                live.add(new LiveNotification(email, notification));
+            }
+            return live;
+        }
+
+        /**
+         * 推送给在线用户，按 live-rate-per-second 限速（块事务已提交）
+         */
+        private void pushLive(List<LiveNotification> live) {
+            long pushed = 0;
+            for (LiveNotification notification : live) {
+                awaitLiveSlot();
+                try {
+                    messagingTemplate.convertAndSend("/topic/notifications/" + notification.email(),
+                            notification.notification());
+                    pushed++;
+                } catch (Exception e) {
+                    log.warn("促销通知实时推送失败: email={}, error={}", notification.email(), e.getMessage());
+                }
+            }
+            if (pushed > 0) {
+                liveSent += pushed;
+                long finalPushed = pushed;
+                new TransactionTemplate(transactionManager).executeWithoutResult(s ->
+                        campaignRepository.addLiveSent(campaignId, finalPushed));
+            }
+        }
+
+        private void awaitLiveSlot() {
+            long now = System.nanoTime();
+            if (nextLiveSlot > now) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(nextLiveSlot - now);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CampaignStoppedException();
+                }
+            }
+            nextLiveSlot = Math.max(nextLiveSlot, now) + liveIntervalNanos;
+        }
+    }
+
+    private record LiveNotification(String email, NotificationDTO notification) {
+    }
+
+    /**
+     * 发送过程中检测到活动已取消、租约被接管或执行器关闭
+     */
+    private static class CampaignStoppedException extends RuntimeException {
+        CampaignStoppedException() {
+            super(null, null, false, false);
+        }
+    }
+}
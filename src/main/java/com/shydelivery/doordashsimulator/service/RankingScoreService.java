@@ -0,0 +1,436 @@
+package com.shydelivery.doordashsimulator.service;
+
+import com.shydelivery.doordashsimulator.repository.RestaurantRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 餐厅排名分服务
+ *
+ * 为每家餐厅维护一个贝叶斯平滑 + 指数时间衰减的排名分，搜索可按 rankingScore 排序（idx_ranking_score）：
+ * - 只有 1 条 5 星评价的餐厅不会排在 5000 条 4.8 分的餐厅前面
+ * - 近期评价和订单的权重高于很久以前的
+ *
+ * 每条评价/订单的权重随时间按 e^(-λ·age) 衰减（λ = ln2 / 半衰期），所有权重同比例衰减，
+ * 因此只需保存"截至某时刻"的加权和，推进时整体乘以 e^(-λ·Δt) 再加上新事件：
+ * 排名分 = (C·m + Σwᵢ·rᵢ) / (C + Σwᵢ) + β·log10(1 + Σ订单权重)，m 为全站平均分，C 为先验权重
+ *
+ * 数据库中的衰减状态（ranking_review_weight / ranking_rating_sum / ranking_order_weight，截至 ranking_updated_at）
+ * 是唯一的权威状态，各节点只持有尚未写回的增量：
+ * - 评价创建/修改/删除、订单送达的事务提交后，把该事件的加权增量累加到本节点的待写入增量（回滚的事务不产生增量）
+ * - 每 30 秒批量写回（ranking.flush-interval-ms）：一条 UPDATE 把库中状态衰减到当前时刻、加上增量并重算分数，
+ *   行级原子，多个节点的增量互相叠加而不是互相覆盖
+ * - 每小时用一条 UPDATE 把全部分数衰减到当前时刻（只写分数变化超过阈值的餐厅）
+ * - 每晚按评价/订单历史全量重算：计算"历史值 − 同一快照中的库中状态"作为修正增量写入，
+ *   重算期间其他事件的增量照常叠加，不会被覆盖；通过 advisory lock 保证同一时刻只有一个节点执行
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RankingScoreService {
+
+    private static final int FLUSH_BATCH_SIZE = 500;
+
+    /** 分数变化小于该值时，小时刷新不写回数据库 */
+    private static final double REFRESH_EPSILON = 0.001;
+
+    /** 全量重算的 advisory lock 键 */
+    private static final long RECOMPUTE_LOCK_KEY = 0x52414e4b494e4731L;
+
+    /** 截至 p.as_of 的衰减系数（ranking_updated_at 为空或晚于 as_of 时为 1） */
+    private static final String DECAY =
+            "EXP(GREATEST(-p.lambda * GREATEST(EXTRACT(EPOCH FROM (p.as_of - COALESCE(r.ranking_updated_at, p.as_of))), 0), -700))";
+    private static final String NEW_REVIEW_WEIGHT = "GREATEST(r.ranking_review_weight * " + DECAY + " + p.review_weight, 0)";
+    private static final String NEW_RATING_SUM = "GREATEST(r.ranking_rating_sum * " + DECAY + " + p.rating_sum, 0)";
+    private static final String NEW_ORDER_WEIGHT = "GREATEST(r.ranking_order_weight * " + DECAY + " + p.order_weight, 0)";
+    private static final String NEW_SCORE =
+            "(p.prior_weight * p.prior_mean + " + NEW_RATING_SUM + ") / (p.prior_weight + " + NEW_REVIEW_WEIGHT + ") " +
+            "+ p.order_boost * LOG(1 + " + NEW_ORDER_WEIGHT + ")";
+
+    /**
+     * 衰减到 as_of 并叠加增量；参数: as_of, Δ评价权重, Δ评分和, Δ订单权重, λ, 先验权重, 先验均分, 订单加成，之后为 WHERE 参数
+     */
+    private static final String APPLY_SQL_PREFIX =
+            "UPDATE restaurants r SET " +
+            "ranking_review_weight = " + NEW_REVIEW_WEIGHT + ", " +
+            "ranking_rating_sum = " + NEW_RATING_SUM + ", " +
+            "ranking_order_weight = " + NEW_ORDER_WEIGHT + ", " +
+            "ranking_score = " + NEW_SCORE + ", " +
+            "ranking_updated_at = GREATEST(COALESCE(r.ranking_updated_at, p.as_of), p.as_of) " +
+            "FROM (SELECT CAST(? AS timestamp) AS as_of, CAST(? AS float8) AS review_weight, " +
+            "CAST(? AS float8) AS rating_sum, CAST(? AS float8) AS order_weight, CAST(? AS float8) AS lambda, " +
+            "CAST(? AS float8) AS prior_weight, CAST(? AS float8) AS prior_mean, CAST(? AS float8) AS order_boost) p ";
+
+    private static final String APPLY_DELTA_SQL = APPLY_SQL_PREFIX + "WHERE r.id = ?";
+
+    private static final String REFRESH_SQL = APPLY_SQL_PREFIX +
+            "WHERE r.ranking_updated_at IS NULL OR ABS(" + NEW_SCORE + " - r.ranking_score) > ?";
+
+    /**
+     * 按历史计算的衰减状态与库中状态（衰减到同一时刻）之差；单条语句，两者来自同一快照
+     * 参数: λ, now（各 3 次）
+     * 返回: [restaurantId, Δ评价权重, Δ评分和, Δ订单权重]
+     */
+    private static final String CORRECTION_SQL =
+            "SELECT r.id, " +
+            "COALESCE(rv.weight, 0) - r.ranking_review_weight * d.factor, " +
+            "COALESCE(rv.rating_sum, 0) - r.ranking_rating_sum * d.factor, " +
+            "COALESCE(od.weight, 0) - r.ranking_order_weight * d.factor " +
+            "FROM restaurants r " +
+            "CROSS JOIN LATERAL (SELECT EXP(GREATEST(-CAST(? AS float8) * GREATEST(EXTRACT(EPOCH FROM " +
+            "(CAST(? AS timestamp) - COALESCE(r.ranking_updated_at, CAST(? AS timestamp)))), 0), -700)) AS factor) d " +
+            "LEFT JOIN (SELECT restaurant_id, " +
+            "SUM(EXP(GREATEST(-CAST(? AS float8) * EXTRACT(EPOCH FROM (CAST(? AS timestamp) - created_at)), -700))) AS weight, " +
+            "SUM(overall_rating * EXP(GREATEST(-CAST(? AS float8) * EXTRACT(EPOCH FROM (CAST(? AS timestamp) - created_at)), -700))) AS rating_sum " +
+            "FROM reviews GROUP BY restaurant_id) rv ON rv.restaurant_id = r.id " +
+            "LEFT JOIN (SELECT restaurant_id, " +
+            "SUM(EXP(GREATEST(-CAST(? AS float8) * EXTRACT(EPOCH FROM (CAST(? AS timestamp) - actual_delivery)), -700))) AS weight " +
+            "FROM orders WHERE status = 'DELIVERED' AND actual_delivery IS NOT NULL GROUP BY restaurant_id) od " +
+            "ON od.restaurant_id = r.id";
+
+    private static final String MISSING_STATE_SQL =
+            "SELECT EXISTS (SELECT 1 FROM restaurants WHERE ranking_updated_at IS NULL)";
+
+    private final RestaurantRepository restaurantRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${ranking.half-life-days:90}")
+    private double halfLifeDays;
+
+    @Value("${ranking.prior-weight:10}")
+    private double priorWeight;
+
+    @Value("${ranking.default-prior-mean:4.0}")
+    private double defaultPriorMean;
+
+    @Value("${ranking.order-boost:0.25}")
+    private double orderBoost;
+
+    /** 本节点尚未写回的增量（餐厅ID → 截至 asOf 的加权增量） */
+    private final Map<Long, Delta> pending = new ConcurrentHashMap<>();
+
+    private volatile double priorMean = 4.0;
+
+    /**
+     * 新增评价（事务提交后生效）
+     */
+    public void recordReview(Long restaurantId, BigDecimal rating, LocalDateTime createdAt) {
+        if (rating == null) {
+            return;
+        }
+        long now = nowSeconds();
+        double weight = weightAt(createdAt, now);
+        afterCommit(restaurantId, new Delta(weight, weight * rating.doubleValue(), 0, now));
+    }
+
+    /**
+     * 修改评价评分（事务提交后生效）
+     */
+    public void changeReview(Long restaurantId, BigDecimal oldRating, BigDecimal newRating, LocalDateTime createdAt) {
+        if (oldRating == null || newRating == null || oldRating.compareTo(newRating) == 0) {
+            return;
+        }
+        long now = nowSeconds();
+        double weight = weightAt(createdAt, now);
+        afterCommit(restaurantId, new Delta(0, weight * (newRating.doubleValue() - oldRating.doubleValue()), 0, now));
+    }
+
+    /**
+     * 删除评价（事务提交后生效）
+     */
+    public void removeReview(Long restaurantId, BigDecimal rating, LocalDateTime createdAt) {
+        if (rating == null) {
+            return;
+        }
+        long now = nowSeconds();
+        double weight = weightAt(createdAt, now);
+        afterCommit(restaurantId, new Delta(-weight, -weight * rating.doubleValue(), 0, now));
+    }
+
+    /**
+     * 订单送达（事务提交后生效）
+     */
+    public void recordOrder(Long restaurantId) {
+        afterCommit(restaurantId, new Delta(0, 0, 1, nowSeconds()));
+    }
+
+    /**
+     * 新建餐厅：下次写回时写入先验分，避免以默认值 0 排在最后
+     */
+    public void indexRestaurant(Long restaurantId) {
+        afterCommit(restaurantId, new Delta(0, 0, 0, nowSeconds()));
+    }
+
+    /**
+     * 删除餐厅：丢弃未写回的增量
+     */
+    public void removeRestaurant(Long restaurantId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    pending.remove(restaurantId);
+                }
+            });
+        } else {
+            pending.remove(restaurantId);
+        }
+    }
+
+    /**
+     * 将本节点的待写入增量批量写回数据库
+     */
+    @Scheduled(initialDelayString = "${ranking.flush-interval-ms:30000}",
+            fixedDelayString = "${ranking.flush-interval-ms:30000}")
+    public synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        long now = nowSeconds();
+        LocalDateTime asOf = toDateTime(now);
+        double lambda = lambda();
+        List<Long> ids = new ArrayList<>(FLUSH_BATCH_SIZE);
+        List<Delta> deltas = new ArrayList<>(FLUSH_BATCH_SIZE);
+        int written = 0;
+        try {
+            Iterator<Long> iterator = pending.keySet().iterator();
+            while (iterator.hasNext()) {
+                Long restaurantId = iterator.next();
+                Delta delta = pending.remove(restaurantId);
+                if (delta == null) {
+                    continue;
+                }
+                ids.add(restaurantId);
+                deltas.add(delta);
+                if (ids.size() == FLUSH_BATCH_SIZE) {
+                    written += applyDeltas(ids, deltas, asOf, now, lambda);
+                    ids.clear();
+                    deltas.clear();
+                }
+            }
+            if (!ids.isEmpty()) {
+                written += applyDeltas(ids, deltas, asOf, now, lambda);
+            }
+            log.debug("排名分写回完成: {} 家餐厅", written);
+        } catch (Exception e) {
+            // 写入失败的批次放回待写入增量（与期间新产生的增量合并），等待下次写回
+            for (int i = 0; i < ids.size(); i++) {
+                pending.merge(ids.get(i), deltas.get(i), (a, b) -> a.plus(b, lambda));
+            }
+            log.error("排名分写回失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 每小时刷新全部分数（没有新事件的餐厅分数也会随时间衰减回先验）
+     * 单条 UPDATE，零增量，只写分数变化超过阈值的行；多个节点重复执行结果相同
+     */
+    @Scheduled(initialDelay = 3_600_000, fixedDelay = 3_600_000)
+    public void refreshScores() {
+        flush();
+        LocalDateTime asOf = toDateTime(nowSeconds());
+        int updated = jdbcTemplate.update(REFRESH_SQL,
+                asOf, 0.0, 0.0, 0.0, lambda(), priorWeight, priorMean, orderBoost, REFRESH_EPSILON);
+        log.info("排名分刷新: 写回 {} 家餐厅", updated);
+    }
+
+    /**
+     * 启动时加载先验均分；存在从未计算过排名分的餐厅（例如新增该功能前的数据）时，按历史全量重算
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        try {
+            priorMean = loadPriorMean();
+            log.info("排名分先验均分: {}", String.format("%.3f", priorMean));
+            if (Boolean.TRUE.equals(jdbcTemplate.queryForObject(MISSING_STATE_SQL, Boolean.class))) {
+                recomputeFromHistory();
+            }
+            refreshScores();
+        } catch (Exception e) {
+            log.error("排名分初始化失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 按评价和订单历史全量重算（每天凌晨 3:30，在评价统计对账之后）
+     *
+     * 在一个事务中：先取得 advisory lock（其他节点正在重算时跳过），用一条查询在同一快照中
+     * 计算每家餐厅"历史值 − 库中值"，再把差值作为增量写入。快照之后其他事务写入的增量
+     * 不会被覆盖；快照时仍在各节点内存中、尚未写回的增量（最多 flush-interval-ms）会在写回后被重复计入，
+     * 由下一次重算修正。
+     */
+    @Scheduled(cron = "0 30 3 * * ?")
+    public void recomputeFromHistory() {
+        long start = System.currentTimeMillis();
+        try {
+            flush();
+            priorMean = loadPriorMean();
+            long now = nowSeconds();
+            LocalDateTime asOf = toDateTime(now);
+            double lambda = lambda();
+
+            Integer corrected = new TransactionTemplate(transactionManager).execute(status -> {
+                Boolean locked = jdbcTemplate.queryForObject(
+                        "SELECT pg_try_advisory_xact_lock(?)", Boolean.class, RECOMPUTE_LOCK_KEY);
+                if (!Boolean.TRUE.equals(locked)) {
+                    return null;
+                }
+                List<Object[]> batch = new ArrayList<>();
+                jdbcTemplate.query(CORRECTION_SQL, rs -> {
+                    batch.add(new Object[]{asOf, rs.getDouble(2), rs.getDouble(3), rs.getDouble(4),
+                            lambda, priorWeight, priorMean, orderBoost, rs.getLong(1)});
+                }, lambda, asOf, asOf, lambda, asOf, lambda, asOf, lambda, asOf);
+                for (int from = 0; from < batch.size(); from += FLUSH_BATCH_SIZE) {
+                    jdbcTemplate.batchUpdate(APPLY_DELTA_SQL, batch.subList(from, Math.min(batch.size(), from + FLUSH_BATCH_SIZE)));
+                }
+                return batch.size();
+            });
+
+            if (corrected == null) {
+                log.info("排名分全量重算由其他节点执行，跳过");
+                return;
+            }
+            log.info("排名分全量重算完成: restaurants={}, 耗时={}ms", corrected, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("排名分全量重算失败，保留现有状态: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 在一个事务中写回一批增量
+     */
+    private int applyDeltas(List<Long> restaurantIds, List<Delta> deltas, LocalDateTime asOf, long now, double lambda) {
+        List<Object[]> args = new ArrayList<>(restaurantIds.size());
+        for (int i = 0; i < restaurantIds.size(); i++) {
+            Delta delta = deltas.get(i);
+            delta.decayTo(now, lambda);
+            args.add(new Object[]{asOf, delta.reviewWeight, delta.ratingSum, delta.orderWeight,
+                    lambda, priorWeight, priorMean, orderBoost, restaurantIds.get(i)});
+        }
+        int[] counts = new TransactionTemplate(transactionManager).execute(status ->
+                jdbcTemplate.batchUpdate(APPLY_DELTA_SQL, args));
+        int written = 0;
+        if (counts != null) {
+            for (int count : counts) {
+                written += Math.max(count, 0);
+            }
+        }
+        return written;
+    }
+
+    /**
+     * 事务提交后把增量合并到待写入增量（回滚时丢弃）；无事务时立即合并
+     */
+    private void afterCommit(Long restaurantId, Delta delta) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    pending.merge(restaurantId, delta, (a, b) -> a.plus(b, lambda()));
+                }
+            });
+        } else {
+            pending.merge(restaurantId, delta, (a, b) -> a.plus(b, lambda()));
+        }
+    }
+
+    /**
+     * 先验均分 = 全站评价平均分（没有评价时使用配置的默认值）
+     */
+    private double loadPriorMean() {
+        List<Object[]> rows = restaurantRepository.sumReviewStats();
+        if (!rows.isEmpty() && rows.get(0)[0] != null && rows.get(0)[1] != null) {
+            double total = ((Number) rows.get(0)[0]).doubleValue();
+            long count = ((Number) rows.get(0)[1]).longValue();
+            if (count > 0) {
+                return total / count;
+            }
+        }
+        return defaultPriorMean;
+    }
+
+    /**
+     * 发生在 eventTime 的事件在 now 时刻的权重
+     */
+    private double weightAt(LocalDateTime eventTime, long now) {
+        long eventSeconds = eventTime != null ? eventTime.atZone(ZoneId.systemDefault()).toEpochSecond() : now;
+        return Math.exp(-lambda() * Math.max(0, now - eventSeconds));
+    }
+
+    /**
+     * 每秒衰减率 λ = ln2 / 半衰期
+     */
+    private double lambda() {
+        return Math.log(2) / (halfLifeDays * 86_400);
+    }
+
+    private static long nowSeconds() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+    private static LocalDateTime toDateTime(long epochSeconds) {
+        return LocalDateTime.ofEpochSecond(epochSeconds, 0,
+                ZoneId.systemDefault().getRules().getOffset(java.time.Instant.ofEpochSecond(epochSeconds)));
+    }
+
+    /**
+     * 一家餐厅未写回的加权增量（截至 asOf，可为负；与库中状态按同一方式衰减）
+     */
+    private static final class Delta {
+        double reviewWeight;
+        double ratingSum;
+        double orderWeight;
+        long asOf;
+
+        Delta(double reviewWeight, double ratingSum, double orderWeight, long asOf) {
+            this.reviewWeight = reviewWeight;
+            this.ratingSum = ratingSum;
+            this.orderWeight = orderWeight;
+            this.asOf = asOf;
+        }
+
+        void decayTo(long now, double lambda) {
+            if (now <= asOf) {
+                return;
+            }
+            double factor = Math.exp(-lambda * (now - asOf));
+            reviewWeight *= factor;
+            ratingSum *= factor;
+            orderWeight *= factor;
+            asOf = now;
+        }
+
+        /**
+         * 合并两个增量（衰减到较晚的时刻后相加），返回新对象
+         */
+        Delta plus(Delta other, double lambda) {
+            long at = Math.max(asOf, other.asOf);
+            Delta a = new Delta(reviewWeight, ratingSum, orderWeight, asOf);
+            Delta b = new Delta(other.reviewWeight, other.ratingSum, other.orderWeight, other.asOf);
+            a.decayTo(at, lambda);
+            b.decayTo(at, lambda);
+            return new Delta(a.reviewWeight + b.reviewWeight, a.ratingSum + b.ratingSum,
+                    a.orderWeight + b.orderWeight, at);
+        }
+    }
+}
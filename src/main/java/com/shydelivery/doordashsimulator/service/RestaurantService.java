@@ -29,6 +29,10 @@ public class RestaurantService {
     private final RestaurantRepository restaurantRepository;
     private final UserRepository userRepository;
     private final AuthorizationService authorizationService;
+    private final SuggestionService suggestionService;
+    private final SearchFacetService searchFacetService;
+    private final OpeningHoursService openingHoursService;
+    private final RankingScoreService rankingScoreService;
     
     /**
      * 获取所有活跃餐厅（公开接口）
@@ -89,6 +93,12 @@ public class RestaurantService {
         Restaurant saved = restaurantRepository.save(restaurant);
         log.info("餐厅创建成功: id={}, name={}", saved.getId(), saved.getName());
         
+        // 更新搜索联想、分面和营业时间索引
+        suggestionService.indexRestaurant(saved);
+        searchFacetService.indexRestaurant(saved);
+        openingHoursService.indexRestaurant(saved);
+        rankingScoreService.indexRestaurant(saved.getId());
+        
         return convertToDTO(saved);
     }
     
@@ -99,12 +109,8 @@ public class RestaurantService {
     public RestaurantDTO updateRestaurant(Long id, UpdateRestaurantRequest request, String ownerEmail) {
         log.info("更新餐厅: id={}, owner={}", id, ownerEmail);
         
-        // 验证所有权
-        authorizationService.verifyRestaurantOwnership(id, ownerEmail);
-        
-        // 获取餐厅
-        Restaurant restaurant = restaurantRepository.findById(id)
-                .orElseThrow(() -> new ResourceNotFoundException("餐厅不存在，ID: " + id));
+        // 验证所有权，返回已加载的餐厅
+        Restaurant restaurant = authorizationService.loadRestaurantForOwner(id, ownerEmail);
         
         // 更新字段
         if (request.getName() != null) {
@@ -127,6 +133,11 @@ public class RestaurantService {
         Restaurant updated = restaurantRepository.save(restaurant);
         log.info("餐厅更新成功: id={}", updated.getId());
         
+        // 更新搜索联想、分面和营业时间索引
+        suggestionService.indexRestaurant(updated);
+        searchFacetService.indexRestaurant(updated);
+        openingHoursService.indexRestaurant(updated);
+        
         return convertToDTO(updated);
     }
     
@@ -143,6 +154,12 @@ public class RestaurantService {
         // 删除餐厅
         restaurantRepository.deleteById(id);
         log.info("餐厅删除成功: id={}", id);
+        
+        // 更新搜索联想、分面和营业时间索引
+        suggestionService.removeRestaurant(id);
+        searchFacetService.removeRestaurant(id);
+        openingHoursService.removeRestaurant(id);
+        rankingScoreService.removeRestaurant(id);
     }
     
     /**
@@ -179,7 +196,7 @@ public class RestaurantService {
                 .phoneNumber(restaurant.getPhoneNumber())
                 .isActive(restaurant.getIsActive())
                 .rating(restaurant.getRating())
-                .totalReviews(0) // TODO: 从 reviews 表计算
+                .totalReviews(restaurant.getReviewCount())
                 .createdAt(restaurant.getCreatedAt())
                 .updatedAt(restaurant.getUpdatedAt())
                 .build();
@@ -4,10 +4,13 @@ import com.shydelivery.doordashsimulator.dto.request.CreateReviewRequest;
 import com.shydelivery.doordashsimulator.dto.request.UpdateReviewRequest;
 import com.shydelivery.doordashsimulator.dto.response.RestaurantRatingDTO;
 import com.shydelivery.doordashsimulator.dto.response.ReviewDTO;
+import com.shydelivery.doordashsimulator.dto.response.ReviewFeedDTO;
 import com.shydelivery.doordashsimulator.entity.Order;
 import com.shydelivery.doordashsimulator.entity.Order.OrderStatus;
+import com.shydelivery.doordashsimulator.entity.Restaurant;
 import com.shydelivery.doordashsimulator.entity.Review;
 import com.shydelivery.doordashsimulator.entity.User;
+import com.shydelivery.doordashsimulator.exception.BusinessException;
 import com.shydelivery.doordashsimulator.exception.ResourceNotFoundException;
 import com.shydelivery.doordashsimulator.repository.OrderRepository;
 import com.shydelivery.doordashsimulator.repository.RestaurantRepository;
@@ -15,11 +18,22 @@ import com.shydelivery.doordashsimulator.repository.ReviewRepository;
 import com.shydelivery.doordashsimulator.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -32,6 +46,11 @@ import java.util.stream.Collectors;
  * - 查询评价
  * - 计算餐厅评分统计
  * 
+ * 评分统计：
+ * - 餐厅表上冗余存储评价数、评分总和、正/负面评价数等（见 Restaurant）
+ * - 创建/更新/删除评价时在同一事务内原子增量更新，列表页直接读取，无需逐行聚合
+ * - 每晚对账一次，修正可能出现的偏差
+ * 
  * 业务规则：
  * - 只有订单完成后才能评价
  * - 每个订单只能评价一次
@@ -50,6 +69,25 @@ public class ReviewService {
     private final UserRepository userRepository;
     private final RestaurantRepository restaurantRepository;
     private final AuthorizationService authorizationService;
+    private final RankingScoreService rankingScoreService;
+    private final DriverStatsService driverStatsService;
+    private final SearchFacetService searchFacetService;
+    
+    /** 评分区间的默认上下界（overall_rating 精度为 0.01，闭区间上界 +0.01 即为开区间上界） */
+    private static final BigDecimal MIN_RATING = BigDecimal.ZERO;
+    private static final BigDecimal RATING_CEILING = new BigDecimal("5.01");
+    private static final BigDecimal RATING_STEP = new BigDecimal("0.01");
+    private static final BigDecimal POSITIVE_THRESHOLD = new BigDecimal("4.0");
+    private static final BigDecimal NEGATIVE_THRESHOLD = new BigDecimal("3.0");
+    
+    @Value("${review.feed.default-page-size:20}")
+    private int defaultFeedPageSize;
+    
+    @Value("${review.feed.max-page-size:100}")
+    private int maxFeedPageSize;
+    
+    @Value("${review.list.max-results:200}")
+    private int maxListResults;
     
     /**
      * 创建评价 (CUSTOMER 角色)
@@ -95,6 +133,9 @@ public class ReviewService {
         
         // 保存评价
         Review saved = reviewRepository.save(review);
+        applyStatsDelta(saved.getRestaurant().getId(), 1, null, saved);
+        rankingScoreService.recordReview(saved.getRestaurant().getId(), saved.getOverallRating(), saved.getCreatedAt());
+        driverStatsService.recordRatingChange(order, null, saved.getDeliveryRating());
         log.info("评价创建成功: reviewId={}, orderId={}", saved.getId(), request.getOrderId());
         
         return convertToDTO(saved);
@@ -112,12 +153,15 @@ public class ReviewService {
     public ReviewDTO updateReview(Long reviewId, UpdateReviewRequest request, String customerEmail) {
         log.info("更新评价: reviewId={}, customer={}", reviewId, customerEmail);
         
-        // 验证评价所有权
-        authorizationService.verifyReviewOwnership(reviewId, customerEmail);
+        // 验证评价所有权，返回已加载的评价
+        Review review = authorizationService.loadReviewForCustomer(reviewId, customerEmail);
         
-        // 获取评价
-        Review review = reviewRepository.findById(reviewId)
-            .orElseThrow(() -> new ResourceNotFoundException("评价不存在，ID: " + reviewId));
+        // 记录旧评分，用于计算统计差值
+        Review before = Review.builder()
+            .foodRating(review.getFoodRating())
+            .deliveryRating(review.getDeliveryRating())
+            .overallRating(review.getOverallRating())
+            .build();
         
         // 更新字段
         if (request.getFoodRating() != null) {
@@ -135,6 +179,10 @@ public class ReviewService {
         
         // 保存
         Review updated = reviewRepository.save(review);
+        applyStatsDelta(updated.getRestaurant().getId(), 0, before, updated);
+        rankingScoreService.changeReview(updated.getRestaurant().getId(),
+            before.getOverallRating(), updated.getOverallRating(), updated.getCreatedAt());
+        driverStatsService.recordRatingChange(updated.getOrder(), before.getDeliveryRating(), updated.getDeliveryRating());
         log.info("评价更新成功: reviewId={}", reviewId);
         
         return convertToDTO(updated);
@@ -150,11 +198,14 @@ public class ReviewService {
     public void deleteReview(Long reviewId, String customerEmail) {
         log.info("删除评价: reviewId={}, customer={}", reviewId, customerEmail);
         
-        // 验证评价所有权
-        authorizationService.verifyReviewOwnership(reviewId, customerEmail);
+        // 验证评价所有权，返回已加载的评价
+        Review review = authorizationService.loadReviewForCustomer(reviewId, customerEmail);
         
         // 删除评价
-        reviewRepository.deleteById(reviewId);
+        applyStatsDelta(review.getRestaurant().getId(), -1, review, null);
+        rankingScoreService.removeReview(review.getRestaurant().getId(), review.getOverallRating(), review.getCreatedAt());
+        driverStatsService.recordRatingChange(review.getOrder(), review.getDeliveryRating(), null);
+        reviewRepository.delete(review);
         log.info("评价删除成功: reviewId={}", reviewId);
     }
     
@@ -191,26 +242,108 @@ public class ReviewService {
     }
     
     /**
-     * 获取餐厅的所有评价 (公开)
+     * 获取餐厅的评价列表 (公开)
+     * 
+     * 兼容旧接口：返回最新的 review.list.max-results 条评价；
+     * 还有更多评价时 hasMore = true，nextCursor 可直接传给 getReviewFeed 继续浏览
      * 
      * @param restaurantId 餐厅 ID
-     * @return 评价列表
+     * @return 最新一页评价
      */
     @Transactional(readOnly = true)
-    public List<ReviewDTO> getReviewsByRestaurant(Long restaurantId) {
+    public ReviewFeedDTO getReviewsByRestaurant(Long restaurantId) {
         log.info("获取餐厅评价: restaurantId={}", restaurantId);
         
-        // 验证餐厅存在
-        if (!restaurantRepository.existsById(restaurantId)) {
-            throw new ResourceNotFoundException("餐厅不存在，ID: " + restaurantId);
+        Restaurant restaurant = restaurantRepository.findById(restaurantId)
+            .orElseThrow(() -> new ResourceNotFoundException("餐厅不存在，ID: " + restaurantId));
+        
+        List<Object[]> rows = reviewRepository.findFeedRows(
+            restaurantId, MIN_RATING, RATING_CEILING, PageRequest.of(0, maxListResults + 1));
+        log.info("找到 {} 条餐厅评价", Math.min(rows.size(), maxListResults));
+        
+        return toFeedPage(rows, maxListResults, restaurant);
+    }
+    
+    /**
+     * 获取餐厅评价流 (公开，游标分页)
+     * 
+     * 键集分页：游标记录上一页最后一条评价的 (createdAt, id)，
+     * 每一页都是一次从游标位置开始的索引范围扫描，评价数再多响应时间也保持平稳。
+     * positive / negative 过滤走 (restaurant_id, sentiment, created_at, id) 索引，同样是范围扫描。
+     * 
+     * @param restaurantId 餐厅 ID
+     * @param cursor 上一页返回的 nextCursor（第一页为 null）
+     * @param size 每页大小
+     * @param filter 过滤条件：positive（>= 4.0）/ negative（< 3.0）/ null
+     * @param minRating 最低总体评分（含）
+     * @param maxRating 最高总体评分（含）
+     * @return 评价流
+     */
+    @Transactional(readOnly = true)
+    public ReviewFeedDTO getReviewFeed(Long restaurantId, String cursor, Integer size,
+                                       String filter, BigDecimal minRating, BigDecimal maxRating) {
+        log.info("获取餐厅评价流: restaurantId={}, cursor={}, filter={}", restaurantId, cursor, filter);
+        
+        Restaurant restaurant = restaurantRepository.findById(restaurantId)
+            .orElseThrow(() -> new ResourceNotFoundException("餐厅不存在，ID: " + restaurantId));
+        
+        int pageSize = size != null && size > 0 ? Math.min(size, maxFeedPageSize) : defaultFeedPageSize;
+        
+        // 评分区间 [lower, upper)
+        BigDecimal lower = minRating != null ? minRating : MIN_RATING;
+        BigDecimal upper = maxRating != null ? maxRating.add(RATING_STEP) : RATING_CEILING;
+        Short sentiment = null;
+        if ("positive".equalsIgnoreCase(filter)) {
+            lower = lower.max(POSITIVE_THRESHOLD);
+            sentiment = 1;
+        } else if ("negative".equalsIgnoreCase(filter)) {
+            upper = upper.min(NEGATIVE_THRESHOLD);
+            sentiment = -1;
+        } else if (filter != null && !filter.isBlank()) {
+            throw new BusinessException("不支持的评价过滤条件: " + filter);
         }
         
-        List<Review> reviews = reviewRepository.findByRestaurantIdOrderByCreatedAtDesc(restaurantId);
-        log.info("找到 {} 条餐厅评价", reviews.size());
+        // 多取一条用于判断是否还有下一页
+        Pageable pageable = PageRequest.of(0, pageSize + 1);
+        FeedCursor position = cursor == null || cursor.isBlank() ? null : decodeCursor(cursor);
+        List<Object[]> rows;
+        if (sentiment == null) {
+            rows = position == null
+                ? reviewRepository.findFeedRows(restaurantId, lower, upper, pageable)
+                : reviewRepository.findFeedRowsAfter(
+                    restaurantId, position.createdAt(), position.id(), lower, upper, pageable);
+        } else {
+            rows = position == null
+                ? reviewRepository.findFeedRowsBySentiment(restaurantId, sentiment, lower, upper, pageable)
+                : reviewRepository.findFeedRowsBySentimentAfter(
+                    restaurantId, sentiment, position.createdAt(), position.id(), lower, upper, pageable);
+        }
         
-        return reviews.stream()
-            .map(this::convertToDTO)
-            .collect(Collectors.toList());
+        return toFeedPage(rows, pageSize, restaurant);
+    }
+    
+    /**
+     * 把多取一条的查询结果转换为一页评价流
+     */
+    private ReviewFeedDTO toFeedPage(List<Object[]> rows, int pageSize, Restaurant restaurant) {
+        boolean hasMore = rows.size() > pageSize;
+        List<ReviewDTO> reviews = new ArrayList<>(Math.min(rows.size(), pageSize));
+        for (int i = 0; i < rows.size() && i < pageSize; i++) {
+            reviews.add(convertFeedRowToDTO(rows.get(i), restaurant));
+        }
+        
+        String nextCursor = null;
+        if (hasMore) {
+            ReviewDTO last = reviews.get(reviews.size() - 1);
+            nextCursor = encodeCursor(last.getCreatedAt(), last.getId());
+        }
+        
+        return ReviewFeedDTO.builder()
+            .reviews(reviews)
+            .nextCursor(nextCursor)
+            .hasMore(hasMore)
+            .pageSize(pageSize)
+            .build();
     }
     
     /**
@@ -244,31 +377,168 @@ public class ReviewService {
     public RestaurantRatingDTO getRestaurantRating(Long restaurantId) {
         log.info("获取餐厅评分统计: restaurantId={}", restaurantId);
         
-        // 验证餐厅存在
-        com.shydelivery.doordashsimulator.entity.Restaurant restaurant = 
-            restaurantRepository.findById(restaurantId)
-                .orElseThrow(() -> new ResourceNotFoundException("餐厅不存在，ID: " + restaurantId));
-        
-        // 获取统计数据
-        BigDecimal averageRating = reviewRepository.calculateAverageRatingForRestaurant(restaurantId);
-        Double averageFoodRating = reviewRepository.calculateAverageFoodRatingForRestaurant(restaurantId);
-        Double averageDeliveryRating = reviewRepository.calculateAverageDeliveryRatingForRestaurant(restaurantId);
-        Long totalReviews = reviewRepository.countReviewsByRestaurant(restaurantId);
-        
-        // 统计正面和负面评价
-        List<Review> allReviews = reviewRepository.findByRestaurantIdOrderByCreatedAtDesc(restaurantId);
-        long positiveCount = allReviews.stream().filter(Review::isPositive).count();
-        long negativeCount = allReviews.stream().filter(Review::isNegative).count();
+        // 统计数据直接读取餐厅表上的冗余字段
+        Restaurant restaurant = restaurantRepository.findById(restaurantId)
+            .orElseThrow(() -> new ResourceNotFoundException("餐厅不存在，ID: " + restaurantId));
         
         return RestaurantRatingDTO.builder()
             .restaurantId(restaurantId)
             .restaurantName(restaurant.getName())
-            .averageRating(averageRating != null ? averageRating : BigDecimal.ZERO)
-            .averageFoodRating(averageFoodRating != null ? averageFoodRating : 0.0)
-            .averageDeliveryRating(averageDeliveryRating != null ? averageDeliveryRating : 0.0)
-            .totalReviews(totalReviews)
-            .positiveReviews(positiveCount)
-            .negativeReviews(negativeCount)
+            .averageRating(restaurant.getRating() != null ? restaurant.getRating() : BigDecimal.ZERO)
+            .averageFoodRating(restaurant.getAverageFoodRating())
+            .averageDeliveryRating(restaurant.getAverageDeliveryRating())
+            .totalReviews(restaurant.getReviewCount().longValue())
+            .positiveReviews(restaurant.getPositiveReviewCount().longValue())
+            .negativeReviews(restaurant.getNegativeReviewCount().longValue())
+            .build();
+    }
+    
+    /**
+     * 对账餐厅评价统计（每天凌晨 3 点）
+     * 
+     * 一次 GROUP BY 汇总全部评价，与餐厅表中的冗余统计比较，只更新有偏差的餐厅。
+     * 覆盖时以读取到的旧值作为条件（比较并交换），期间若有新的评价写入则跳过，留待下次对账。
+     */
+    @Scheduled(cron = "0 0 3 * * ?")
+    @Transactional
+    public void reconcileRestaurantStats() {
+        long start = System.currentTimeMillis();
+        
+        Map<Long, Object[]> actual = new HashMap<>();
+        for (Object[] row : reviewRepository.aggregateStatsByRestaurant()) {
+            actual.put((Long) row[0], row);
+        }
+        
+        int corrected = 0;
+        int skipped = 0;
+        for (Object[] stored : restaurantRepository.findReviewStatsRows()) {
+            Long restaurantId = (Long) stored[0];
+            Object[] row = actual.get(restaurantId);
+            
+            int count = row != null ? ((Number) row[1]).intValue() : 0;
+            BigDecimal ratingSum = row != null && row[2] != null ? (BigDecimal) row[2] : BigDecimal.ZERO;
+            long foodSum = row != null && row[3] != null ? ((Number) row[3]).longValue() : 0L;
+            long deliverySum = row != null && row[4] != null ? ((Number) row[4]).longValue() : 0L;
+            int positive = row != null && row[5] != null ? ((Number) row[5]).intValue() : 0;
+            int negative = row != null && row[6] != null ? ((Number) row[6]).intValue() : 0;
+            
+            int storedCount = (Integer) stored[1];
+            BigDecimal storedRatingSum = (BigDecimal) stored[2];
+            if (storedCount == count
+                    && storedRatingSum.compareTo(ratingSum) == 0
+                    && (Long) stored[3] == foodSum
+                    && (Long) stored[4] == deliverySum
+                    && (Integer) stored[5] == positive
+                    && (Integer) stored[6] == negative) {
+                continue;
+            }
+            
+            int updated = restaurantRepository.overwriteReviewStats(restaurantId,
+                storedCount, storedRatingSum, count, ratingSum, foodSum, deliverySum, positive, negative);
+            if (updated > 0) {
+                corrected++;
+                searchFacetService.refreshRating(restaurantId);
+                log.warn("餐厅评价统计已修正: restaurantId={}, reviewCount {} -> {}",
+                    restaurantId, storedCount, count);
+            } else {
+                skipped++;
+            }
+        }
+        
+        log.info("餐厅评价统计对账完成: corrected={}, skipped={}, 耗时={}ms",
+            corrected, skipped, System.currentTimeMillis() - start);
+    }
+    
+    /**
+     * 原子更新餐厅评价统计
+     * 
+     * @param restaurantId 餐厅 ID
+     * @param countDelta 评价数变化（创建 +1，更新 0，删除 -1）
+     * @param before 变化前的评分（创建时为 null）
+     * @param after 变化后的评分（删除时为 null）
+     */
+    private void applyStatsDelta(Long restaurantId, int countDelta, Review before, Review after) {
+        BigDecimal ratingDelta = overallOf(after).subtract(overallOf(before));
+        long foodDelta = ratingOf(after == null ? null : after.getFoodRating())
+            - ratingOf(before == null ? null : before.getFoodRating());
+        long deliveryDelta = ratingOf(after == null ? null : after.getDeliveryRating())
+            - ratingOf(before == null ? null : before.getDeliveryRating());
+        int positiveDelta = flag(after != null && after.isPositive()) - flag(before != null && before.isPositive());
+        int negativeDelta = flag(after != null && after.isNegative()) - flag(before != null && before.isNegative());
+        
+        if (countDelta == 0 && ratingDelta.signum() == 0 && foodDelta == 0 && deliveryDelta == 0
+                && positiveDelta == 0 && negativeDelta == 0) {
+            return;
+        }
+        restaurantRepository.applyReviewDelta(restaurantId, countDelta, ratingDelta,
+            foodDelta, deliveryDelta, positiveDelta, negativeDelta);
+        if (countDelta != 0 || ratingDelta.signum() != 0) {
+            searchFacetService.refreshRating(restaurantId);
+        }
+    }
+    
+    private static BigDecimal overallOf(Review review) {
+        return review != null && review.getOverallRating() != null ? review.getOverallRating() : BigDecimal.ZERO;
+    }
+    
+    private static long ratingOf(Integer rating) {
+        return rating != null ? rating : 0L;
+    }
+    
+    private static int flag(boolean value) {
+        return value ? 1 : 0;
+    }
+    
+    /**
+     * 评价流游标：上一页最后一条评价的位置
+     */
+    private record FeedCursor(LocalDateTime createdAt, Long id) {
+    }
+    
+    private static String encodeCursor(LocalDateTime createdAt, Long id) {
+        String raw = createdAt + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private static FeedCursor decodeCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf('|');
+            return new FeedCursor(
+                LocalDateTime.parse(raw.substring(0, separator)),
+                Long.parseLong(raw.substring(separator + 1)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+            throw new BusinessException("无效的分页游标");
+        }
+    }
+    
+    /**
+     * 将评价流投影行转换为 DTO（不触发任何懒加载）
+     * 
+     * @param row findFeedRows 返回的一行
+     * @param restaurant 所属餐厅
+     * @return 评价 DTO
+     */
+    private ReviewDTO convertFeedRowToDTO(Object[] row, Restaurant restaurant) {
+        BigDecimal overallRating = (BigDecimal) row[8];
+        LocalDateTime createdAt = (LocalDateTime) row[10];
+        
+        return ReviewDTO.builder()
+            .id((Long) row[0])
+            .orderId((Long) row[1])
+            .orderNumber((String) row[2])
+            .customerId((Long) row[3])
+            .customerName(row[4] + " " + row[5])
+            .restaurantId(restaurant.getId())
+            .restaurantName(restaurant.getName())
+            .foodRating((Integer) row[6])
+            .deliveryRating((Integer) row[7])
+            .overallRating(overallRating)
+            .comment((String) row[9])
+            .createdAt(createdAt)
+            .updatedAt(createdAt) // Review entity doesn't have updatedAt
+            .isPositive(overallRating.compareTo(POSITIVE_THRESHOLD) >= 0)
+            .isNegative(overallRating.compareTo(NEGATIVE_THRESHOLD) < 0)
             .build();
     }
     
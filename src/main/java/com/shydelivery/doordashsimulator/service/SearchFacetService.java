@@ -0,0 +1,427 @@
+package com.shydelivery.doordashsimulator.service;
+
+import com.shydelivery.doordashsimulator.dto.response.SearchFacetsDTO;
+import com.shydelivery.doordashsimulator.entity.MenuItem;
+import com.shydelivery.doordashsimulator.entity.Restaurant;
+import com.shydelivery.doordashsimulator.repository.MenuItemRepository;
+import com.shydelivery.doordashsimulator.repository.RestaurantRepository;
+import com.shydelivery.doordashsimulator.util.IdOrdinalMap;
+import com.shydelivery.doordashsimulator.util.PostingList;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 搜索分面统计服务
+ *
+ * 在内存中为餐厅和菜品维护按文档序号（ordinal）编号的位图倒排列表：
+ * - 餐厅: 菜系、评分区间（营业中数量由 OpeningHoursService 的营业位图求交集得到）
+ * - 菜品: 价格区间、素食、纯素
+ *
+ * 统计时先把候选集（关键词匹配的 ID）转换为位图，然后对候选位图做一次遍历，
+ * 每个 64 位字同时与所有倒排列表按位与并 popcount，一次得到全部分面数量，
+ * 不再需要每个分面单独查询一次数据库。
+ *
+ * 文档序号由 IdOrdinalMap 分配，增量更新只需追加；全量重建在启动时及每小时执行一次。
+ * 增量更新在写事务提交后生效（回滚的修改不会进入索引），重建期间的增量更新在替换后重放；
+ * 评价引起的评分变化由 ReviewService 在提交后推送（refreshRating）。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SearchFacetService {
+
+    /** 价格区间上界（不含）: [0,10) [10,20) [20,30) [30,∞) */
+    private static final BigDecimal[] PRICE_BOUNDS = {
+            BigDecimal.valueOf(10), BigDecimal.valueOf(20), BigDecimal.valueOf(30)
+    };
+    private static final String[] PRICE_LABELS = {"0-10", "10-20", "20-30", "30+"};
+
+    /** 评分区间下界: [0,3.0) [3.0,3.5) [3.5,4.0) [4.0,4.5) [4.5,5] */
+    private static final BigDecimal[] RATING_BOUNDS = {
+            new BigDecimal("3.0"), new BigDecimal("3.5"), new BigDecimal("4.0"), new BigDecimal("4.5")
+    };
+    private static final String[] RATING_LABELS = {"3.0+", "3.5+", "4.0+", "4.5+"};
+
+    private final RestaurantRepository restaurantRepository;
+    private final MenuItemRepository menuItemRepository;
+    private final OpeningHoursService openingHoursService;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private RestaurantColumns restaurants = new RestaurantColumns();
+    private MenuItemColumns menuItems = new MenuItemColumns();
+
+    /** 全量重建期间应用的增量更新（非重建期间为 null；写锁保护） */
+    private List<Runnable> pendingUpdates;
+
+    /**
+     * 计算关键词搜索结果的分面统计
+     *
+     * @param keyword 搜索关键词（已转小写，可为 null）
+     */
+    public SearchFacetsDTO computeFacets(String keyword) {
+        List<Long> restaurantIds = restaurantRepository.searchRestaurantIds(keyword);
+        List<Long> menuItemIds = menuItemRepository.searchAvailableMenuItemIds(keyword);
+        return computeFacets(restaurantIds, menuItemIds);
+    }
+
+    /**
+     * 计算给定候选集的分面统计
+     *
+     * @param restaurantIds 候选餐厅ID
+     * @param menuItemIds 候选菜品ID
+     */
+    public SearchFacetsDTO computeFacets(List<Long> restaurantIds, List<Long> menuItemIds) {
+        long start = System.nanoTime();
+        SearchFacetsDTO.SearchFacetsDTOBuilder builder = SearchFacetsDTO.builder();
+        lock.readLock().lock();
+        try {
+            countRestaurants(restaurants, restaurants.ordinals.toPostingList(restaurantIds), builder);
+            countMenuItems(menuItems, menuItems.ordinals.toPostingList(menuItemIds), builder);
+        } finally {
+            lock.readLock().unlock();
+        }
+        // 营业中：候选位图与营业时间索引的当前时刻位图求交集
+        builder.openNow(openingHoursService.countOpen(restaurantIds, LocalDateTime.now()));
+        return builder
+                .computeMicros((System.nanoTime() - start) / 1_000)
+                .build();
+    }
+
+    /**
+     * 全量重建分面索引
+     *
+     * 读取数据库期间提交的增量更新照常作用于旧索引，同时记录下来，
+     * 新索引替换旧索引后按顺序重放，避免被重建前读到的旧数据覆盖。
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelay = 3_600_000, fixedDelay = 3_600_000)
+    public synchronized void rebuild() {
+        long start = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            pendingUpdates = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try {
+            RestaurantColumns newRestaurants = new RestaurantColumns();
+            for (Object[] row : restaurantRepository.findFacetRows()) {
+                newRestaurants.put((Long) row[0], (String) row[1], (BigDecimal) row[2]);
+            }
+            MenuItemColumns newMenuItems = new MenuItemColumns();
+            for (Object[] row : menuItemRepository.findFacetRows()) {
+                newMenuItems.put((Long) row[0], (BigDecimal) row[1], (Boolean) row[2], (Boolean) row[3]);
+            }
+
+            int replayed;
+            lock.writeLock().lock();
+            try {
+                restaurants = newRestaurants;
+                menuItems = newMenuItems;
+                replayed = pendingUpdates.size();
+                pendingUpdates.forEach(Runnable::run);
+            } finally {
+                pendingUpdates = null;
+                lock.writeLock().unlock();
+            }
+            log.info("分面索引重建完成: restaurants={}, menuItems={}, 重放增量={}, 耗时={}ms",
+                    newRestaurants.ordinals.size(), newMenuItems.ordinals.size(), replayed,
+                    System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            lock.writeLock().lock();
+            try {
+                pendingUpdates = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            log.error("分面索引重建失败，保留旧索引: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 餐厅创建/更新后增量更新索引（事务提交后生效）
+     */
+    public void indexRestaurant(Restaurant restaurant) {
+        Long id = restaurant.getId();
+        String cuisineType = restaurant.getCuisineType();
+        BigDecimal rating = restaurant.getRating();
+        afterCommit(() -> apply(() -> restaurants.put(id, cuisineType, rating)));
+    }
+
+    /**
+     * 餐厅删除后增量更新索引（事务提交后生效）
+     */
+    public void removeRestaurant(Long restaurantId) {
+        afterCommit(() -> apply(() -> restaurants.remove(restaurantId)));
+    }
+
+    /**
+     * 评价变化后刷新餐厅的评分区间（事务提交后读取餐厅当前评分）
+     */
+    public void refreshRating(Long restaurantId) {
+        afterCommit(() -> restaurantRepository.findRatingById(restaurantId)
+                .ifPresent(rating -> apply(() -> restaurants.updateRating(restaurantId, rating))));
+    }
+
+    /**
+     * 菜品创建/更新后增量更新索引（事务提交后生效）
+     */
+    public void indexMenuItem(MenuItem menuItem) {
+        Long id = menuItem.getId();
+        BigDecimal price = menuItem.getPrice();
+        Boolean isVegetarian = menuItem.getIsVegetarian();
+        Boolean isVegan = menuItem.getIsVegan();
+        afterCommit(() -> apply(() -> menuItems.put(id, price, isVegetarian, isVegan)));
+    }
+
+    /**
+     * 菜品删除后增量更新索引（事务提交后生效）
+     */
+    public void removeMenuItem(Long menuItemId) {
+        afterCommit(() -> apply(() -> menuItems.remove(menuItemId)));
+    }
+
+    /**
+     * 事务提交后执行（回滚时丢弃，不会在索引中留下不存在的条目）；无事务时立即执行
+     */
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * 在写锁内对当前索引执行增量更新；全量重建进行中时同时记录，供新索引重放
+     */
+    private void apply(Runnable update) {
+        lock.writeLock().lock();
+        try {
+            update.run();
+            if (pendingUpdates != null) {
+                pendingUpdates.add(update);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ==================== 统计 ====================
+
+    private void countRestaurants(RestaurantColumns columns, PostingList candidates,
+                                  SearchFacetsDTO.SearchFacetsDTOBuilder builder) {
+        int cuisineCount = columns.cuisinePostings.size();
+        long[] cuisineCounts = new long[cuisineCount];
+        long[] ratingCounts = new long[RATING_BOUNDS.length + 1];
+
+        for (int w = 0; w < candidates.wordCount(); w++) {
+            long word = candidates.word(w) & columns.live.word(w);
+            if (word == 0) {
+                continue;
+            }
+            for (int c = 0; c < cuisineCount; c++) {
+                cuisineCounts[c] += Long.bitCount(word & columns.cuisinePostings.get(c).word(w));
+            }
+            for (int b = 0; b < ratingCounts.length; b++) {
+                ratingCounts[b] += Long.bitCount(word & columns.ratingPostings[b].word(w));
+            }
+        }
+
+        Map<String, Long> cuisines = new LinkedHashMap<>();
+        for (int c = 0; c < cuisineCount; c++) {
+            if (cuisineCounts[c] > 0) {
+                cuisines.put(columns.cuisines.get(c), cuisineCounts[c]);
+            }
+        }
+        // 评分区间为累计值："4.0+" 包含 4.0-4.5 与 4.5+
+        Map<String, Long> ratings = new LinkedHashMap<>();
+        long cumulative = 0;
+        for (int b = RATING_LABELS.length - 1; b >= 0; b--) {
+            cumulative += ratingCounts[b + 1];
+            ratings.put(RATING_LABELS[b], cumulative);
+        }
+
+        builder.cuisineTypes(cuisines)
+                .ratings(ratings);
+    }
+
+    private void countMenuItems(MenuItemColumns columns, PostingList candidates,
+                                SearchFacetsDTO.SearchFacetsDTOBuilder builder) {
+        long[] priceCounts = new long[PRICE_LABELS.length];
+        long vegetarian = 0;
+        long vegan = 0;
+
+        for (int w = 0; w < candidates.wordCount(); w++) {
+            long word = candidates.word(w) & columns.live.word(w);
+            if (word == 0) {
+                continue;
+            }
+            for (int b = 0; b < priceCounts.length; b++) {
+                priceCounts[b] += Long.bitCount(word & columns.pricePostings[b].word(w));
+            }
+            vegetarian += Long.bitCount(word & columns.vegetarian.word(w));
+            vegan += Long.bitCount(word & columns.vegan.word(w));
+        }
+
+        Map<String, Long> priceRanges = new LinkedHashMap<>();
+        for (int b = 0; b < PRICE_LABELS.length; b++) {
+            priceRanges.put(PRICE_LABELS[b], priceCounts[b]);
+        }
+
+        builder.priceRanges(priceRanges)
+                .vegetarian(vegetarian)
+                .vegan(vegan);
+    }
+
+    private static int bucketOf(BigDecimal value, BigDecimal[] bounds) {
+        int bucket = 0;
+        while (bucket < bounds.length && value.compareTo(bounds[bucket]) >= 0) {
+            bucket++;
+        }
+        return bucket;
+    }
+
+    private static PostingList[] newPostings(int count) {
+        PostingList[] postings = new PostingList[count];
+        for (int i = 0; i < count; i++) {
+            postings[i] = new PostingList();
+        }
+        return postings;
+    }
+
+    // ==================== 索引结构 ====================
+
+    /**
+     * 餐厅分面列
+     */
+    private static final class RestaurantColumns {
+        final IdOrdinalMap ordinals = new IdOrdinalMap();
+        final PostingList live = new PostingList();
+        final List<String> cuisines = new ArrayList<>();
+        final Map<String, Integer> cuisineOrdinals = new HashMap<>();
+        final List<PostingList> cuisinePostings = new ArrayList<>();
+        final PostingList[] ratingPostings = newPostings(RATING_BOUNDS.length + 1);
+        int[] cuisineOf = new int[64];
+
+        void put(Long id, String cuisineType, BigDecimal rating) {
+            int ordinal = ordinals.ordinalForWrite(id);
+            if (ordinal < 0) {
+                return;
+            }
+            ensureCapacity(ordinal);
+            clearPostings(ordinal);
+
+            live.set(ordinal);
+            int cuisine = cuisineOrdinal(cuisineType);
+            cuisineOf[ordinal] = cuisine;
+            if (cuisine >= 0) {
+                cuisinePostings.get(cuisine).set(ordinal);
+            }
+            ratingPostings[bucketOf(rating != null ? rating : BigDecimal.ZERO, RATING_BOUNDS)].set(ordinal);
+        }
+
+        void remove(Long id) {
+            int ordinal = ordinals.ordinalOf(id);
+            if (ordinal >= 0) {
+                clearPostings(ordinal);
+            }
+        }
+
+        /**
+         * 只更新评分区间（餐厅不在索引中时忽略）
+         */
+        void updateRating(Long id, BigDecimal rating) {
+            int ordinal = ordinals.ordinalOf(id);
+            if (ordinal < 0 || !live.get(ordinal)) {
+                return;
+            }
+            for (PostingList postings : ratingPostings) {
+                postings.clear(ordinal);
+            }
+            ratingPostings[bucketOf(rating != null ? rating : BigDecimal.ZERO, RATING_BOUNDS)].set(ordinal);
+        }
+
+        private void clearPostings(int ordinal) {
+            live.clear(ordinal);
+            if (cuisineOf[ordinal] >= 0 && cuisineOf[ordinal] < cuisinePostings.size()) {
+                cuisinePostings.get(cuisineOf[ordinal]).clear(ordinal);
+            }
+            for (PostingList postings : ratingPostings) {
+                postings.clear(ordinal);
+            }
+        }
+
+        private int cuisineOrdinal(String cuisineType) {
+            if (cuisineType == null || cuisineType.isBlank()) {
+                return -1;
+            }
+            return cuisineOrdinals.computeIfAbsent(cuisineType, key -> {
+                cuisines.add(key);
+                cuisinePostings.add(new PostingList());
+                return cuisines.size() - 1;
+            });
+        }
+
+        private void ensureCapacity(int ordinal) {
+            if (ordinal >= cuisineOf.length) {
+                int capacity = Math.max(ordinal + 1, cuisineOf.length * 2);
+                cuisineOf = Arrays.copyOf(cuisineOf, capacity);
+            }
+        }
+    }
+
+    /**
+     * 菜品分面列
+     */
+    private static final class MenuItemColumns {
+        final IdOrdinalMap ordinals = new IdOrdinalMap();
+        final PostingList live = new PostingList();
+        final PostingList[] pricePostings = newPostings(PRICE_LABELS.length);
+        final PostingList vegetarian = new PostingList();
+        final PostingList vegan = new PostingList();
+
+        void put(Long id, BigDecimal price, Boolean isVegetarian, Boolean isVegan) {
+            int ordinal = ordinals.ordinalForWrite(id);
+            if (ordinal < 0) {
+                return;
+            }
+            for (PostingList postings : pricePostings) {
+                postings.clear(ordinal);
+            }
+            live.set(ordinal);
+            pricePostings[bucketOf(price != null ? price : BigDecimal.ZERO, PRICE_BOUNDS)].set(ordinal);
+            vegetarian.set(ordinal, Boolean.TRUE.equals(isVegetarian));
+            vegan.set(ordinal, Boolean.TRUE.equals(isVegan));
+        }
+
+        void remove(Long id) {
+            int ordinal = ordinals.ordinalOf(id);
+            if (ordinal >= 0) {
+                live.clear(ordinal);
+            }
+        }
+    }
+}
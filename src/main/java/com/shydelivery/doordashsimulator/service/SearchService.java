@@ -4,24 +4,36 @@ import com.shydelivery.doordashsimulator.dto.request.MenuItemSearchRequest;
 import com.shydelivery.doordashsimulator.dto.request.RestaurantSearchRequest;
 import com.shydelivery.doordashsimulator.dto.response.MenuItemDTO;
 import com.shydelivery.doordashsimulator.dto.response.RestaurantDTO;
+import com.shydelivery.doordashsimulator.dto.response.SearchFacetsDTO;
 import com.shydelivery.doordashsimulator.dto.response.SearchResultDTO;
 import com.shydelivery.doordashsimulator.entity.MenuItem;
 import com.shydelivery.doordashsimulator.entity.Restaurant;
 import com.shydelivery.doordashsimulator.repository.MenuItemRepository;
 import com.shydelivery.doordashsimulator.repository.RestaurantRepository;
-import com.shydelivery.doordashsimulator.repository.ReviewRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
+import java.time.LocalTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
@@ -35,19 +47,98 @@ public class SearchService {
     
     private final RestaurantRepository restaurantRepository;
     private final MenuItemRepository menuItemRepository;
-    private final ReviewRepository reviewRepository;
+    private final SearchFacetService searchFacetService;
+    private final PlatformTransactionManager transactionManager;
+    private final JdbcTemplate jdbcTemplate;
+    private final ExecutorService searchExecutor;
+    
+    @Value("${search.fan-out.enabled:true}")
+    private boolean fanOutEnabled;
+    
+    @Value("${search.fan-out.restaurants-timeout-ms:${search.fan-out.leg-timeout-ms:800}}")
+    private long restaurantsTimeoutMs;
+    
+    @Value("${search.fan-out.menu-items-timeout-ms:${search.fan-out.leg-timeout-ms:800}}")
+    private long menuItemsTimeoutMs;
+    
+    @Value("${search.fan-out.facets-timeout-ms:${search.fan-out.leg-timeout-ms:800}}")
+    private long facetsTimeoutMs;
     
     /**
      * 综合搜索（同时搜索餐厅和菜品）
      */
-    @Transactional(readOnly = true)
     public SearchResultDTO globalSearch(String keyword, Integer page, Integer size) {
-        log.info("Global search with keyword: {}", keyword);
+        return globalSearch(keyword, page, size, false);
+    }
+    
+    /**
+     * 综合搜索（同时搜索餐厅和菜品），可选返回分面统计
+     * 
+     * 餐厅、菜品、分面三个分支相互独立：
+     * - 扇出模式（默认）：各分支在 searchExecutor 上并行执行，每个分支在各自的只读事务中
+     *   完成查询和 DTO 转换，总延迟取决于最慢的分支而不是各分支之和；
+     *   每个分支有独立的截止时间，超时的分支返回空结果，并在 incompleteLegs 中标记；
+     *   线程池饱和时被拒绝的分支同样按未完成处理，不会退回到请求线程上执行。
+     *   截止时间同时下发为该分支事务的 statement_timeout，超时的查询由数据库取消并释放连接，
+     *   不会在调用方放弃后继续占用连接池
+     * - 顺序模式（search.fan-out.enabled=false）：在请求线程上依次执行
+     */
+    public SearchResultDTO globalSearch(String keyword, Integer page, Integer size, boolean includeFacets) {
+        log.info("Global search with keyword: {}, fanOut: {}", keyword, fanOutEnabled);
         
-        page = page != null ? page : 0;
-        size = size != null && size > 0 && size <= 100 ? size : 20;
+        int pageNumber = page != null ? page : 0;
+        int pageSize = size != null && size > 0 && size <= 100 ? size : 20;
+        
+        SearchLeg<RestaurantDTO> restaurants;
+        SearchLeg<MenuItemDTO> menuItems;
+        SearchFacetsDTO facets = null;
+        List<String> incompleteLegs = new ArrayList<>();
+        String facetKeyword = keyword != null ? keyword.toLowerCase() : null;
+        
+        if (fanOutEnabled) {
+            long start = System.nanoTime();
+            long restaurantDeadline = start + TimeUnit.MILLISECONDS.toNanos(restaurantsTimeoutMs);
+            long menuItemDeadline = start + TimeUnit.MILLISECONDS.toNanos(menuItemsTimeoutMs);
+            long facetDeadline = start + TimeUnit.MILLISECONDS.toNanos(facetsTimeoutMs);
+            CompletableFuture<SearchLeg<RestaurantDTO>> restaurantFuture = submitLeg(
+                    () -> readOnlyBefore(restaurantDeadline, () -> searchRestaurantLeg(keyword, pageNumber, pageSize)));
+            CompletableFuture<SearchLeg<MenuItemDTO>> menuItemFuture = submitLeg(
+                    () -> readOnlyBefore(menuItemDeadline, () -> searchMenuItemLeg(keyword, pageNumber, pageSize)));
+            CompletableFuture<SearchFacetsDTO> facetFuture = includeFacets
+                    ? submitLeg(() -> readOnlyBefore(facetDeadline, () -> searchFacetService.computeFacets(facetKeyword)))
+                    : null;
+            
+            restaurants = awaitLeg("restaurants", restaurantFuture, restaurantDeadline, restaurantsTimeoutMs, SearchLeg.empty(), incompleteLegs);
+            menuItems = awaitLeg("menuItems", menuItemFuture, menuItemDeadline, menuItemsTimeoutMs, SearchLeg.empty(), incompleteLegs);
+            if (facetFuture != null) {
+                facets = awaitLeg("facets", facetFuture, facetDeadline, facetsTimeoutMs, null, incompleteLegs);
+            }
+        } else {
+            restaurants = readOnly(() -> searchRestaurantLeg(keyword, pageNumber, pageSize));
+            menuItems = readOnly(() -> searchMenuItemLeg(keyword, pageNumber, pageSize));
+            if (includeFacets) {
+                facets = searchFacetService.computeFacets(facetKeyword);
+            }
+        }
         
-        // 搜索餐厅
+        return SearchResultDTO.builder()
+                .restaurants(restaurants.items)
+                .menuItems(menuItems.items)
+                .totalRestaurants(restaurants.total)
+                .totalMenuItems(menuItems.total)
+                .currentPage(pageNumber)
+                .pageSize(pageSize)
+                .keyword(keyword)
+                .facets(facets)
+                .partial(!incompleteLegs.isEmpty())
+                .incompleteLegs(incompleteLegs.isEmpty() ? null : incompleteLegs)
+                .build();
+    }
+    
+    /**
+     * 餐厅分支：查询 + DTO 转换（需在事务内执行，餐厅所有者为懒加载）
+     */
+    private SearchLeg<RestaurantDTO> searchRestaurantLeg(String keyword, int page, int size) {
         RestaurantSearchRequest restaurantRequest = RestaurantSearchRequest.builder()
                 .keyword(keyword)
                 .page(page)
@@ -55,7 +146,16 @@ public class SearchService {
                 .build();
         Page<Restaurant> restaurantPage = searchRestaurants(restaurantRequest);
         
-        // 搜索菜品
+        List<RestaurantDTO> restaurantDTOs = restaurantPage.getContent().stream()
+                .map(this::convertToRestaurantDTO)
+                .collect(Collectors.toList());
+        return new SearchLeg<>(restaurantDTOs, restaurantPage.getTotalElements());
+    }
+    
+    /**
+     * 菜品分支：查询 + DTO 转换（需在事务内执行，所属餐厅为懒加载）
+     */
+    private SearchLeg<MenuItemDTO> searchMenuItemLeg(String keyword, int page, int size) {
         MenuItemSearchRequest menuItemRequest = MenuItemSearchRequest.builder()
                 .keyword(keyword)
                 .availableOnly(true)
@@ -64,24 +164,73 @@ public class SearchService {
                 .build();
         Page<MenuItem> menuItemPage = searchMenuItems(menuItemRequest);
         
-        // 转换为 DTO
-        List<RestaurantDTO> restaurantDTOs = restaurantPage.getContent().stream()
-                .map(this::convertToRestaurantDTO)
-                .collect(Collectors.toList());
-        
         List<MenuItemDTO> menuItemDTOs = menuItemPage.getContent().stream()
                 .map(this::convertToMenuItemDTO)
                 .collect(Collectors.toList());
-        
-        return SearchResultDTO.builder()
-                .restaurants(restaurantDTOs)
-                .menuItems(menuItemDTOs)
-                .totalRestaurants(restaurantPage.getTotalElements())
-                .totalMenuItems(menuItemPage.getTotalElements())
-                .currentPage(page)
-                .pageSize(size)
-                .keyword(keyword)
-                .build();
+        return new SearchLeg<>(menuItemDTOs, menuItemPage.getTotalElements());
+    }
+    
+    /**
+     * 提交分支到 searchExecutor；线程池饱和拒绝时返回失败的 future，由 awaitLeg 标记为未完成
+     */
+    private <T> CompletableFuture<T> submitLeg(Supplier<T> leg) {
+        try {
+            return CompletableFuture.supplyAsync(leg, searchExecutor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+    
+    /**
+     * 等待分支结果，超过截止时间、被线程池拒绝或失败时返回兜底值并记录分支名
+     * 
+     * 超时后不再取消 future（CompletableFuture.cancel 不会中断正在执行的任务）：
+     * 分支中的查询由同一截止时间的 statement_timeout 在数据库侧终止
+     */
+    private <T> T awaitLeg(String leg, CompletableFuture<T> future, long deadlineNanos, long budgetMs,
+                           T fallback, List<String> incompleteLegs) {
+        try {
+            long remaining = Math.max(0, deadlineNanos - System.nanoTime());
+            return future.get(remaining, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            log.warn("Search leg '{}' exceeded deadline of {}ms, returning partial results", leg, budgetMs);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RejectedExecutionException) {
+                log.warn("Search leg '{}' rejected by saturated search executor, returning partial results", leg);
+                incompleteLegs.add(leg);
+                return fallback;
+            }
+            log.error("Search leg '{}' failed: {}", leg, e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        incompleteLegs.add(leg);
+        return fallback;
+    }
+    
+    /**
+     * 在只读事务中执行（扇出分支运行在其他线程上，无法共享调用方的事务）
+     */
+    private <T> T readOnly(Supplier<T> work) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(true);
+        return template.execute(status -> work.get());
+    }
+    
+    /**
+     * 在只读事务中执行，事务内的每条语句最多执行到截止时间（SET LOCAL statement_timeout，随事务结束失效）
+     * 
+     * 在线程池中排队已超过截止时间的分支不再执行
+     */
+    private <T> T readOnlyBefore(long deadlineNanos, Supplier<T> work) {
+        return readOnly(() -> {
+            long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+            if (remainingMs <= 0) {
+                throw new IllegalStateException("搜索分支开始执行前已超过截止时间");
+            }
+            jdbcTemplate.execute("SET LOCAL statement_timeout = " + remainingMs);
+            return work.get();
+        });
     }
     
     /**
@@ -91,10 +240,13 @@ public class SearchService {
     public Page<Restaurant> searchRestaurants(RestaurantSearchRequest request) {
         log.info("Searching restaurants with request: {}", request);
         
+        // "ranking" 为综合排名分（RankingScoreService 维护）的别名
+        String sortBy = "ranking".equalsIgnoreCase(request.getSortBy()) ? "rankingScore" : request.getSortBy();
+        
         Pageable pageable = createPageable(
                 request.getPage(),
                 request.getSize(),
-                request.getSortBy(),
+                sortBy,
                 request.getSortDirection()
         );
         
@@ -120,6 +272,7 @@ public class SearchService {
                 minOrderAmount,
                 maxOrderAmount,
                 openOnly,
+                LocalTime.now(),
                 pageable
         );
     }
@@ -168,7 +321,7 @@ public class SearchService {
         Pageable pageable = PageRequest.of(0, limit != null ? limit : 10, Sort.by("id").descending());
         
         List<Restaurant> restaurants = restaurantRepository.searchRestaurants(
-                null, null, minRating, null, null, null, null, null, null, pageable
+                null, null, minRating, null, null, null, null, null, null, LocalTime.now(), pageable
         ).getContent();
         
         return restaurants.stream()
@@ -201,25 +354,11 @@ public class SearchService {
     public List<RestaurantDTO> getPopularRestaurants(Integer limit) {
         log.info("Getting popular restaurants, limit: {}", limit);
         
-        Pageable pageable = PageRequest.of(0, limit != null ? limit : 10);
-        List<Restaurant> restaurants = restaurantRepository.findAll(pageable).getContent();
+        // 评价数与评分已冗余在餐厅表上，直接由数据库排序（idx_review_count_rating）
+        Pageable pageable = PageRequest.of(0, limit != null ? limit : 10,
+                Sort.by(Sort.Direction.DESC, "reviewCount", "rating"));
         
-        // 按评价数量和评分排序
-        restaurants.sort((r1, r2) -> {
-            Long count1 = reviewRepository.countReviewsByRestaurant(r1.getId());
-            Long count2 = reviewRepository.countReviewsByRestaurant(r2.getId());
-            int countCompare = count2.compareTo(count1);
-            if (countCompare != 0) return countCompare;
-            
-            BigDecimal rating1 = reviewRepository.calculateAverageRatingForRestaurant(r1.getId());
-            BigDecimal rating2 = reviewRepository.calculateAverageRatingForRestaurant(r2.getId());
-            rating1 = rating1 != null ? rating1 : BigDecimal.ZERO;
-            rating2 = rating2 != null ? rating2 : BigDecimal.ZERO;
-            return rating2.compareTo(rating1);
-        });
-        
-        return restaurants.stream()
-                .limit(limit != null ? limit : 10)
+        return restaurantRepository.findAll(pageable).getContent().stream()
                 .map(this::convertToRestaurantDTO)
                 .collect(Collectors.toList());
     }
@@ -236,6 +375,10 @@ public class SearchService {
                 : Sort.Direction.DESC;
         
         Sort sort = Sort.by(direction, sortBy != null ? sortBy : "id");
+        if ("rankingScore".equals(sortBy)) {
+            // 排名分为浮点数，加上 id 保证翻页顺序稳定
+            sort = sort.and(Sort.by(direction, "id"));
+        }
         
         return PageRequest.of(page, size, sort);
     }
@@ -244,13 +387,6 @@ public class SearchService {
      * 转换餐厅实体为 DTO
      */
     private RestaurantDTO convertToRestaurantDTO(Restaurant restaurant) {
-        // 计算平均评分（ReviewRepository 返回 BigDecimal）
-        BigDecimal avgRating = reviewRepository.calculateAverageRatingForRestaurant(restaurant.getId());
-        if (avgRating == null) {
-            avgRating = BigDecimal.ZERO;
-        }
-        Long reviewCount = reviewRepository.countReviewsByRestaurant(restaurant.getId());
-        
         return RestaurantDTO.builder()
                 .id(restaurant.getId())
                 .ownerId(restaurant.getOwner().getId())
@@ -264,8 +400,8 @@ public class SearchService {
                 .zipCode(restaurant.getZipCode())
                 .phoneNumber(restaurant.getPhoneNumber())
                 .isActive(restaurant.getIsActive())
-                .rating(avgRating)
-                .totalReviews(reviewCount != null ? reviewCount.intValue() : 0)
+                .rating(restaurant.getRating() != null ? restaurant.getRating() : BigDecimal.ZERO)
+                .totalReviews(restaurant.getReviewCount())
                 .createdAt(restaurant.getCreatedAt())
                 .updatedAt(restaurant.getUpdatedAt())
                 .build();
@@ -289,4 +425,21 @@ public class SearchService {
                 .updatedAt(menuItem.getUpdatedAt())
                 .build();
     }
+    
+    /**
+     * 单个搜索分支的结果（当前页 DTO + 总数）
+     */
+    private static final class SearchLeg<T> {
+        final List<T> items;
+        final long total;
+        
+        SearchLeg(List<T> items, long total) {
+            this.items = items;
+            this.total = total;
+        }
+        
+        static <T> SearchLeg<T> empty() {
+            return new SearchLeg<>(new ArrayList<>(), 0L);
+        }
+    }
 }
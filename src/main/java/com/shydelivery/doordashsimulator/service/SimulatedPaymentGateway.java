@@ -0,0 +1,126 @@
+package com.shydelivery.doordashsimulator.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 本地模拟支付网关（替代真实网关的延迟和失败特征）
+ *
+ * - 每次调用阻塞 [min-latency-ms, max-latency-ms] 内的随机时长，模拟真实网关的响应时间
+ * - decline-rate 概率拒绝（明确答复）；error-rate 概率返回内部错误（未扣款，结果未知）
+ * - 延迟超过调用方的超时时间时，在超时处抛出 GatewayException，但网关侧已经完成扣款：
+ *   结果保存在幂等记录中，用同一幂等键重试得到同一结果，不会重复扣款
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "payment.gateway.type", havingValue = "simulated", matchIfMissing = true)
+public class SimulatedPaymentGateway implements PaymentGateway {
+
+    @Value("${payment.gateway.simulated.min-latency-ms:300}")
+    private long minLatencyMs;
+
+    @Value("${payment.gateway.simulated.max-latency-ms:2000}")
+    private long maxLatencyMs;
+
+    @Value("${payment.gateway.simulated.decline-rate:0.1}")
+    private double declineRate;
+
+    @Value("${payment.gateway.simulated.error-rate:0.0}")
+    private double errorRate;
+
+    @Value("${payment.gateway.simulated.max-idempotency-keys:100000}")
+    private int maxIdempotencyKeys;
+
+    /** 幂等记录：幂等键 → 第一次的答复（按插入顺序淘汰最旧的记录） */
+    private final Map<String, ChargeResult> results = Collections.synchronizedMap(new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ChargeResult> eldest) {
+            return size() > maxIdempotencyKeys;
+        }
+    });
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder approved = new LongAdder();
+    private final LongAdder declined = new LongAdder();
+    private final LongAdder replays = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    @Override
+    public String name() {
+        return "simulated";
+    }
+
+    @Override
+    public ChargeResult charge(ChargeRequest request, Duration timeout) {
+        calls.increment();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long latencyMs = minLatencyMs + random.nextLong(Math.max(1, maxLatencyMs - minLatencyMs + 1));
+        boolean internalError = random.nextDouble() < errorRate;
+
+        ChargeResult result = null;
+        boolean replay = false;
+        if (!internalError) {
+            ChargeResult decided = random.nextDouble() < declineRate
+                    ? ChargeResult.declined("第三方支付网关拒绝")
+                    : ChargeResult.approved("TXN-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase());
+            result = results.putIfAbsent(request.idempotencyKey(), decided);
+            replay = result != null;
+            if (result == null) {
+                result = decided;
+            }
+        }
+
+        long timeoutMs = timeout.toMillis();
+        try {
+            Thread.sleep(Math.min(latencyMs, timeoutMs));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GatewayException("支付网关调用被中断", false);
+        }
+
+        if (latencyMs > timeoutMs) {
+            timeouts.increment();
+            throw new GatewayException("支付网关响应超时（" + timeoutMs + "ms）", true);
+        }
+        if (internalError) {
+            errors.increment();
+            throw new GatewayException("支付网关内部错误", false);
+        }
+
+        if (replay) {
+            replays.increment();
+        } else if (result.approved()) {
+            approved.increment();
+        } else {
+            declined.increment();
+        }
+        log.debug("模拟网关答复: key={}, approved={}, latency={}ms, replay={}",
+                request.idempotencyKey(), result.approved(), latencyMs, replay);
+        return result;
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("latencyMs", minLatencyMs + "-" + maxLatencyMs);
+        stats.put("calls", calls.sum());
+        stats.put("approved", approved.sum());
+        stats.put("declined", declined.sum());
+        stats.put("replays", replays.sum());
+        stats.put("timeouts", timeouts.sum());
+        stats.put("errors", errors.sum());
+        stats.put("idempotencyKeys", results.size());
+        return stats;
+    }
+}
@@ -0,0 +1,423 @@
+package com.shydelivery.doordashsimulator.service;
+
+import com.shydelivery.doordashsimulator.dto.response.SuggestionDTO;
+import com.shydelivery.doordashsimulator.entity.MenuItem;
+import com.shydelivery.doordashsimulator.entity.Restaurant;
+import com.shydelivery.doordashsimulator.repository.MenuItemRepository;
+import com.shydelivery.doordashsimulator.repository.OrderItemRepository;
+import com.shydelivery.doordashsimulator.repository.RestaurantRepository;
+import com.shydelivery.doordashsimulator.util.SuggestionTrie;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/**
+ * 搜索联想服务
+ *
+ * 在内存中维护餐厅名称、菜品名称和菜系的带权前缀树，
+ * 替代客户端每次按键都调用 /search/restaurants/quick 和 /search/menu-items/quick。
+ *
+ * 索引维护:
+ * - 启动完成后全量构建一次，之后每小时全量重建以刷新热度权重
+ * - RestaurantService / MenuItemService 写操作在事务提交后增量更新；重建期间的增量更新在替换后重放
+ * - 只索引营业中餐厅及其可售菜品
+ *
+ * 热度权重:
+ * - 餐厅: 100 + 评分 × 100
+ * - 菜品: 10 + 累计下单份数
+ * - 菜系: 50 × 该菜系的活跃餐厅数
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SuggestionService {
+
+    public static final String TYPE_RESTAURANT = "RESTAURANT";
+    public static final String TYPE_MENU_ITEM = "MENU_ITEM";
+    public static final String TYPE_CUISINE = "CUISINE";
+
+    private static final int DEFAULT_LIMIT = 10;
+    private static final int MAX_LIMIT = 50;
+
+    private final RestaurantRepository restaurantRepository;
+    private final MenuItemRepository menuItemRepository;
+    private final OrderItemRepository orderItemRepository;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** 当前索引，全量重建时整体替换 */
+    private SuggestionTrie<Suggestion> trie = new SuggestionTrie<>();
+
+    /** 已索引文档（key = 类型:ID），用于增量更新时删除旧词条 */
+    private Map<String, Suggestion> documents = new HashMap<>();
+
+    /** 餐厅ID → 该餐厅已索引菜品的文档 key，餐厅移出索引时直接定位其菜品 */
+    private Map<Long, Set<String>> restaurantMenuItems = new HashMap<>();
+
+    /** 菜系 → 活跃餐厅数 */
+    private Map<String, Integer> cuisineCounts = new HashMap<>();
+
+    /** 菜品ID → 累计下单份数（全量重建时刷新） */
+    private Map<Long, Long> menuItemPopularity = new HashMap<>();
+
+    /** 全量重建期间应用的增量更新（非重建期间为 null；写锁保护） */
+    private List<Runnable> pendingUpdates;
+
+    /**
+     * 查询联想结果
+     *
+     * @param prefix 用户输入的前缀
+     * @param limit 返回条数（默认 10，最大 50）
+     */
+    public List<SuggestionDTO> suggest(String prefix, Integer limit) {
+        String normalized = SuggestionTrie.normalize(prefix);
+        if (normalized.isEmpty()) {
+            return List.of();
+        }
+        int k = limit != null && limit > 0 ? Math.min(limit, MAX_LIMIT) : DEFAULT_LIMIT;
+
+        List<Suggestion> results;
+        lock.readLock().lock();
+        try {
+            results = trie.topK(normalized, k);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return results.stream()
+                .map(Suggestion::toDTO)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 索引统计信息（词条数、节点数、内存占用）
+     */
+    public Map<String, Object> getStats() {
+        lock.readLock().lock();
+        try {
+            long terms = trie.getTermCount();
+            long bytes = trie.estimateMemoryBytes();
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("documents", documents.size());
+            stats.put("terms", terms);
+            stats.put("nodes", trie.getNodeCount());
+            stats.put("estimatedBytes", bytes);
+            stats.put("bytesPerMillionTerms", terms > 0 ? bytes * 1_000_000L / terms : 0L);
+            return stats;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 全量重建索引
+     *
+     * 读取数据库期间提交的增量更新照常作用于旧索引，同时记录下来，
+     * 新索引替换旧索引后按顺序重放，避免被重建前读到的旧数据覆盖。
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelay = 3_600_000, fixedDelay = 3_600_000)
+    public synchronized void rebuild() {
+        long start = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            pendingUpdates = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try {
+            Map<Long, Long> popularity = new HashMap<>();
+            for (Object[] row : orderItemRepository.sumQuantityByMenuItem()) {
+                popularity.put((Long) row[0], row[1] != null ? ((Number) row[1]).longValue() : 0L);
+            }
+            List<Object[]> restaurantRows = restaurantRepository.findSuggestionRows();
+            List<Object[]> menuItemRows = menuItemRepository.findSuggestionRows();
+
+            SuggestionTrie<Suggestion> newTrie = new SuggestionTrie<>();
+            Map<String, Suggestion> newDocuments = new HashMap<>();
+            Map<Long, Set<String>> newRestaurantMenuItems = new HashMap<>();
+            Map<String, Integer> newCuisineCounts = new HashMap<>();
+
+            for (Object[] row : restaurantRows) {
+                Suggestion suggestion = restaurantSuggestion((Long) row[0], (String) row[1], (BigDecimal) row[3])
+                        .withCuisine((String) row[2]);
+                addDocument(newTrie, newDocuments, newRestaurantMenuItems, suggestion);
+                if (suggestion.cuisine != null) {
+                    newCuisineCounts.merge(suggestion.cuisine, 1, Integer::sum);
+                }
+            }
+            for (Object[] row : menuItemRows) {
+                Long id = (Long) row[0];
+                Suggestion suggestion = menuItemSuggestion(id, (String) row[1], (Long) row[2],
+                        popularity.getOrDefault(id, 0L));
+                addDocument(newTrie, newDocuments, newRestaurantMenuItems, suggestion);
+            }
+            newCuisineCounts.forEach((cuisine, count) ->
+                    addDocument(newTrie, newDocuments, newRestaurantMenuItems, cuisineSuggestion(cuisine, count)));
+
+            int replayed;
+            lock.writeLock().lock();
+            try {
+                trie = newTrie;
+                documents = newDocuments;
+                restaurantMenuItems = newRestaurantMenuItems;
+                cuisineCounts = newCuisineCounts;
+                menuItemPopularity = popularity;
+                replayed = pendingUpdates.size();
+                pendingUpdates.forEach(Runnable::run);
+            } finally {
+                pendingUpdates = null;
+                lock.writeLock().unlock();
+            }
+            log.info("联想索引重建完成: documents={}, terms={}, nodes={}, 重放增量={}, 耗时={}ms",
+                    newDocuments.size(), newTrie.getTermCount(), newTrie.getNodeCount(), replayed,
+                    System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            lock.writeLock().lock();
+            try {
+                pendingUpdates = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            log.error("联想索引重建失败，保留旧索引: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 餐厅创建/更新后增量更新索引（事务提交后生效）
+     *
+     * 停业的餐厅连同其菜品一并移出索引；恢复营业时重新加载其可售菜品。
+     */
+    public void indexRestaurant(Restaurant restaurant) {
+        Long restaurantId = restaurant.getId();
+        Suggestion suggestion = Boolean.TRUE.equals(restaurant.getIsActive())
+                ? restaurantSuggestion(restaurantId, restaurant.getName(), restaurant.getRating())
+                        .withCuisine(restaurant.getCuisineType())
+                : null;
+        afterCommit(() -> {
+            List<Object[]> menuItemRows = suggestion != null
+                    ? menuItemRepository.findSuggestionRowsByRestaurantId(restaurantId)
+                    : List.of();
+            apply(() -> {
+                removeRestaurantDocuments(restaurantId);
+                if (suggestion == null) {
+                    return;
+                }
+                addDocument(trie, documents, restaurantMenuItems, suggestion);
+                if (suggestion.cuisine != null) {
+                    adjustCuisine(suggestion.cuisine, 1);
+                }
+                for (Object[] row : menuItemRows) {
+                    Long id = (Long) row[0];
+                    addDocument(trie, documents, restaurantMenuItems, menuItemSuggestion(id, (String) row[1], restaurantId,
+                            menuItemPopularity.getOrDefault(id, 0L)));
+                }
+            });
+        });
+    }
+
+    /**
+     * 餐厅删除后增量更新索引（事务提交后生效）
+     */
+    public void removeRestaurant(Long restaurantId) {
+        afterCommit(() -> apply(() -> removeRestaurantDocuments(restaurantId)));
+    }
+
+    /**
+     * 菜品创建/更新后增量更新索引（事务提交后生效；所属餐厅不在索引中时不索引）
+     */
+    public void indexMenuItem(MenuItem menuItem) {
+        Long id = menuItem.getId();
+        Long restaurantId = menuItem.getRestaurant().getId();
+        String name = menuItem.getName();
+        boolean available = Boolean.TRUE.equals(menuItem.getIsAvailable());
+        afterCommit(() -> apply(() -> {
+            removeDocument(TYPE_MENU_ITEM + ":" + id);
+            if (available && documents.containsKey(TYPE_RESTAURANT + ":" + restaurantId)) {
+                addDocument(trie, documents, restaurantMenuItems, menuItemSuggestion(id, name, restaurantId,
+                        menuItemPopularity.getOrDefault(id, 0L)));
+            }
+        }));
+    }
+
+    /**
+     * 菜品删除后增量更新索引（事务提交后生效）
+     */
+    public void removeMenuItem(Long menuItemId) {
+        afterCommit(() -> apply(() -> removeDocument(TYPE_MENU_ITEM + ":" + menuItemId)));
+    }
+
+    /**
+     * 事务提交后执行（回滚时丢弃，不会在索引中留下不存在的条目）；无事务时立即执行
+     */
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * 在写锁内对当前索引执行增量更新；全量重建进行中时同时记录，供新索引重放
+     */
+    private void apply(Runnable update) {
+        lock.writeLock().lock();
+        try {
+            update.run();
+            if (pendingUpdates != null) {
+                pendingUpdates.add(update);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ==================== 内部方法（调用方持有写锁） ====================
+
+    private void removeRestaurantDocuments(Long restaurantId) {
+        Suggestion old = documents.get(TYPE_RESTAURANT + ":" + restaurantId);
+        removeDocument(TYPE_RESTAURANT + ":" + restaurantId);
+        if (old != null && old.cuisine != null) {
+            adjustCuisine(old.cuisine, -1);
+        }
+        Set<String> menuItemKeys = restaurantMenuItems.remove(restaurantId);
+        if (menuItemKeys != null) {
+            menuItemKeys.forEach(this::removeDocument);
+        }
+    }
+
+    private void adjustCuisine(String cuisine, int delta) {
+        int count = cuisineCounts.getOrDefault(cuisine, 0) + delta;
+        removeDocument(TYPE_CUISINE + ":" + cuisine);
+        if (count > 0) {
+            cuisineCounts.put(cuisine, count);
+            addDocument(trie, documents, restaurantMenuItems, cuisineSuggestion(cuisine, count));
+        } else {
+            cuisineCounts.remove(cuisine);
+        }
+    }
+
+    private void addDocument(SuggestionTrie<Suggestion> target, Map<String, Suggestion> docs,
+                             Map<Long, Set<String>> menuItemsByRestaurant, Suggestion suggestion) {
+        for (String term : indexTerms(suggestion.text)) {
+            target.add(term, suggestion, suggestion.weight);
+        }
+        docs.put(suggestion.key(), suggestion);
+        if (TYPE_MENU_ITEM.equals(suggestion.type) && suggestion.restaurantId != null) {
+            menuItemsByRestaurant.computeIfAbsent(suggestion.restaurantId, id -> new HashSet<>()).add(suggestion.key());
+        }
+    }
+
+    private void removeDocument(String key) {
+        Suggestion old = documents.remove(key);
+        if (old != null) {
+            for (String term : indexTerms(old.text)) {
+                trie.remove(term, old);
+            }
+            if (TYPE_MENU_ITEM.equals(old.type) && old.restaurantId != null) {
+                Set<String> keys = restaurantMenuItems.get(old.restaurantId);
+                if (keys != null) {
+                    keys.remove(key);
+                    if (keys.isEmpty()) {
+                        restaurantMenuItems.remove(old.restaurantId);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 索引词条：完整名称 + 每个单词开头的后缀
+     * 例如 "Joe's Pizza House" → "joe's pizza house", "pizza house", "house"
+     */
+    private static Set<String> indexTerms(String text) {
+        String normalized = SuggestionTrie.normalize(text);
+        Set<String> terms = new LinkedHashSet<>();
+        if (normalized.isEmpty()) {
+            return terms;
+        }
+        terms.add(normalized);
+        for (int i = normalized.indexOf(' '); i >= 0; i = normalized.indexOf(' ', i + 1)) {
+            if (i + 1 < normalized.length()) {
+                terms.add(normalized.substring(i + 1));
+            }
+        }
+        return terms;
+    }
+
+    private static Suggestion restaurantSuggestion(Long id, String name, BigDecimal rating) {
+        long weight = 100 + (rating != null ? rating.multiply(BigDecimal.valueOf(100)).longValue() : 0);
+        return new Suggestion(TYPE_RESTAURANT, id, null, name, weight, null);
+    }
+
+    private static Suggestion menuItemSuggestion(Long id, String name, Long restaurantId, long orderedQuantity) {
+        return new Suggestion(TYPE_MENU_ITEM, id, restaurantId, name, 10 + orderedQuantity, null);
+    }
+
+    private static Suggestion cuisineSuggestion(String cuisine, int restaurantCount) {
+        return new Suggestion(TYPE_CUISINE, null, null, cuisine, 50L * restaurantCount, null);
+    }
+
+    /**
+     * 索引中的联想条目（不可变，按引用相等比较，确保删除的是同一条目）
+     */
+    private static final class Suggestion {
+        final String type;
+        final Long id;
+        final Long restaurantId;
+        final String text;
+        final long weight;
+        final String cuisine;
+
+        Suggestion(String type, Long id, Long restaurantId, String text, long weight, String cuisine) {
+            this.type = type;
+            this.id = id;
+            this.restaurantId = restaurantId;
+            this.text = text;
+            this.weight = weight;
+            this.cuisine = cuisine;
+        }
+
+        Suggestion withCuisine(String cuisineType) {
+            String value = cuisineType != null && !cuisineType.isBlank() ? cuisineType : null;
+            return new Suggestion(type, id, restaurantId, text, weight, value);
+        }
+
+        String key() {
+            return type + ":" + (TYPE_CUISINE.equals(type) ? text : id);
+        }
+
+        SuggestionDTO toDTO() {
+            return SuggestionDTO.builder()
+                    .type(type)
+                    .text(text)
+                    .id(id)
+                    .restaurantId(restaurantId)
+                    .score(weight)
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package com.shydelivery.doordashsimulator.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shydelivery.doordashsimulator.dto.websocket.DeliveryStatusMessage;
+import com.shydelivery.doordashsimulator.dto.websocket.LocationUpdateMessage;
+import com.shydelivery.doordashsimulator.util.TrackingFrameCodec;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MessageConversionException;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.messaging.support.NativeMessageHeaderAccessor;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.sockjs.transport.SockJsSession;
+
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 位置/配送追踪帧的按连接协商
+ *
+ * 客户端在 STOMP CONNECT 帧上带 {@code frame-format: compact} 即表示能解码紧凑二进制帧
+ * （格式见 {@link TrackingFrameCodec}），未带此头的连接保持 JSON。
+ * 原生 WebSocket 连接直接发送二进制帧（application/octet-stream）；SockJS 只能传文本，
+ * 同样的帧以 Base64 发送。每个 MESSAGE 帧的 {@code frame-format} 头标明实际格式，
+ * 无法编码的消息（缺 ID、未知状态等）仍以 JSON 发送。
+ *
+ * - brokerChannel：业务侧通过 {@link #sourceHeaders} 附带原始 DTO；从集群其他节点转入的消息
+ *   只有 JSON 负载，有紧凑连接时在这里解析一次
+ * - clientOutboundChannel：对协商了紧凑格式的会话，按订阅维护差值基准并替换负载
+ *   （依赖 preservePublishOrder 保证同一会话的消息按序编码和发送）
+ * - clientInboundChannel：配送员也可以用紧凑帧发送位置更新（SEND 帧带 frame-format 头），
+ *   由 {@link #inboundConverter()} 解码为 LocationUpdateMessage
+ */
+@Slf4j
+@Service
+public class TrackingFrameService {
+
+    public static final String FORMAT_HEADER = "frame-format";
+    public static final String FORMAT_COMPACT = "compact";
+    public static final String FORMAT_COMPACT_BASE64 = "compact-base64";
+
+    /** 业务侧附带的原始 DTO（非原生头，不会写到 STOMP 帧上） */
+    public static final String SOURCE_HEADER = "trackingSource";
+
+    private static final String DELIVERY_PREFIX = "/topic/delivery/";
+    private static final String DRIVER_PREFIX = "/topic/driver/";
+    private static final String NATIVE_TRANSPORT_ATTR = TrackingFrameService.class.getName() + ".nativeTransport";
+    private static final MimeType BASE64_TYPE = MimeTypeUtils.TEXT_PLAIN;
+
+    private final ObjectMapper objectMapper;
+
+    @Value("${websocket.compact-frames.enabled:true}")
+    private boolean enabled;
+
+    private final Map<String, SessionFrames> sessions = new ConcurrentHashMap<>();
+
+    private final LongAdder negotiated = new LongAdder();
+    private final LongAdder encoded = new LongAdder();
+    private final LongAdder keyFrames = new LongAdder();
+    private final LongAdder compactBytes = new LongAdder();
+    private final LongAdder jsonBytes = new LongAdder();
+    private final LongAdder jsonFallbacks = new LongAdder();
+    private final LongAdder clusterParsed = new LongAdder();
+    private final LongAdder inboundDecoded = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    public TrackingFrameService(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * 单个会话的编码状态，tracks 以订阅 ID（下行）或 "send:" + 目的地（上行）为键
+     */
+    private static class SessionFrames {
+        private final boolean binary;
+        private final Map<String, TrackingFrameCodec.Track> tracks = new HashMap<>();
+
+        SessionFrames(boolean binary) {
+            this.binary = binary;
+        }
+
+        synchronized byte[] encode(String key, Object source) {
+            TrackingFrameCodec.Track track = tracks.computeIfAbsent(key, k -> new TrackingFrameCodec.Track());
+            if (source instanceof DeliveryStatusMessage status) {
+                return TrackingFrameCodec.encode(status, track);
+            }
+            return TrackingFrameCodec.encode((LocationUpdateMessage) source, track);
+        }
+
+        synchronized Object decode(String key, byte[] frame) {
+            return TrackingFrameCodec.decode(frame, tracks.computeIfAbsent(key, k -> new TrackingFrameCodec.Track()));
+        }
+
+        synchronized void remove(String key) {
+            tracks.remove(key);
+        }
+    }
+
+    /**
+     * 业务侧发送追踪消息时使用的消息头：附带原始 DTO，避免为紧凑连接再解析一次 JSON
+     */
+    public MessageHeaders sourceHeaders(Object source) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setHeader(SOURCE_HEADER, source);
+        accessor.setLeaveMutable(true);
+        return accessor.getMessageHeaders();
+    }
+
+    /**
+     * 记录连接是否为原生 WebSocket（SockJS 会话只能传文本帧）
+     */
+    public WebSocketHandlerDecoratorFactory transportDetector() {
+        return handler -> new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                session.getAttributes().put(NATIVE_TRANSPORT_ATTR, !(session instanceof SockJsSession));
+                super.afterConnectionEstablished(session);
+            }
+        };
+    }
+
+    /**
+     * clientInboundChannel：CONNECT 时协商格式，UNSUBSCRIBE/DISCONNECT 时清理状态
+     */
+    public ChannelInterceptor inboundInterceptor() {
+        return new ChannelInterceptor() {
+            @Override
+            public Message<?> preSend(Message<?> message, MessageChannel channel) {
+                MessageHeaders headers = message.getHeaders();
+                SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(headers);
+                String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+                if (type == null || sessionId == null) {
+                    return message;
+                }
+                switch (type) {
+                    case CONNECT -> negotiate(sessionId, headers);
+                    case UNSUBSCRIBE -> {
+                        SessionFrames frames = sessions.get(sessionId);
+                        String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(headers);
+                        if (frames != null && subscriptionId != null) {
+                            frames.remove(subscriptionId);
+                        }
+                    }
+                    case DISCONNECT -> sessions.remove(sessionId);
+                    default -> {
+                    }
+                }
+                return message;
+            }
+        };
+    }
+
+    /**
+     * brokerChannel：集群转入的追踪消息只有 JSON 负载，有紧凑连接时解析出 DTO 附在头上
+     */
+    public ChannelInterceptor brokerInterceptor() {
+        return new ChannelInterceptor() {
+            @Override
+            public Message<?> preSend(Message<?> message, MessageChannel channel) {
+                MessageHeaders headers = message.getHeaders();
+                if (sessions.isEmpty() || headers.containsKey(SOURCE_HEADER)
+                        || SimpMessageHeaderAccessor.getMessageType(headers) != SimpMessageType.MESSAGE
+                        || !(message.getPayload() instanceof byte[] payload)) {
+                    return message;
+                }
+                Class<?> sourceType = sourceType(SimpMessageHeaderAccessor.getDestination(headers));
+                if (sourceType == null) {
+                    return message;
+                }
+                try {
+                    Object source = objectMapper.readValue(payload, sourceType);
+                    MessageHeaderAccessor accessor = MessageHeaderAccessor.getMutableAccessor(message);
+                    accessor.setHeader(SOURCE_HEADER, source);
+                    clusterParsed.increment();
+                    return MessageBuilder.createMessage(payload, accessor.getMessageHeaders());
+                } catch (Exception e) {
+                    errors.increment();
+                    log.debug("追踪消息解析失败，按 JSON 投递: {}", e.getMessage());
+                    return message;
+                }
+            }
+        };
+    }
+
+    /**
+     * clientOutboundChannel：对紧凑连接替换负载
+     */
+    public ChannelInterceptor outboundInterceptor() {
+        return new ChannelInterceptor() {
+            @Override
+            public Message<?> preSend(Message<?> message, MessageChannel channel) {
+                return sessions.isEmpty() ? message : encodeForSession(message);
+            }
+        };
+    }
+
+    /**
+     * 上行紧凑帧解码（需放在消息转换器列表最前面）
+     */
+    public MessageConverter inboundConverter() {
+        return new MessageConverter() {
+            @Override
+            public Object fromMessage(Message<?> message, Class<?> targetClass) {
+                if (targetClass != LocationUpdateMessage.class) {
+                    return null;
+                }
+                return decodeFromSession(message);
+            }
+
+            @Override
+            public Message<?> toMessage(Object payload, MessageHeaders headers) {
+                return null;
+            }
+        };
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        sessions.remove(event.getSessionId());
+    }
+
+    /**
+     * 紧凑帧统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long encodedCount = encoded.sum();
+        stats.put("enabled", enabled);
+        stats.put("compactSessions", sessions.size());
+        stats.put("negotiated", negotiated.sum());
+        stats.put("encoded", encodedCount);
+        stats.put("keyFrames", keyFrames.sum());
+        stats.put("avgCompactBytes", encodedCount > 0 ? (double) compactBytes.sum() / encodedCount : 0d);
+        stats.put("avgJsonBytes", encodedCount > 0 ? (double) jsonBytes.sum() / encodedCount : 0d);
+        stats.put("jsonFallbacks", jsonFallbacks.sum());
+        stats.put("clusterParsed", clusterParsed.sum());
+        stats.put("inboundDecoded", inboundDecoded.sum());
+        stats.put("errors", errors.sum());
+        return stats;
+    }
+
+    private void negotiate(String sessionId, MessageHeaders headers) {
+        String format = NativeMessageHeaderAccessor.getFirstNativeHeader(FORMAT_HEADER, headers);
+        if (!enabled || format == null || !format.contains(FORMAT_COMPACT)) {
+            return;
+        }
+        Map<String, Object> attributes = SimpMessageHeaderAccessor.getSessionAttributes(headers);
+        boolean binary = attributes != null && Boolean.TRUE.equals(attributes.get(NATIVE_TRANSPORT_ATTR));
+        sessions.put(sessionId, new SessionFrames(binary));
+        negotiated.increment();
+        log.debug("会话 {} 使用紧凑帧: {}", sessionId, binary ? FORMAT_COMPACT : FORMAT_COMPACT_BASE64);
+    }
+
+    private Message<?> encodeForSession(Message<?> message) {
+        MessageHeaders headers = message.getHeaders();
+        Object source = headers.get(SOURCE_HEADER);
+        if (source == null || SimpMessageHeaderAccessor.getMessageType(headers) != SimpMessageType.MESSAGE) {
+            return message;
+        }
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        SessionFrames frames = sessionId != null ? sessions.get(sessionId) : null;
+        String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(headers);
+        if (frames == null || subscriptionId == null
+                || !(source instanceof DeliveryStatusMessage || source instanceof LocationUpdateMessage)) {
+            return message;
+        }
+
+        byte[] frame = frames.encode(subscriptionId, source);
+        if (frame == null) {
+            jsonFallbacks.increment();
+            return message;
+        }
+        encoded.increment();
+        if (frame[0] == TrackingFrameCodec.STATUS_KEY || frame[0] == TrackingFrameCodec.LOCATION_KEY) {
+            keyFrames.increment();
+        }
+        if (message.getPayload() instanceof byte[] json) {
+            jsonBytes.add(json.length);
+        }
+
+        byte[] payload = frames.binary ? frame : Base64.getEncoder().encode(frame);
+        compactBytes.add(payload.length);
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        accessor.setContentType(frames.binary ? MimeTypeUtils.APPLICATION_OCTET_STREAM : BASE64_TYPE);
+        accessor.setNativeHeader(FORMAT_HEADER, frames.binary ? FORMAT_COMPACT : FORMAT_COMPACT_BASE64);
+        accessor.removeHeader(SOURCE_HEADER);
+        return MessageBuilder.createMessage(payload, accessor.getMessageHeaders());
+    }
+
+    private Object decodeFromSession(Message<?> message) {
+        MessageHeaders headers = message.getHeaders();
+        String format = NativeMessageHeaderAccessor.getFirstNativeHeader(FORMAT_HEADER, headers);
+        if (format == null || !(message.getPayload() instanceof byte[] payload)) {
+            return null;
+        }
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        SessionFrames frames = sessionId != null ? sessions.get(sessionId) : null;
+        if (frames == null) {
+            throw new MessageConversionException(message, "连接未协商紧凑帧格式");
+        }
+        try {
+            byte[] frame = FORMAT_COMPACT_BASE64.equals(format) ? Base64.getDecoder().decode(payload) : payload;
+            Object decoded = frames.decode("send:" + SimpMessageHeaderAccessor.getDestination(headers), frame);
+            if (!(decoded instanceof LocationUpdateMessage)) {
+                throw new MessageConversionException(message, "期望位置更新帧");
+            }
+            inboundDecoded.increment();
+            return decoded;
+        } catch (IllegalArgumentException e) {
+            errors.increment();
+            throw new MessageConversionException(message, "紧凑帧解码失败: " + e.getMessage(), e);
+        }
+    }
+
+    private static Class<?> sourceType(String destination) {
+        if (destination == null) {
+            return null;
+        }
+        if (destination.startsWith(DELIVERY_PREFIX)) {
+            return DeliveryStatusMessage.class;
+        }
+        if (destination.startsWith(DRIVER_PREFIX)) {
+            return LocationUpdateMessage.class;
+        }
+        return null;
+    }
+}
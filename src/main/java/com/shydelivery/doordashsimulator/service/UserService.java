@@ -8,6 +8,7 @@ import com.shydelivery.doordashsimulator.entity.User.UserRole;
 import com.shydelivery.doordashsimulator.exception.BusinessException;
 import com.shydelivery.doordashsimulator.exception.ResourceNotFoundException;
 import com.shydelivery.doordashsimulator.repository.UserRepository;
+import com.shydelivery.doordashsimulator.security.AuthenticationCache;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -26,11 +27,14 @@ public class UserService {
     
     private final UserRepository userRepository;
     private final CognitoService cognitoService;
+    private final AuthenticationCache authenticationCache;
     
     // 构造函数注入（推荐方式）
-    public UserService(UserRepository userRepository, CognitoService cognitoService) {
+    public UserService(UserRepository userRepository, CognitoService cognitoService,
+                       AuthenticationCache authenticationCache) {
         this.userRepository = userRepository;
         this.cognitoService = cognitoService;
+        this.authenticationCache = authenticationCache;
     }
     
     /**
@@ -214,6 +218,7 @@ public class UserService {
         
         // 3. 从数据库删除
         userRepository.deleteById(id);
+        authenticationCache.invalidate(user.getEmail());
         
         log.info("User deleted successfully with ID: {}", id);
     }
@@ -248,6 +253,9 @@ public class UserService {
         user.setIsActive(isActive);
         User updatedUser = userRepository.save(user);
         
+        // 已缓存的认证主体在提交后失效，停用立即对已签发的 Token 生效
+        authenticationCache.invalidate(user.getEmail());
+        
         log.info("User status toggled successfully for ID: {}", id);
         
         return UserDTO.from(updatedUser);
@@ -0,0 +1,122 @@
+package com.shydelivery.doordashsimulator.util;
+
+import java.util.function.LongSupplier;
+
+/**
+ * 熔断器（连续失败计数）
+ *
+ * - CLOSED：正常放行；连续 failureThreshold 次失败后打开
+ * - OPEN：拒绝所有调用；openMillis 后进入半开
+ * - HALF_OPEN：只放行一个探测调用，成功则关闭，失败则重新打开
+ *
+ * 调用方先 tryAcquire，放行后必须报告 onSuccess 或 onFailure 之一。
+ * 线程安全。
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openMillis;
+    private final LongSupplier clock;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean probeInFlight;
+    private long openCount;
+
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        this(failureThreshold, openMillis, System::currentTimeMillis);
+    }
+
+    public CircuitBreaker(int failureThreshold, long openMillis, LongSupplier clock) {
+        if (failureThreshold < 1 || openMillis <= 0) {
+            throw new IllegalArgumentException("熔断器参数无效: threshold=" + failureThreshold + ", openMillis=" + openMillis);
+        }
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * 申请一次调用
+     *
+     * @return false 表示熔断中，不应调用
+     */
+    public synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (clock.getAsLong() - openedAt < openMillis) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                probeInFlight = true;
+                return true;
+            default:
+                if (probeInFlight) {
+                    return false;
+                }
+                probeInFlight = true;
+                return true;
+        }
+    }
+
+    /**
+     * 是否处于拒绝期（只读检查，不占用半开探测名额）
+     */
+    public synchronized boolean isRejecting() {
+        return switch (state) {
+            case CLOSED -> false;
+            case OPEN -> clock.getAsLong() - openedAt < openMillis;
+            case HALF_OPEN -> probeInFlight;
+        };
+    }
+
+    /**
+     * 拒绝期剩余毫秒数（打开状态以外为 0）
+     */
+    public synchronized long remainingOpenMillis() {
+        return state == State.OPEN ? Math.max(0, openMillis - (clock.getAsLong() - openedAt)) : 0;
+    }
+
+    public synchronized void onSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        probeInFlight = false;
+    }
+
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            open();
+            return;
+        }
+        consecutiveFailures++;
+        if (state == State.CLOSED && consecutiveFailures >= failureThreshold) {
+            open();
+        }
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+
+    /**
+     * 打开次数（统计用）
+     */
+    public synchronized long openCount() {
+        return openCount;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = clock.getAsLong();
+        probeInFlight = false;
+        consecutiveFailures = 0;
+        openCount++;
+    }
+}
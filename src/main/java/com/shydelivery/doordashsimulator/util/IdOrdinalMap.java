@@ -0,0 +1,76 @@
+package com.shydelivery.doordashsimulator.util;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * 实体 ID → 文档序号（ordinal）映射
+ *
+ * 内存索引（分面、营业时间等）用连续的文档序号作为位图下标。
+ * 序号即 ID 在升序 ID 数组中的下标：自增主键保证新 ID 总是最大，增量写入只需追加。
+ *
+ * 非线程安全，由调用方负责加锁。
+ */
+public class IdOrdinalMap {
+
+    private long[] ids = new long[64];
+    private int size;
+
+    /**
+     * 查找 ID 的序号，不存在返回 -1
+     */
+    public int ordinalOf(long id) {
+        // 自增主键通常连续，先按偏移量猜测，未命中再二分查找
+        if (size > 0) {
+            long guess = id - ids[0];
+            if (guess >= 0 && guess < size && ids[(int) guess] == id) {
+                return (int) guess;
+            }
+        }
+        int index = Arrays.binarySearch(ids, 0, size, id);
+        return index >= 0 ? index : -1;
+    }
+
+    /**
+     * 查找或追加 ID；ID 小于当前最大值且不存在时返回 -1（等待下次全量重建）
+     */
+    public int ordinalForWrite(long id) {
+        int existing = ordinalOf(id);
+        if (existing >= 0) {
+            return existing;
+        }
+        if (size > 0 && id < ids[size - 1]) {
+            return -1;
+        }
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+        }
+        ids[size] = id;
+        return size++;
+    }
+
+    /**
+     * 序号对应的 ID
+     */
+    public long idAt(int ordinal) {
+        return ids[ordinal];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 将一组 ID 转换为位图（不在映射中的 ID 被忽略）
+     */
+    public PostingList toPostingList(Collection<Long> candidateIds) {
+        PostingList postings = new PostingList();
+        for (Long id : candidateIds) {
+            int ordinal = ordinalOf(id);
+            if (ordinal >= 0) {
+                postings.set(ordinal);
+            }
+        }
+        return postings;
+    }
+}
@@ -0,0 +1,180 @@
+package com.shydelivery.doordashsimulator.util;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 营业时间索引 - 按"一周中的分钟"（0 - 10079）预计算营业中的餐厅位图
+ *
+ * 一周共 10080 分钟，但营业中的餐厅集合只会在某家餐厅开门或关门的分钟发生变化。
+ * 因此只在这些变化点存一份位图：segments 的 key 为区间起始分钟，value 为
+ * [key, 下一个 key) 这段时间内营业的餐厅（按文档序号置位）。
+ * 查询任意时刻 = 一次 floorEntry 查找，得到的位图可直接与候选集做按位与。
+ *
+ * 营业时间规则:
+ * - opening &lt; closing: 当天 [opening, closing)
+ * - opening &gt; closing: 跨午夜营业，如 18:00 - 02:00，周日晚上延续到周一凌晨
+ * - opening == closing: 视为 24 小时营业
+ *
+ * 内存: 段数约为 7 × 不同开/关门时刻数。按半点营业的 10 万家餐厅约 336 段 × 12.5KB ≈ 4MB。
+ *
+ * 非线程安全，由调用方负责加锁。
+ */
+public class OpeningHoursIndex {
+
+    public static final int MINUTES_PER_DAY = 24 * 60;
+    public static final int MINUTES_PER_WEEK = 7 * MINUTES_PER_DAY;
+
+    /** 区间起始分钟 → 该区间营业中的餐厅 */
+    private final TreeMap<Integer, PostingList> segments = new TreeMap<>();
+
+    /** 已索引的文档 */
+    private final PostingList indexed = new PostingList();
+
+    private short[] openMinute = new short[64];
+    private short[] closeMinute = new short[64];
+
+    public OpeningHoursIndex() {
+        segments.put(0, new PostingList());
+    }
+
+    /**
+     * 一周中的分钟（周一 00:00 = 0）
+     */
+    public static int minuteOfWeek(LocalDateTime time) {
+        return (time.getDayOfWeek().getValue() - 1) * MINUTES_PER_DAY
+                + time.getHour() * 60 + time.getMinute();
+    }
+
+    /**
+     * 不经过索引，直接按营业时间判断（用于未建立索引的餐厅）
+     */
+    public static boolean isWithinHours(LocalTime opening, LocalTime closing, LocalTime time) {
+        if (opening == null || closing == null) {
+            return false;
+        }
+        if (opening.equals(closing)) {
+            return true;
+        }
+        return opening.isBefore(closing)
+                ? !time.isBefore(opening) && time.isBefore(closing)
+                : !time.isBefore(opening) || time.isBefore(closing);
+    }
+
+    /**
+     * 设置（或替换）餐厅的营业时间
+     */
+    public void put(int ordinal, LocalTime opening, LocalTime closing) {
+        remove(ordinal);
+        if (opening == null || closing == null) {
+            return;
+        }
+        ensureCapacity(ordinal);
+        int open = opening.toSecondOfDay() / 60;
+        int close = closing.toSecondOfDay() / 60;
+        openMinute[ordinal] = (short) open;
+        closeMinute[ordinal] = (short) close;
+        indexed.set(ordinal);
+
+        forEachInterval(open, close, (from, to) -> {
+            split(from);
+            split(to);
+            for (PostingList postings : segments.subMap(from, true, to, false).values()) {
+                postings.set(ordinal);
+            }
+        });
+    }
+
+    /**
+     * 移除餐厅（视为不营业）
+     */
+    public void remove(int ordinal) {
+        if (!indexed.get(ordinal)) {
+            return;
+        }
+        forEachInterval(openMinute[ordinal], closeMinute[ordinal], (from, to) -> {
+            for (PostingList postings : segments.subMap(from, true, to, false).values()) {
+                postings.clear(ordinal);
+            }
+        });
+        indexed.clear(ordinal);
+    }
+
+    public boolean isIndexed(int ordinal) {
+        return indexed.get(ordinal);
+    }
+
+    /**
+     * 指定时刻营业中的餐厅位图（只读，调用方不得修改）
+     */
+    public PostingList openAt(int minuteOfWeek) {
+        return segments.floorEntry(Math.floorMod(minuteOfWeek, MINUTES_PER_WEEK)).getValue();
+    }
+
+    public boolean isOpen(int ordinal, int minuteOfWeek) {
+        return openAt(minuteOfWeek).get(ordinal);
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * 估算位图内存占用（字节）
+     */
+    public long estimateMemoryBytes() {
+        long bytes = 0;
+        for (Map.Entry<Integer, PostingList> entry : segments.entrySet()) {
+            bytes += 16 + 8L * entry.getValue().wordCount();
+        }
+        return bytes;
+    }
+
+    /**
+     * 在 minute 处切分区间（新区间继承前一区间的位图）
+     */
+    private void split(int minute) {
+        if (minute >= MINUTES_PER_WEEK || segments.containsKey(minute)) {
+            return;
+        }
+        segments.put(minute, segments.floorEntry(minute).getValue().copy());
+    }
+
+    /**
+     * 将每日营业时间展开为一周内的分钟区间 [from, to)，跨周末的区间拆成两段
+     */
+    private static void forEachInterval(int open, int close, IntervalConsumer consumer) {
+        if (open == close) {
+            consumer.accept(0, MINUTES_PER_WEEK);
+            return;
+        }
+        for (int day = 0; day < 7; day++) {
+            int from = day * MINUTES_PER_DAY + open;
+            int to = open < close
+                    ? day * MINUTES_PER_DAY + close
+                    : (day + 1) * MINUTES_PER_DAY + close;
+            if (to <= MINUTES_PER_WEEK) {
+                consumer.accept(from, to);
+            } else {
+                consumer.accept(from, MINUTES_PER_WEEK);
+                consumer.accept(0, to - MINUTES_PER_WEEK);
+            }
+        }
+    }
+
+    private void ensureCapacity(int ordinal) {
+        if (ordinal >= openMinute.length) {
+            int capacity = Math.max(ordinal + 1, openMinute.length * 2);
+            openMinute = Arrays.copyOf(openMinute, capacity);
+            closeMinute = Arrays.copyOf(closeMinute, capacity);
+        }
+    }
+
+    @FunctionalInterface
+    private interface IntervalConsumer {
+        void accept(int from, int to);
+    }
+}
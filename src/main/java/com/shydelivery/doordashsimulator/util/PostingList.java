@@ -0,0 +1,102 @@
+package com.shydelivery.doordashsimulator.util;
+
+import java.util.Arrays;
+
+/**
+ * 位图倒排列表 - 搜索分面统计
+ *
+ * 以文档序号（ordinal）为下标的可增长位图。与 java.util.BitSet 不同，
+ * 这里直接暴露底层 long[]，分面统计时可以在一次遍历中对多个列表同时做
+ * 按位与 + popcount（每次处理 64 个文档），无需复制数组。
+ *
+ * 非线程安全，由调用方负责加锁。
+ */
+public class PostingList {
+
+    private static final long[] EMPTY = new long[0];
+
+    private long[] words = EMPTY;
+
+    /**
+     * 置位
+     */
+    public void set(int ordinal) {
+        int index = ordinal >>> 6;
+        if (index >= words.length) {
+            words = Arrays.copyOf(words, Math.max(index + 1, words.length * 2));
+        }
+        words[index] |= 1L << ordinal;
+    }
+
+    /**
+     * 清除
+     */
+    public void clear(int ordinal) {
+        int index = ordinal >>> 6;
+        if (index < words.length) {
+            words[index] &= ~(1L << ordinal);
+        }
+    }
+
+    /**
+     * 设置或清除
+     */
+    public void set(int ordinal, boolean value) {
+        if (value) {
+            set(ordinal);
+        } else {
+            clear(ordinal);
+        }
+    }
+
+    public boolean get(int ordinal) {
+        int index = ordinal >>> 6;
+        return index < words.length && (words[index] & (1L << ordinal)) != 0;
+    }
+
+    /**
+     * 第 index 个 64 位字（超出范围返回 0）
+     */
+    public long word(int index) {
+        return index < words.length ? words[index] : 0L;
+    }
+
+    /**
+     * 已分配的字数
+     */
+    public int wordCount() {
+        return words.length;
+    }
+
+    /**
+     * 与另一个位图交集的置位数量
+     */
+    public int andCardinality(PostingList other) {
+        int count = 0;
+        int limit = Math.min(words.length, other.words.length);
+        for (int i = 0; i < limit; i++) {
+            count += Long.bitCount(words[i] & other.words[i]);
+        }
+        return count;
+    }
+
+    /**
+     * 复制
+     */
+    public PostingList copy() {
+        PostingList copy = new PostingList();
+        copy.words = words.length == 0 ? EMPTY : words.clone();
+        return copy;
+    }
+
+    /**
+     * 置位数量
+     */
+    public int cardinality() {
+        int count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+}
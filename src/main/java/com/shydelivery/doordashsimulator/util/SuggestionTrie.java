@@ -0,0 +1,308 @@
+package com.shydelivery.doordashsimulator.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * 带权前缀树 - 搜索联想（type-ahead）
+ *
+ * 结构特点:
+ * 1. 子节点用有序 char[] + Node[] 存储（二分查找），不使用 HashMap，节省内存
+ * 2. 每个节点记录子树内最大权重 maxWeight
+ * 3. Top-K 查询从前缀节点开始做最佳优先遍历，只展开可能进入结果的分支，
+ *    与词典总量无关，通常在微秒级完成
+ * 4. 支持增量 add/remove，删除后自动剪枝空节点
+ *
+ * 非线程安全，由调用方（SuggestionService）负责加锁。
+ *
+ * @param <V> 联想结果值类型（需正确实现 equals/hashCode，用于删除和去重）
+ */
+public class SuggestionTrie<V> {
+
+    /** 单个词条最大索引长度，超出部分截断 */
+    public static final int MAX_TERM_LENGTH = 64;
+
+    private static final char[] EMPTY_LABELS = new char[0];
+    private static final Node<?>[] EMPTY_CHILDREN = new Node<?>[0];
+    private static final Object[] EMPTY_ENTRIES = new Object[0];
+
+    private final Node<V> root = new Node<>();
+    private int termCount;
+    private int nodeCount = 1;
+
+    /**
+     * 规范化词条：转小写、合并空白、截断
+     */
+    public static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String normalized = text.trim().toLowerCase(Locale.ROOT).replaceAll("\\s+", " ");
+        return normalized.length() > MAX_TERM_LENGTH ? normalized.substring(0, MAX_TERM_LENGTH) : normalized;
+    }
+
+    /**
+     * 添加词条
+     *
+     * @param term 词条（调用方应先 normalize）
+     * @param value 联想结果
+     * @param weight 权重（越大越靠前）
+     */
+    public void add(String term, V value, long weight) {
+        if (term.isEmpty()) {
+            return;
+        }
+        Node<V> node = root;
+        node.maxWeight = Math.max(node.maxWeight, weight);
+        for (int i = 0; i < term.length(); i++) {
+            Node<V> child = node.child(term.charAt(i));
+            if (child == null) {
+                child = node.addChild(term.charAt(i));
+                nodeCount++;
+            }
+            child.maxWeight = Math.max(child.maxWeight, weight);
+            node = child;
+        }
+        if (node.addEntry(new Entry<>(value, weight))) {
+            termCount++;
+        }
+    }
+
+    /**
+     * 删除词条
+     *
+     * @return 是否删除成功
+     */
+    @SuppressWarnings("unchecked")
+    public boolean remove(String term, V value) {
+        if (term.isEmpty()) {
+            return false;
+        }
+        Node<V>[] path = new Node[term.length() + 1];
+        path[0] = root;
+        for (int i = 0; i < term.length(); i++) {
+            Node<V> child = path[i].child(term.charAt(i));
+            if (child == null) {
+                return false;
+            }
+            path[i + 1] = child;
+        }
+        if (!path[term.length()].removeEntry(value)) {
+            return false;
+        }
+        termCount--;
+
+        // 自底向上重算 maxWeight，并剪掉空节点
+        for (int i = term.length(); i >= 0; i--) {
+            Node<V> node = path[i];
+            if (i > 0 && node.isEmpty()) {
+                path[i - 1].removeChild(term.charAt(i - 1));
+                nodeCount--;
+            } else {
+                node.recomputeMaxWeight();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 查询前缀的 Top-K 联想结果（按权重降序，结果去重）
+     */
+    @SuppressWarnings("unchecked")
+    public List<V> topK(String prefix, int k) {
+        if (k <= 0) {
+            return List.of();
+        }
+        Node<V> node = root;
+        for (int i = 0; i < prefix.length() && node != null; i++) {
+            node = node.child(prefix.charAt(i));
+        }
+        if (node == null) {
+            return List.of();
+        }
+
+        // 队列中同时存放节点和词条：节点的 maxWeight 是其子树内所有词条权重的上界，
+        // 因此词条出队时，剩余元素都不可能比它更大
+        PriorityQueue<Candidate> queue = new PriorityQueue<>();
+        queue.add(new Candidate(node.maxWeight, node));
+        Set<V> results = new LinkedHashSet<>();
+        while (!queue.isEmpty() && results.size() < k) {
+            Candidate candidate = queue.poll();
+            if (candidate.target instanceof Entry) {
+                results.add(((Entry<V>) candidate.target).value);
+                continue;
+            }
+            Node<V> current = (Node<V>) candidate.target;
+            for (int i = 0; i < current.entryCount; i++) {
+                Entry<V> entry = (Entry<V>) current.entries[i];
+                queue.add(new Candidate(entry.weight, entry));
+            }
+            for (int i = 0; i < current.childCount; i++) {
+                queue.add(new Candidate(current.children[i].maxWeight, current.children[i]));
+            }
+        }
+        return new ArrayList<>(results);
+    }
+
+    public int getTermCount() {
+        return termCount;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * 估算内存占用（字节，按 64 位 JVM + 压缩指针计算，不含 V 本身）
+     */
+    public long estimateMemoryBytes() {
+        return estimate(root);
+    }
+
+    private long estimate(Node<V> node) {
+        // 对象头 12 + 3 个引用 + 2 个 int + 1 个 long，对齐到 8
+        long bytes = 40;
+        bytes += align(16 + 2L * node.labels.length);
+        bytes += align(16 + 4L * node.children.length);
+        bytes += align(16 + 4L * node.entries.length);
+        // Entry: 对象头 12 + 引用 4 + long 8
+        bytes += 24L * node.entryCount;
+        for (int i = 0; i < node.childCount; i++) {
+            bytes += estimate(node.children[i]);
+        }
+        return bytes;
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    /**
+     * 前缀树节点
+     */
+    private static final class Node<V> {
+        char[] labels = EMPTY_LABELS;
+        Node<V>[] children = emptyChildren();
+        int childCount;
+        Object[] entries = EMPTY_ENTRIES;
+        int entryCount;
+        long maxWeight = Long.MIN_VALUE;
+
+        @SuppressWarnings("unchecked")
+        private static <V> Node<V>[] emptyChildren() {
+            return (Node<V>[]) EMPTY_CHILDREN;
+        }
+
+        Node<V> child(char c) {
+            int index = Arrays.binarySearch(labels, 0, childCount, c);
+            return index >= 0 ? children[index] : null;
+        }
+
+        Node<V> addChild(char c) {
+            int index = -(Arrays.binarySearch(labels, 0, childCount, c) + 1);
+            if (childCount == labels.length) {
+                int capacity = Math.max(2, childCount + (childCount >> 1));
+                labels = Arrays.copyOf(labels, capacity);
+                children = Arrays.copyOf(children, capacity);
+            }
+            System.arraycopy(labels, index, labels, index + 1, childCount - index);
+            System.arraycopy(children, index, children, index + 1, childCount - index);
+            Node<V> child = new Node<>();
+            labels[index] = c;
+            children[index] = child;
+            childCount++;
+            return child;
+        }
+
+        void removeChild(char c) {
+            int index = Arrays.binarySearch(labels, 0, childCount, c);
+            if (index < 0) {
+                return;
+            }
+            System.arraycopy(labels, index + 1, labels, index, childCount - index - 1);
+            System.arraycopy(children, index + 1, children, index, childCount - index - 1);
+            childCount--;
+            children[childCount] = null;
+        }
+
+        @SuppressWarnings("unchecked")
+        boolean addEntry(Entry<V> entry) {
+            for (int i = 0; i < entryCount; i++) {
+                if (((Entry<V>) entries[i]).value.equals(entry.value)) {
+                    entries[i] = entry;
+                    return false;
+                }
+            }
+            if (entryCount == entries.length) {
+                entries = Arrays.copyOf(entries, Math.max(1, entryCount * 2));
+            }
+            entries[entryCount++] = entry;
+            return true;
+        }
+
+        @SuppressWarnings("unchecked")
+        boolean removeEntry(V value) {
+            for (int i = 0; i < entryCount; i++) {
+                if (((Entry<V>) entries[i]).value.equals(value)) {
+                    System.arraycopy(entries, i + 1, entries, i, entryCount - i - 1);
+                    entryCount--;
+                    entries[entryCount] = null;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @SuppressWarnings("unchecked")
+        void recomputeMaxWeight() {
+            long max = Long.MIN_VALUE;
+            for (int i = 0; i < entryCount; i++) {
+                max = Math.max(max, ((Entry<V>) entries[i]).weight);
+            }
+            for (int i = 0; i < childCount; i++) {
+                max = Math.max(max, children[i].maxWeight);
+            }
+            maxWeight = max;
+        }
+
+        boolean isEmpty() {
+            return entryCount == 0 && childCount == 0;
+        }
+    }
+
+    /**
+     * 词条（结果值 + 权重）
+     */
+    private static final class Entry<V> {
+        final V value;
+        final long weight;
+
+        Entry(V value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * 遍历候选项，按权重降序出队
+     */
+    private static final class Candidate implements Comparable<Candidate> {
+        final long weight;
+        final Object target;
+
+        Candidate(long weight, Object target) {
+            this.weight = weight;
+            this.target = target;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            return Long.compare(other.weight, weight);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.shydelivery.doordashsimulator.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 分层时间轮（定时到期）
+ *
+ * 第 i 层每格跨度 tick·size^i，共 levels 层，覆盖 tick·size^levels 的时间范围；
+ * 超出范围的条目放在最高层最远的格子，到达时重新放入。
+ * - 添加：O(1)，按到期时间与当前时间的距离选择能容纳它的最低层
+ * - 推进：每个 tick 处理第 0 层的一格；高层格子到达时把条目重新放入低层（级联），
+ *   每个条目最多经过 levels 次移动
+ * - 不支持删除：到期回调中由调用方判断条目是否仍然有效（例如已续期则重新添加）
+ *
+ * 到期时间按 tick 向上取整，回调不会早于到期时间，最多晚一个 tick（加上推进间隔）。
+ *
+ * 非线程安全，由调用方负责同步。
+ */
+public class TimingWheel<T> {
+
+    private record Entry<T>(T item, long deadline) {
+    }
+
+    private final long tickMillis;
+    private final int size;
+    private final List<Entry<T>>[][] slots;
+    private final long[] spans;
+
+    /** 已处理到的时刻（tick 的整数倍） */
+    private long currentTime;
+    private int count;
+
+    @SuppressWarnings("unchecked")
+    public TimingWheel(long tickMillis, int size, int levels, long startMillis) {
+        if (tickMillis <= 0 || size < 2 || levels < 1) {
+            throw new IllegalArgumentException("时间轮参数无效: tick=" + tickMillis + ", size=" + size + ", levels=" + levels);
+        }
+        this.tickMillis = tickMillis;
+        this.size = size;
+        this.slots = new List[levels][size];
+        this.spans = new long[levels];
+        long span = tickMillis;
+        for (int level = 0; level < levels; level++) {
+            spans[level] = span;
+            span = Math.multiplyExact(span, size);
+        }
+        this.currentTime = startMillis - Math.floorMod(startMillis, tickMillis);
+    }
+
+    /**
+     * 添加条目
+     *
+     * @return false 表示已经到期（没有加入时间轮，由调用方立即处理）
+     */
+    public boolean add(T item, long deadlineMillis) {
+        long aligned = ceilToTick(deadlineMillis);
+        if (aligned <= currentTime) {
+            return false;
+        }
+        place(new Entry<>(item, deadlineMillis), aligned);
+        count++;
+        return true;
+    }
+
+    /**
+     * 推进到 nowMillis，对所有已到期的条目调用 onExpired
+     *
+     * @return 到期的条目数
+     */
+    public int advance(long nowMillis, Consumer<T> onExpired) {
+        int expired = 0;
+        while (currentTime + tickMillis <= nowMillis) {
+            currentTime += tickMillis;
+            // 先处理高层：级联的条目放入低层尚未到达的格子，或在这里直接到期
+            for (int level = spans.length - 1; level >= 0; level--) {
+                if (currentTime % spans[level] != 0) {
+                    continue;
+                }
+                int index = (int) Math.floorMod(currentTime / spans[level], (long) size);
+                List<Entry<T>> slot = slots[level][index];
+                if (slot == null) {
+                    continue;
+                }
+                slots[level][index] = null;
+                for (Entry<T> entry : slot) {
+                    long aligned = ceilToTick(entry.deadline());
+                    if (aligned <= currentTime) {
+                        count--;
+                        expired++;
+                        onExpired.accept(entry.item());
+                    } else {
+                        place(entry, aligned);
+                    }
+                }
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * 时间轮中的条目数（含已失效、尚未到达的条目）
+     */
+    public int size() {
+        return count;
+    }
+
+    private void place(Entry<T> entry, long aligned) {
+        int top = spans.length - 1;
+        for (int level = 0; level <= top; level++) {
+            long slotDistance = aligned / spans[level] - currentTime / spans[level];
+            if (slotDistance < size) {
+                add(level, aligned / spans[level], entry);
+                return;
+            }
+        }
+        // 超出覆盖范围：放在最高层最远的格子，到达时重新放入
+        add(top, currentTime / spans[top] + size - 1, entry);
+    }
+
+    private void add(int level, long slotNumber, Entry<T> entry) {
+        int index = (int) Math.floorMod(slotNumber, (long) size);
+        List<Entry<T>> slot = slots[level][index];
+        if (slot == null) {
+            slot = new ArrayList<>();
+            slots[level][index] = slot;
+        }
+        slot.add(entry);
+    }
+
+    private long ceilToTick(long millis) {
+        return Math.floorDiv(millis + tickMillis - 1, tickMillis) * tickMillis;
+    }
+}
@@ -0,0 +1,374 @@
+package com.shydelivery.doordashsimulator.util;
+
+import com.shydelivery.doordashsimulator.dto.websocket.DeliveryStatusMessage;
+import com.shydelivery.doordashsimulator.dto.websocket.LocationUpdateMessage;
+import com.shydelivery.doordashsimulator.entity.DeliveryStatus;
+
+import java.math.BigDecimal;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Objects;
+
+/**
+ * 位置/配送追踪消息的紧凑二进制帧编解码
+ *
+ * 定长字段、大端序。坐标量化为 1e-6 度（约 0.11 米）的整数；同一订阅的后续帧只发送
+ * 与上一帧的差值（关键帧 + 增量帧），差值或时间间隔超出字段范围、ID 变化时自动回到关键帧。
+ * ETA 为整数分钟，剩余距离以 10 米为单位；可读的状态描述由客户端根据距离和 ETA 生成。
+ *
+ * 状态关键帧 (0x11): type u8 | deliveryId i64 | orderId i64 | driverId i64 | status u8 |
+ *                    lat i32 | lon i32 | timestamp i64(毫秒) | eta u16 | distance u16 | nameLen u16 | name
+ * 状态增量帧 (0x12): type u8 | status u8 | dLat i16 | dLon i16 | dTime u16(毫秒) | eta u16 | distance u16
+ * 位置关键帧 (0x21): type u8 | deliveryId i64 | driverId i64 | lat i32 | lon i32 |
+ *                    speed u16(0.1km/h) | heading u16(0.01度) | timestamp i64(毫秒) | eta u16
+ * 位置增量帧 (0x22): type u8 | dLat i16 | dLon i16 | speed u16 | heading u16 | dTime u16 | eta u16
+ *
+ * 空值：u16 字段为 0xFFFF，坐标为 Integer.MIN_VALUE，时间戳为 Long.MIN_VALUE（均只出现在关键帧）。
+ *
+ * 编码和解码两端各自维护一个 {@link Track}（每个订阅/发送流一个），非线程安全，由调用方保证顺序。
+ */
+public final class TrackingFrameCodec {
+
+    public static final byte STATUS_KEY = 0x11;
+    public static final byte STATUS_DELTA = 0x12;
+    public static final byte LOCATION_KEY = 0x21;
+    public static final byte LOCATION_DELTA = 0x22;
+
+    private static final int NULL_U16 = 0xFFFF;
+    private static final int MAX_U16 = 0xFFFE;
+    private static final int NULL_COORD = Integer.MIN_VALUE;
+    private static final long NULL_TIME = Long.MIN_VALUE;
+    private static final double COORD_SCALE = 1_000_000d;
+    private static final int MAX_NAME_BYTES = 1024;
+    private static final DeliveryStatus[] STATUSES = DeliveryStatus.values();
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
+    private TrackingFrameCodec() {
+    }
+
+    /**
+     * 单个流的差值基准
+     */
+    public static final class Track {
+        private byte kind;
+        private long deliveryId;
+        private long orderId;
+        private long driverId;
+        private String driverName;
+        private int lat = NULL_COORD;
+        private int lon = NULL_COORD;
+        private long time = NULL_TIME;
+
+        private void reset() {
+            kind = 0;
+        }
+
+        private boolean canDelta(int newLat, int newLon, long newTime) {
+            return newLat != NULL_COORD && newLon != NULL_COORD && newTime != NULL_TIME
+                    && lat != NULL_COORD && lon != NULL_COORD && time != NULL_TIME
+                    && fitsShort(newLat - (long) lat) && fitsShort(newLon - (long) lon)
+                    && newTime - time >= 0 && newTime - time <= MAX_U16;
+        }
+
+        private void advance(int newLat, int newLon, long newTime) {
+            lat = newLat;
+            lon = newLon;
+            time = newTime;
+        }
+    }
+
+    // ==================== 编码 ====================
+
+    /**
+     * 编码配送状态消息，缺少 ID 或状态无法识别时返回 null（由调用方回退为 JSON）
+     */
+    public static byte[] encode(DeliveryStatusMessage message, Track track) {
+        if (message.getDeliveryId() == null || message.getOrderId() == null || message.getDriverId() == null) {
+            return null;
+        }
+        int status = statusCode(message.getStatus());
+        if (status < 0) {
+            return null;
+        }
+        int lat = coord(message.getCurrentLatitude());
+        int lon = coord(message.getCurrentLongitude());
+        long time = millis(message.getTimestamp());
+        int eta = etaMinutes(message.getTimestamp(), message.getEstimatedArrival());
+        int distance = message.getRemainingDistanceKm() != null
+                ? saturate(Math.round(message.getRemainingDistanceKm() * 100)) : NULL_U16;
+
+        boolean sameStream = track.kind == STATUS_KEY
+                && track.deliveryId == message.getDeliveryId()
+                && track.orderId == message.getOrderId()
+                && track.driverId == message.getDriverId()
+                && Objects.equals(track.driverName, message.getDriverName());
+        if (sameStream && track.canDelta(lat, lon, time)) {
+            ByteBuffer buffer = ByteBuffer.allocate(12);
+            buffer.put(STATUS_DELTA)
+                    .put((byte) status)
+                    .putShort((short) (lat - track.lat))
+                    .putShort((short) (lon - track.lon))
+                    .putShort((short) (time - track.time))
+                    .putShort((short) eta)
+                    .putShort((short) distance);
+            track.advance(lat, lon, time);
+            return buffer.array();
+        }
+
+        byte[] name = message.getDriverName() != null
+                ? message.getDriverName().getBytes(StandardCharsets.UTF_8) : new byte[0];
+        if (name.length > MAX_NAME_BYTES) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(48 + name.length);
+        buffer.put(STATUS_KEY)
+                .putLong(message.getDeliveryId())
+                .putLong(message.getOrderId())
+                .putLong(message.getDriverId())
+                .put((byte) status)
+                .putInt(lat)
+                .putInt(lon)
+                .putLong(time)
+                .putShort((short) eta)
+                .putShort((short) distance)
+                .putShort((short) (message.getDriverName() != null ? name.length : NULL_U16))
+                .put(name);
+        track.kind = STATUS_KEY;
+        track.deliveryId = message.getDeliveryId();
+        track.orderId = message.getOrderId();
+        track.driverId = message.getDriverId();
+        track.driverName = message.getDriverName();
+        track.advance(lat, lon, time);
+        return buffer.array();
+    }
+
+    /**
+     * 编码位置更新消息，缺少 ID 时返回 null
+     */
+    public static byte[] encode(LocationUpdateMessage message, Track track) {
+        if (message.getDeliveryId() == null || message.getDriverId() == null) {
+            return null;
+        }
+        int lat = coord(message.getLatitude());
+        int lon = coord(message.getLongitude());
+        long time = millis(message.getTimestamp());
+        int speed = message.getSpeed() != null ? saturate(Math.round(message.getSpeed() * 10)) : NULL_U16;
+        int heading = message.getHeading() != null ? heading(message.getHeading()) : NULL_U16;
+        int eta = message.getEstimatedArrivalMinutes() != null
+                ? saturate(message.getEstimatedArrivalMinutes()) : NULL_U16;
+
+        boolean sameStream = track.kind == LOCATION_KEY
+                && track.deliveryId == message.getDeliveryId()
+                && track.driverId == message.getDriverId();
+        if (sameStream && track.canDelta(lat, lon, time)) {
+            ByteBuffer buffer = ByteBuffer.allocate(13);
+            buffer.put(LOCATION_DELTA)
+                    .putShort((short) (lat - track.lat))
+                    .putShort((short) (lon - track.lon))
+                    .putShort((short) speed)
+                    .putShort((short) heading)
+                    .putShort((short) (time - track.time))
+                    .putShort((short) eta);
+            track.advance(lat, lon, time);
+            return buffer.array();
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(39);
+        buffer.put(LOCATION_KEY)
+                .putLong(message.getDeliveryId())
+                .putLong(message.getDriverId())
+                .putInt(lat)
+                .putInt(lon)
+                .putShort((short) speed)
+                .putShort((short) heading)
+                .putLong(time)
+                .putShort((short) eta);
+        track.kind = LOCATION_KEY;
+        track.deliveryId = message.getDeliveryId();
+        track.driverId = message.getDriverId();
+        track.advance(lat, lon, time);
+        return buffer.array();
+    }
+
+    // ==================== 解码 ====================
+
+    /**
+     * 解码一帧，返回 DeliveryStatusMessage 或 LocationUpdateMessage
+     *
+     * @throws IllegalArgumentException 帧格式错误，或增量帧缺少对应的关键帧
+     */
+    public static Object decode(byte[] frame, Track track) {
+        ByteBuffer buffer = ByteBuffer.wrap(frame);
+        try {
+            byte type = buffer.get();
+            return switch (type) {
+                case STATUS_KEY -> decodeStatusKey(buffer, track);
+                case STATUS_DELTA -> decodeStatusDelta(buffer, track);
+                case LOCATION_KEY -> decodeLocationKey(buffer, track);
+                case LOCATION_DELTA -> decodeLocationDelta(buffer, track);
+                default -> throw new IllegalArgumentException("未知的帧类型: " + type);
+            };
+        } catch (BufferUnderflowException e) {
+            track.reset();
+            throw new IllegalArgumentException("帧长度不足", e);
+        }
+    }
+
+    private static DeliveryStatusMessage decodeStatusKey(ByteBuffer buffer, Track track) {
+        long deliveryId = buffer.getLong();
+        long orderId = buffer.getLong();
+        long driverId = buffer.getLong();
+        int status = buffer.get() & 0xFF;
+        int lat = buffer.getInt();
+        int lon = buffer.getInt();
+        long time = buffer.getLong();
+        int eta = buffer.getShort() & 0xFFFF;
+        int distance = buffer.getShort() & 0xFFFF;
+        int nameLength = buffer.getShort() & 0xFFFF;
+        String name = null;
+        if (nameLength != NULL_U16) {
+            byte[] bytes = new byte[nameLength];
+            buffer.get(bytes);
+            name = new String(bytes, StandardCharsets.UTF_8);
+        }
+        track.kind = STATUS_KEY;
+        track.deliveryId = deliveryId;
+        track.orderId = orderId;
+        track.driverId = driverId;
+        track.driverName = name;
+        track.advance(lat, lon, time);
+        return statusMessage(track, status, eta, distance);
+    }
+
+    private static DeliveryStatusMessage decodeStatusDelta(ByteBuffer buffer, Track track) {
+        if (track.kind != STATUS_KEY) {
+            throw new IllegalArgumentException("增量帧之前没有状态关键帧");
+        }
+        int status = buffer.get() & 0xFF;
+        int lat = track.lat + buffer.getShort();
+        int lon = track.lon + buffer.getShort();
+        long time = track.time + (buffer.getShort() & 0xFFFF);
+        int eta = buffer.getShort() & 0xFFFF;
+        int distance = buffer.getShort() & 0xFFFF;
+        track.advance(lat, lon, time);
+        return statusMessage(track, status, eta, distance);
+    }
+
+    private static LocationUpdateMessage decodeLocationKey(ByteBuffer buffer, Track track) {
+        long deliveryId = buffer.getLong();
+        long driverId = buffer.getLong();
+        int lat = buffer.getInt();
+        int lon = buffer.getInt();
+        int speed = buffer.getShort() & 0xFFFF;
+        int heading = buffer.getShort() & 0xFFFF;
+        long time = buffer.getLong();
+        int eta = buffer.getShort() & 0xFFFF;
+        track.kind = LOCATION_KEY;
+        track.deliveryId = deliveryId;
+        track.driverId = driverId;
+        track.advance(lat, lon, time);
+        return locationMessage(track, speed, heading, eta);
+    }
+
+    private static LocationUpdateMessage decodeLocationDelta(ByteBuffer buffer, Track track) {
+        if (track.kind != LOCATION_KEY) {
+            throw new IllegalArgumentException("增量帧之前没有位置关键帧");
+        }
+        int lat = track.lat + buffer.getShort();
+        int lon = track.lon + buffer.getShort();
+        int speed = buffer.getShort() & 0xFFFF;
+        int heading = buffer.getShort() & 0xFFFF;
+        long time = track.time + (buffer.getShort() & 0xFFFF);
+        int eta = buffer.getShort() & 0xFFFF;
+        track.advance(lat, lon, time);
+        return locationMessage(track, speed, heading, eta);
+    }
+
+    private static DeliveryStatusMessage statusMessage(Track track, int status, int eta, int distance) {
+        LocalDateTime timestamp = dateTime(track.time);
+        return DeliveryStatusMessage.builder()
+                .deliveryId(track.deliveryId)
+                .orderId(track.orderId)
+                .driverId(track.driverId)
+                .driverName(track.driverName)
+                .status(status < STATUSES.length ? STATUSES[status].name() : null)
+                .currentLatitude(decimal(track.lat))
+                .currentLongitude(decimal(track.lon))
+                .timestamp(timestamp)
+                .estimatedArrival(timestamp != null && eta != NULL_U16 ? timestamp.plusMinutes(eta) : null)
+                .remainingDistanceKm(distance != NULL_U16 ? distance / 100d : null)
+                .build();
+    }
+
+    private static LocationUpdateMessage locationMessage(Track track, int speed, int heading, int eta) {
+        return LocationUpdateMessage.builder()
+                .deliveryId(track.deliveryId)
+                .driverId(track.driverId)
+                .latitude(decimal(track.lat))
+                .longitude(decimal(track.lon))
+                .speed(speed != NULL_U16 ? speed / 10d : null)
+                .heading(heading != NULL_U16 ? heading / 100d : null)
+                .timestamp(dateTime(track.time))
+                .estimatedArrivalMinutes(eta != NULL_U16 ? eta : null)
+                .build();
+    }
+
+    // ==================== 字段转换 ====================
+
+    private static int statusCode(String status) {
+        if (status == null) {
+            return -1;
+        }
+        for (DeliveryStatus candidate : STATUSES) {
+            if (candidate.name().equals(status)) {
+                return candidate.ordinal();
+            }
+        }
+        return -1;
+    }
+
+    private static int coord(BigDecimal value) {
+        return value != null ? (int) Math.round(value.doubleValue() * COORD_SCALE) : NULL_COORD;
+    }
+
+    private static BigDecimal decimal(int coord) {
+        return coord != NULL_COORD ? BigDecimal.valueOf(coord, 6) : null;
+    }
+
+    private static long millis(LocalDateTime time) {
+        return time != null ? time.atZone(ZONE).toInstant().toEpochMilli() : NULL_TIME;
+    }
+
+    private static LocalDateTime dateTime(long millis) {
+        return millis != NULL_TIME ? LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZONE) : null;
+    }
+
+    private static int etaMinutes(LocalDateTime timestamp, LocalDateTime arrival) {
+        if (timestamp == null || arrival == null) {
+            return NULL_U16;
+        }
+        long seconds = Duration.between(timestamp, arrival).getSeconds();
+        return saturate(Math.max(0, Math.round(seconds / 60d)));
+    }
+
+    private static int heading(double degrees) {
+        double normalized = degrees % 360;
+        if (normalized < 0) {
+            normalized += 360;
+        }
+        return (int) Math.round(normalized * 100) % 36000;
+    }
+
+    private static int saturate(long value) {
+        return (int) Math.max(0, Math.min(MAX_U16, value));
+    }
+
+    private static boolean fitsShort(long value) {
+        return value >= Short.MIN_VALUE && value <= Short.MAX_VALUE;
+    }
+}
@@ -0,0 +1,150 @@
+package com.shydelivery.doordashsimulator.controller;
+
+import com.shydelivery.doordashsimulator.security.AuthenticationCache;
+import com.shydelivery.doordashsimulator.security.JwtTokenProvider;
+import com.shydelivery.doordashsimulator.support.StatementCounter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultMatcher;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * 已认证接口的 SQL 语句数回归测试
+ *
+ * 认证缓存命中后（Token 已验签、主体已加载），请求本身不再按邮箱查询用户：
+ * 授权是一次查询（返回加载好的订单供业务复用），业务写入是一次更新。
+ * 语句数由 StatementCounter 在请求线程上统计（包括 JPA 和 JdbcTemplate）。
+ *
+ * 使用 application.yml 中配置的 PostgreSQL；每个测试插入自己的用户、餐厅和订单，结束后删除。
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@Import(StatementCounter.Configuration.class)
+class AuthorizedEndpointQueryCountTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private JwtTokenProvider jwtTokenProvider;
+
+    @Autowired
+    private AuthenticationCache authenticationCache;
+
+    private final String suffix = Long.toString(System.nanoTime() % 1_000_000_000L);
+
+    private long customerId;
+    private long strangerId;
+    private long ownerId;
+    private long driverId;
+    private long addressId;
+    private long restaurantId;
+    private long orderId;
+
+    @BeforeEach
+    void createFixtures() {
+        customerId = insertUser("customer", "CUSTOMER", "1");
+        strangerId = insertUser("stranger", "CUSTOMER", "2");
+        ownerId = insertUser("owner", "RESTAURANT_OWNER", "3");
+        driverId = insertUser("driver", "DRIVER", "4");
+        jdbcTemplate.update("INSERT INTO drivers (user_id, license_number, vehicle_type, vehicle_plate, is_available, " +
+                "total_deliveries, created_at, updated_at) VALUES (?, ?, 'CAR', 'QC-TEST', true, 0, now(), now())",
+                driverId, "QC-" + suffix);
+        addressId = insertId("INSERT INTO addresses (user_id, street_address, city, state, zip_code, is_default, created_at) " +
+                "VALUES (?, '1 Test St', 'Seattle', 'WA', '98101', true, now()) RETURNING id", customerId);
+        restaurantId = insertId("INSERT INTO restaurants (owner_id, name, cuisine_type, street_address, city, state, zip_code, " +
+                "latitude, longitude, phone_number, opening_time, closing_time, is_active, delivery_fee, created_at, updated_at) " +
+                "VALUES (?, ?, 'Test', '2 Test St', 'Seattle', 'WA', '98101', 47.6, -122.3, '5550000000', " +
+                "'00:00', '00:00', true, 2.99, now(), now()) RETURNING id", ownerId, "Query Count " + suffix);
+        orderId = insertId("INSERT INTO orders (customer_id, restaurant_id, delivery_address_id, driver_id, order_number, " +
+                "status, subtotal, delivery_fee, tax, total_amount, payment_method, payment_status, created_at, updated_at) " +
+                "VALUES (?, ?, ?, ?, ?, 'READY_FOR_PICKUP', 20.00, 2.99, 1.60, 24.59, 'CREDIT_CARD', 'COMPLETED', now(), now()) " +
+                "RETURNING id", customerId, restaurantId, addressId, driverId, "QC-" + suffix);
+    }
+
+    @AfterEach
+    void deleteFixtures() {
+        jdbcTemplate.update("DELETE FROM orders WHERE id = ?", orderId);
+        jdbcTemplate.update("DELETE FROM restaurants WHERE id = ?", restaurantId);
+        jdbcTemplate.update("DELETE FROM addresses WHERE id = ?", addressId);
+        jdbcTemplate.update("DELETE FROM drivers WHERE user_id = ?", driverId);
+        jdbcTemplate.update("DELETE FROM users WHERE id IN (?, ?, ?, ?)", customerId, strangerId, ownerId, driverId);
+    }
+
+    @Test
+    void customerReadsOwnOrder() throws Exception {
+        // 订单聚合（fetch join）+ 订单项 + 支付记录
+        assertThat(statements(get("/api/orders/{id}", orderId), "customer", status().isOk())).isEqualTo(3);
+    }
+
+    @Test
+    void restaurantOwnerReadsOrder() throws Exception {
+        assertThat(statements(get("/api/orders/{id}", orderId), "owner", status().isOk())).isEqualTo(3);
+    }
+
+    @Test
+    void strangerIsRejectedAfterOneQuery() throws Exception {
+        assertThat(statements(get("/api/orders/{id}", orderId), "stranger", status().isForbidden())).isEqualTo(1);
+    }
+
+    @Test
+    void driverStatusTransitions() throws Exception {
+        // 授权（加载订单）+ 更新订单
+        assertThat(statements(put("/api/deliveries/{id}/picked-up", orderId), "driver",
+                jsonPath("$.orderStatus").value("PICKED_UP"))).isEqualTo(2);
+        assertThat(statements(put("/api/deliveries/{id}/in-transit", orderId), "driver",
+                jsonPath("$.orderStatus").value("IN_TRANSIT"))).isEqualTo(2);
+        // 另加一次配送员统计的原子更新
+        assertThat(statements(put("/api/deliveries/{id}/delivered", orderId), "driver",
+                jsonPath("$.orderStatus").value("DELIVERED"))).isEqualTo(3);
+    }
+
+    /**
+     * 以指定用户执行请求，返回请求线程上的语句数（认证缓存已预热）
+     */
+    private int statements(MockHttpServletRequestBuilder request, String user, ResultMatcher expectation) throws Exception {
+        String email = email(user);
+        String token = jwtTokenProvider.generateToken(email);
+        authenticationCache.verify(token);
+        authenticationCache.principal(email);
+
+        int count;
+        StatementCounter.start();
+        try {
+            mockMvc.perform(request.contextPath("/api").header("Authorization", "Bearer " + token))
+                    .andExpect(expectation);
+        } finally {
+            count = StatementCounter.stop();
+        }
+        return count;
+    }
+
+    private long insertUser(String user, String role, String phonePrefix) {
+        return insertId("INSERT INTO users (email, first_name, last_name, phone_number, role, is_active, created_at, updated_at) " +
+                "VALUES (?, 'Query', 'Count', ?, ?, true, now(), now()) RETURNING id", email(user), "+" + phonePrefix + suffix, role);
+    }
+
+    private String email(String user) {
+        return "qc-" + user + "-" + suffix + "@test.local";
+    }
+
+    private long insertId(String sql, Object... args) {
+        return jdbcTemplate.queryForObject(sql, Long.class, args);
+    }
+}
@@ -0,0 +1,243 @@
+package com.shydelivery.doordashsimulator.service;
+
+import com.shydelivery.doordashsimulator.controller.PaymentController;
+import com.shydelivery.doordashsimulator.entity.PaymentMethod;
+import com.shydelivery.doordashsimulator.exception.GlobalExceptionHandler;
+import com.shydelivery.doordashsimulator.exception.ServiceUnavailableException;
+import com.shydelivery.doordashsimulator.service.PaymentGateway.ChargeRequest;
+import com.shydelivery.doordashsimulator.service.PaymentGateway.ChargeResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * PaymentDispatcher 在模拟网关注入延迟下的行为：
+ * - 舱壁：并发网关调用数不超过 threads，在途支付满时 reserve 拒绝
+ * - 舱壁已满 / 熔断打开时 POST /payments/{id}/process 返回 503 和 Retry-After
+ * - 不同网关延迟下吞吐量接近 threads / latency，不随延迟增大而崩溃
+ */
+class PaymentDispatcherTest {
+
+    private static final int THREADS = 4;
+    private static final int QUEUE_CAPACITY = 8;
+    private static final long ATTEMPT_TIMEOUT_MS = 3000;
+    private static final long BREAKER_OPEN_MS = 10_000;
+
+    private final AtomicLong paymentIds = new AtomicLong();
+
+    private PaymentDispatcher dispatcher;
+
+    @AfterEach
+    void shutdown() {
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+        }
+    }
+
+    @Test
+    void bulkheadCapsConcurrentGatewayCalls() throws Exception {
+        ConcurrencyTrackingGateway gateway = new ConcurrencyTrackingGateway(simulatedGateway(200, 200, 0.0));
+        dispatcher = dispatcher(gateway, THREADS, QUEUE_CAPACITY, 1);
+
+        int capacity = THREADS + QUEUE_CAPACITY;
+        CountDownLatch done = new CountDownLatch(capacity);
+        for (int i = 0; i < capacity; i++) {
+            dispatcher.reserve();
+            dispatch(result -> done.countDown());
+        }
+
+        // 在途已满：再预留直接拒绝，建议在一次网关调用超时后重试
+        assertThatThrownBy(dispatcher::reserve)
+                .isInstanceOf(ServiceUnavailableException.class)
+                .satisfies(e -> assertThat(((ServiceUnavailableException) e).getRetryAfterSeconds())
+                        .isEqualTo(TimeUnit.MILLISECONDS.toSeconds(ATTEMPT_TIMEOUT_MS)));
+
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(gateway.maxActive.get()).isEqualTo(THREADS);
+        assertThat(awaitPermits(capacity)).isEqualTo(capacity);
+    }
+
+    @Test
+    void saturatedBulkheadAnswers503WithRetryAfter() throws Exception {
+        dispatcher = dispatcher(new ConcurrencyTrackingGateway(simulatedGateway(500, 500, 0.0)), 1, 0, 1);
+        MockMvc mockMvc = paymentEndpoint();
+
+        mockMvc.perform(post("/payments/1/process").principal(customer()))
+                .andExpect(status().isAccepted());
+        mockMvc.perform(post("/payments/2/process").principal(customer()))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "3"));
+    }
+
+    @Test
+    void openBreakerAnswers503WithRetryAfter() throws Exception {
+        // 每次调用都是结果未知的内部错误，连续 5 次后熔断
+        dispatcher = dispatcher(new ConcurrencyTrackingGateway(simulatedGateway(1, 1, 1.0)), THREADS, QUEUE_CAPACITY, 1);
+        MockMvc mockMvc = paymentEndpoint();
+        for (int i = 0; i < 5; i++) {
+            dispatcher.reserve();
+            dispatch(result -> { });
+        }
+        // 熔断拒绝期内可用名额为 0
+        assertThat(awaitPermits(0)).isZero();
+        assertThat(dispatcher.getStats().get("breakerState")).isEqualTo("OPEN");
+
+        // Retry-After 为熔断剩余时间（向上取整到秒）
+        String retryAfter = mockMvc.perform(post("/payments/1/process").principal(customer()))
+                .andExpect(status().isServiceUnavailable())
+                .andReturn().getResponse().getHeader("Retry-After");
+        assertThat(Long.parseLong(retryAfter)).isBetween(1L, TimeUnit.MILLISECONDS.toSeconds(BREAKER_OPEN_MS));
+    }
+
+    /**
+     * 客户端遇到 503 后稍后重试；吞吐量应接近 threads * 1000 / latency，
+     * 延迟变大时按比例下降，而不是因排队或重试而崩溃
+     */
+    @ParameterizedTest
+    @ValueSource(longs = {20, 50, 100})
+    void throughputTracksBulkheadSizeAcrossGatewayLatencies(long latencyMs) throws Exception {
+        int threads = 8;
+        int payments = threads * 10;
+        ConcurrencyTrackingGateway gateway = new ConcurrencyTrackingGateway(simulatedGateway(latencyMs, latencyMs, 0.0));
+        dispatcher = dispatcher(gateway, threads, threads * 2, 3);
+
+        CountDownLatch done = new CountDownLatch(payments);
+        AtomicInteger rejected = new AtomicInteger();
+        long start = System.nanoTime();
+        for (int submitted = 0; submitted < payments; ) {
+            try {
+                dispatcher.reserve();
+            } catch (ServiceUnavailableException e) {
+                rejected.incrementAndGet();
+                Thread.sleep(1);
+                continue;
+            }
+            dispatch(result -> done.countDown());
+            submitted++;
+        }
+        assertThat(done.await(30, TimeUnit.SECONDS)).isTrue();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        double throughput = payments / seconds;
+        double ideal = threads * 1000.0 / latencyMs;
+        assertThat(gateway.maxActive.get()).isLessThanOrEqualTo(threads);
+        assertThat(throughput).as("latency %dms: %.1f/s vs ideal %.1f/s, rejected %d",
+                latencyMs, throughput, ideal, rejected.get()).isGreaterThan(ideal * 0.5);
+    }
+
+    /**
+     * 等待可用名额达到 expected（名额在结果回调之后释放），最多 5 秒
+     */
+    private int awaitPermits(int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (dispatcher.availablePermits() != expected && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        return dispatcher.availablePermits();
+    }
+
+    private void dispatch(Consumer<ChargeResult> onResult) {
+        long id = paymentIds.incrementAndGet();
+        dispatcher.dispatch(id, new ChargeRequest("payment-" + id, BigDecimal.TEN, PaymentMethod.CREDIT_CARD), onResult);
+    }
+
+    /**
+     * 只挂 PaymentController 和 GlobalExceptionHandler；处理支付时按真实流程先向 dispatcher 预留名额
+     */
+    private MockMvc paymentEndpoint() {
+        PaymentService paymentService = mock(PaymentService.class);
+        when(paymentService.processPayment(anyLong(), anyString())).thenAnswer(invocation -> {
+            dispatcher.reserve();
+            dispatch(result -> { });
+            return null;
+        });
+        return MockMvcBuilders.standaloneSetup(new PaymentController(paymentService))
+                .setControllerAdvice(new GlobalExceptionHandler())
+                .build();
+    }
+
+    private static UsernamePasswordAuthenticationToken customer() {
+        return new UsernamePasswordAuthenticationToken("customer@test.local", null);
+    }
+
+    private static SimulatedPaymentGateway simulatedGateway(long minLatencyMs, long maxLatencyMs, double errorRate) {
+        SimulatedPaymentGateway gateway = new SimulatedPaymentGateway();
+        ReflectionTestUtils.setField(gateway, "minLatencyMs", minLatencyMs);
+        ReflectionTestUtils.setField(gateway, "maxLatencyMs", maxLatencyMs);
+        ReflectionTestUtils.setField(gateway, "declineRate", 0.1);
+        ReflectionTestUtils.setField(gateway, "errorRate", errorRate);
+        ReflectionTestUtils.setField(gateway, "maxIdempotencyKeys", 100_000);
+        return gateway;
+    }
+
+    private static PaymentDispatcher dispatcher(PaymentGateway gateway, int threads, int queueCapacity, int maxAttempts) {
+        PaymentDispatcher dispatcher = new PaymentDispatcher(gateway);
+        ReflectionTestUtils.setField(dispatcher, "threads", threads);
+        ReflectionTestUtils.setField(dispatcher, "queueCapacity", queueCapacity);
+        ReflectionTestUtils.setField(dispatcher, "attemptTimeoutMs", ATTEMPT_TIMEOUT_MS);
+        ReflectionTestUtils.setField(dispatcher, "maxAttempts", maxAttempts);
+        ReflectionTestUtils.setField(dispatcher, "retryBackoffMs", 10L);
+        ReflectionTestUtils.setField(dispatcher, "breakerFailureThreshold", 5);
+        ReflectionTestUtils.setField(dispatcher, "breakerOpenMs", BREAKER_OPEN_MS);
+        dispatcher.init();
+        return dispatcher;
+    }
+
+    /**
+     * 记录同时进行的网关调用数
+     */
+    private static class ConcurrencyTrackingGateway implements PaymentGateway {
+
+        private final PaymentGateway delegate;
+        private final AtomicInteger active = new AtomicInteger();
+        private final AtomicInteger maxActive = new AtomicInteger();
+
+        ConcurrencyTrackingGateway(PaymentGateway delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public String name() {
+            return delegate.name();
+        }
+
+        @Override
+        public ChargeResult charge(ChargeRequest request, Duration timeout) {
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            try {
+                return delegate.charge(request, timeout);
+            } finally {
+                active.decrementAndGet();
+            }
+        }
+
+        @Override
+        public Map<String, Object> getStats() {
+            return delegate.getStats();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.shydelivery.doordashsimulator.support;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.Set;
+
+/**
+ * 测试用 SQL 语句计数器
+ *
+ * 通过 BeanPostProcessor 给 DataSource 套一层代理，统计当前线程上创建的 JDBC 语句
+ * （prepareStatement / prepareCall / createStatement），覆盖 JPA 和 JdbcTemplate 两条路径。
+ * 只统计调用了 start() 的线程，后台定时任务和异步线程上的查询不计入。
+ * MockMvc 在测试线程上执行请求，因此 start()/stop() 之间的计数就是该请求的语句数。
+ */
+public final class StatementCounter {
+
+    private static final Set<String> STATEMENT_METHODS = Set.of("prepareStatement", "prepareCall", "createStatement");
+
+    private static final ThreadLocal<int[]> COUNT = new ThreadLocal<>();
+
+    private StatementCounter() {
+    }
+
+    /**
+     * 开始统计当前线程
+     */
+    public static void start() {
+        COUNT.set(new int[1]);
+    }
+
+    /**
+     * 结束统计，返回 start() 以来当前线程创建的语句数
+     */
+    public static int stop() {
+        int[] count = COUNT.get();
+        COUNT.remove();
+        return count != null ? count[0] : 0;
+    }
+
+    private static DataSource wrap(DataSource target) {
+        return (DataSource) Proxy.newProxyInstance(StatementCounter.class.getClassLoader(), new Class<?>[]{DataSource.class},
+                delegate(target, (method, result) -> "getConnection".equals(method) ? wrap((Connection) result) : result));
+    }
+
+    private static Connection wrap(Connection target) {
+        return (Connection) Proxy.newProxyInstance(StatementCounter.class.getClassLoader(), new Class<?>[]{Connection.class},
+                delegate(target, (method, result) -> {
+                    int[] count = COUNT.get();
+                    if (count != null && STATEMENT_METHODS.contains(method)) {
+                        count[0]++;
+                    }
+                    return result;
+                }));
+    }
+
+    private static InvocationHandler delegate(Object target, ResultHandler handler) {
+        return (proxy, method, args) -> {
+            try {
+                return handler.handle(method.getName(), method.invoke(target, args));
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        };
+    }
+
+    @FunctionalInterface
+    private interface ResultHandler {
+        Object handle(String method, Object result);
+    }
+
+    /**
+     * 在测试类上 @Import 后生效
+     */
+    @TestConfiguration
+    public static class Configuration {
+
+        @Bean
+        static BeanPostProcessor statementCountingDataSource() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    return bean instanceof DataSource dataSource ? wrap(dataSource) : bean;
+                }
+            };
+        }
+    }
+}